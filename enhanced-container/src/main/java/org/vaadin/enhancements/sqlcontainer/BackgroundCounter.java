@@ -0,0 +1,134 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts the rows of an SQLContainer in the background.
+ *
+ * <p>
+ * The count is never applied by the background thread; the container
+ * {@link #take() takes} a finished count on its own thread. A count that was
+ * submitted before the last {@link #cancel()} is discarded when it finishes.
+ */
+class BackgroundCounter implements Serializable {
+    private static final long serialVersionUID = -4529913170583391057L;
+
+    private transient Executor executor;
+
+    /*
+     * The fields below are guarded by this. A count is only kept if the
+     * generation has not changed since it was submitted.
+     */
+    private int generation;
+    private boolean pending;
+    private transient Integer result;
+
+    void setExecutor(Executor executor) {
+        cancel();
+        this.executor = executor;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Submits a count, unless one is already running. A finished count that
+     * has not been taken is discarded.
+     *
+     * @param counter
+     *            counts the rows. Called on a thread of the executor.
+     */
+    void submit(final Callable<Integer> counter) {
+        Executor exec = executor;
+        if (exec == null) {
+            return;
+        }
+        final int submitted;
+        synchronized (this) {
+            if (pending) {
+                return;
+            }
+            result = null;
+            pending = true;
+            submitted = generation;
+        }
+        try {
+            exec.execute(new Runnable() {
+                @Override
+                public void run() {
+                    count(submitted, counter);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            getLogger().log(Level.FINE, "Count was rejected by executor", e);
+            synchronized (this) {
+                if (submitted == generation) {
+                    pending = false;
+                }
+            }
+        }
+    }
+
+    private void count(int submitted, Callable<Integer> counter) {
+        Integer count = null;
+        try {
+            count = counter.call();
+        } catch (Exception e) {
+            getLogger().log(Level.WARNING, "Failed to count rows", e);
+        }
+        synchronized (this) {
+            if (submitted == generation) {
+                pending = false;
+                result = count;
+            }
+        }
+    }
+
+    /**
+     * Returns a finished count and removes it from the counter.
+     *
+     * @return the count, or null if no count has finished since the last call
+     */
+    synchronized Integer take() {
+        Integer count = result;
+        result = null;
+        return count;
+    }
+
+    /**
+     * Discards a finished count and the result of a running one. To be called
+     * whenever the rows to count change, e.g. when the filters change.
+     */
+    synchronized void cancel() {
+        generation++;
+        pending = false;
+        result = null;
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(BackgroundCounter.class.getName());
+    }
+}
@@ -20,8 +20,10 @@ import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.List;
+import org.vaadin.enhancements.sqlcontainer.query.CachingQueryDelegate;
 import org.vaadin.enhancements.sqlcontainer.query.FreeformQuery;
 import org.vaadin.enhancements.sqlcontainer.query.QueryDelegate;
+import org.vaadin.enhancements.sqlcontainer.query.QueryResultCache;
 import org.vaadin.enhancements.sqlcontainer.query.TableQuery;
 
 
@@ -64,12 +66,16 @@ class CacheFlushNotifier implements Serializable {
 
     /**
      * Iterates through the instances and notifies containers which are
-     * connected to the same table or are using the same query string.
+     * connected to the same table or are using the same query string. Shared
+     * query result caches are invalidated for that table or query string as
+     * well.
      *
      * @param c
      *            SQLContainer that issued the cache flush notification
      */
     public static void notifyOfCacheFlush(SQLContainer c) {
+        QueryResultCache.invalidateAll(
+                QueryResultCache.getDataSourceId(c.getQueryDelegate()));
         removeDeadReferences();
         for (WeakReference<SQLContainer> wr : allInstances) {
             if (wr.get() != null) {
@@ -85,8 +91,10 @@ class CacheFlushNotifier implements Serializable {
                     continue;
                 }
                 /* Compare QueryDelegate types and tableName/queryString */
-                QueryDelegate wrQd = wrc.getQueryDelegate();
-                QueryDelegate qd = c.getQueryDelegate();
+                QueryDelegate wrQd = CachingQueryDelegate
+                        .unwrap(wrc.getQueryDelegate());
+                QueryDelegate qd = CachingQueryDelegate
+                        .unwrap(c.getQueryDelegate());
                 if (wrQd instanceof TableQuery && qd instanceof TableQuery
                         && ((TableQuery) wrQd).getTableName()
                                 .equals(((TableQuery) qd).getTableName())) {
@@ -0,0 +1,145 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing how well the row cache of an {@link SQLContainer} is
+ * working. An instance is obtained with
+ * {@link SQLContainer#getCacheStatistics()} and is updated live as the
+ * container is used.
+ *
+ * <p>
+ * A <em>hit</em> is a lookup by index or item id that was answered from the
+ * cache. A <em>miss</em> is a lookup that required a new window of rows to be
+ * loaded. A miss is answered without a database round trip if the window had
+ * already been loaded in the background, in which case it is also counted as
+ * a <em>used prefetch</em>. Prefetched windows that are thrown away unused are
+ * counted as <em>wasted prefetches</em>.
+ */
+public final class CacheStatistics implements Serializable {
+    private static final long serialVersionUID = -4187336520873915231L;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetchesIssued = new AtomicLong();
+    private final AtomicLong prefetchesUsed = new AtomicLong();
+    private final AtomicLong prefetchesWasted = new AtomicLong();
+    private final AtomicLong rowsFetched = new AtomicLong();
+
+    CacheStatistics() {
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordPrefetchIssued() {
+        prefetchesIssued.incrementAndGet();
+    }
+
+    void recordPrefetchUsed() {
+        prefetchesUsed.incrementAndGet();
+    }
+
+    void recordPrefetchWasted() {
+        prefetchesWasted.incrementAndGet();
+    }
+
+    void recordRowsFetched(int rows) {
+        rowsFetched.addAndGet(rows);
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that required a new window to be loaded
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the fraction of lookups answered from the cache, or 0 if there
+     *         have been no lookups
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the number of windows submitted for background loading
+     */
+    public long getPrefetchesIssued() {
+        return prefetchesIssued.get();
+    }
+
+    /**
+     * @return the number of misses answered by a window loaded in the
+     *         background
+     */
+    public long getPrefetchesUsed() {
+        return prefetchesUsed.get();
+    }
+
+    /**
+     * @return the number of windows loaded in the background that were
+     *         discarded without being used
+     */
+    public long getPrefetchesWasted() {
+        return prefetchesWasted.get();
+    }
+
+    /**
+     * @return the total number of rows read from the data source into the
+     *         cache, including rows loaded in the background
+     */
+    public long getRowsFetched() {
+        return rowsFetched.get();
+    }
+
+    /**
+     * Resets all counters to zero.
+     */
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        prefetchesIssued.set(0);
+        prefetchesUsed.set(0);
+        prefetchesWasted.set(0);
+        rowsFetched.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics[hits=" + getHits() + ", misses=" + getMisses()
+                + ", prefetchesIssued=" + getPrefetchesIssued()
+                + ", prefetchesUsed=" + getPrefetchesUsed()
+                + ", prefetchesWasted=" + getPrefetchesWasted()
+                + ", rowsFetched=" + getRowsFetched() + "]";
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A contiguous range of cached items of an SQLContainer. The items of the
+ * window have the indexes {@code start} to {@code end - 1}.
+ *
+ * <p>
+ * The ids are kept in an array-backed list addressed by index, and each id is
+ * mapped to its item and index, so that lookups in both directions take
+ * constant time. The column values of unmodified rows stay in the
+ * {@link RowBlock} they were read into; the RowItem of such a row is only
+ * created when the item is first requested.
+ */
+final class CacheWindow implements Serializable {
+    private static final long serialVersionUID = -6079446208426004812L;
+
+    /**
+     * Identifies the window: the offset at which the window was loaded, or to
+     * which it was last shifted.
+     */
+    private Integer key;
+    private int start;
+    private final ArrayList<RowId> ids = new ArrayList<RowId>();
+    private final Map<RowId, Entry> entries = new HashMap<RowId, Entry>();
+
+    /**
+     * The index of an item, which does not change while it is cached, and
+     * either the item or the location of its values.
+     */
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 4218390756117342295L;
+
+        private final int index;
+        private final RowBlock block;
+        private final int row;
+        private RowItem item;
+
+        private Entry(int index, RowBlock block, int row, RowItem item) {
+            this.index = index;
+            this.block = block;
+            this.row = row;
+            this.item = item;
+        }
+    }
+
+    CacheWindow(int key, int start) {
+        this.key = key;
+        this.start = start;
+    }
+
+    void add(RowId id, RowItem item) {
+        entries.put(id, new Entry(getEnd(), null, -1, item));
+        ids.add(id);
+    }
+
+    /**
+     * Adds an item whose values are stored in the given row of a block.
+     */
+    void add(RowId id, RowBlock block, int row) {
+        entries.put(id, new Entry(getEnd(), block, row, null));
+        ids.add(id);
+    }
+
+    Integer getKey() {
+        return key;
+    }
+
+    void setKey(Integer key) {
+        this.key = key;
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    /**
+     * @return the index following the last item of this window
+     */
+    int getEnd() {
+        return start + ids.size();
+    }
+
+    boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    boolean containsIndex(int index) {
+        return index >= start && index < getEnd();
+    }
+
+    RowId getId(int index) {
+        return ids.get(index - start);
+    }
+
+    List<RowId> getIds() {
+        return ids;
+    }
+
+    boolean containsItem(Object id) {
+        return entries.containsKey(id);
+    }
+
+    RowItem getItem(Object id) {
+        Entry e = entries.get(id);
+        if (e == null) {
+            return null;
+        }
+        if (e.item == null) {
+            e.item = e.block.createItem(ids.get(e.index - start), e.row);
+        }
+        return e.item;
+    }
+
+    int indexOf(Object id) {
+        Entry e = entries.get(id);
+        return e == null ? -1 : e.index;
+    }
+
+    /**
+     * Joins the items of a directly adjacent window to this window.
+     *
+     * @param other
+     *            a window starting at the end of this window or ending at the
+     *            start of this window
+     */
+    void merge(CacheWindow other) {
+        if (other.getStart() == getEnd()) {
+            ids.addAll(other.ids);
+        } else if (other.getEnd() == start) {
+            ids.addAll(0, other.ids);
+            start = other.start;
+        } else {
+            throw new IllegalArgumentException(
+                    "Only adjacent windows can be merged.");
+        }
+        entries.putAll(other.entries);
+    }
+
+    /**
+     * Shrinks this window to at most the given number of items.
+     *
+     * @param maxSize
+     *            the maximum number of items
+     * @param keepEnd
+     *            true to drop items from the start, false to drop items from
+     *            the end
+     * @return the ids of the removed items
+     */
+    List<RowId> trimToSize(int maxSize, boolean keepEnd) {
+        if (ids.size() <= maxSize) {
+            return new ArrayList<RowId>();
+        }
+        return keepEnd ? trim(start, getEnd() - maxSize)
+                : trim(start + maxSize, getEnd());
+    }
+
+    /**
+     * Removes the items with indexes in the given range from this window. If
+     * the range splits the window in two, the smaller part is removed as well,
+     * since a window must be contiguous.
+     *
+     * @param from
+     *            first index of the range
+     * @param to
+     *            index following the last index of the range
+     * @return the ids of the removed items
+     */
+    List<RowId> trim(int from, int to) {
+        int ovStart = Math.max(start, from);
+        int ovEnd = Math.min(getEnd(), to);
+        List<RowId> removed = new ArrayList<RowId>();
+        if (ovStart >= ovEnd) {
+            return removed;
+        }
+        int keepFrom;
+        int keepTo;
+        if (ovStart - start >= getEnd() - ovEnd) {
+            keepFrom = start;
+            keepTo = ovStart;
+        } else {
+            keepFrom = ovEnd;
+            keepTo = getEnd();
+        }
+        removed.addAll(ids.subList(keepTo - start, ids.size()));
+        removed.addAll(ids.subList(0, keepFrom - start));
+        for (RowId id : removed) {
+            entries.remove(id);
+        }
+        ids.subList(keepTo - start, ids.size()).clear();
+        ids.subList(0, keepFrom - start).clear();
+        start = keepFrom;
+        return removed;
+    }
+}
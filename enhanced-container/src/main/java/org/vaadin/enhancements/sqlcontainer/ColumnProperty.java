@@ -37,11 +37,10 @@ final public class ColumnProperty implements Property {
 
     private RowItem owner;
 
-    private String propertyId;
+    /** The attributes shared with the properties of the same column */
+    private ColumnSchema.Column column;
 
     private boolean readOnly;
-    private boolean allowReadOnlyChange = true;
-    private boolean nullable = true;
 
     private Object value;
     private Object changedValue;
@@ -50,7 +49,6 @@ final public class ColumnProperty implements Property {
     private boolean modified;
 
     private boolean versionColumn;
-    private boolean primaryKey = false;
 
     /**
      * Prevent instantiation without required parameters.
@@ -111,14 +109,28 @@ final public class ColumnProperty implements Property {
         if (type == null) {
             throw new IllegalArgumentException("Property type must be set.");
         }
-        this.propertyId = propertyId;
+        this.column = new ColumnSchema.Column(propertyId, readOnly,
+                allowReadOnlyChange, nullable, primaryKey, type);
         this.type = type;
         this.value = value;
-
-        this.allowReadOnlyChange = allowReadOnlyChange;
-        this.nullable = nullable;
         this.readOnly = readOnly;
-        this.primaryKey = primaryKey;
+    }
+
+    /**
+     * Creates a new ColumnProperty for a column of a {@link ColumnSchema}.
+     *
+     * @param column
+     *            The attributes of the column
+     * @param value
+     *            The value of this property.
+     * @param type
+     *            The type of this property.
+     */
+    ColumnProperty(ColumnSchema.Column column, Object value, Class<?> type) {
+        this.column = column;
+        this.type = type;
+        this.value = value;
+        this.readOnly = column.isReadOnly();
     }
 
     /**
@@ -149,7 +161,7 @@ final public class ColumnProperty implements Property {
     @Override
     public void setValue(Object newValue)
             throws ReadOnlyException, ConversionException {
-        if (newValue == null && !nullable) {
+        if (newValue == null && !isNullable()) {
             throw new NotNullableException(
                     "Null values are not allowed for this property.");
         }
@@ -236,22 +248,22 @@ final public class ColumnProperty implements Property {
      * @return true if the read-only status can be changed, false otherwise.
      */
     public boolean isReadOnlyChangeAllowed() {
-        return allowReadOnlyChange;
+        return column.isReadOnlyChangeAllowed();
     }
 
     @Override
     public void setReadOnly(boolean newStatus) {
-        if (allowReadOnlyChange) {
+        if (isReadOnlyChangeAllowed()) {
             readOnly = newStatus;
         }
     }
 
     public boolean isPrimaryKey() {
-        return primaryKey;
+        return column.isPrimaryKey();
     }
 
     public String getPropertyId() {
-        return propertyId;
+        return column.getPropertyId();
     }
 
     /**
@@ -312,7 +324,7 @@ final public class ColumnProperty implements Property {
     }
 
     public boolean isNullable() {
-        return nullable;
+        return column.isNullable();
     }
 
     /**
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The properties of the items of an SQLContainer and their attributes. A
+ * schema is immutable. The container creates it once when it reads its
+ * property ids and shares it with all of its RowItems, which find their
+ * properties by the ordinal the schema gives to each property id.
+ */
+final class ColumnSchema implements Serializable {
+    private static final long serialVersionUID = 6917583224018546520L;
+
+    private final List<String> propertyIds;
+    private final Map<String, Integer> ordinals;
+    private final Column[] columns;
+
+    /**
+     * The attributes of one property, shared by the ColumnProperties of all
+     * rows.
+     */
+    static final class Column implements Serializable {
+        private static final long serialVersionUID = -5286630213709433051L;
+
+        private final String propertyId;
+        private final boolean readOnly;
+        private final boolean allowReadOnlyChange;
+        private final boolean nullable;
+        private final boolean primaryKey;
+        private final Class<?> type;
+
+        Column(String propertyId, boolean readOnly,
+                boolean allowReadOnlyChange, boolean nullable,
+                boolean primaryKey, Class<?> type) {
+            this.propertyId = propertyId;
+            this.readOnly = readOnly;
+            this.allowReadOnlyChange = allowReadOnlyChange;
+            this.nullable = nullable;
+            this.primaryKey = primaryKey;
+            this.type = type;
+        }
+
+        String getPropertyId() {
+            return propertyId;
+        }
+
+        /**
+         * @return the initial read-only status of the properties
+         */
+        boolean isReadOnly() {
+            return readOnly;
+        }
+
+        boolean isReadOnlyChangeAllowed() {
+            return allowReadOnlyChange;
+        }
+
+        boolean isNullable() {
+            return nullable;
+        }
+
+        boolean isPrimaryKey() {
+            return primaryKey;
+        }
+
+        /**
+         * @return the type of the property when its value is null
+         */
+        Class<?> getType() {
+            return type;
+        }
+    }
+
+    ColumnSchema(List<Column> columns) {
+        this.columns = columns.toArray(new Column[columns.size()]);
+        List<String> ids = new ArrayList<String>(columns.size());
+        ordinals = new HashMap<String, Integer>();
+        for (int i = 0; i < this.columns.length; i++) {
+            ids.add(this.columns[i].getPropertyId());
+            ordinals.put(this.columns[i].getPropertyId(), i);
+        }
+        propertyIds = Collections.unmodifiableList(ids);
+    }
+
+    int size() {
+        return columns.length;
+    }
+
+    /**
+     * @return the ordinal of the property, or -1 if there is no such property
+     */
+    int indexOf(Object propertyId) {
+        Integer ordinal = ordinals.get(propertyId);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    Column getColumn(int ordinal) {
+        return columns[ordinal];
+    }
+
+    /**
+     * @return the property ids in ordinal order, as an unmodifiable list
+     */
+    List<String> getPropertyIds() {
+        return propertyIds;
+    }
+}
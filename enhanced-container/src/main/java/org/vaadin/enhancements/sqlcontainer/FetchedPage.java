@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows read from the data source for one cache window, detached from the
+ * ResultSet they were read from. A FetchedPage holds the row ids and the
+ * column values in a {@link RowBlock}. The page is turned into a cache window
+ * when it is installed into the container's cache, so that buffered
+ * modifications and removals are taken into account at that time rather than
+ * when the rows were read.
+ */
+final class FetchedPage {
+
+    private final int offset;
+    private final int requestedRows;
+    private final List<RowId> rowIds = new ArrayList<RowId>();
+    private final RowBlock rows;
+    /** Number of rows in the data source if fetched with the rows, or -1 */
+    private int totalRows = -1;
+
+    FetchedPage(int offset, int requestedRows, RowBlock rows) {
+        this.offset = offset;
+        this.requestedRows = requestedRows;
+        this.rows = rows;
+    }
+
+    /**
+     * Adds the id of a row whose values have been read into the row block.
+     */
+    void addRow(RowId id) {
+        rowIds.add(id);
+    }
+
+    /**
+     * @return the offset in the data source of the first row of this page
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of rows that were requested, which is more than
+     *         {@link #getRowCount()} if the data source ran out of rows
+     */
+    int getRequestedRows() {
+        return requestedRows;
+    }
+
+    /**
+     * @return true if this page was fetched for the given range
+     */
+    boolean matches(int offset, int requestedRows) {
+        return this.offset == offset && this.requestedRows == requestedRows;
+    }
+
+    int getTotalRows() {
+        return totalRows;
+    }
+
+    void setTotalRows(int totalRows) {
+        this.totalRows = totalRows;
+    }
+
+    int getRowCount() {
+        return rowIds.size();
+    }
+
+    RowId getRowId(int row) {
+        return rowIds.get(row);
+    }
+
+    /**
+     * @return the column values of the rows, in the same order as the ids
+     */
+    RowBlock getRows() {
+        return rows;
+    }
+}
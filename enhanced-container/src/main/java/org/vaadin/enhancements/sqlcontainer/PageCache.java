@@ -0,0 +1,292 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.vaadin.enhancements.sqlcontainer.cache.CacheEvictionPolicy;
+
+/**
+ * Item cache of an SQLContainer, made of a number of independent windows of
+ * contiguous items. Windows do not overlap: when a window is added, the parts
+ * of older windows covering the same indexes are dropped. When the maximum
+ * number of windows is reached, the window to drop is chosen by a
+ * {@link CacheEvictionPolicy}.
+ *
+ * <p>
+ * Besides the windows, a limited number of single items whose index is not
+ * known can be cached. These are found by id only, and are dropped when a
+ * window containing them is added.
+ */
+class PageCache implements Serializable {
+    private static final long serialVersionUID = 3317843519524207727L;
+
+    /** Maximum number of single items kept outside of windows */
+    static final int MAX_SINGLE_ITEMS = 100;
+
+    private final Map<Integer, CacheWindow> windows = new LinkedHashMap<Integer, CacheWindow>();
+    private final Map<RowId, CacheWindow> windowOfItem = new HashMap<RowId, CacheWindow>();
+    private final SingleItems singleItems = new SingleItems();
+    private CacheEvictionPolicy<Integer> policy;
+    private int maxWindows;
+
+    /** The window of the last index lookup, checked first on the next one */
+    private CacheWindow lastWindow;
+
+    /** Single items in least recently used order */
+    private static class SingleItems extends LinkedHashMap<RowId, RowItem> {
+        private static final long serialVersionUID = -2563178049927718560L;
+
+        private SingleItems() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RowId, RowItem> eldest) {
+            return size() > MAX_SINGLE_ITEMS;
+        }
+    }
+
+    PageCache(int maxWindows, CacheEvictionPolicy<Integer> policy) {
+        this.maxWindows = maxWindows;
+        this.policy = policy;
+        policy.setCapacity(maxWindows);
+    }
+
+    void setMaxWindows(int maxWindows) {
+        this.maxWindows = maxWindows;
+        policy.setCapacity(maxWindows);
+        while (windows.size() > maxWindows) {
+            evict();
+        }
+    }
+
+    int getMaxWindows() {
+        return maxWindows;
+    }
+
+    /**
+     * Replaces the eviction policy. The windows currently in the cache are
+     * reported to the new policy as added, from the oldest to the newest.
+     */
+    void setEvictionPolicy(CacheEvictionPolicy<Integer> policy) {
+        this.policy = policy;
+        policy.setCapacity(maxWindows);
+        for (Integer key : windows.keySet()) {
+            policy.keyAdded(key);
+        }
+    }
+
+    CacheEvictionPolicy<Integer> getEvictionPolicy() {
+        return policy;
+    }
+
+    boolean isEmpty() {
+        return windows.isEmpty();
+    }
+
+    void clear() {
+        lastWindow = null;
+        windows.clear();
+        windowOfItem.clear();
+        singleItems.clear();
+        policy.clear();
+    }
+
+    /**
+     * Returns the window containing the given index, or null if the index is
+     * not cached.
+     */
+    CacheWindow getWindowAt(int index) {
+        if (lastWindow != null && lastWindow.containsIndex(index)) {
+            policy.keyAccessed(lastWindow.getKey());
+            return lastWindow;
+        }
+        for (CacheWindow w : windows.values()) {
+            if (w.containsIndex(index)) {
+                policy.keyAccessed(w.getKey());
+                lastWindow = w;
+                return w;
+            }
+        }
+        return null;
+    }
+
+    boolean containsIndex(int index) {
+        for (CacheWindow w : windows.values()) {
+            if (w.containsIndex(index)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    RowId getId(int index) {
+        CacheWindow w = getWindowAt(index);
+        return w == null ? null : w.getId(index);
+    }
+
+    boolean containsItem(Object id) {
+        return windowOfItem.containsKey(id) || singleItems.containsKey(id);
+    }
+
+    RowItem getItem(Object id) {
+        CacheWindow w = windowOfItem.get(id);
+        if (w == null) {
+            return singleItems.get(id);
+        }
+        policy.keyAccessed(w.getKey());
+        return w.getItem(id);
+    }
+
+    /**
+     * Caches an item whose index is not known. It is found by
+     * {@link #getItem(Object)} but not by index.
+     */
+    void addItem(RowId id, RowItem item) {
+        if (!windowOfItem.containsKey(id)) {
+            singleItems.put(id, item);
+        }
+    }
+
+    /**
+     * @return the index of the item, or -1 if the item is not cached in a
+     *         window
+     */
+    int indexOf(Object id) {
+        CacheWindow w = windowOfItem.get(id);
+        return w == null ? -1 : w.indexOf(id);
+    }
+
+    /**
+     * Returns a window that partly overlaps the given range, covering either
+     * its start or its end, or null if there is none.
+     */
+    CacheWindow getWindowOverlapping(int from, int to) {
+        for (CacheWindow w : windows.values()) {
+            if (w.isEmpty() || w.getEnd() <= from || w.getStart() >= to) {
+                continue;
+            }
+            if ((w.getStart() <= from && w.getEnd() < to)
+                    || (w.getStart() > from && w.getEnd() >= to)) {
+                return w;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Extends a window with the items of a directly adjacent window, which
+     * take precedence over other windows covering the same indexes. The
+     * extended window is then shrunk to at most {@code maxSize} items, by
+     * dropping items from the side opposite to the extension, and given a new
+     * key.
+     */
+    void extendWindow(CacheWindow window, CacheWindow extension,
+            Integer newKey, int maxSize) {
+        for (CacheWindow w : new ArrayList<CacheWindow>(windows.values())) {
+            if (w == window) {
+                continue;
+            }
+            for (RowId id : w.trim(extension.getStart(), extension.getEnd())) {
+                unmap(id, w);
+            }
+            if (w.isEmpty()) {
+                remove(w);
+            }
+        }
+        boolean forward = extension.getStart() == window.getEnd();
+        window.merge(extension);
+        for (RowId id : extension.getIds()) {
+            windowOfItem.put(id, window);
+            singleItems.remove(id);
+        }
+        for (RowId id : window.trimToSize(maxSize, forward)) {
+            unmap(id, window);
+        }
+        if (window.getKey().equals(newKey)) {
+            policy.keyAccessed(newKey);
+            return;
+        }
+        windows.remove(window.getKey());
+        policy.keyRemoved(window.getKey());
+        remove(windows.get(newKey));
+        window.setKey(newKey);
+        windows.put(newKey, window);
+        policy.keyAdded(newKey);
+    }
+
+    /**
+     * Adds a window to the cache, dropping the overlapping parts of older
+     * windows and evicting windows if the cache is full.
+     */
+    void addWindow(CacheWindow window) {
+        remove(windows.get(window.getKey()));
+        for (CacheWindow w : new ArrayList<CacheWindow>(windows.values())) {
+            for (RowId id : w.trim(window.getStart(), window.getEnd())) {
+                unmap(id, w);
+            }
+            if (w.isEmpty()) {
+                remove(w);
+            }
+        }
+        while (!windows.isEmpty() && windows.size() >= maxWindows) {
+            evict();
+        }
+        windows.put(window.getKey(), window);
+        policy.keyAdded(window.getKey());
+        for (RowId id : window.getIds()) {
+            windowOfItem.put(id, window);
+            singleItems.remove(id);
+        }
+    }
+
+    private void evict() {
+        Integer victim = policy.selectVictim();
+        CacheWindow w = victim == null ? null : windows.get(victim);
+        if (w == null) {
+            /* The policy is out of sync; fall back to the oldest window. */
+            w = windows.values().iterator().next();
+            policy.keyRemoved(w.getKey());
+        }
+        drop(w);
+    }
+
+    private void remove(CacheWindow w) {
+        if (w != null) {
+            policy.keyRemoved(w.getKey());
+            drop(w);
+        }
+    }
+
+    private void drop(CacheWindow w) {
+        if (lastWindow == w) {
+            lastWindow = null;
+        }
+        windows.remove(w.getKey());
+        for (RowId id : w.getIds()) {
+            unmap(id, w);
+        }
+    }
+
+    private void unmap(RowId id, CacheWindow w) {
+        if (windowOfItem.get(id) == w) {
+            windowOfItem.remove(id);
+        }
+    }
+}
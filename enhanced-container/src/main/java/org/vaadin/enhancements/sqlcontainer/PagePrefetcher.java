@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads the next window of rows of an SQLContainer in the background.
+ *
+ * <p>
+ * A QueryDelegate is not thread safe, so at most one thread may use it at a
+ * time. A background load holds the lock for its whole duration, and the
+ * container calls {@link #quiesce()} before it uses the delegate itself. This
+ * waits for a running load to finish and cancels any load that has been
+ * submitted but not yet started. Loaded windows are never installed by the
+ * background thread; the container {@link #take(int, int) takes} a ready window
+ * when it needs it, on its own thread.
+ */
+class PagePrefetcher implements Serializable {
+    private static final long serialVersionUID = 2291754085235018366L;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CacheStatistics statistics;
+    private transient Executor executor;
+
+    /*
+     * The fields below are guarded by the lock. A load only runs if the
+     * generation has not changed since it was submitted.
+     */
+    private int generation;
+    private transient Integer pendingOffset;
+    private transient FetchedPage ready;
+
+    PagePrefetcher(CacheStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    void setExecutor(Executor executor) {
+        discard();
+        this.executor = executor;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Submits the loading of the rows in the given range, unless that range is
+     * already loaded or being loaded. A previously loaded range is discarded.
+     *
+     * @param offset
+     *            offset of the first row to load
+     * @param rows
+     *            number of rows to load
+     * @param loader
+     *            loads the window. Called on a thread of the executor.
+     */
+    void prefetch(int offset, int rows, final Callable<FetchedPage> loader) {
+        Executor exec = executor;
+        if (exec == null) {
+            return;
+        }
+        final int submitted;
+        lock.lock();
+        try {
+            if ((ready != null && ready.matches(offset, rows))
+                    || (pendingOffset != null && pendingOffset == offset)) {
+                return;
+            }
+            if (ready != null) {
+                statistics.recordPrefetchWasted();
+                ready = null;
+            }
+            submitted = ++generation;
+            pendingOffset = offset;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            exec.execute(new Runnable() {
+                @Override
+                public void run() {
+                    load(submitted, loader);
+                }
+            });
+            statistics.recordPrefetchIssued();
+        } catch (RejectedExecutionException e) {
+            getLogger().log(Level.FINE, "Prefetch was rejected by executor",
+                    e);
+            lock.lock();
+            try {
+                if (submitted == generation) {
+                    pendingOffset = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void load(int submitted, Callable<FetchedPage> loader) {
+        lock.lock();
+        try {
+            if (submitted != generation) {
+                return;
+            }
+            ready = loader.call();
+            getLogger().log(Level.FINER, "Prefetched rows starting from {0}",
+                    ready.getOffset());
+        } catch (Exception e) {
+            getLogger().log(Level.FINE, "Failed to prefetch rows", e);
+        } finally {
+            if (submitted == generation) {
+                pendingOffset = null;
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the loaded rows of the given range and removes them from the
+     * prefetcher. If the rows are currently being loaded, waits for the load
+     * to finish.
+     *
+     * @param offset
+     *            offset of the first wanted row
+     * @param rows
+     *            number of wanted rows
+     * @return the rows, or null if they have not been loaded
+     */
+    FetchedPage take(int offset, int rows) {
+        lock.lock();
+        try {
+            if (ready != null && ready.matches(offset, rows)) {
+                FetchedPage page = ready;
+                ready = null;
+                statistics.recordPrefetchUsed();
+                return page;
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a running load to finish and cancels loads that have not yet
+     * started. After this call the caller may use the QueryDelegate until it
+     * submits a new load. An already loaded window is kept.
+     */
+    void quiesce() {
+        lock.lock();
+        try {
+            generation++;
+            pendingOffset = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #quiesce()}, but also discards an already loaded window. To
+     * be called whenever the cached contents of the container become invalid.
+     */
+    void discard() {
+        lock.lock();
+        try {
+            generation++;
+            pendingOffset = null;
+            if (ready != null) {
+                statistics.recordPrefetchWasted();
+                ready = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(PagePrefetcher.class.getName());
+    }
+}
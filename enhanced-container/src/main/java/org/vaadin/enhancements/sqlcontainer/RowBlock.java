@@ -0,0 +1,255 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The column values of a number of rows read from a result set, stored column
+ * by column. Columns of type Integer, Long or Double are kept in primitive
+ * arrays with a bitmap of null values, other columns in object arrays. Which
+ * columns are read and how they are stored is given by a
+ * {@link RowDecodingPlan}; the column attributes are taken from the
+ * {@link ColumnSchema} of the container.
+ *
+ * <p>
+ * No RowItems or ColumnProperties exist for the rows until
+ * {@link #createItem(RowId, int)} is called for a row.
+ */
+final class RowBlock implements Serializable {
+    private static final long serialVersionUID = 8270519133446187952L;
+
+    private final SQLContainer container;
+    private final RowDecodingPlan plan;
+    private final Column[] columns;
+    private int rowCount;
+
+    /**
+     * Creates an empty block.
+     *
+     * @param container
+     *            the container owning the items of the block
+     * @param plan
+     *            plan for decoding the rows
+     * @param capacity
+     *            expected number of rows
+     */
+    RowBlock(SQLContainer container, RowDecodingPlan plan, int capacity) {
+        this.container = container;
+        this.plan = plan;
+        RowDecodingPlan.ColumnPlan[] columnPlans = plan.getColumns();
+        columns = new Column[columnPlans.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = createColumn(columnPlans[i], capacity);
+        }
+    }
+
+    /**
+     * Appends the values of the current row of the result set to this block.
+     */
+    void readRow(ResultSet rs) throws SQLException {
+        for (Column c : columns) {
+            c.read(rs, rowCount);
+        }
+        rowCount++;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Creates an item holding the values of the given row of this block.
+     */
+    RowItem createItem(RowId id, int row) {
+        if (plan.isComplete()) {
+            ColumnProperty[] properties = new ColumnProperty[columns.length];
+            for (Column c : columns) {
+                properties[c.plan.getSchemaOrdinal()] = c.createProperty(row);
+            }
+            return new RowItem(container, id, plan.getSchema(), properties);
+        }
+        List<ColumnProperty> properties = new ArrayList<ColumnProperty>(
+                columns.length);
+        for (Column c : columns) {
+            properties.add(c.createProperty(row));
+        }
+        return new RowItem(container, id, properties);
+    }
+
+    private static Column createColumn(RowDecodingPlan.ColumnPlan plan,
+            int capacity) {
+        Column c;
+        switch (plan.getStorage()) {
+        case INT:
+            c = new IntColumn(capacity);
+            break;
+        case LONG:
+            c = new LongColumn(capacity);
+            break;
+        case DOUBLE:
+            c = new DoubleColumn(capacity);
+            break;
+        default:
+            c = new ObjectColumn(capacity);
+        }
+        c.plan = plan;
+        return c;
+    }
+
+    /**
+     * The values of one column.
+     */
+    abstract static class Column implements Serializable {
+        private static final long serialVersionUID = -1794627734071256806L;
+
+        private RowDecodingPlan.ColumnPlan plan;
+
+        int getOrdinal() {
+            return plan.getOrdinal();
+        }
+
+        ColumnProperty createProperty(int row) {
+            Object value = getValue(row);
+            return new ColumnProperty(plan.getColumn(), value,
+                    value != null ? value.getClass()
+                            : plan.getColumn().getType());
+        }
+
+        abstract void read(ResultSet rs, int row) throws SQLException;
+
+        abstract Object getValue(int row);
+
+        static int grow(int length, int row) {
+            return Math.max(row + 1, length * 2);
+        }
+    }
+
+    private static final class IntColumn extends Column {
+        private static final long serialVersionUID = 2949735217069604180L;
+
+        private int[] values;
+        private final BitSet nulls = new BitSet();
+
+        private IntColumn(int capacity) {
+            values = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int row) throws SQLException {
+            int value = rs.getInt(getOrdinal());
+            if (rs.wasNull()) {
+                nulls.set(row);
+                return;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object getValue(int row) {
+            return nulls.get(row) ? null : Integer.valueOf(values[row]);
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        private static final long serialVersionUID = -6453826105870938297L;
+
+        private long[] values;
+        private final BitSet nulls = new BitSet();
+
+        private LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int row) throws SQLException {
+            long value = rs.getLong(getOrdinal());
+            if (rs.wasNull()) {
+                nulls.set(row);
+                return;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object getValue(int row) {
+            return nulls.get(row) ? null : Long.valueOf(values[row]);
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private static final long serialVersionUID = 5186720431920557365L;
+
+        private double[] values;
+        private final BitSet nulls = new BitSet();
+
+        private DoubleColumn(int capacity) {
+            values = new double[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int row) throws SQLException {
+            double value = rs.getDouble(getOrdinal());
+            if (rs.wasNull()) {
+                nulls.set(row);
+                return;
+            }
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object getValue(int row) {
+            return nulls.get(row) ? null : Double.valueOf(values[row]);
+        }
+    }
+
+    private static final class ObjectColumn extends Column {
+        private static final long serialVersionUID = -3321178304537409212L;
+
+        private Object[] values;
+
+        private ObjectColumn(int capacity) {
+            values = new Object[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int row) throws SQLException {
+            Object value = super.plan.convert(rs.getObject(getOrdinal()), rs);
+            if (row >= values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = value;
+        }
+
+        @Override
+        Object getValue(int row) {
+            return row < values.length ? values[row] : null;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.vaadin.enhancements.sqlcontainer.cconverter.CustomTypeConverter;
+
+/**
+ * Describes how the rows of result sets of one shape are decoded into a
+ * {@link RowBlock} and a {@link RowId}. Everything that depends only on the
+ * ResultSetMetaData is decided once when the plan is created: which result
+ * set columns become which properties, how each column is stored, which
+ * custom type converter applies to it and where the primary key columns are.
+ * Decoding a row is then a loop over the planned columns.
+ *
+ * <p>
+ * A plan is immutable. It stays valid as long as the schema of the container,
+ * the primary key columns and the labels and classes of the result set columns
+ * do not change, see {@link #matches(ColumnSchema, List, ResultSetMetaData)}.
+ */
+final class RowDecodingPlan implements Serializable {
+    private static final long serialVersionUID = -7510960218433104592L;
+
+    /** How the values of a column are stored in a RowBlock */
+    enum Storage {
+        INT, LONG, DOUBLE, OBJECT
+    }
+
+    /** The decoding of one result set column into a property. */
+    static final class ColumnPlan implements Serializable {
+        private static final long serialVersionUID = 2384027163902947851L;
+
+        private final int ordinal;
+        private final int schemaOrdinal;
+        private final ColumnSchema.Column column;
+        private final Storage storage;
+        /*
+         * The converter for values of the class reported for the column, and
+         * all converters for values of other classes.
+         */
+        private final Class<?> valueClass;
+        @SuppressWarnings("rawtypes")
+        private final CustomTypeConverter converter;
+        @SuppressWarnings("rawtypes")
+        private final Map<Class<?>, CustomTypeConverter> converters;
+
+        @SuppressWarnings("rawtypes")
+        private ColumnPlan(int ordinal, int schemaOrdinal,
+                ColumnSchema.Column column, Storage storage,
+                Class<?> valueClass, CustomTypeConverter converter,
+                Map<Class<?>, CustomTypeConverter> converters) {
+            this.ordinal = ordinal;
+            this.schemaOrdinal = schemaOrdinal;
+            this.column = column;
+            this.storage = storage;
+            this.valueClass = valueClass;
+            this.converter = converter;
+            this.converters = converters;
+        }
+
+        /**
+         * @return the ordinal of the column in the result set
+         */
+        int getOrdinal() {
+            return ordinal;
+        }
+
+        /**
+         * @return the ordinal of the property in the schema
+         */
+        int getSchemaOrdinal() {
+            return schemaOrdinal;
+        }
+
+        ColumnSchema.Column getColumn() {
+            return column;
+        }
+
+        Storage getStorage() {
+            return storage;
+        }
+
+        /**
+         * Applies the custom type converter, if any, to a value read with
+         * {@link ResultSet#getObject(int)}.
+         */
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        Object convert(Object value, ResultSet rs) {
+            if (value == null || converters == null) {
+                return value;
+            }
+            CustomTypeConverter c = value.getClass() == valueClass ? converter
+                    : converters.get(value.getClass());
+            return c != null ? c.convertObject(value, rs) : value;
+        }
+    }
+
+    private final ColumnSchema schema;
+    private final List<String> primaryKeyColumns;
+    private final String[] labels;
+    private final String[] classNames;
+    private final ColumnPlan[] columns;
+    /** True if there is a column for every property of the schema */
+    private final boolean complete;
+    /** Result set ordinals of the primary key columns, -1 if not found */
+    private final int[] primaryKeyOrdinals;
+
+    private RowDecodingPlan(ColumnSchema schema,
+            List<String> primaryKeyColumns, String[] labels,
+            String[] classNames, List<ColumnPlan> columns,
+            int[] primaryKeyOrdinals) {
+        this.schema = schema;
+        this.primaryKeyColumns = primaryKeyColumns;
+        this.labels = labels;
+        this.classNames = classNames;
+        this.columns = columns.toArray(new ColumnPlan[columns.size()]);
+        this.primaryKeyOrdinals = primaryKeyOrdinals;
+        complete = this.columns.length == schema.size();
+    }
+
+    /**
+     * Creates a plan for decoding result sets with the given metadata.
+     *
+     * @param rsmd
+     *            metadata of the result sets
+     * @param schema
+     *            the schema of the container
+     * @param primaryKeyColumns
+     *            names of the primary key columns, from which row ids are
+     *            generated
+     * @param ignoredLabel
+     *            label, compared ignoring case, of a column that is never a
+     *            property, such as a row number column added by the paging
+     *            query; or null
+     * @param converters
+     *            custom type converters by the class of the values they
+     *            convert, or null
+     */
+    @SuppressWarnings("rawtypes")
+    static RowDecodingPlan create(ResultSetMetaData rsmd, ColumnSchema schema,
+            List<String> primaryKeyColumns, String ignoredLabel,
+            Map<Class<?>, CustomTypeConverter> converters)
+            throws SQLException {
+        int count = rsmd.getColumnCount();
+        String[] labels = new String[count];
+        String[] classNames = new String[count];
+        List<ColumnPlan> columns = new ArrayList<ColumnPlan>();
+        boolean[] added = new boolean[schema.size()];
+        for (int i = 1; i <= count; i++) {
+            labels[i - 1] = rsmd.getColumnLabel(i);
+            classNames[i - 1] = rsmd.getColumnClassName(i);
+            if (labels[i - 1].equalsIgnoreCase(ignoredLabel)) {
+                continue;
+            }
+            /*
+             * In case there are more than one column with the same name, add
+             * only the first one. This can easily happen if you join many
+             * tables where each table has an ID column.
+             */
+            int ordinal = schema.indexOf(labels[i - 1]);
+            if (ordinal == -1 || added[ordinal]) {
+                continue;
+            }
+            added[ordinal] = true;
+            columns.add(createColumnPlan(i, classNames[i - 1], ordinal,
+                    schema.getColumn(ordinal), converters));
+        }
+        int[] pkOrdinals = new int[primaryKeyColumns.size()];
+        for (int k = 0; k < pkOrdinals.length; k++) {
+            pkOrdinals[k] = findColumn(labels, primaryKeyColumns.get(k));
+        }
+        return new RowDecodingPlan(schema,
+                new ArrayList<String>(primaryKeyColumns), labels, classNames,
+                columns, pkOrdinals);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static ColumnPlan createColumnPlan(int ordinal, String className,
+            int schemaOrdinal, ColumnSchema.Column column,
+            Map<Class<?>, CustomTypeConverter> converters) {
+        Class<?> valueClass = null;
+        CustomTypeConverter converter = null;
+        if (converters != null) {
+            for (Map.Entry<Class<?>, CustomTypeConverter> c : converters
+                    .entrySet()) {
+                if (c.getKey().getName().equals(className)) {
+                    valueClass = c.getKey();
+                    converter = c.getValue();
+                    break;
+                }
+            }
+        }
+        Storage storage = Storage.OBJECT;
+        if (converter == null) {
+            if (Integer.class.getName().equals(className)) {
+                storage = Storage.INT;
+            } else if (Long.class.getName().equals(className)) {
+                storage = Storage.LONG;
+            } else if (Double.class.getName().equals(className)) {
+                storage = Storage.DOUBLE;
+            }
+        }
+        return new ColumnPlan(ordinal, schemaOrdinal, column, storage,
+                valueClass, converter, converters);
+    }
+
+    /**
+     * Finds a column by label like {@link ResultSet#findColumn(String)}: the
+     * first column with an exactly matching label, or else the first one
+     * matching it ignoring case.
+     */
+    private static int findColumn(String[] labels, String label) {
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equals(label)) {
+                return i + 1;
+            }
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(label)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if this plan can decode result sets with the given
+     * metadata for a container with the given schema and primary key columns.
+     */
+    boolean matches(ColumnSchema schema, List<String> primaryKeyColumns,
+            ResultSetMetaData rsmd) throws SQLException {
+        if (schema != this.schema
+                || !primaryKeyColumns.equals(this.primaryKeyColumns)
+                || rsmd.getColumnCount() != labels.length) {
+            return false;
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (!labels[i].equals(rsmd.getColumnLabel(i + 1))
+                    || !equals(classNames[i], rsmd.getColumnClassName(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    ColumnSchema getSchema() {
+        return schema;
+    }
+
+    ColumnPlan[] getColumns() {
+        return columns;
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Generates the id of the current row of a result set from its primary
+     * key column(s).
+     */
+    RowId readRowId(ResultSet rs) throws SQLException {
+        if (primaryKeyOrdinals.length == 0) {
+            return new ReadOnlyRowId(rs.getRow());
+        }
+        Object[] itemId = new Object[primaryKeyOrdinals.length];
+        for (int i = 0; i < itemId.length; i++) {
+            // We deliberately do not go through the custom converter
+            // here. Primary keys are not expected to be of a type that
+            // needs custom conversion.
+            itemId[i] = primaryKeyOrdinals[i] != -1
+                    ? rs.getObject(primaryKeyOrdinals[i])
+                    : rs.getObject(primaryKeyColumns.get(i));
+        }
+        return new RowId(itemId);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A list of row ids that stores the ids of rows with a single Integer or Long
+ * primary key column as primitive longs, creating the RowId objects only when
+ * they are read. A list of ten million such ids takes 80 MB instead of several
+ * hundred. Once an id of another kind is added, the list switches to storing
+ * RowId objects.
+ */
+final class RowIdList extends AbstractList<RowId>
+        implements RandomAccess, Serializable {
+    private static final long serialVersionUID = 6094178262615523806L;
+
+    /* The keys and their class while the list is compact */
+    private long[] keys = new long[16];
+    private Class<?> keyType;
+    private int size;
+    /* The ids once the list is no longer compact */
+    private List<RowId> ids;
+
+    @Override
+    public boolean add(RowId id) {
+        if (ids == null) {
+            Class<?> type = getKeyType(id);
+            if (type != null && (keyType == null || keyType == type)) {
+                keyType = type;
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                }
+                keys[size++] = ((Number) id.getId()[0]).longValue();
+                modCount++;
+                return true;
+            }
+            inflate();
+        }
+        modCount++;
+        return ids.add(id);
+    }
+
+    /**
+     * @return the class of the key if the id can be stored compactly, or null
+     */
+    private static Class<?> getKeyType(RowId id) {
+        if (id == null || id.getClass() != RowId.class
+                || id.getId().length != 1 || id.getId()[0] == null) {
+            return null;
+        }
+        Class<?> type = id.getId()[0].getClass();
+        return type == Integer.class || type == Long.class ? type : null;
+    }
+
+    private void inflate() {
+        ids = new ArrayList<RowId>(size + 16);
+        for (int i = 0; i < size; i++) {
+            ids.add(get(i));
+        }
+        keys = null;
+    }
+
+    @Override
+    public RowId get(int index) {
+        if (ids != null) {
+            return ids.get(index);
+        }
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size);
+        }
+        /* Ids with Integer and Long keys are not equal */
+        if (keyType == Integer.class) {
+            return new RowId(Integer.valueOf((int) keys[index]));
+        }
+        return new RowId(Long.valueOf(keys[index]));
+    }
+
+    @Override
+    public int size() {
+        return ids != null ? ids.size() : size;
+    }
+}
@@ -16,6 +16,7 @@
 package org.vaadin.enhancements.sqlcontainer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 
@@ -34,6 +35,14 @@ public final class RowItem implements Item {
     private RowId id;
     private Collection<ColumnProperty> properties;
 
+    /**
+     * The schema shared with the other items of the container, and the
+     * properties in its ordinal order. Null if the item was created with an
+     * arbitrary collection of properties.
+     */
+    private ColumnSchema schema;
+    private ColumnProperty[] propertiesByOrdinal;
+
     /**
      * Prevent instantiation without required parameters.
      */
@@ -60,8 +69,25 @@ public final class RowItem implements Item {
         this.id = id;
     }
 
+    /**
+     * Creates an item having a property for each column of the given schema.
+     *
+     * @param properties
+     *            the properties, in the ordinal order of the schema
+     */
+    RowItem(SQLContainer container, RowId id, ColumnSchema schema,
+            ColumnProperty[] properties) {
+        this(container, id, Arrays.asList(properties));
+        this.schema = schema;
+        this.propertiesByOrdinal = properties;
+    }
+
     @Override
     public Property getItemProperty(Object id) {
+        if (schema != null) {
+            int ordinal = schema.indexOf(id);
+            return ordinal == -1 ? null : propertiesByOrdinal[ordinal];
+        }
         if (id instanceof String && id != null) {
             for (ColumnProperty cp : properties) {
                 if (id.equals(cp.getPropertyId())) {
@@ -74,6 +100,9 @@ public final class RowItem implements Item {
 
     @Override
     public Collection<?> getItemPropertyIds() {
+        if (schema != null) {
+            return schema.getPropertyIds();
+        }
         Collection<String> ids = new ArrayList<String>(properties.size());
         for (ColumnProperty cp : properties) {
             ids.add(cp.getPropertyId());
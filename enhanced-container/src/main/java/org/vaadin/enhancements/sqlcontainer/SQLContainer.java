@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,22 +28,36 @@ import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.vaadin.data.Container;
-import com.vaadin.data.ContainerHelpers;
 import com.vaadin.data.Item;
 import com.vaadin.data.Property;
 import com.vaadin.data.util.filter.Compare.Equal;
 import com.vaadin.data.util.filter.Like;
 import com.vaadin.data.util.filter.UnsupportedFilterException;
+import org.vaadin.enhancements.sqlcontainer.cache.CacheEvictionPolicy;
+import org.vaadin.enhancements.sqlcontainer.cache.LRUEvictionPolicy;
+import org.vaadin.enhancements.sqlcontainer.query.CachingQueryDelegate;
 import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
 import org.vaadin.enhancements.sqlcontainer.query.QueryDelegate;
 import org.vaadin.enhancements.sqlcontainer.query.QueryDelegate.RowIdChangeListener;
+import org.vaadin.enhancements.sqlcontainer.query.QueryResultCache;
 import org.vaadin.enhancements.sqlcontainer.query.TableQuery;
 import org.vaadin.enhancements.sqlcontainer.query.generator.MSSQLGenerator;
 import org.vaadin.enhancements.sqlcontainer.query.generator.OracleGenerator;
@@ -63,18 +78,29 @@ public class SQLContainer implements Container, Container.Filterable,
     private int pageLength = DEFAULT_PAGE_LENGTH;
     public static final int DEFAULT_PAGE_LENGTH = 100;
 
-    /** Number of items to cache = CACHE_RATIO x pageLength */
+    /**
+     * Default number of pages cached in one window. A window holds cacheRatio
+     * x pageLength items, plus the overlap with the previous page.
+     */
     public static final int CACHE_RATIO = 2;
+    private int cacheRatio = CACHE_RATIO;
+
+    /** Default maximum number of windows kept in the cache */
+    public static final int DEFAULT_MAX_CACHED_WINDOWS = 4;
 
     /** Amount of cache to overlap with previous page */
     private int cacheOverlap = pageLength;
 
-    /** Item and index caches */
-    private final Map<Integer, RowId> itemIndexes = new HashMap<Integer, RowId>();
-    private final CacheMap<RowId, RowItem> cachedItems = new CacheMap<RowId, RowItem>();
+    /** Item and index cache */
+    private final PageCache pageCache = new PageCache(
+            DEFAULT_MAX_CACHED_WINDOWS, new LRUEvictionPolicy<Integer>());
 
     /** Container properties = column names, data types and statuses */
     private final List<String> propertyIds = new ArrayList<String>();
+    /** Attributes of the properties, shared by all items */
+    private ColumnSchema schema;
+    /** Decoding of the rows of the latest result set shape */
+    private transient volatile RowDecodingPlan decodingPlan;
     private final Map<String, Class<?>> propertyTypes = new HashMap<String, Class<?>>();
     private final Map<String, Boolean> propertyReadOnly = new HashMap<String, Boolean>();
     private final Map<String, Boolean> propertyPersistable = new HashMap<String, Boolean>();
@@ -95,13 +121,44 @@ public class SQLContainer implements Container, Container.Filterable,
      * Size updating logic. Do not update size from data source if it has been
      * updated in the last sizeValidMilliSeconds milliseconds.
      */
-    private final int sizeValidMilliSeconds = 10000;
+    public static final int DEFAULT_SIZE_VALID_MILLISECONDS = 10000;
+    private int sizeValidMilliSeconds = DEFAULT_SIZE_VALID_MILLISECONDS;
     private boolean sizeDirty = true;
     private Date sizeUpdated = new Date();
 
+    /**
+     * How the size is determined. Unless the size mode is EXACT, the size may
+     * be a lower bound or an estimate, as told by sizeExact.
+     */
+    private SizeMode sizeMode = SizeMode.EXACT;
+    public static final int DEFAULT_SIZE_CAP = 10000;
+    private int sizeCap = DEFAULT_SIZE_CAP;
+    private boolean sizeExact = true;
+    /** Number of rows known to exist from fetching them */
+    private int rowsFound;
+
+    /** Exact counts made in the background in size mode ASYNC_EXACT */
+    private final BackgroundCounter sizeCounter = new BackgroundCounter();
+
+    /** Number of rows read at a time by the cursors of the streams */
+    public static final int DEFAULT_CURSOR_FETCH_SIZE = 1000;
+    private int cursorFetchSize = DEFAULT_CURSOR_FETCH_SIZE;
+
+    /** Set when the query delegate cannot fetch rows and count them at once */
+    private transient boolean countWithRowsUnsupported;
+
     /** Starting row number of the currently fetched page */
     private int currentOffset;
 
+    /** Statistics of the item cache */
+    private final CacheStatistics statistics = new CacheStatistics();
+
+    /** Background loading of the next page. Disabled by default. */
+    private final PagePrefetcher prefetcher = new PagePrefetcher(statistics);
+
+    /** Index of the last requested item, used to detect scrolling direction */
+    private int lastRequestedIndex = -1;
+
     /** ItemSetChangeListeners */
     private LinkedList<Container.ItemSetChangeListener> itemSetChangeListeners;
 
@@ -159,7 +216,6 @@ public class SQLContainer implements Container, Container.Filterable,
         this.customTypeMap = customTypeConverters;
         queryDelegate = delegate;
         getPropertyIds();
-        cachedItems.setCacheLimit(CACHE_RATIO * getPageLength() + cacheOverlap);
     }
 
     /**************************************/
@@ -181,27 +237,28 @@ public class SQLContainer implements Container, Container.Filterable,
                 .size()];
         RowId itemId = new TemporaryRowId(emptyKey);
         // Create new empty column properties for the row item.
-        List<ColumnProperty> itemProperties = new ArrayList<ColumnProperty>();
-        for (String propertyId : propertyIds) {
+        ColumnProperty[] itemProperties = new ColumnProperty[schema.size()];
+        for (int i = 0; i < itemProperties.length; i++) {
             /* Default settings for new item properties. */
-            ColumnProperty cp = new ColumnProperty(propertyId,
-                    propertyReadOnly.get(propertyId),
-                    propertyPersistable.get(propertyId),
-                    propertyNullable.get(propertyId),
-                    propertyPrimaryKey.get(propertyId), null,
-                    getType(propertyId));
-
-            itemProperties.add(cp);
+            ColumnSchema.Column column = schema.getColumn(i);
+            itemProperties[i] = new ColumnProperty(column, null,
+                    column.getType());
         }
-        RowItem newRowItem = new RowItem(this, itemId, itemProperties);
+        RowItem newRowItem = new RowItem(this, itemId, schema, itemProperties);
 
         if (autoCommit) {
             /* Add and commit instantly */
             try {
-                if (queryDelegate instanceof TableQuery) {
-                    itemId = ((TableQuery) queryDelegate)
-                            .storeRowImmediately(newRowItem);
+                TableQuery tq = getTableQuery();
+                if (tq != null) {
+                    itemId = tq.storeRowImmediately(newRowItem);
+                    if (queryDelegate instanceof CachingQueryDelegate) {
+                        QueryResultCache.invalidateAll(
+                                ((CachingQueryDelegate) queryDelegate)
+                                        .getDataSourceId());
+                    }
                 } else {
+                    prefetcher.quiesce();
                     queryDelegate.beginTransaction();
                     queryDelegate.storeRow(newRowItem);
                     queryDelegate.commit();
@@ -242,7 +299,7 @@ public class SQLContainer implements Container, Container.Filterable,
             return false;
         }
 
-        if (cachedItems.containsKey(itemId)) {
+        if (pageCache.containsItem(itemId)) {
             return true;
         } else {
             for (RowItem item : addedItems) {
@@ -262,6 +319,7 @@ public class SQLContainer implements Container, Container.Filterable,
 
         if (itemId instanceof RowId && !(itemId instanceof TemporaryRowId)) {
             try {
+                prefetcher.quiesce();
                 return queryDelegate
                         .containsRowWithKey(((RowId) itemId).getId());
             } catch (Exception e) {
@@ -296,7 +354,7 @@ public class SQLContainer implements Container, Container.Filterable,
 
     @Override
     public Collection<?> getContainerPropertyIds() {
-        return Collections.unmodifiableCollection(propertyIds);
+        return schema.getPropertyIds();
     }
 
     /*
@@ -307,7 +365,20 @@ public class SQLContainer implements Container, Container.Filterable,
 
     @Override
     public Item getItem(Object itemId) {
-        if (!cachedItems.containsKey(itemId)) {
+        if (!pageCache.containsItem(itemId) && canFetchItem(itemId)) {
+            /*
+             * Fetch just the requested row by its primary key instead of
+             * locating it and loading the window around it. Its index is only
+             * looked up if an indexed operation needs it.
+             */
+            statistics.recordMiss();
+            RowItem item = fetchItem((RowId) itemId);
+            if (item != null) {
+                pageCache.addItem(item.getId(), item);
+            }
+            return item;
+        }
+        if (!pageCache.containsItem(itemId)) {
             int index = indexOfId(itemId);
             if (index >= size) {
                 // The index is in the added items
@@ -321,9 +392,33 @@ public class SQLContainer implements Container, Container.Filterable,
             } else {
                 // load the item into cache
                 updateOffsetAndCache(index);
+                prefetchAround(index);
+            }
+        } else {
+            statistics.recordHit();
+        }
+        return pageCache.getItem(itemId);
+    }
+
+    /**
+     * Returns true if the item with the given id is to be fetched on its own
+     * by {@link #getItem(Object)}, i.e. it is a persisted row that is neither
+     * added nor removed in this container, and the delegate can fetch a row by
+     * its primary key.
+     */
+    private boolean canFetchItem(Object itemId) {
+        if (getTableQuery() == null || !(itemId instanceof RowId)
+                || itemId instanceof TemporaryRowId
+                || itemId instanceof ReadOnlyRowId
+                || removedItems.containsKey(itemId)) {
+            return false;
+        }
+        for (RowItem item : addedItems) {
+            if (item.getId().equals(itemId)) {
+                return false;
             }
         }
-        return cachedItems.get(itemId);
+        return true;
     }
 
     /**
@@ -335,20 +430,23 @@ public class SQLContainer implements Container, Container.Filterable,
      * @return the item represented by itemId.
      */
     public Item getItemUnfiltered(Object itemId) {
-        if (!cachedItems.containsKey(itemId)) {
+        if (!pageCache.containsItem(itemId)) {
             for (RowItem item : addedItems) {
                 if (item.getId().equals(itemId)) {
                     return item;
                 }
             }
         }
-        return cachedItems.get(itemId);
+        return pageCache.getItem(itemId);
     }
 
     /**
-     * NOTE! Do not use this method if in any way avoidable. This method doesn't
-     * (and cannot) use lazy loading, which means that all rows in the database
-     * will be loaded into memory.
+     * Returns the ids of all items in the container. For a {@link TableQuery}
+     * the ids are read through a forward-only cursor selecting only the
+     * primary key columns, and ids of a single integer key column are stored
+     * as primitive values, but the whole list is still kept in memory. Use
+     * {@link #streamItemIds()} or {@link #getItemIds(int, int)} instead
+     * whenever possible.
      *
      * {@inheritDoc}
      */
@@ -356,35 +454,42 @@ public class SQLContainer implements Container, Container.Filterable,
     @Override
     public Collection<?> getItemIds() {
         updateCount();
-        ArrayList<RowId> ids = new ArrayList<RowId>();
+        if (getTableQuery() == null) {
+            return Collections.unmodifiableCollection(loadItemIds());
+        }
+        RowIdList ids = new RowIdList();
+        Stream<RowId> stream = streamItemIds();
+        try {
+            Iterator<RowId> i = stream.iterator();
+            while (i.hasNext()) {
+                ids.add(i.next());
+            }
+        } finally {
+            stream.close();
+        }
+        return Collections.unmodifiableCollection(ids);
+    }
+
+    /**
+     * Loads the ids of all rows by fetching the rows through the query
+     * delegate as a single page.
+     */
+    private RowIdList loadItemIds() {
+        RowIdList ids = new RowIdList();
         ResultSet rs = null;
         try {
             // Load ALL rows :(
+            prefetcher.quiesce();
             queryDelegate.beginTransaction();
             rs = queryDelegate.getResults(0, 0);
-            List<String> pKeys = queryDelegate.getPrimaryKeyColumns();
+            RowDecodingPlan plan = getDecodingPlan(rs.getMetaData());
             while (rs.next()) {
-                RowId id = null;
-                if (pKeys.isEmpty()) {
-                    /* Create a read only itemId */
-                    id = new ReadOnlyRowId(rs.getRow());
-                } else {
-                    /* Generate itemId for the row based on primary key(s) */
-                    Object[] itemId = new Object[pKeys.size()];
-                    for (int i = 0; i < pKeys.size(); i++) {
-                        // We deliberately do not go through the custom converter
-                        // here. Primary keys are not expected to be of a type that
-                        // needs custom conversion.
-                        itemId[i] = rs.getObject(pKeys.get(i));
-                    }
-                    id = new RowId(itemId);
-                }
-                if (id != null && !removedItems.containsKey(id)) {
+                RowId id = plan.readRowId(rs);
+                if (!removedItems.containsKey(id)) {
                     ids.add(id);
                 }
             }
-            rs.getStatement().close();
-            rs.close();
+            closeResultSet(rs);
             queryDelegate.commit();
         } catch (SQLException e) {
             getLogger().log(Level.WARNING, "getItemIds() failed, rolling back.",
@@ -395,8 +500,9 @@ public class SQLContainer implements Container, Container.Filterable,
                 getLogger().log(Level.SEVERE, "Failed to roll back state", e1);
             }
             try {
-                rs.getStatement().close();
-                rs.close();
+                if (rs != null) {
+                    closeResultSet(rs);
+                }
             } catch (SQLException e1) {
                 getLogger().log(Level.WARNING, "Closing session failed", e1);
             }
@@ -405,7 +511,86 @@ public class SQLContainer implements Container, Container.Filterable,
         for (RowItem item : getFilteredAddedItems()) {
             ids.add(item.getId());
         }
-        return Collections.unmodifiableCollection(ids);
+        return ids;
+    }
+
+    /**
+     * Returns the ids of all items in the container, in container order, as a
+     * stream that reads them from the database as it is consumed.
+     *
+     * <p>
+     * For a {@link TableQuery} the ids are read through a single
+     * forward-only, read-only cursor selecting only the primary key columns,
+     * on a connection of its own, {@link #getCursorFetchSize()} rows at a
+     * time, so any number of ids can be iterated in constant memory. Items
+     * removed but not yet committed are skipped, and items added but not yet
+     * committed follow the rows of the database. For other query delegates
+     * all ids are loaded first.
+     *
+     * <p>
+     * The cursor is closed when the stream has been consumed, but a stream
+     * that may be abandoned early must be closed by the caller, e.g. with a
+     * try-with-resources statement. The container must not be used while the
+     * stream is open.
+     *
+     * @return a stream of the item ids
+     */
+    public Stream<RowId> streamItemIds() {
+        if (getTableQuery() == null) {
+            updateCount();
+            return loadItemIds().stream();
+        }
+        return streamRows(true);
+    }
+
+    /**
+     * Returns all items in the container, in container order, as a stream
+     * that reads them from the database as it is consumed. The items are read
+     * like the ids of {@link #streamItemIds()}, but with all columns, and are
+     * not added to the item cache. Modified items are returned as modified.
+     *
+     * @return a stream of the items
+     */
+    public Stream<RowItem> streamItems() {
+        if (getTableQuery() == null) {
+            return streamItemIds().map(new Function<RowId, RowItem>() {
+                @Override
+                public RowItem apply(RowId id) {
+                    return (RowItem) getItem(id);
+                }
+            });
+        }
+        return streamRows(false);
+    }
+
+    /**
+     * Opens a cursor over the rows of the TableQuery and wraps it in a stream
+     * of either the ids or the items of the rows.
+     */
+    private <T> Stream<T> streamRows(boolean idsOnly) {
+        prefetcher.quiesce();
+        queryDelegate.setFilters(filters);
+        queryDelegate.setOrderBy(sorters);
+        TableQuery query = getTableQuery();
+        final TableQuery.RowCursor cursor;
+        try {
+            cursor = query.openCursor(idsOnly, cursorFetchSize);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to open cursor.", e);
+        }
+        return StreamSupport
+                .stream(new CursorSpliterator<T>(cursor, idsOnly), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            cursor.close();
+                        } catch (SQLException e) {
+                            getLogger().log(Level.WARNING,
+                                    "Failed to close cursor", e);
+                        }
+                    }
+                });
     }
 
     /*
@@ -461,6 +646,7 @@ public class SQLContainer implements Container, Container.Filterable,
                 return false;
             }
             try {
+                prefetcher.quiesce();
                 queryDelegate.beginTransaction();
                 boolean success = queryDelegate.removeRow((RowItem) i);
                 queryDelegate.commit();
@@ -497,7 +683,6 @@ public class SQLContainer implements Container, Container.Filterable,
             }
         } else {
             removedItems.put((RowId) itemId, (RowItem) getItem(itemId));
-            cachedItems.remove(itemId);
             refresh();
             return true;
         }
@@ -514,13 +699,8 @@ public class SQLContainer implements Container, Container.Filterable,
         if (autoCommit) {
             /* Remove and commit instantly. */
             try {
-                queryDelegate.beginTransaction();
-                boolean success = true;
-                for (Object id : getItemIds()) {
-                    if (!queryDelegate.removeRow((RowItem) getItem(id))) {
-                        success = false;
-                    }
-                }
+                prefetcher.quiesce();
+                boolean success = removeAllRowsByIds() || removeAllRows();
                 if (success) {
                     queryDelegate.commit();
                     getLogger().log(Level.FINER, "All rows removed from DB...");
@@ -554,15 +734,93 @@ public class SQLContainer implements Container, Container.Filterable,
                 throw e;
             }
         } else {
-            for (Object id : getItemIds()) {
-                removedItems.put((RowId) id, (RowItem) getItem(id));
-                cachedItems.remove(id);
+            Stream<RowItem> stream = streamItems();
+            try {
+                Iterator<RowItem> i = stream.iterator();
+                while (i.hasNext()) {
+                    RowItem item = i.next();
+                    removedItems.put(item.getId(), item);
+                }
+            } finally {
+                stream.close();
             }
             refresh();
             return true;
         }
     }
 
+    /**
+     * Removes all rows knowing only their ids, if the rows of the TableQuery
+     * can be removed by their ids. The ids are read through a cursor selecting
+     * only the primary key columns and kept in a compact list, and the rows
+     * are then removed with as few DELETE statements as possible. The cursor
+     * is closed before any row is removed, since its transaction may hold
+     * read locks blocking the removal on another connection.
+     *
+     * @return true if the rows were removed, false if they must be read and
+     *         removed one at a time
+     */
+    private boolean removeAllRowsByIds() throws SQLException {
+        TableQuery query = getTableQuery();
+        if (query == null || !query.canRemoveRowsByIds()) {
+            return false;
+        }
+        RowIdList ids = new RowIdList();
+        Stream<RowId> stream = streamItemIds();
+        try {
+            Iterator<RowId> i = stream.iterator();
+            while (i.hasNext()) {
+                ids.add(i.next());
+            }
+        } finally {
+            stream.close();
+        }
+        queryDelegate.beginTransaction();
+        try {
+            getTableQueryInTransaction(true).removeRowsByIds(ids);
+            return true;
+        } catch (UnsupportedOperationException e) {
+            getLogger().log(Level.FINE,
+                    "Removing rows by key lists is not supported", e);
+            queryDelegate.rollback();
+            return false;
+        }
+    }
+
+    /**
+     * Removes all rows by reading them first, which is needed to check the
+     * version column of each row. The rows are read before any of them is
+     * removed, so that the cursor is not kept open while the rows are deleted
+     * on another connection.
+     *
+     * @return true if all rows were removed
+     */
+    private boolean removeAllRows() throws SQLException {
+        List<RowItem> items = new ArrayList<RowItem>();
+        Stream<RowItem> stream = streamItems();
+        try {
+            Iterator<RowItem> i = stream.iterator();
+            while (i.hasNext()) {
+                items.add(i.next());
+            }
+        } finally {
+            stream.close();
+        }
+        queryDelegate.beginTransaction();
+        TableQuery tq = getTableQueryInTransaction(true);
+        if (tq != null) {
+            tq.removeRows(items);
+            return true;
+        }
+        boolean success = true;
+        for (RowItem item : items) {
+            if (!queryDelegate.removeRow(item)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
     /*************************************************/
     /** Methods from interface Container.Filterable **/
     /*************************************************/
@@ -663,7 +921,12 @@ public class SQLContainer implements Container, Container.Filterable,
 
     @Override
     public int indexOfId(Object itemId) {
-        // First check if the id is in the added items
+        // Cached items are found directly
+        int index = pageCache.indexOf(itemId);
+        if (index != -1) {
+            return index;
+        }
+        // Then check if the id is in the added items
         for (int ix = 0; ix < addedItems.size(); ix++) {
             RowItem item = addedItems.get(ix);
             if (item.getId().equals(itemId)) {
@@ -679,41 +942,80 @@ public class SQLContainer implements Container, Container.Filterable,
         if (!containsId(itemId)) {
             return -1;
         }
-        if (cachedItems.isEmpty()) {
-            getPage();
+        index = pageCache.indexOf(itemId);
+        if (index != -1) {
+            return index;
         }
-        // this protects against infinite looping
+        index = indexOfIdInDatabase(itemId);
+        if (index != -1) {
+            return index;
+        }
+        // Scan the container window by window, starting from the most
+        // recently loaded one. The counter protects against infinite looping.
         int counter = 0;
-        int oldIndex;
+        int nextIndex = currentOffset;
         while (counter < size) {
-            if (itemIndexes.containsValue(itemId)) {
-                for (Integer idx : itemIndexes.keySet()) {
-                    if (itemIndexes.get(idx).equals(itemId)) {
-                        return idx;
-                    }
-                }
-            }
-            oldIndex = currentOffset;
-            // load in the next page.
-            int nextIndex = currentOffset + pageLength * CACHE_RATIO
-                    + cacheOverlap;
             if (nextIndex >= size) {
                 // Container wrapped around, start from index 0.
                 nextIndex = 0;
             }
             updateOffsetAndCache(nextIndex);
-
-            // Update counter
-            if (currentOffset > oldIndex) {
-                counter += currentOffset - oldIndex;
-            } else {
-                counter += size - oldIndex;
+            index = pageCache.indexOf(itemId);
+            if (index != -1) {
+                return index;
             }
+            CacheWindow window = pageCache.getWindowAt(nextIndex);
+            if (window == null) {
+                break;
+            }
+            counter += window.getEnd() - nextIndex;
+            nextIndex = window.getEnd();
         }
         // safeguard in case item not found
         return -1;
     }
 
+    /**
+     * Asks the database for the position of a row that is not cached and loads
+     * the window around it, instead of scanning the container for the row.
+     *
+     * @param itemId
+     *            id of a row known to exist in the container
+     * @return the index of the row, or -1 if the position could not be
+     *         determined this way
+     */
+    private int indexOfIdInDatabase(Object itemId) {
+        /*
+         * Removed rows are still present in the database, so the positions
+         * reported by it are only valid if there are none.
+         */
+        TableQuery tq = getTableQuery();
+        if (tq == null || !removedItems.isEmpty()
+                || !(itemId instanceof RowId)
+                || itemId instanceof TemporaryRowId
+                || itemId instanceof ReadOnlyRowId) {
+            return -1;
+        }
+        int position;
+        try {
+            prefetcher.quiesce();
+            position = tq.getRowPosition(((RowId) itemId).getId());
+        } catch (UnsupportedOperationException e) {
+            getLogger().log(Level.FINE,
+                    "Position of row not available from database", e);
+            return -1;
+        } catch (SQLException e) {
+            getLogger().log(Level.WARNING,
+                    "Failed to query position of row from database", e);
+            return -1;
+        }
+        if (position < 0 || position >= size) {
+            return -1;
+        }
+        updateOffsetAndCache(position);
+        return pageCache.indexOf(itemId) == position ? position : -1;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -729,25 +1031,81 @@ public class SQLContainer implements Container, Container.Filterable,
         // make sure the size field is valid
         updateCount();
         if (index < size) {
-            if (itemIndexes.keySet().contains(index)) {
-                return itemIndexes.get(index);
+            RowId id = pageCache.getId(index);
+            if (id != null) {
+                statistics.recordHit();
+            } else {
+                updateOffsetAndCache(index);
+                id = pageCache.getId(index);
             }
-            updateOffsetAndCache(index);
-            return itemIndexes.get(index);
+            prefetchAround(index);
+            return id;
         } else {
-            // The index is in the added items
+            // The index is in the added items. When looping, use
+            // getItemIds(int, int), which filters the added items only once.
             int offset = index - size;
-            // TODO this is very inefficient if looping - should improve
-            // getItemIds(int, int)
             return getFilteredAddedItems().get(offset).getId();
         }
     }
 
+    /**
+     * Returns a range of item ids. Rows that are not cached are fetched with a
+     * single query covering the whole range, and the added items are filtered
+     * only once, so that fetching the ids of a viewport costs at most one
+     * query.
+     *
+     * {@inheritDoc}
+     */
     @Override
     public List<Object> getItemIds(int startIndex, int numberOfIds) {
-        // TODO create a better implementation
-        return (List<Object>) ContainerHelpers
-                .getItemIdsUsingGetIdByIndex(startIndex, numberOfIds, this);
+        if (startIndex < 0) {
+            throw new IndexOutOfBoundsException(
+                    "Start index cannot be negative! startIndex="
+                            + startIndex);
+        }
+        int containerSize = size();
+        if (startIndex > containerSize) {
+            throw new IndexOutOfBoundsException(
+                    "Start index exceeds container size! startIndex="
+                            + startIndex + " containerLastItemIndex="
+                            + (containerSize - 1));
+        }
+        if (numberOfIds < 1) {
+            if (numberOfIds == 0) {
+                return Collections.emptyList();
+            }
+            throw new IllegalArgumentException(
+                    "Cannot get negative amount of items! numberOfItems="
+                            + numberOfIds);
+        }
+        int endIndex = Math.min(startIndex + numberOfIds, containerSize);
+        List<Object> ids = new ArrayList<Object>(endIndex - startIndex);
+        int index = startIndex;
+        for (; index < endIndex && index < size; index++) {
+            RowId id = pageCache.getId(index);
+            if (id != null) {
+                statistics.recordHit();
+            } else {
+                updateOffsetAndCache(index, Math.min(endIndex, size));
+                id = pageCache.getId(index);
+                if (id == null) {
+                    /* The rows have changed in the data source */
+                    return Collections.unmodifiableList(ids);
+                }
+            }
+            ids.add(id);
+        }
+        if (index > startIndex) {
+            prefetchAround(startIndex >= lastRequestedIndex ? index - 1
+                    : startIndex);
+        }
+        if (index < endIndex) {
+            List<RowItem> added = getFilteredAddedItems();
+            for (; index < endIndex && index - size < added.size(); index++) {
+                ids.add(added.get(index - size).getId());
+            }
+        }
+        return Collections.unmodifiableList(ids);
     }
 
     /**********************************************/
@@ -809,10 +1167,10 @@ public class SQLContainer implements Container, Container.Filterable,
                 }
             }
         }
-        if (!itemIndexes.containsKey(0)) {
+        if (!pageCache.containsIndex(0)) {
             updateOffsetAndCache(0);
         }
-        return itemIndexes.get(0);
+        return pageCache.getId(0);
     }
 
     /*
@@ -825,10 +1183,10 @@ public class SQLContainer implements Container, Container.Filterable,
     public Object lastItemId() {
         if (addedItems.isEmpty()) {
             int lastIx = size() - 1;
-            if (!itemIndexes.containsKey(lastIx)) {
+            if (!pageCache.containsIndex(lastIx)) {
                 updateOffsetAndCache(size - 1);
             }
-            return itemIndexes.get(lastIx);
+            return pageCache.getId(lastIx);
         } else {
             int ix = addedItems.size();
             do {
@@ -850,6 +1208,11 @@ public class SQLContainer implements Container, Container.Filterable,
 
     @Override
     public boolean isFirstId(Object itemId) {
+        updateCount();
+        int index = pageCache.indexOf(itemId);
+        if (index != -1) {
+            return index == 0;
+        }
         return firstItemId().equals(itemId);
     }
 
@@ -861,6 +1224,13 @@ public class SQLContainer implements Container, Container.Filterable,
 
     @Override
     public boolean isLastId(Object itemId) {
+        if (addedItems.isEmpty()) {
+            int lastIx = size() - 1;
+            int index = pageCache.indexOf(itemId);
+            if (index != -1) {
+                return index == lastIx;
+            }
+        }
         return lastItemId().equals(itemId);
     }
 
@@ -931,12 +1301,31 @@ public class SQLContainer implements Container, Container.Filterable,
      * @param setSizeDirty
      */
     private void refresh(boolean setSizeDirty) {
+        refresh(setSizeDirty, null);
+    }
+
+    /**
+     * Refreshes the container, installing a window that has been fetched after
+     * the size was updated before notifying the listeners.
+     *
+     * @param setSizeDirty
+     * @param window
+     *            the window to install, or null
+     */
+    private void refresh(boolean setSizeDirty, FetchedPage window) {
         if (setSizeDirty) {
             sizeDirty = true;
+            rowsFound = 0;
+            sizeCounter.cancel();
         }
         currentOffset = 0;
-        cachedItems.clear();
-        itemIndexes.clear();
+        pageCache.clear();
+        prefetcher.discard();
+        if (window != null) {
+            installPage(window);
+        } else if (getTableQuery() != null) {
+            getTableQuery().clearKeysetBookmarks();
+        }
         fireContentsChange();
     }
 
@@ -1003,150 +1392,486 @@ public class SQLContainer implements Container, Container.Filterable,
     private void setPageLengthInternal(int pageLength) {
         this.pageLength = pageLength > 0 ? pageLength : DEFAULT_PAGE_LENGTH;
         cacheOverlap = getPageLength();
-        cachedItems.setCacheLimit(CACHE_RATIO * getPageLength() + cacheOverlap);
     }
 
     /**
-     * Adds the given OrderBy to this container and refreshes the container
-     * contents with the new sorting rules.
-     *
-     * Note that orderBy.getColumn() must return a column name that exists in
-     * this container.
+     * Sets the number of pages loaded into the cache at a time. Each time
+     * items outside the cache are requested, a window of
+     * {@code cacheRatio x pageLength} items is loaded, plus one page of
+     * overlap with the previous page. The default is {@link #CACHE_RATIO}.
      *
-     * @param orderBy
-     *            OrderBy to be added to the container sorting rules
+     * @param cacheRatio
+     *            the number of pages per cache window
      */
-    public void addOrderBy(OrderBy orderBy) {
-        if (orderBy == null) {
-            return;
-        }
-        if (!propertyIds.contains(orderBy.getColumn())) {
-            throw new IllegalArgumentException(
-                    "The column given for sorting does not exist in this container.");
-        }
-        sorters.add(orderBy);
+    public void setCacheRatio(int cacheRatio) {
+        this.cacheRatio = cacheRatio > 0 ? cacheRatio : CACHE_RATIO;
         refresh();
     }
 
     /**
-     * Commits all the changes, additions and removals made to the items of this
-     * container.
+     * Returns the number of pages loaded into the cache at a time.
      *
-     * @throws UnsupportedOperationException
-     * @throws SQLException
+     * @return the number of pages per cache window
+     * @see #setCacheRatio(int)
      */
-    public void commit() throws UnsupportedOperationException, SQLException {
-        try {
-            getLogger().log(Level.FINER,
-                    "Commiting changes through delegate...");
-            queryDelegate.beginTransaction();
-            /* Perform buffered deletions */
-            for (RowItem item : removedItems.values()) {
-                try {
-                    if (!queryDelegate.removeRow(item)) {
-                        throw new SQLException(
-                                "Removal failed for row with ID: "
-                                        + item.getId());
-                    }
-                } catch (IllegalArgumentException e) {
-                    throw new SQLException(
-                            "Removal failed for row with ID: " + item.getId(),
-                            e);
-                }
-            }
-            /* Perform buffered modifications */
-            for (RowItem item : modifiedItems) {
-                if (!removedItems.containsKey(item.getId())) {
-                    if (queryDelegate.storeRow(item) > 0) {
-                        /*
-                         * Also reset the modified state in the item in case it
-                         * is reused e.g. in a form.
-                         */
-                        item.commit();
-                    } else {
-                        queryDelegate.rollback();
-                        refresh();
-                        throw new ConcurrentModificationException(
-                                "Item with the ID '" + item.getId()
-                                        + "' has been externally modified.");
-                    }
-                }
-            }
-            /* Perform buffered additions */
-            for (RowItem item : addedItems) {
-                queryDelegate.storeRow(item);
-            }
-            queryDelegate.commit();
-            removedItems.clear();
-            addedItems.clear();
-            modifiedItems.clear();
-            refresh();
-            if (notificationsEnabled) {
-                CacheFlushNotifier.notifyOfCacheFlush(this);
-            }
-        } catch (SQLException e) {
-            queryDelegate.rollback();
-            throw e;
-        } catch (OptimisticLockException e) {
-            queryDelegate.rollback();
-            throw e;
-        }
+    public int getCacheRatio() {
+        return cacheRatio;
     }
 
     /**
-     * Rolls back all the changes, additions and removals made to the items of
-     * this container.
+     * Sets the maximum number of windows the item cache holds. Windows do not
+     * need to be adjacent, so e.g. a user switching between the top and the
+     * bottom of a long grid can be served from the cache in both places. When
+     * the maximum is reached, the window to drop is chosen by the
+     * {@link #setCacheEvictionPolicy(CacheEvictionPolicy) eviction policy}.
+     * The default is {@link #DEFAULT_MAX_CACHED_WINDOWS}.
      *
-     * @throws UnsupportedOperationException
-     * @throws SQLException
+     * @param maxCachedWindows
+     *            the maximum number of cached windows
      */
-    public void rollback() throws UnsupportedOperationException, SQLException {
-        getLogger().log(Level.FINE, "Rolling back changes...");
-        removedItems.clear();
-        addedItems.clear();
-        modifiedItems.clear();
-        refresh();
+    public void setMaxCachedWindows(int maxCachedWindows) {
+        pageCache.setMaxWindows(maxCachedWindows > 0 ? maxCachedWindows
+                : DEFAULT_MAX_CACHED_WINDOWS);
     }
 
     /**
-     * Notifies this container that a property in the given item has been
-     * modified. The change will be buffered or made instantaneously depending
-     * on auto commit mode.
+     * Returns the maximum number of windows the item cache holds.
      *
-     * @param changedItem
-     *            item that has a modified property
+     * @return the maximum number of cached windows
+     * @see #setMaxCachedWindows(int)
      */
-    void itemChangeNotification(RowItem changedItem) {
-        if (autoCommit) {
-            try {
-                queryDelegate.beginTransaction();
-                if (queryDelegate.storeRow(changedItem) == 0) {
-                    queryDelegate.rollback();
-                    refresh();
-                    throw new ConcurrentModificationException(
-                            "Item with the ID '" + changedItem.getId()
-                                    + "' has been externally modified.");
-                }
-                queryDelegate.commit();
-                if (notificationsEnabled) {
-                    CacheFlushNotifier.notifyOfCacheFlush(this);
-                }
-                getLogger().log(Level.FINER, "Row updated to DB...");
-            } catch (SQLException e) {
-                getLogger().log(Level.WARNING,
-                        "itemChangeNotification failed, rolling back...", e);
-                try {
-                    queryDelegate.rollback();
-                } catch (SQLException ee) {
-                    /* Nothing can be done here */
-                    getLogger().log(Level.SEVERE, "Rollback failed", e);
-                }
-                throw new RuntimeException(e);
-            }
-        } else {
-            if (!(changedItem.getId() instanceof TemporaryRowId)
-                    && !modifiedItems.contains(changedItem)) {
-                modifiedItems.add(changedItem);
+    public int getMaxCachedWindows() {
+        return pageCache.getMaxWindows();
+    }
+
+    /**
+     * Sets the policy that decides which cache window is dropped when the
+     * cache is full. The windows are identified by the offset at which they
+     * were loaded. A policy instance must not be shared between containers.
+     * The default is an {@link LRUEvictionPolicy}.
+     *
+     * @param policy
+     *            the eviction policy, or null to use the default
+     */
+    public void setCacheEvictionPolicy(CacheEvictionPolicy<Integer> policy) {
+        pageCache.setEvictionPolicy(policy != null ? policy
+                : new LRUEvictionPolicy<Integer>());
+    }
+
+    /**
+     * Returns the policy that decides which cache window is dropped when the
+     * cache is full.
+     *
+     * @return the eviction policy
+     * @see #setCacheEvictionPolicy(CacheEvictionPolicy)
+     */
+    public CacheEvictionPolicy<Integer> getCacheEvictionPolicy() {
+        return pageCache.getEvictionPolicy();
+    }
+
+    /**
+     * Sets the executor used for loading pages in the background. When set,
+     * the container watches the direction in which items are requested by
+     * index and, when a request comes close to the edge of the cached rows,
+     * loads the following rows in that direction on the executor. The loaded
+     * rows replace the cache when they are first needed, so that scrolling
+     * across a page boundary does not have to wait for the database.
+     *
+     * <p>
+     * The container still expects to be used from one thread at a time (e.g.
+     * while holding the Vaadin session lock); only the loading is done in the
+     * background. Whenever the container itself needs the QueryDelegate, it
+     * first waits for a running background load to finish. For the same
+     * reason the QueryDelegate should not be used directly while background
+     * loading is enabled.
+     *
+     * @param executor
+     *            the executor to load pages on, or null to disable background
+     *            loading (the default)
+     */
+    public void setPrefetchExecutor(Executor executor) {
+        prefetcher.setExecutor(executor);
+    }
+
+    /**
+     * Returns the executor used for loading pages in the background.
+     *
+     * @return the executor, or null if background loading is disabled
+     * @see #setPrefetchExecutor(Executor)
+     */
+    public Executor getPrefetchExecutor() {
+        return prefetcher.getExecutor();
+    }
+
+    /**
+     * Returns statistics on the hits and misses of the item cache and on the
+     * effectiveness of background loading. The returned object is updated as
+     * the container is used.
+     *
+     * @return the cache statistics of this container
+     */
+    public CacheStatistics getCacheStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets how the size of the container is determined. Counting all the rows
+     * matching the filters takes long on large tables, so the other modes
+     * report a cheaper size instead:
+     * <ul>
+     * <li>{@link SizeMode#EXACT} counts all the rows (the default).</li>
+     * <li>{@link SizeMode#CAPPED} counts at most {@link #getSizeCap()} rows
+     * more than the container is known to contain. If there are more rows,
+     * the size is a lower bound.</li>
+     * <li>{@link SizeMode#ESTIMATED} uses the row count estimated by the
+     * statistics of the database when there are no filters. If no estimate is
+     * available, there are filters or the estimate is below the size cap, the
+     * rows are counted as in CAPPED mode.</li>
+     * <li>{@link SizeMode#ASYNC_EXACT} first determines the size as in CAPPED
+     * mode. If that is a lower bound, all the rows are counted on the
+     * {@link #setSizeExecutor(Executor) size executor}, keeping the reported
+     * size until the count has finished. Without an executor, the rows are
+     * counted as in EXACT mode.</li>
+     * </ul>
+     *
+     * <p>
+     * A size that is not {@link #isSizeExact() exact} is corrected when rows
+     * are fetched: it grows when there are rows beyond it and becomes exact
+     * when the end of the rows is reached. Whenever the size changes, an
+     * ItemSetChangeEvent is fired; for a count made in the background, this
+     * happens the next time the container is used on its own thread.
+     *
+     * <p>
+     * The modes other than EXACT require a {@link TableQuery}. With other
+     * query delegates, all the rows are always counted.
+     *
+     * @param sizeMode
+     *            the size mode, not null
+     */
+    public void setSizeMode(SizeMode sizeMode) {
+        if (sizeMode == null) {
+            throw new IllegalArgumentException("Size mode may not be null.");
+        }
+        if (sizeMode != this.sizeMode) {
+            this.sizeMode = sizeMode;
+            refresh();
+        }
+    }
+
+    /**
+     * @return how the size of the container is determined
+     * @see #setSizeMode(SizeMode)
+     */
+    public SizeMode getSizeMode() {
+        return sizeMode;
+    }
+
+    /**
+     * Sets the number of rows counted at most in the size modes CAPPED,
+     * ESTIMATED and ASYNC_EXACT, in addition to the rows the container is
+     * already known to contain. Defaults to {@link #DEFAULT_SIZE_CAP}.
+     *
+     * @param sizeCap
+     *            the maximum number of rows to count, at least 1
+     */
+    public void setSizeCap(int sizeCap) {
+        if (sizeCap < 1) {
+            throw new IllegalArgumentException("Size cap must be positive.");
+        }
+        if (sizeCap != this.sizeCap) {
+            this.sizeCap = sizeCap;
+            if (sizeMode != SizeMode.EXACT) {
+                refresh();
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of rows counted
+     * @see #setSizeCap(int)
+     */
+    public int getSizeCap() {
+        return sizeCap;
+    }
+
+    /**
+     * Sets for how long the size of the container is used before it is
+     * determined again. Defaults to {@link #DEFAULT_SIZE_VALID_MILLISECONDS}.
+     *
+     * @param sizeValidMilliSeconds
+     *            the time in milliseconds, 0 to determine the size whenever it
+     *            is needed
+     */
+    public void setSizeValidMilliSeconds(int sizeValidMilliSeconds) {
+        if (sizeValidMilliSeconds < 0) {
+            throw new IllegalArgumentException(
+                    "Size validity time may not be negative.");
+        }
+        this.sizeValidMilliSeconds = sizeValidMilliSeconds;
+    }
+
+    /**
+     * @return for how long in milliseconds the size is used before it is
+     *         determined again
+     */
+    public int getSizeValidMilliSeconds() {
+        return sizeValidMilliSeconds;
+    }
+
+    /**
+     * Sets the executor on which the rows are counted in size mode
+     * {@link SizeMode#ASYNC_EXACT}. The count runs on a connection of its own,
+     * so it does not block the use of the container.
+     *
+     * @param executor
+     *            the executor, or null to count the rows on the calling thread
+     *            (the default)
+     */
+    public void setSizeExecutor(Executor executor) {
+        sizeCounter.setExecutor(executor);
+    }
+
+    /**
+     * @return the executor on which the rows are counted in the background, or
+     *         null
+     * @see #setSizeExecutor(Executor)
+     */
+    public Executor getSizeExecutor() {
+        return sizeCounter.getExecutor();
+    }
+
+    /**
+     * Returns whether the current size of the container is the exact number of
+     * rows in the data source, or a lower bound or estimate.
+     *
+     * @return true if the size is exact
+     * @see #setSizeMode(SizeMode)
+     */
+    public boolean isSizeExact() {
+        updateCount();
+        return sizeExact;
+    }
+
+    /**
+     * Sets the number of rows the JDBC driver is asked to read at a time when
+     * streaming rows with {@link #streamItems()} and {@link #streamItemIds()}.
+     * Defaults to {@link #DEFAULT_CURSOR_FETCH_SIZE}.
+     *
+     * @param cursorFetchSize
+     *            the number of rows
+     */
+    public void setCursorFetchSize(int cursorFetchSize) {
+        if (cursorFetchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Cursor fetch size must be positive.");
+        }
+        this.cursorFetchSize = cursorFetchSize;
+    }
+
+    /**
+     * @return the number of rows read at a time when streaming rows
+     * @see #setCursorFetchSize(int)
+     */
+    public int getCursorFetchSize() {
+        return cursorFetchSize;
+    }
+
+    /**
+     * Adds the given OrderBy to this container and refreshes the container
+     * contents with the new sorting rules.
+     *
+     * Note that orderBy.getColumn() must return a column name that exists in
+     * this container.
+     *
+     * @param orderBy
+     *            OrderBy to be added to the container sorting rules
+     */
+    public void addOrderBy(OrderBy orderBy) {
+        if (orderBy == null) {
+            return;
+        }
+        if (!propertyIds.contains(orderBy.getColumn())) {
+            throw new IllegalArgumentException(
+                    "The column given for sorting does not exist in this container.");
+        }
+        sorters.add(orderBy);
+        refresh();
+    }
+
+    /**
+     * Commits all the changes, additions and removals made to the items of this
+     * container.
+     *
+     * @throws UnsupportedOperationException
+     * @throws SQLException
+     */
+    public void commit() throws UnsupportedOperationException, SQLException {
+        try {
+            getLogger().log(Level.FINER,
+                    "Commiting changes through delegate...");
+            prefetcher.quiesce();
+            queryDelegate.beginTransaction();
+            TableQuery tq = getTableQueryInTransaction(true);
+            if (tq != null) {
+                commitInBatches(tq);
+            } else {
+                commitRowByRow();
+            }
+            queryDelegate.commit();
+            removedItems.clear();
+            addedItems.clear();
+            modifiedItems.clear();
+            refresh();
+            if (notificationsEnabled) {
+                CacheFlushNotifier.notifyOfCacheFlush(this);
+            }
+        } catch (SQLException e) {
+            queryDelegate.rollback();
+            throw e;
+        } catch (OptimisticLockException e) {
+            queryDelegate.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Stores the buffered changes with statements grouped by type and SQL:
+     * removals with as few DELETE statements as possible and modifications
+     * in JDBC batches.
+     */
+    private void commitInBatches(TableQuery query) throws SQLException {
+        try {
+            query.removeRows(removedItems.values());
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Removal of rows failed", e);
+        }
+        List<RowItem> modified = new ArrayList<RowItem>(modifiedItems.size());
+        for (RowItem item : modifiedItems) {
+            if (!removedItems.containsKey(item.getId())) {
+                modified.add(item);
+            }
+        }
+        int[] counts = query.updateRows(modified);
+        for (int ix = 0; ix < counts.length; ix++) {
+            RowItem item = modified.get(ix);
+            /*
+             * The count is only unknown for tables without a version column,
+             * whose updates are not checked for concurrent modifications.
+             */
+            if (counts[ix] > 0 || counts[ix] == Statement.SUCCESS_NO_INFO) {
+                /*
+                 * Also reset the modified state in the item in case it is
+                 * reused e.g. in a form.
+                 */
+                item.commit();
+            } else {
+                queryDelegate.rollback();
+                refresh();
+                throw new ConcurrentModificationException("Item with the ID '"
+                        + item.getId() + "' has been externally modified.");
+            }
+        }
+        query.insertRows(addedItems);
+    }
+
+    /**
+     * Stores the buffered changes one row at a time through the query
+     * delegate.
+     */
+    private void commitRowByRow() throws SQLException {
+        /* Perform buffered deletions */
+        for (RowItem item : removedItems.values()) {
+            try {
+                if (!queryDelegate.removeRow(item)) {
+                    throw new SQLException(
+                            "Removal failed for row with ID: "
+                                    + item.getId());
+                }
+            } catch (IllegalArgumentException e) {
+                throw new SQLException(
+                        "Removal failed for row with ID: " + item.getId(),
+                        e);
+            }
+        }
+        /* Perform buffered modifications */
+        for (RowItem item : modifiedItems) {
+            if (!removedItems.containsKey(item.getId())) {
+                if (queryDelegate.storeRow(item) > 0) {
+                    /*
+                     * Also reset the modified state in the item in case it
+                     * is reused e.g. in a form.
+                     */
+                    item.commit();
+                } else {
+                    queryDelegate.rollback();
+                    refresh();
+                    throw new ConcurrentModificationException(
+                            "Item with the ID '" + item.getId()
+                                    + "' has been externally modified.");
+                }
+            }
+        }
+        /* Perform buffered additions */
+        for (RowItem item : addedItems) {
+            queryDelegate.storeRow(item);
+        }
+    }
+
+    /**
+     * Rolls back all the changes, additions and removals made to the items of
+     * this container.
+     *
+     * @throws UnsupportedOperationException
+     * @throws SQLException
+     */
+    public void rollback() throws UnsupportedOperationException, SQLException {
+        getLogger().log(Level.FINE, "Rolling back changes...");
+        removedItems.clear();
+        addedItems.clear();
+        modifiedItems.clear();
+        refresh();
+    }
+
+    /**
+     * Notifies this container that a property in the given item has been
+     * modified. The change will be buffered or made instantaneously depending
+     * on auto commit mode.
+     *
+     * @param changedItem
+     *            item that has a modified property
+     */
+    void itemChangeNotification(RowItem changedItem) {
+        if (autoCommit) {
+            try {
+                prefetcher.quiesce();
+                queryDelegate.beginTransaction();
+                if (queryDelegate.storeRow(changedItem) == 0) {
+                    queryDelegate.rollback();
+                    refresh();
+                    throw new ConcurrentModificationException(
+                            "Item with the ID '" + changedItem.getId()
+                                    + "' has been externally modified.");
+                }
+                queryDelegate.commit();
+                if (notificationsEnabled) {
+                    CacheFlushNotifier.notifyOfCacheFlush(this);
+                }
+                getLogger().log(Level.FINER, "Row updated to DB...");
+            } catch (SQLException e) {
+                getLogger().log(Level.WARNING,
+                        "itemChangeNotification failed, rolling back...", e);
+                try {
+                    queryDelegate.rollback();
+                } catch (SQLException ee) {
+                    /* Nothing can be done here */
+                    getLogger().log(Level.SEVERE, "Rollback failed", e);
+                }
+                throw new RuntimeException(e);
+            }
+        } else {
+            if (!(changedItem.getId() instanceof TemporaryRowId)
+                    && !modifiedItems.contains(changedItem)) {
+                modifiedItems.add(changedItem);
             }
         }
     }
@@ -1161,29 +1886,86 @@ public class SQLContainer implements Container, Container.Filterable,
      */
     private void updateOffsetAndCache(int index) {
 
-        int oldOffset = currentOffset;
-
-        currentOffset = (index / pageLength) * pageLength - cacheOverlap;
-
-        if (currentOffset < 0) {
-            currentOffset = 0;
+        if (pageCache.containsIndex(index)) {
+            return;
         }
 
-        if (oldOffset == currentOffset && !cachedItems.isEmpty()) {
+        currentOffset = offsetForIndex(index);
+        statistics.recordMiss();
+        getPage();
+    }
+
+    /**
+     * Fetches the rows of a range of indexes starting with an index that is
+     * not cached. The rows are fetched with a single query, as a normal window
+     * if the range fits in one, otherwise as a window covering the whole
+     * range.
+     *
+     * @param index
+     *            the first index of the range, which is not cached
+     * @param end
+     *            the index following the last index of the range
+     */
+    private void updateOffsetAndCache(int index, int end) {
+        currentOffset = offsetForIndex(index);
+        if (end <= currentOffset + getWindowSize()
+                || !queryDelegate.implementationRespectsPagingLimits()) {
+            updateOffsetAndCache(index);
             return;
         }
+        statistics.recordMiss();
+        FetchedPage page = fetchPageNow(currentOffset, end - currentOffset);
+        installPage(page);
+        if (adjustSizeToFetchedRows(page)) {
+            fireContentsChange();
+        }
+    }
 
-        getPage();
+    /**
+     * Returns the offset of the window that is loaded when the given index is
+     * not found in the cache.
+     *
+     * @param index
+     *            Index of an item
+     * @return offset of the window containing the index
+     */
+    private int offsetForIndex(int index) {
+        int offset = (index / pageLength) * pageLength - cacheOverlap;
+        return offset < 0 ? 0 : offset;
+    }
+
+    /**
+     * @return the number of rows loaded into one cache window
+     */
+    private int getWindowSize() {
+        return pageLength * cacheRatio + cacheOverlap;
     }
 
     /**
-     * Fetches new count of rows from the data source, if needed.
+     * Fetches new count of rows from the data source, if needed. When the
+     * size has to be counted after a refresh, the window at the current offset
+     * is fetched with the same query if the query delegate supports it.
+     *
+     * @return true if the window at the current offset was fetched
      */
-    private void updateCount() {
+    private boolean updateCount() {
+        Integer counted = sizeCounter.take();
+        if (counted != null) {
+            sizeUpdated = new Date();
+            sizeExact = true;
+            if (counted != size) {
+                size = counted;
+                refresh(false);
+            }
+            getLogger().log(Level.FINER,
+                    "Counted rows in the background. New count is: {0}", size);
+            return false;
+        }
         if (!sizeDirty && new Date().getTime() < sizeUpdated.getTime()
                 + sizeValidMilliSeconds) {
-            return;
+            return false;
         }
+        prefetcher.quiesce();
         try {
             try {
                 queryDelegate.setFilters(filters);
@@ -1197,21 +1979,181 @@ public class SQLContainer implements Container, Container.Filterable,
                 getLogger().log(Level.FINE,
                         "The query delegate doesn't support sorting", e);
             }
-            int newSize = queryDelegate.getCount();
+            SizeMode mode = sizeMode;
+            if (getTableQuery() == null
+                    || (mode == SizeMode.ASYNC_EXACT
+                            && !sizeCounter.isEnabled())) {
+                mode = SizeMode.EXACT;
+            }
+            if (mode == SizeMode.ASYNC_EXACT && !sizeDirty && sizeExact) {
+                /* Keep the exact size until the rows have been recounted */
+                countInBackground();
+                sizeUpdated = new Date();
+                return false;
+            }
+            int newSize;
+            boolean exact = true;
+            FetchedPage window = null;
+            if (mode == SizeMode.EXACT) {
+                if (sizeDirty) {
+                    window = fetchWindowWithCount();
+                }
+                newSize = window != null ? window.getTotalRows()
+                        : queryDelegate.getCount();
+            } else {
+                TableQuery tq = getTableQuery();
+                long estimate = mode == SizeMode.ESTIMATED
+                        ? getEstimatedCount(tq) : -1;
+                if (estimate >= sizeCap) {
+                    newSize = (int) Math.min(estimate, Integer.MAX_VALUE);
+                    exact = false;
+                } else {
+                    newSize = getCappedCount(tq);
+                    exact = newSize <= getCappedCountLimit();
+                    if (!exact && mode == SizeMode.ASYNC_EXACT) {
+                        countInBackground();
+                    }
+                }
+            }
             sizeUpdated = new Date();
             sizeDirty = false;
+            sizeExact = exact;
             if (newSize != size) {
                 size = newSize;
                 // Size is up to date so don't set it back to dirty in refresh()
-                refresh(false);
+                refresh(false, window);
+            } else if (window != null) {
+                installPage(window);
             }
             getLogger().log(Level.FINER, "Updated row count. New count is: {0}",
                     size);
+            return window != null;
         } catch (SQLException e) {
             throw new RuntimeException("Failed to update item set size.", e);
         }
     }
 
+    /**
+     * Fetches the window at the current offset and counts the rows in a single
+     * query, saving a round trip to the database after a refresh.
+     *
+     * @return the window with the total number of rows, or null if the query
+     *         delegate does not support this or the count is not available
+     */
+    private FetchedPage fetchWindowWithCount() {
+        /*
+         * Not through a CachingQueryDelegate, which serves the count and the
+         * rows from its cache separately
+         */
+        if (!(queryDelegate instanceof TableQuery)
+                || countWithRowsUnsupported) {
+            return null;
+        }
+        FetchedPage window;
+        try {
+            window = fetchPage(currentOffset, getWindowSize(), pageLength,
+                    true);
+        } catch (UnsupportedOperationException e) {
+            getLogger().log(Level.FINE,
+                    "The query delegate cannot count rows while fetching them",
+                    e);
+            countWithRowsUnsupported = true;
+            return null;
+        }
+        return window.getTotalRows() >= 0 ? window : null;
+    }
+
+    /**
+     * Returns the row count estimated by the database for the table of the
+     * query, or -1 if none is available.
+     */
+    private long getEstimatedCount(TableQuery tq) throws SQLException {
+        try {
+            return tq.getEstimatedCount();
+        } catch (UnsupportedOperationException e) {
+            getLogger().log(Level.FINE, "Row estimates are not available", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Counts the rows matching the current filters, but at most
+     * {@link #getCappedCountLimit()} + 1 of them. A count above the limit
+     * tells that the size is a lower bound.
+     */
+    private int getCappedCount(TableQuery tq) throws SQLException {
+        return tq.getCappedCount(getCappedCountLimit() + 1);
+    }
+
+    /**
+     * @return the number of rows counted by capped counts: the size cap in
+     *         addition to the rows known to exist
+     */
+    private int getCappedCountLimit() {
+        long limit = (long) rowsFound + sizeCap;
+        return (int) Math.min(limit, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Counts the rows matching the current filters on the size executor. The
+     * count is applied by {@link #updateCount()}.
+     */
+    private void countInBackground() {
+        final TableQuery tq = getTableQuery();
+        final List<Filter> countFilters = new ArrayList<Filter>(filters);
+        sizeCounter.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return tq.getCountDetached(countFilters);
+            }
+        });
+    }
+
+    /**
+     * Corrects a size that is not exact with the number of rows found when
+     * fetching rows. If fewer rows than requested were found, the fetch
+     * reached the end of the rows and the size becomes exact; if no rows were
+     * found at all, the end is at the offset of the fetch or before it. If the
+     * fetched rows reach the size, there may be more rows beyond them, and the
+     * rows following them are counted up to the size cap.
+     *
+     * @param page
+     *            the fetched rows
+     * @return true if the size was changed
+     */
+    private boolean adjustSizeToFetchedRows(FetchedPage page) {
+        if (sizeExact) {
+            return false;
+        }
+        int oldSize = size;
+        int end = page.getOffset() + page.getRowCount();
+        if (page.getRowCount() < page.getRequestedRows()) {
+            if (page.getRowCount() > 0 || page.getOffset() == 0) {
+                size = end;
+                sizeExact = true;
+            } else if (end < size) {
+                size = end;
+            }
+        } else if (end >= size) {
+            rowsFound = end;
+            prefetcher.quiesce();
+            try {
+                size = getCappedCount(getTableQuery());
+            } catch (SQLException e) {
+                throw new RuntimeException("Failed to update item set size.",
+                        e);
+            }
+            sizeExact = size <= getCappedCountLimit();
+        }
+        if (size == oldSize) {
+            return false;
+        }
+        getLogger().log(Level.FINER,
+                "Corrected row count with fetched rows. New count is: {0}",
+                size);
+        return true;
+    }
+
     /**
      * Fetches property id's (column names and their types) from the data
      * source.
@@ -1226,6 +2168,7 @@ public class SQLContainer implements Container, Container.Filterable,
         ResultSet rs = null;
         ResultSetMetaData rsmd = null;
         try {
+            prefetcher.quiesce();
             queryDelegate.beginTransaction();
             rs = queryDelegate.getResults(0, 1);
             rsmd = rs.getMetaData();
@@ -1260,9 +2203,9 @@ public class SQLContainer implements Container, Container.Filterable,
 
                 boolean persistable = !rsmd.isReadOnly(i);
 
-                if (queryDelegate instanceof TableQuery) {
-                    if (rsmd.getColumnLabel(i).equals(
-                            ((TableQuery) queryDelegate).getVersionColumn())) {
+                TableQuery tq = getTableQuery();
+                if (tq != null) {
+                    if (rsmd.getColumnLabel(i).equals(tq.getVersionColumn())) {
                         readOnly = true;
                     }
                 }
@@ -1276,8 +2219,8 @@ public class SQLContainer implements Container, Container.Filterable,
                                 .contains(rsmd.getColumnLabel(i)));
                 propertyTypes.put(colName, type);
             }
-            rs.getStatement().close();
-            rs.close();
+            createSchema();
+            closeResultSet(rs);
             queryDelegate.commit();
             getLogger().log(Level.FINER, "Property IDs fetched.");
         } catch (SQLException e) {
@@ -1302,114 +2245,190 @@ public class SQLContainer implements Container, Container.Filterable,
         }
     }
 
+    /**
+     * Creates the schema shared by the items from the property ids and the
+     * attributes read for them.
+     */
+    private void createSchema() {
+        List<ColumnSchema.Column> columns = new ArrayList<ColumnSchema.Column>(
+                propertyIds.size());
+        for (String propertyId : propertyIds) {
+            columns.add(new ColumnSchema.Column(propertyId,
+                    propertyReadOnly.get(propertyId),
+                    propertyPersistable.get(propertyId),
+                    propertyNullable.get(propertyId),
+                    propertyPrimaryKey.get(propertyId), getType(propertyId)));
+        }
+        schema = new ColumnSchema(columns);
+    }
+
     /**
      * Fetches a page from the data source based on the values of pageLength and
      * currentOffset. Also updates the set of primary keys, used in
      * identification of RowItems.
      */
     private void getPage() {
-        updateCount();
+        if (updateCount()) {
+            /* The window was fetched together with the row count */
+            return;
+        }
+        int start = currentOffset;
+        int end = currentOffset + getWindowSize();
+        CacheWindow adjacent = getExtendableWindow(start, end);
+        int fetchFrom = start;
+        int fetchTo = end;
+        if (adjacent != null) {
+            if (adjacent.getStart() <= start) {
+                fetchFrom = adjacent.getEnd();
+            } else {
+                fetchTo = adjacent.getStart();
+            }
+        }
+        FetchedPage page = prefetcher.take(fetchFrom, fetchTo - fetchFrom);
+        if (page == null) {
+            page = fetchPageNow(fetchFrom, fetchTo - fetchFrom);
+            if (!queryDelegate.implementationRespectsPagingLimits()) {
+                currentOffset = 0;
+                setPageLengthInternal(size);
+            }
+        }
+        if (adjacent == null) {
+            installPage(page);
+        } else if (!extendWindow(adjacent, page, start)) {
+            getLogger().log(Level.FINE,
+                    "Rows changed in the data source, reloading whole window");
+            page = fetchPageNow(start, end - start);
+            installPage(page);
+        }
+        if (adjustSizeToFetchedRows(page)) {
+            fireContentsChange();
+        }
+    }
+
+    /**
+     * Returns a cached window that covers part of the given range. When such
+     * a window exists, only the rows not yet cached are fetched and the cached
+     * window is extended with them. Row indexes only match offsets in the data
+     * source as long as no rows have been removed from the container, so
+     * windows are not extended while there are removed items.
+     *
+     * @param start
+     *            offset of the window to load
+     * @param end
+     *            offset following the last row of the window to load
+     * @return the window to extend, or null to load the whole range
+     */
+    private CacheWindow getExtendableWindow(int start, int end) {
+        if (!removedItems.isEmpty()
+                || !queryDelegate.implementationRespectsPagingLimits()) {
+            return null;
+        }
+        return pageCache.getWindowOverlapping(start, end);
+    }
+
+    /**
+     * Fetches rows on the calling thread, using the current sorting rules.
+     *
+     * @param offset
+     *            offset of the first row to fetch
+     * @param fetchedRows
+     *            number of rows to fetch
+     * @return the fetched rows
+     */
+    private FetchedPage fetchPageNow(int offset, int fetchedRows) {
+        prefetcher.quiesce();
+        try {
+            queryDelegate.setOrderBy(sorters);
+        } catch (UnsupportedOperationException e) {
+            /* The query delegate doesn't support sorting. */
+            /* No need to do anything. */
+            getLogger().log(Level.FINE,
+                    "The query delegate doesn't support sorting", e);
+        }
+        return fetchPage(offset, fetchedRows, pageLength, false);
+    }
+
+    /**
+     * Reads rows from the data source into a detached page. Does not touch the
+     * state of the container, so this may also be called by the prefetcher on
+     * a background thread.
+     *
+     * @param offset
+     *            offset of the first row to fetch
+     * @param fetchedRows
+     *            number of rows to fetch
+     * @param keysetInterval
+     *            interval, in rows, at which keyset bookmarks are recorded
+     * @param withCount
+     *            true to also count all the rows, see
+     *            {@link TableQuery#getResultsWithCount(int, int)}
+     * @return the fetched rows
+     */
+    private FetchedPage fetchPage(int offset, int fetchedRows,
+            int keysetInterval, boolean withCount) {
         ResultSet rs = null;
         ResultSetMetaData rsmd = null;
-        cachedItems.clear();
-        itemIndexes.clear();
         try {
-            try {
-                queryDelegate.setOrderBy(sorters);
-            } catch (UnsupportedOperationException e) {
-                /* The query delegate doesn't support sorting. */
-                /* No need to do anything. */
-                getLogger().log(Level.FINE,
-                        "The query delegate doesn't support sorting", e);
-            }
             queryDelegate.beginTransaction();
-            int fetchedRows = pageLength * CACHE_RATIO + cacheOverlap;
-            rs = queryDelegate.getResults(currentOffset, fetchedRows);
+            if (withCount) {
+                try {
+                    rs = ((TableQuery) queryDelegate)
+                            .getResultsWithCount(offset, fetchedRows);
+                } catch (UnsupportedOperationException e) {
+                    queryDelegate.rollback();
+                    throw e;
+                }
+            } else {
+                rs = queryDelegate.getResults(offset, fetchedRows);
+            }
             rsmd = rs.getMetaData();
-            List<String> pKeys = queryDelegate.getPrimaryKeyColumns();
-            // }
+            /*
+             * If keyset pagination is in use, remember the sort key of the last
+             * row of each page so that the following page can be sought to.
+             */
+            TableQuery keysetQuery = getTableQuery();
+            List<String> keysetColumns = null;
+            if (keysetQuery != null && keysetQuery.isKeysetPagingEnabled()) {
+                keysetColumns = keysetQuery.getKeysetColumns();
+            } else {
+                keysetQuery = null;
+            }
             /* Create new items and column properties */
-            ColumnProperty cp = null;
-            int rowCount = currentOffset;
             if (!queryDelegate.implementationRespectsPagingLimits()) {
-                rowCount = currentOffset = 0;
-                setPageLengthInternal(size);
+                offset = 0;
+            }
+            RowDecodingPlan plan = getDecodingPlan(rsmd);
+            FetchedPage page = new FetchedPage(offset, fetchedRows,
+                    new RowBlock(this, plan, fetchedRows));
+            int countColumn = withCount
+                    ? rs.findColumn(TableQuery.ROW_COUNT_COLUMN) : 0;
+            if (withCount && offset == 0) {
+                /* No rows at all if the first page is empty */
+                page.setTotalRows(0);
             }
+            int dbRow = offset;
             while (rs.next()) {
-                List<ColumnProperty> itemProperties = new ArrayList<ColumnProperty>();
-                /* Generate row itemId based on primary key(s) */
-                Object[] itemId = new Object[pKeys.size()];
-                for (int i = 0; i < pKeys.size(); i++) {
-                    // We deliberately do not go through the custom converter
-                    // here. Primary keys are not expected to be of a type that
-                    // needs custom conversion.
-                    itemId[i] = rs.getObject(pKeys.get(i));
+                if (countColumn > 0 && dbRow == offset) {
+                    page.setTotalRows(rs.getInt(countColumn));
                 }
-                RowId id = null;
-                if (pKeys.isEmpty()) {
-                    id = new ReadOnlyRowId(rs.getRow());
-                } else {
-                    id = new RowId(itemId);
-                }
-                List<String> propertiesToAdd = new ArrayList<String>(
-                        propertyIds);
-                if (!removedItems.containsKey(id)) {
-                    for (int i = 1; i <= rsmd.getColumnCount(); i++) {
-                        if (!isColumnIdentifierValid(rsmd.getColumnLabel(i))) {
-                            continue;
-                        }
-                        String colName = rsmd.getColumnLabel(i);
-                        Object value = customConvert(rs.getObject(i), rs);
-                        Class<?> type = value != null ? value.getClass()
-                                : Object.class;
-                        if (value == null) {
-                            for (String propName : propertyTypes.keySet()) {
-                                if (propName.equals(rsmd.getColumnLabel(i))) {
-                                    type = propertyTypes.get(propName);
-                                    break;
-                                }
-                            }
-                        }
-                        /*
-                         * In case there are more than one column with the same
-                         * name, add only the first one. This can easily happen
-                         * if you join many tables where each table has an ID
-                         * column.
-                         */
-                        if (propertiesToAdd.contains(colName)) {
-
-                            cp = new ColumnProperty(colName,
-                                    propertyReadOnly.get(colName),
-                                    propertyPersistable.get(colName),
-                                    propertyNullable.get(colName),
-                                    propertyPrimaryKey.get(colName), value,
-                                    type);
-                            itemProperties.add(cp);
-                            propertiesToAdd.remove(colName);
-                        }
-                    }
-                    /* Cache item */
-                    itemIndexes.put(rowCount, id);
-
-                    // if an item with the id is contained in the modified
-                    // cache, then use this record and add it to the cached
-                    // items. Otherwise create a new item
-                    int modifiedIndex = indexInModifiedCache(id);
-                    if (modifiedIndex != -1) {
-                        cachedItems.put(id, modifiedItems.get(modifiedIndex));
-                    } else {
-                        cachedItems.put(id,
-                                new RowItem(this, id, itemProperties));
+                if (keysetQuery != null
+                        && (dbRow + 1) % keysetInterval == 0) {
+                    Object[] keyValues = new Object[keysetColumns.size()];
+                    for (int i = 0; i < keyValues.length; i++) {
+                        keyValues[i] = rs.getObject(keysetColumns.get(i));
                     }
-
-                    rowCount++;
+                    keysetQuery.addKeysetBookmark(dbRow + 1, keyValues);
                 }
+                dbRow++;
+                page.getRows().readRow(rs);
+                page.addRow(plan.readRowId(rs));
             }
-            rs.getStatement().close();
-            rs.close();
+            closeResultSet(rs);
             queryDelegate.commit();
+            statistics.recordRowsFetched(page.getRowCount());
             getLogger().log(Level.FINER, "Fetched {0} rows starting from {1}",
-                    new Object[] { fetchedRows, currentOffset });
+                    new Object[] { page.getRowCount(), offset });
+            return page;
         } catch (SQLException e) {
             getLogger().log(Level.WARNING, "Failed to fetch rows, rolling back",
                     e);
@@ -1432,6 +2451,297 @@ public class SQLContainer implements Container, Container.Filterable,
         }
     }
 
+    /**
+     * Fetches a single row by its primary key, without touching the cached
+     * windows. Only supported for TableQuery delegates.
+     *
+     * @param itemId
+     *            id of the row
+     * @return the item, or null if no row with the id matches the filters
+     */
+    private RowItem fetchItem(RowId itemId) {
+        prefetcher.quiesce();
+        ResultSet rs = null;
+        try {
+            queryDelegate.beginTransaction();
+            rs = getTableQueryInTransaction(false).getRowByKey(itemId.getId());
+            RowItem item = null;
+            if (rs.next()) {
+                RowDecodingPlan plan = getDecodingPlan(rs.getMetaData());
+                RowId id = plan.readRowId(rs);
+                int modifiedIndex = indexInModifiedCache(id);
+                if (modifiedIndex != -1) {
+                    item = modifiedItems.get(modifiedIndex);
+                } else {
+                    RowBlock block = new RowBlock(this, plan, 1);
+                    block.readRow(rs);
+                    item = block.createItem(id, 0);
+                }
+            }
+            closeResultSet(rs);
+            queryDelegate.commit();
+            statistics.recordRowsFetched(item == null ? 0 : 1);
+            getLogger().log(Level.FINER, "Fetched row {0}", itemId);
+            return item;
+        } catch (SQLException e) {
+            getLogger().log(Level.WARNING, "Failed to fetch row, rolling back",
+                    e);
+            try {
+                queryDelegate.rollback();
+            } catch (SQLException e1) {
+                getLogger().log(Level.SEVERE, "Failed to roll back", e1);
+            }
+            try {
+                if (rs != null) {
+                    if (rs.getStatement() != null) {
+                        rs.getStatement().close();
+                        rs.close();
+                    }
+                }
+            } catch (SQLException e1) {
+                getLogger().log(Level.WARNING, "Failed to close session", e1);
+            }
+            throw new RuntimeException("Failed to fetch row.", e);
+        }
+    }
+
+
+    /**
+     * Returns the plan for decoding the rows of a result set with the given
+     * metadata. The plan is created once and reused for as long as the shape
+     * of the result sets stays the same.
+     */
+    private RowDecodingPlan getDecodingPlan(ResultSetMetaData rsmd)
+            throws SQLException {
+        RowDecodingPlan plan = decodingPlan;
+        List<String> pKeys = queryDelegate.getPrimaryKeyColumns();
+        if (plan == null || !plan.matches(schema, pKeys, rsmd)) {
+            plan = RowDecodingPlan.create(rsmd, schema, pKeys,
+                    isColumnIdentifierValid("rownum") ? null : "rownum",
+                    customTypeMap);
+            decodingPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Adds a fetched page to the item cache as a new window.
+     *
+     * @param page
+     *            the page to install
+     */
+    private void installPage(FetchedPage page) {
+        CacheWindow window = toWindow(page);
+        if (!window.isEmpty()) {
+            pageCache.addWindow(window);
+        }
+    }
+
+    /**
+     * Extends a cached window with the rows of a fetched page, which must
+     * directly follow or precede the window.
+     *
+     * @param window
+     *            the window to extend
+     * @param page
+     *            rows adjacent to the window
+     * @param newStart
+     *            offset of the window after the extension
+     * @return true if the window was extended, false if the fetched rows do
+     *         not fit the window because the data source has changed
+     */
+    private boolean extendWindow(CacheWindow window, FetchedPage page,
+            int newStart) {
+        CacheWindow extension = toWindow(page);
+        if (extension.getStart() != window.getEnd()
+                && extension.getEnd() != window.getStart()) {
+            return false;
+        }
+        for (RowId id : extension.getIds()) {
+            if (window.containsItem(id)) {
+                return false;
+            }
+        }
+        pageCache.extendWindow(window, extension, newStart, getWindowSize());
+        return true;
+    }
+
+    /**
+     * Creates the RowItems of a fetched page. Rows that have been removed from
+     * the container are skipped, and rows that have been modified are
+     * replaced by their modified RowItem.
+     *
+     * @param page
+     *            fetched rows
+     * @return a window holding the items
+     */
+    private CacheWindow toWindow(FetchedPage page) {
+        CacheWindow window = new CacheWindow(page.getOffset(),
+                page.getOffset());
+        for (int row = 0; row < page.getRowCount(); row++) {
+            RowId id = page.getRowId(row);
+            if (removedItems.containsKey(id)) {
+                continue;
+            }
+            // if an item with the id is contained in the modified
+            // cache, then use this record and add it to the cached
+            // items. Otherwise create a new item
+            int modifiedIndex = indexInModifiedCache(id);
+            if (modifiedIndex != -1) {
+                window.add(id, modifiedItems.get(modifiedIndex));
+            } else {
+                window.add(id, page.getRows(), row);
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Submits the window following the current one in the direction of
+     * scrolling for loading in the background, if prefetching is enabled and
+     * the given index is close to the edge of the current window.
+     *
+     * @param index
+     *            the index that was just requested
+     */
+    private void prefetchAround(int index) {
+        int previous = lastRequestedIndex;
+        lastRequestedIndex = index;
+        if (!prefetcher.isEnabled() || previous < 0 || index == previous
+                || !queryDelegate.implementationRespectsPagingLimits()) {
+            return;
+        }
+        CacheWindow window = pageCache.getWindowAt(index);
+        if (window == null) {
+            return;
+        }
+        final int keysetInterval = pageLength;
+        int target;
+        if (index > previous) {
+            int windowEnd = window.getEnd();
+            if (windowEnd >= size || index < windowEnd - pageLength
+                    || pageCache.containsIndex(windowEnd)) {
+                return;
+            }
+            target = offsetForIndex(windowEnd);
+        } else {
+            int windowStart = window.getStart();
+            if (windowStart == 0 || index >= windowStart + pageLength
+                    || pageCache.containsIndex(windowStart - 1)) {
+                return;
+            }
+            target = offsetForIndex(windowStart - 1);
+        }
+        /* Prefetch the same rows as getPage() would fetch */
+        int end = target + getWindowSize();
+        CacheWindow adjacent = getExtendableWindow(target, end);
+        if (adjacent != null) {
+            if (adjacent.getStart() <= target) {
+                target = adjacent.getEnd();
+            } else {
+                end = adjacent.getStart();
+            }
+        }
+        final int fetchFrom = target;
+        final int fetchedRows = end - target;
+        prefetcher.prefetch(fetchFrom, fetchedRows, new Callable<FetchedPage>() {
+            @Override
+            public FetchedPage call() {
+                return fetchPage(fetchFrom, fetchedRows, keysetInterval,
+                        false);
+            }
+        });
+    }
+
+    /**
+     * Reads the rows of a cursor one at a time, skipping removed rows and
+     * replacing modified ones, followed by the added items passing the
+     * filters. The uncommitted changes are those at the time the cursor was
+     * opened. Closes the cursor when all rows have been read. Returns the ids
+     * of the rows if only the ids are read, otherwise the items.
+     */
+    private final class CursorSpliterator<T>
+            extends Spliterators.AbstractSpliterator<T> {
+        private final TableQuery.RowCursor cursor;
+        private final boolean idsOnly;
+        private final Set<RowId> removed;
+        private final Map<RowId, RowItem> modified;
+        private final Iterator<RowItem> added;
+        private RowDecodingPlan plan;
+
+        private CursorSpliterator(TableQuery.RowCursor cursor,
+                boolean idsOnly) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT
+                    | Spliterator.NONNULL);
+            this.cursor = cursor;
+            this.idsOnly = idsOnly;
+            removed = new HashSet<RowId>(removedItems.keySet());
+            modified = new HashMap<RowId, RowItem>();
+            for (RowItem item : modifiedItems) {
+                modified.put(item.getId(), item);
+            }
+            added = getFilteredAddedItems().iterator();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (!cursor.isClosed()) {
+                try {
+                    ResultSet rs = cursor.getResultSet();
+                    while (rs.next()) {
+                        RowId id = readRowId(rs);
+                        if (!removed.contains(id)) {
+                            action.accept(
+                                    idsOnly ? (T) id : (T) readItem(id, rs));
+                            return true;
+                        }
+                    }
+                    cursor.close();
+                } catch (SQLException e) {
+                    try {
+                        cursor.close();
+                    } catch (SQLException e1) {
+                        getLogger().log(Level.WARNING,
+                                "Failed to close cursor", e1);
+                    }
+                    throw new RuntimeException("Failed to read rows.", e);
+                }
+            }
+            if (added.hasNext()) {
+                RowItem item = added.next();
+                action.accept(idsOnly ? (T) item.getId() : (T) item);
+                return true;
+            }
+            return false;
+        }
+
+        private RowId readRowId(ResultSet rs) throws SQLException {
+            if (idsOnly) {
+                /* Only the primary key columns are selected, in order */
+                Object[] key = new Object[rs.getMetaData().getColumnCount()];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = rs.getObject(i + 1);
+                }
+                return new RowId(key);
+            }
+            if (plan == null) {
+                plan = getDecodingPlan(rs.getMetaData());
+            }
+            return plan.readRowId(rs);
+        }
+
+        private RowItem readItem(RowId id, ResultSet rs) throws SQLException {
+            RowItem item = modified.get(id);
+            if (item != null) {
+                return item;
+            }
+            RowBlock block = new RowBlock(SQLContainer.this, plan, 1);
+            block.readRow(rs);
+            return block.createItem(id, 0);
+        }
+    }
+
     /**
      * Returns the index of the item with the given itemId for the modified
      * cache.
@@ -1486,9 +2796,8 @@ public class SQLContainer implements Container, Container.Filterable,
      * @return true if the identifier is valid
      */
     private boolean isColumnIdentifierValid(String identifier) {
-        if (identifier.equalsIgnoreCase("rownum")
-                && queryDelegate instanceof TableQuery) {
-            TableQuery tq = (TableQuery) queryDelegate;
+        TableQuery tq = getTableQuery();
+        if (identifier.equalsIgnoreCase("rownum") && tq != null) {
             if (tq.getSqlGenerator() instanceof MSSQLGenerator
                     || tq.getSqlGenerator() instanceof OracleGenerator) {
                 return false;
@@ -1497,6 +2806,40 @@ public class SQLContainer implements Container, Container.Filterable,
         return true;
     }
 
+    /**
+     * Returns the TableQuery the container queries, also when it is wrapped
+     * in a {@link CachingQueryDelegate}. Queries run on it directly bypass
+     * the cache, and run outside of any transaction begun on the wrapping
+     * delegate.
+     *
+     * @return the TableQuery, or null if the query delegate is not one
+     */
+    private TableQuery getTableQuery() {
+        QueryDelegate qd = CachingQueryDelegate.unwrap(queryDelegate);
+        return qd instanceof TableQuery ? (TableQuery) qd : null;
+    }
+
+    /**
+     * Returns the TableQuery the container queries for running queries on it
+     * directly within the transaction begun on the query delegate.
+     *
+     * @param modifying
+     *            true if rows are changed through the TableQuery
+     * @return the TableQuery, or null if the query delegate is not one
+     * @see CachingQueryDelegate#getDelegateForDirectAccess(boolean)
+     */
+    private TableQuery getTableQueryInTransaction(boolean modifying)
+            throws SQLException {
+        if (getTableQuery() == null) {
+            return null;
+        }
+        if (queryDelegate instanceof CachingQueryDelegate) {
+            return (TableQuery) ((CachingQueryDelegate) queryDelegate)
+                    .getDelegateForDirectAccess(modifying);
+        }
+        return (TableQuery) queryDelegate;
+    }
+
     /**
      * Returns the QueryDelegate set for this SQLContainer.
      *
@@ -1680,6 +3023,22 @@ public class SQLContainer implements Container, Container.Filterable,
         }
     }
 
+    /**
+     * How the size of the container is determined.
+     *
+     * @see SQLContainer#setSizeMode(SizeMode)
+     */
+    public enum SizeMode {
+        /** All the rows are counted */
+        EXACT,
+        /** At most a limited number of rows are counted */
+        CAPPED,
+        /** The row count estimated by the database is used */
+        ESTIMATED,
+        /** The rows are counted in the background */
+        ASYNC_EXACT
+    }
+
     /**************************************************/
     /** ROWIDCHANGELISTENER PASSING TO QUERYDELEGATE **/
     /**************************************************/
@@ -1897,6 +3256,18 @@ public class SQLContainer implements Container, Container.Filterable,
         return Logger.getLogger(SQLContainer.class.getName());
     }
 
+    /**
+     * Closes a result set returned by the query delegate, and its statement
+     * if it has one. Result sets served from a cache have no statement.
+     */
+    private static void closeResultSet(ResultSet rs) throws SQLException {
+        Statement statement = rs.getStatement();
+        if (statement != null) {
+            statement.close();
+        }
+        rs.close();
+    }
+
     /**
      * Performs a user-defined custom conversion on the JDBC object value
      * as returned from ResultSet#getObject(). 
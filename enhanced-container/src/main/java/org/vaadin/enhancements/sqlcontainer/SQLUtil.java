@@ -22,7 +22,9 @@ import java.util.logging.Logger;
 import org.vaadin.enhancements.sqlcontainer.query.generator.DefaultSQLGenerator;
 import org.vaadin.enhancements.sqlcontainer.query.generator.DerbySQLGenerator;
 import org.vaadin.enhancements.sqlcontainer.query.generator.MSSQLGenerator;
+import org.vaadin.enhancements.sqlcontainer.query.generator.MySQLGenerator;
 import org.vaadin.enhancements.sqlcontainer.query.generator.OracleGenerator;
+import org.vaadin.enhancements.sqlcontainer.query.generator.PostgreSQLGenerator;
 import org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator;
 
 public class SQLUtil implements Serializable {
@@ -79,9 +81,13 @@ public class SQLUtil implements Serializable {
             throw new SQLException("Unknown JDBC Driver Class : " + jdbcDriverClassName);
         }
         if (db == JDBCDatabase.MARIADB
-                || db == JDBCDatabase.MYSQL
-                || db == JDBCDatabase.POSTGRESQL
-                || db == JDBCDatabase.HSQLDB) {
+                || db == JDBCDatabase.MYSQL) {
+            return new MySQLGenerator();
+        }
+        if (db == JDBCDatabase.POSTGRESQL) {
+            return new PostgreSQLGenerator();
+        }
+        if (db == JDBCDatabase.HSQLDB) {
             return new DefaultSQLGenerator();
         }
         if (db == JDBCDatabase.ORACLE) {
@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Adaptive Replacement Cache (ARC) policy.
+ *
+ * <p>
+ * Entries used once are kept in a recency list (T1) and entries used more than
+ * once in a frequency list (T2). The keys of entries recently evicted from
+ * either list are remembered in two ghost lists (B1 and B2). Adding an entry
+ * whose key is found in a ghost list shows that the corresponding list was too
+ * short, and the target size of T1 is adapted accordingly. The policy thereby
+ * balances between LRU and LFU behaviour depending on how the container is
+ * used, and a one-off sequential scan through the container does not flush
+ * regions that are used repeatedly.
+ *
+ * @param <K>
+ *            type of the keys identifying cache entries
+ */
+public class ARCEvictionPolicy<K> implements CacheEvictionPolicy<K> {
+    private static final long serialVersionUID = 8365921573084718095L;
+
+    /* Each list is ordered from least to most recently used. */
+    private final LinkedHashSet<K> t1 = new LinkedHashSet<K>();
+    private final LinkedHashSet<K> t2 = new LinkedHashSet<K>();
+    private final LinkedHashSet<K> b1 = new LinkedHashSet<K>();
+    private final LinkedHashSet<K> b2 = new LinkedHashSet<K>();
+
+    /** Target size of t1 */
+    private int p;
+    private int capacity = 1;
+
+    @Override
+    public void setCapacity(int capacity) {
+        this.capacity = capacity > 0 ? capacity : 1;
+        if (p > this.capacity) {
+            p = this.capacity;
+        }
+        trimGhosts();
+    }
+
+    @Override
+    public void keyAdded(K key) {
+        t1.remove(key);
+        t2.remove(key);
+        if (b1.contains(key)) {
+            /* Recently evicted after one use: favour recency */
+            int delta = Math.max(b2.size() / b1.size(), 1);
+            p = Math.min(capacity, p + delta);
+            b1.remove(key);
+            t2.add(key);
+        } else if (b2.contains(key)) {
+            /* Recently evicted after repeated use: favour frequency */
+            int delta = Math.max(b1.size() / b2.size(), 1);
+            p = Math.max(0, p - delta);
+            b2.remove(key);
+            t2.add(key);
+        } else {
+            t1.add(key);
+        }
+        trimGhosts();
+    }
+
+    @Override
+    public void keyAccessed(K key) {
+        if (t1.remove(key) || t2.remove(key)) {
+            t2.add(key);
+        }
+    }
+
+    @Override
+    public void keyRemoved(K key) {
+        t1.remove(key);
+        t2.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        K victim;
+        if (!t1.isEmpty() && (t1.size() > p || t2.isEmpty())) {
+            victim = removeFirst(t1);
+            b1.add(victim);
+        } else if (!t2.isEmpty()) {
+            victim = removeFirst(t2);
+            b2.add(victim);
+        } else {
+            return null;
+        }
+        trimGhosts();
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        t1.clear();
+        t2.clear();
+        b1.clear();
+        b2.clear();
+        p = 0;
+    }
+
+    /**
+     * Keeps the ghost lists within their bounds: t1 and b1 together hold at
+     * most capacity keys, and all lists together at most twice the capacity.
+     */
+    private void trimGhosts() {
+        while (!b1.isEmpty() && t1.size() + b1.size() > capacity) {
+            removeFirst(b1);
+        }
+        while (!b2.isEmpty()
+                && t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity) {
+            removeFirst(b2);
+        }
+        while (!b1.isEmpty()
+                && t1.size() + t2.size() + b1.size() + b2.size() > 2 * capacity) {
+            removeFirst(b1);
+        }
+    }
+
+    private static <K> K removeFirst(LinkedHashSet<K> set) {
+        Iterator<K> it = set.iterator();
+        K first = it.next();
+        it.remove();
+        return first;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.cache;
+
+import java.io.Serializable;
+
+/**
+ * Decides which entry of a bounded cache is dropped when room is needed for a
+ * new one.
+ *
+ * <p>
+ * The cache notifies the policy of every entry that is added, accessed or
+ * removed, and asks it for a victim when it is full. In the SQLContainer the
+ * entries are windows of rows, and each window is identified by the offset at
+ * which it was loaded. A window loaded again at the same offset therefore gets
+ * the same key, which lets policies such as {@link ARCEvictionPolicy} learn
+ * from entries they have evicted before.
+ *
+ * <p>
+ * A policy instance keeps state for one cache only and must not be shared
+ * between caches (or containers).
+ *
+ * @param <K>
+ *            type of the keys identifying cache entries
+ */
+public interface CacheEvictionPolicy<K> extends Serializable {
+
+    /**
+     * Called when an entry has been added to the cache.
+     *
+     * @param key
+     *            key of the added entry
+     */
+    void keyAdded(K key);
+
+    /**
+     * Called when an entry in the cache has been used.
+     *
+     * @param key
+     *            key of the used entry
+     */
+    void keyAccessed(K key);
+
+    /**
+     * Called when an entry has been removed from the cache for some other
+     * reason than being chosen by {@link #selectVictim()}, e.g. because it was
+     * superseded by newer data.
+     *
+     * @param key
+     *            key of the removed entry
+     */
+    void keyRemoved(K key);
+
+    /**
+     * Chooses the entry to evict. The returned key is considered removed from
+     * the cache; {@link #keyRemoved(Object)} is not called for it.
+     *
+     * @return key of the entry to evict, or null if the policy tracks no
+     *         entries
+     */
+    K selectVictim();
+
+    /**
+     * Called when all entries have been removed from the cache.
+     */
+    void clear();
+
+    /**
+     * Informs the policy of the maximum number of entries the cache holds.
+     * Policies that do not need to know it may ignore this.
+     *
+     * @param capacity
+     *            maximum number of entries
+     */
+    default void setCapacity(int capacity) {
+    }
+}
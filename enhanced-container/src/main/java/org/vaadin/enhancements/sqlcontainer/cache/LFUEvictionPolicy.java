@@ -0,0 +1,73 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Evicts the least frequently used entry. Of entries used equally often, the
+ * one added first is evicted. Suits users who keep returning to a few regions
+ * of a large container, e.g. the top and the bottom of a grid, while
+ * occasionally visiting other places.
+ *
+ * @param <K>
+ *            type of the keys identifying cache entries
+ */
+public class LFUEvictionPolicy<K> implements CacheEvictionPolicy<K> {
+    private static final long serialVersionUID = 5119946331519418573L;
+
+    /** Use counts of the keys, in the order the keys were added */
+    private final Map<K, Long> useCounts = new LinkedHashMap<K, Long>();
+
+    @Override
+    public void keyAdded(K key) {
+        useCounts.remove(key);
+        useCounts.put(key, 1L);
+    }
+
+    @Override
+    public void keyAccessed(K key) {
+        Long count = useCounts.get(key);
+        if (count != null) {
+            useCounts.put(key, count + 1);
+        }
+    }
+
+    @Override
+    public void keyRemoved(K key) {
+        useCounts.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        K victim = null;
+        long min = Long.MAX_VALUE;
+        for (Map.Entry<K, Long> e : useCounts.entrySet()) {
+            if (e.getValue() < min) {
+                min = e.getValue();
+                victim = e.getKey();
+            }
+        }
+        if (victim != null) {
+            useCounts.remove(victim);
+        }
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        useCounts.clear();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Evicts the least recently used entry. This is the default policy of the
+ * SQLContainer.
+ *
+ * @param <K>
+ *            type of the keys identifying cache entries
+ */
+public class LRUEvictionPolicy<K> implements CacheEvictionPolicy<K> {
+    private static final long serialVersionUID = -2383577208432735316L;
+
+    /** Keys from least to most recently used */
+    private final LinkedHashSet<K> keys = new LinkedHashSet<K>();
+
+    @Override
+    public void keyAdded(K key) {
+        keys.remove(key);
+        keys.add(key);
+    }
+
+    @Override
+    public void keyAccessed(K key) {
+        if (keys.remove(key)) {
+            keys.add(key);
+        }
+    }
+
+    @Override
+    public void keyRemoved(K key) {
+        keys.remove(key);
+    }
+
+    @Override
+    public K selectVictim() {
+        Iterator<K> it = keys.iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        K victim = it.next();
+        it.remove();
+        return victim;
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+    }
+}
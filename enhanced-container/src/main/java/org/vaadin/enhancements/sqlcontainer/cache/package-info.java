@@ -0,0 +1,26 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Eviction policies for the row cache of the SQLContainer.
+ * 
+ * <p>The SQLContainer caches rows in a number of independent windows. When
+ * a new window must be loaded and the cache is full, a
+ * {@link org.vaadin.enhancements.sqlcontainer.cache.CacheEvictionPolicy}
+ * decides which window is dropped. The policies in this package can be used
+ * as-is or serve as examples for writing your own.
+ *
+ * @see org.vaadin.enhancements.sqlcontainer.SQLContainer#setCacheEvictionPolicy(CacheEvictionPolicy)
+ */
+package org.vaadin.enhancements.sqlcontainer.cache;
@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+
+/**
+ * A filter that accepts the items in which every word of a search text occurs
+ * in at least one of the given properties, ignoring case.
+ *
+ * In SQL it is translated to the native full-text search of the database
+ * where the generator knows it, see
+ * {@link org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy}.
+ * The database then decides what a word is and may apply stemming and stop
+ * words, so the matched rows can differ from those accepted in memory.
+ * Elsewhere every word is matched with a case-insensitive LIKE on each column.
+ */
+public final class FullTextFilter implements Filter {
+    private static final long serialVersionUID = -3560231784032907128L;
+
+    private final List<Object> propertyIds;
+    private final String text;
+    private final List<String> terms;
+
+    /**
+     * @param propertyIds
+     *            the properties to search, at least one
+     * @param text
+     *            the search text, words separated by white space
+     */
+    public FullTextFilter(Collection<?> propertyIds, String text) {
+        if (propertyIds == null || propertyIds.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "At least one property must be given.");
+        }
+        this.propertyIds = Collections
+                .unmodifiableList(new ArrayList<Object>(propertyIds));
+        this.text = text == null ? "" : text;
+        String trimmed = this.text.trim();
+        terms = trimmed.isEmpty() ? Collections.<String> emptyList()
+                : Collections.unmodifiableList(
+                        Arrays.asList(trimmed.split("\\s+")));
+    }
+
+    public List<Object> getPropertyIds() {
+        return propertyIds;
+    }
+
+    /**
+     * @return the search text as given
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the words of the search text, empty if there are none
+     */
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    @Override
+    public boolean passesFilter(Object itemId, Item item)
+            throws UnsupportedOperationException {
+        List<String> values = new ArrayList<String>(propertyIds.size());
+        for (Object propertyId : propertyIds) {
+            Property<?> p = item.getItemProperty(propertyId);
+            if (p != null && p.getValue() != null) {
+                values.add(p.getValue().toString().toUpperCase(Locale.ROOT));
+            }
+        }
+        for (String term : terms) {
+            String upper = term.toUpperCase(Locale.ROOT);
+            boolean found = false;
+            for (String value : values) {
+                if (value.contains(upper)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean appliesToProperty(Object propertyId) {
+        return propertyIds.contains(propertyId);
+    }
+
+    @Override
+    public int hashCode() {
+        return propertyIds.hashCode() * 31 + text.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !getClass().equals(obj.getClass())) {
+            return false;
+        }
+        FullTextFilter o = (FullTextFilter) obj;
+        return propertyIds.equals(o.propertyIds) && text.equals(o.text);
+    }
+
+    @Override
+    public String toString() {
+        return propertyIds + " MATCH " + text;
+    }
+}
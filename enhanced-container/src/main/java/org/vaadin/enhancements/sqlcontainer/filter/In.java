@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.Item;
+import com.vaadin.data.Property;
+
+/**
+ * A filter that accepts the items whose property value equals any of the given
+ * values, translated to SQL as {@code column IN (?, ?, ...)}.
+ *
+ * Null values never match, as in SQL. Duplicate values are ignored and two
+ * filters with the same values in a different order are equal.
+ */
+public final class In implements Filter {
+    private static final long serialVersionUID = 2409517265391731624L;
+
+    private final Object propertyId;
+    private final Set<Object> values;
+
+    /**
+     * @param propertyId
+     *            the property to compare
+     * @param values
+     *            the accepted values, none of which may be null
+     */
+    public In(Object propertyId, Collection<?> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Values must be given.");
+        }
+        Set<Object> set = new LinkedHashSet<Object>(values.size());
+        for (Object value : values) {
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "In does not accept null values.");
+            }
+            set.add(value);
+        }
+        this.propertyId = propertyId;
+        this.values = Collections.unmodifiableSet(set);
+    }
+
+    /**
+     * @param propertyId
+     *            the property to compare
+     * @param values
+     *            the accepted values, none of which may be null
+     */
+    public In(Object propertyId, Object... values) {
+        this(propertyId, Arrays.asList(values));
+    }
+
+    public Object getPropertyId() {
+        return propertyId;
+    }
+
+    /**
+     * @return the accepted values without duplicates, in the order they were
+     *         given
+     */
+    public Set<Object> getValues() {
+        return values;
+    }
+
+    @Override
+    public boolean passesFilter(Object itemId, Item item)
+            throws UnsupportedOperationException {
+        Property<?> p = item.getItemProperty(propertyId);
+        if (p == null) {
+            return false;
+        }
+        Object value = p.getValue();
+        return value != null && values.contains(value);
+    }
+
+    @Override
+    public boolean appliesToProperty(Object propertyId) {
+        return this.propertyId != null && this.propertyId.equals(propertyId);
+    }
+
+    @Override
+    public int hashCode() {
+        return (propertyId == null ? 0 : propertyId.hashCode()) * 31
+                + values.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !getClass().equals(obj.getClass())) {
+            return false;
+        }
+        In o = (In) obj;
+        return (propertyId == null ? o.propertyId == null
+                : propertyId.equals(o.propertyId)) && values.equals(o.values);
+    }
+
+    @Override
+    public String toString() {
+        return propertyId + " IN " + values;
+    }
+}
@@ -21,6 +21,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
 
@@ -33,9 +34,19 @@ import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
  */
 public abstract class AbstractTransactionalQuery implements Serializable {
 
+    /**
+     * The default number of idle prepared statements kept per connection:
+     * statements are not cached unless a size is set.
+     */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 0;
+
     private JDBCConnectionPool connectionPool;
     private transient Connection activeConnection;
 
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+
     AbstractTransactionalQuery() {
     }
 
@@ -167,6 +178,117 @@ public abstract class AbstractTransactionalQuery implements Serializable {
         return connectionPool.reserveConnection();
     }
 
+    /**
+     * Returns the pool from which connections are reserved. Connections
+     * reserved directly from the pool are not part of the transactions of this
+     * query.
+     *
+     * @return the connection pool
+     */
+    protected JDBCConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Prepares a statement on the given connection, reusing an idle statement
+     * with the same SQL text previously prepared on that connection if one is
+     * cached. Closing the returned statement returns it to the cache of the
+     * connection.
+     *
+     * @param conn
+     *            the connection to prepare the statement on
+     * @param sql
+     *            the SQL text of the statement
+     * @return a prepared statement
+     * @throws SQLException
+     *             if preparing the statement fails
+     */
+    protected PreparedStatement prepareStatement(Connection conn, String sql)
+            throws SQLException {
+        return prepareStatement(conn, sql, null);
+    }
+
+    /**
+     * Prepares a statement returning the given generated key columns, reusing
+     * an idle statement with the same SQL text and key columns previously
+     * prepared on the connection if one is cached.
+     *
+     * @param conn
+     *            the connection to prepare the statement on
+     * @param sql
+     *            the SQL text of the statement
+     * @param generatedKeyColumns
+     *            the names of the generated key columns to return, or null
+     * @return a prepared statement
+     * @throws SQLException
+     *             if preparing the statement fails
+     * @see #prepareStatement(Connection, String)
+     */
+    protected PreparedStatement prepareStatement(Connection conn, String sql,
+            String[] generatedKeyColumns) throws SQLException {
+        if (statementCacheSize <= 0) {
+            if (generatedKeyColumns == null) {
+                return conn.prepareStatement(sql);
+            }
+            return conn.prepareStatement(sql, generatedKeyColumns);
+        }
+        StatementCache cache = StatementCache.forConnection(connectionPool,
+                conn, statementCacheSize);
+        PreparedStatement pstmt = cache.take(sql, generatedKeyColumns);
+        if (pstmt != null) {
+            statementCacheHits.incrementAndGet();
+            return pstmt;
+        }
+        statementCacheMisses.incrementAndGet();
+        return cache.prepare(sql, generatedKeyColumns);
+    }
+
+    /**
+     * Sets the number of idle prepared statements kept for reuse per pooled
+     * connection. Statements are cached by SQL text, independently of any
+     * caching done by the JDBC driver. A connection shared by several queries
+     * keeps as many statements as the largest size set for any of them.
+     *
+     * The cached statements stay open while their connection is idle in the
+     * pool, until the connection is closed or the pool is garbage collected.
+     * Statements are not cached by default.
+     *
+     * @param statementCacheSize
+     *            the number of statements to keep, or 0 to prepare a new
+     *            statement for every execution
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException(
+                    "Statement cache size must not be negative");
+        }
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * @return the number of idle prepared statements kept per connection, 0 if
+     *         statements are not cached
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * @return the number of statements of this query served from a statement
+     *         cache
+     */
+    public long getStatementCacheHits() {
+        return statementCacheHits.get();
+    }
+
+    /**
+     * @return the number of statements of this query that had to be prepared
+     *         while statement caching was enabled
+     */
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.get();
+    }
+
     protected boolean isInTransaction() {
         return activeConnection != null;
     }
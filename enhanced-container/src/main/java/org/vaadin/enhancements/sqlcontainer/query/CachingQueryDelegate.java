@@ -0,0 +1,348 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+import com.vaadin.data.Container.Filter;
+import org.vaadin.enhancements.sqlcontainer.RowItem;
+
+/**
+ * A QueryDelegate that serves row counts and pages of results from a
+ * {@link QueryResultCache} shared with other containers, and forwards
+ * everything else to the wrapped delegate.
+ *
+ * <p>
+ * Results are cached per data source (the table of a {@link TableQuery} or the
+ * query string of a {@link FreeformQuery}), filters, ordering, offset and page
+ * length, so containers showing the same view share the same cache entries.
+ * When rows stored or removed through this delegate are committed, the cached
+ * results of the data source are invalidated in all caches. Changes made
+ * through other delegates invalidate the caches when the SQLContainer making
+ * them has cache flush notifications enabled.
+ *
+ * <p>
+ * Pages served from the cache are snapshots. They have no Statement, and
+ * reading them does not require a database connection: a transaction is only
+ * begun on the wrapped delegate when a query actually has to be run.
+ *
+ * <p>
+ * SQLContainer finds a wrapped {@link TableQuery} with {@link #unwrap} and
+ * runs its streaming, size estimation, batched commits and row lookups on it
+ * directly, bypassing the cache.
+ */
+@SuppressWarnings("serial")
+public class CachingQueryDelegate
+        implements QueryDelegate, QueryDelegate.RowIdChangeNotifier {
+
+    private final QueryDelegate delegate;
+    private final QueryResultCache cache;
+    private final String dataSourceId;
+
+    private List<Filter> filters;
+    private List<OrderBy> orderBys;
+
+    /*
+     * A transaction requested by the caller is begun on the wrapped delegate
+     * only when it is needed.
+     */
+    private boolean inTransaction;
+    private boolean delegateInTransaction;
+    private boolean modified;
+
+    /**
+     * Creates a caching delegate using the data source identifier of the given
+     * TableQuery or FreeformQuery.
+     *
+     * @param delegate
+     *            the delegate running the queries
+     * @param cache
+     *            the shared cache
+     */
+    public CachingQueryDelegate(QueryDelegate delegate,
+            QueryResultCache cache) {
+        this(delegate, cache, QueryResultCache.getDataSourceId(delegate));
+    }
+
+    /**
+     * Creates a caching delegate.
+     *
+     * @param delegate
+     *            the delegate running the queries
+     * @param cache
+     *            the shared cache
+     * @param dataSourceId
+     *            identifies the data queried by the delegate. Delegates with
+     *            the same identifier, filters and ordering must return the
+     *            same results.
+     */
+    public CachingQueryDelegate(QueryDelegate delegate, QueryResultCache cache,
+            String dataSourceId) {
+        if (delegate == null || cache == null) {
+            throw new IllegalArgumentException(
+                    "Delegate and cache cannot be null.");
+        }
+        if (dataSourceId == null) {
+            throw new IllegalArgumentException(
+                    "A data source identifier is required for "
+                            + delegate.getClass().getName());
+        }
+        this.delegate = delegate;
+        this.cache = cache;
+        this.dataSourceId = dataSourceId;
+    }
+
+    public QueryDelegate getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the wrapped delegate for running queries on it directly,
+     * bypassing the cache. If a transaction has been begun on this delegate,
+     * it is begun on the wrapped delegate, so that the queries run within it.
+     *
+     * @param modifying
+     *            true if rows are changed through the wrapped delegate, so
+     *            that the cached results of the data source are invalidated
+     *            when the transaction is committed
+     * @return the innermost wrapped delegate
+     * @throws SQLException
+     *             if beginning the transaction fails
+     */
+    public QueryDelegate getDelegateForDirectAccess(boolean modifying)
+            throws SQLException {
+        ensureTransaction();
+        if (modifying) {
+            modified = true;
+        }
+        if (delegate instanceof CachingQueryDelegate) {
+            return ((CachingQueryDelegate) delegate)
+                    .getDelegateForDirectAccess(modifying);
+        }
+        return delegate;
+    }
+
+    /**
+     * Returns the delegate wrapped by caching delegates, or the given delegate
+     * if it is not a caching one.
+     *
+     * @param qd
+     *            a query delegate, may be null
+     * @return the innermost wrapped delegate
+     */
+    public static QueryDelegate unwrap(QueryDelegate qd) {
+        while (qd instanceof CachingQueryDelegate) {
+            qd = ((CachingQueryDelegate) qd).getDelegate();
+        }
+        return qd;
+    }
+
+    public QueryResultCache getCache() {
+        return cache;
+    }
+
+    public String getDataSourceId() {
+        return dataSourceId;
+    }
+
+    @Override
+    public int getCount() throws SQLException {
+        QueryResultCache.Key key = new QueryResultCache.Key(dataSourceId,
+                filters, null, -1, -1);
+        Integer count = cache.getCount(key);
+        if (count != null) {
+            getLogger().log(Level.FINER, "Count served from cache");
+            return count;
+        }
+        long generation = cache.getGeneration(dataSourceId);
+        ensureTransaction();
+        int c = delegate.getCount();
+        if (!modified) {
+            cache.putCount(key, c, generation);
+        }
+        return c;
+    }
+
+    @Override
+    public ResultSet getResults(int offset, int pagelength)
+            throws SQLException {
+        QueryResultCache.Key key = new QueryResultCache.Key(dataSourceId,
+                filters, orderBys, offset, pagelength);
+        ResultSet cached = cache.getPage(key);
+        if (cached != null) {
+            getLogger().log(Level.FINER, "Results served from cache");
+            return cached;
+        }
+        long generation = cache.getGeneration(dataSourceId);
+        ensureTransaction();
+        ResultSet rs = delegate.getResults(offset, pagelength);
+        CachedRowSet page;
+        try {
+            page = RowSetProvider.newFactory().createCachedRowSet();
+            page.populate(rs);
+            page.beforeFirst();
+        } finally {
+            Statement statement = rs.getStatement();
+            if (statement != null) {
+                statement.close();
+            }
+            rs.close();
+        }
+        /* Uncommitted changes of this transaction must not be shared */
+        if (!modified) {
+            cache.putPage(key, page, generation);
+        }
+        return QueryResultCache.openCursor(page);
+    }
+
+    @Override
+    public boolean implementationRespectsPagingLimits() {
+        return delegate.implementationRespectsPagingLimits();
+    }
+
+    @Override
+    public void setFilters(List<Filter> filters)
+            throws UnsupportedOperationException {
+        delegate.setFilters(filters);
+        this.filters = filters == null ? null : new ArrayList<Filter>(filters);
+    }
+
+    @Override
+    public void setOrderBy(List<OrderBy> orderBys)
+            throws UnsupportedOperationException {
+        delegate.setOrderBy(orderBys);
+        this.orderBys = orderBys == null ? null
+                : new ArrayList<OrderBy>(orderBys);
+    }
+
+    @Override
+    public int storeRow(RowItem row)
+            throws UnsupportedOperationException, SQLException {
+        ensureTransaction();
+        modified = true;
+        return delegate.storeRow(row);
+    }
+
+    @Override
+    public boolean removeRow(RowItem row)
+            throws UnsupportedOperationException, SQLException {
+        ensureTransaction();
+        modified = true;
+        return delegate.removeRow(row);
+    }
+
+    @Override
+    public void beginTransaction() throws SQLException {
+        if (inTransaction) {
+            throw new IllegalStateException("A transaction is already active!");
+        }
+        inTransaction = true;
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        try {
+            if (delegateInTransaction) {
+                delegateInTransaction = false;
+                delegate.commit();
+            }
+        } finally {
+            inTransaction = false;
+            if (modified) {
+                modified = false;
+                QueryResultCache.invalidateAll(dataSourceId);
+            }
+        }
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        inTransaction = false;
+        modified = false;
+        if (delegateInTransaction) {
+            delegateInTransaction = false;
+            delegate.rollback();
+        }
+    }
+
+    @Override
+    public List<String> getPrimaryKeyColumns() {
+        return delegate.getPrimaryKeyColumns();
+    }
+
+    @Override
+    public boolean containsRowWithKey(Object... keys) throws SQLException {
+        ensureTransaction();
+        return delegate.containsRowWithKey(keys);
+    }
+
+    /**
+     * Begins the transaction requested by the caller on the wrapped delegate,
+     * if that has not been done yet.
+     */
+    private void ensureTransaction() throws SQLException {
+        if (inTransaction && !delegateInTransaction) {
+            delegate.beginTransaction();
+            delegateInTransaction = true;
+        }
+    }
+
+    @Override
+    public void addRowIdChangeListener(RowIdChangeListener listener) {
+        if (delegate instanceof RowIdChangeNotifier) {
+            ((RowIdChangeNotifier) delegate).addRowIdChangeListener(listener);
+        }
+    }
+
+    /**
+     * @deprecated As of 7.0, replaced by
+     *             {@link #addRowIdChangeListener(RowIdChangeListener)}
+     **/
+    @Override
+    @Deprecated
+    public void addListener(RowIdChangeListener listener) {
+        addRowIdChangeListener(listener);
+    }
+
+    @Override
+    public void removeRowIdChangeListener(RowIdChangeListener listener) {
+        if (delegate instanceof RowIdChangeNotifier) {
+            ((RowIdChangeNotifier) delegate)
+                    .removeRowIdChangeListener(listener);
+        }
+    }
+
+    /**
+     * @deprecated As of 7.0, replaced by
+     *             {@link #removeRowIdChangeListener(RowIdChangeListener)}
+     **/
+    @Override
+    @Deprecated
+    public void removeListener(RowIdChangeListener listener) {
+        removeRowIdChangeListener(listener);
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(CachingQueryDelegate.class.getName());
+    }
+}
@@ -152,7 +152,7 @@ public class FreeformQuery extends AbstractTransactionalQuery
                 ResultSet rs = null;
                 Connection c = getConnection();
                 try {
-                    pstmt = c.prepareStatement(sh.getQueryString());
+                    pstmt = prepareStatement(c, sh.getQueryString());
                     sh.setParameterValuesToStatement(pstmt);
                     rs = pstmt.executeQuery();
                     if (rs.next()) {
@@ -221,8 +221,8 @@ public class FreeformQuery extends AbstractTransactionalQuery
                 try {
                     StatementHelper sh = ((FreeformStatementDelegate) delegate)
                             .getQueryStatement(offset, pagelength);
-                    PreparedStatement pstmt = getConnection()
-                            .prepareStatement(sh.getQueryString());
+                    PreparedStatement pstmt = prepareStatement(getConnection(),
+                            sh.getQueryString());
                     sh.setParameterValuesToStatement(pstmt);
                     return pstmt.executeQuery();
                 } catch (UnsupportedOperationException e) {
@@ -426,7 +426,7 @@ public class FreeformQuery extends AbstractTransactionalQuery
                     ResultSet rs = null;
                     Connection c = getConnection();
                     try {
-                        pstmt = c.prepareStatement(sh.getQueryString());
+                        pstmt = prepareStatement(c, sh.getQueryString());
                         sh.setParameterValuesToStatement(pstmt);
                         rs = pstmt.executeQuery();
                         contains = rs.next();
@@ -55,4 +55,21 @@ public class OrderBy implements Serializable {
     public boolean isAscending() {
         return isAscending;
     }
+
+    @Override
+    public int hashCode() {
+        return (column == null ? 0 : column.hashCode()) * 31
+                + (isAscending ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || !(OrderBy.class.equals(obj.getClass()))) {
+            return false;
+        }
+        OrderBy o = (OrderBy) obj;
+        return isAscending == o.isAscending
+                && (column == null ? o.column == null
+                        : column.equals(o.column));
+    }
 }
@@ -0,0 +1,423 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.rowset.CachedRowSet;
+
+import com.vaadin.data.Container.Filter;
+
+/**
+ * A bounded, thread safe cache of query results, shared by any number of
+ * {@link CachingQueryDelegate}s, typically those of all sessions of an
+ * application. Each entry is either a row count or an immutable snapshot of a
+ * page of results, identified by the data source (the table or query string),
+ * the filters, the ordering, the offset and the page length.
+ *
+ * <p>
+ * Entries expire after a configurable time to live. When the total number of
+ * cached rows exceeds the configured maximum, the least recently used entries
+ * are evicted. All entries of a data source are invalidated when changes to it
+ * are committed, either through a CachingQueryDelegate or by an SQLContainer
+ * sending cache flush notifications.
+ *
+ * <p>
+ * A cache must only be used for the data of one database. Caches are
+ * identified by name; a deserialized reference to a cache resolves to the
+ * live cache with the same name.
+ */
+public final class QueryResultCache implements Serializable {
+    private static final long serialVersionUID = 4619837054427780235L;
+
+    /** All live caches, for invalidation and deserialization */
+    private static final Map<String, WeakReference<QueryResultCache>> instances = new HashMap<String, WeakReference<QueryResultCache>>();
+
+    private final String name;
+    private final int maxRows;
+    private final long timeToLive;
+
+    /*
+     * The fields below are guarded by this cache. The generation of a data
+     * source is increased each time it is invalidated, so that results read
+     * before the invalidation are not stored after it.
+     */
+    private final transient LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(
+            16, 0.75f, true);
+    private final transient Map<String, Long> generations = new HashMap<String, Long>();
+    private transient int cachedRows;
+
+    /**
+     * Creates a new cache, or returns the existing live cache with the same
+     * name.
+     *
+     * @param name
+     *            unique name of the cache
+     * @param maxRows
+     *            the maximum total number of rows in the cached pages
+     * @param timeToLiveMillis
+     *            time in milliseconds after which an entry expires
+     * @return the cache
+     */
+    public static QueryResultCache getInstance(String name, int maxRows,
+            long timeToLiveMillis) {
+        if (name == null) {
+            throw new IllegalArgumentException("Cache name cannot be null.");
+        }
+        if (maxRows < 0 || timeToLiveMillis < 0) {
+            throw new IllegalArgumentException(
+                    "Cache limits cannot be negative.");
+        }
+        synchronized (instances) {
+            WeakReference<QueryResultCache> ref = instances.get(name);
+            QueryResultCache cache = ref == null ? null : ref.get();
+            if (cache == null) {
+                cache = new QueryResultCache(name, maxRows, timeToLiveMillis);
+                instances.put(name, new WeakReference<QueryResultCache>(cache));
+            }
+            return cache;
+        }
+    }
+
+    private QueryResultCache(String name, int maxRows, long timeToLive) {
+        this.name = name;
+        this.maxRows = maxRows;
+        this.timeToLive = timeToLive;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    /**
+     * Invalidates all entries of the given data source.
+     *
+     * @param dataSource
+     *            identifier of the data source as returned by
+     *            {@link #getDataSourceId(QueryDelegate)}
+     */
+    public synchronized void invalidate(String dataSource) {
+        Long generation = generations.get(dataSource);
+        generations.put(dataSource, generation == null ? 1 : generation + 1);
+        for (Iterator<Map.Entry<Key, Entry>> i = entries.entrySet()
+                .iterator(); i.hasNext();) {
+            Map.Entry<Key, Entry> e = i.next();
+            if (e.getKey().dataSource.equals(dataSource)) {
+                cachedRows -= e.getValue().rows;
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        Set<String> dataSources = new HashSet<String>(generations.keySet());
+        for (Key key : entries.keySet()) {
+            dataSources.add(key.dataSource);
+        }
+        for (String dataSource : dataSources) {
+            invalidate(dataSource);
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Invalidates the entries of the given data source in all live caches.
+     *
+     * @param dataSource
+     *            identifier of the data source as returned by
+     *            {@link #getDataSourceId(QueryDelegate)}
+     */
+    public static void invalidateAll(String dataSource) {
+        if (dataSource == null) {
+            return;
+        }
+        List<QueryResultCache> caches = new ArrayList<QueryResultCache>();
+        synchronized (instances) {
+            for (Iterator<WeakReference<QueryResultCache>> i = instances
+                    .values().iterator(); i.hasNext();) {
+                QueryResultCache cache = i.next().get();
+                if (cache == null) {
+                    i.remove();
+                } else {
+                    caches.add(cache);
+                }
+            }
+        }
+        for (QueryResultCache cache : caches) {
+            cache.invalidate(dataSource);
+        }
+    }
+
+    /**
+     * Returns the identifier of the data source of a query delegate, under
+     * which its results are cached: the full table name for a TableQuery and
+     * the query string for a FreeformQuery.
+     *
+     * @param delegate
+     *            the query delegate, possibly wrapped in a
+     *            CachingQueryDelegate
+     * @return the identifier, or null if results of the delegate cannot be
+     *         shared
+     */
+    public static String getDataSourceId(QueryDelegate delegate) {
+        if (delegate instanceof CachingQueryDelegate) {
+            return ((CachingQueryDelegate) delegate).getDataSourceId();
+        } else if (delegate instanceof TableQuery) {
+            return "table:" + ((TableQuery) delegate).getFullTableName();
+        } else if (delegate instanceof FreeformQuery) {
+            return "query:" + ((FreeformQuery) delegate).getQueryString();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the current generation of a data source, to be passed to
+     * {@link #putPage(Key, CachedRowSet, long)} or
+     * {@link #putCount(Key, int, long)} when storing results read after this
+     * call.
+     */
+    synchronized long getGeneration(String dataSource) {
+        Long generation = generations.get(dataSource);
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * Returns a new cursor over a cached page, or null if the page is not
+     * cached.
+     */
+    ResultSet getPage(Key key) throws SQLException {
+        CachedRowSet page;
+        synchronized (this) {
+            Entry e = getEntry(key);
+            if (e == null || e.page == null) {
+                return null;
+            }
+            page = e.page;
+        }
+        return openCursor(page);
+    }
+
+    /**
+     * Returns a new cursor over a page, positioned before the first row.
+     * Closing the cursor does not release the rows of the page, which a
+     * CachedRowSet sharing the rows would do. The cursor has no Statement.
+     */
+    static ResultSet openCursor(CachedRowSet page) throws SQLException {
+        final ResultSet cursor = page.createShared();
+        cursor.beforeFirst();
+        return (ResultSet) Proxy.newProxyInstance(
+                QueryResultCache.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+                    private boolean closed;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (name.equals("close")) {
+                            closed = true;
+                            return null;
+                        } else if (name.equals("isClosed")) {
+                            return closed;
+                        } else if (name.equals("getStatement")) {
+                            return null;
+                        } else if (closed) {
+                            throw new SQLException("The result set is closed.");
+                        }
+                        try {
+                            return method.invoke(cursor, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * @return the cached count, or null if the count is not cached
+     */
+    synchronized Integer getCount(Key key) {
+        Entry e = getEntry(key);
+        return e == null ? null : e.count;
+    }
+
+    /**
+     * Stores a page, unless its data source has been invalidated since the
+     * given generation. The page must not be modified or moved afterwards.
+     */
+    synchronized void putPage(Key key, CachedRowSet page, long generation) {
+        put(key, new Entry(page, null, Math.max(1, page.size())),
+                generation);
+    }
+
+    /**
+     * Stores a count, unless its data source has been invalidated since the
+     * given generation.
+     */
+    synchronized void putCount(Key key, int count, long generation) {
+        put(key, new Entry(null, count, 1), generation);
+    }
+
+    private Entry getEntry(Key key) {
+        Entry e = entries.get(key);
+        if (e != null && e.expires < System.currentTimeMillis()) {
+            entries.remove(key);
+            cachedRows -= e.rows;
+            return null;
+        }
+        return e;
+    }
+
+    private void put(Key key, Entry entry, long generation) {
+        if (generation != getGeneration(key.dataSource)
+                || entry.rows > maxRows) {
+            return;
+        }
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            cachedRows -= old.rows;
+        }
+        cachedRows += entry.rows;
+        for (Iterator<Entry> i = entries.values().iterator(); cachedRows > maxRows
+                && i.hasNext();) {
+            cachedRows -= i.next().rows;
+            i.remove();
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return new SerializedForm(name, maxRows, timeToLive);
+    }
+
+    /** Serialized form, resolving to the live cache with the same name. */
+    private static final class SerializedForm implements Serializable {
+        private static final long serialVersionUID = -905612844379208316L;
+
+        private final String name;
+        private final int maxRows;
+        private final long timeToLive;
+
+        private SerializedForm(String name, int maxRows, long timeToLive) {
+            this.name = name;
+            this.maxRows = maxRows;
+            this.timeToLive = timeToLive;
+        }
+
+        private Object readResolve() throws ObjectStreamException {
+            return getInstance(name, maxRows, timeToLive);
+        }
+    }
+
+    private final class Entry {
+        private final CachedRowSet page;
+        private final Integer count;
+        private final int rows;
+        private final long expires;
+
+        private Entry(CachedRowSet page, Integer count, int rows) {
+            this.page = page;
+            this.count = count;
+            this.rows = rows;
+            expires = System.currentTimeMillis() + timeToLive;
+        }
+    }
+
+    /**
+     * Identifies a cached result. Filters are compared as a set, since their
+     * order does not change the result.
+     */
+    static final class Key {
+        private final String dataSource;
+        private final Set<Filter> filters;
+        private final List<OrderBy> orderBys;
+        private final int offset;
+        private final int length;
+
+        /**
+         * @param offset
+         *            offset of the page, or -1 for a count
+         * @param length
+         *            length of the page, or -1 for a count
+         */
+        Key(String dataSource, List<Filter> filters, List<OrderBy> orderBys,
+                int offset, int length) {
+            this.dataSource = dataSource;
+            this.filters = filters == null ? Collections.<Filter> emptySet()
+                    : new HashSet<Filter>(filters);
+            this.orderBys = orderBys == null
+                    ? Collections.<OrderBy> emptyList()
+                    : new ArrayList<OrderBy>(orderBys);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = dataSource.hashCode();
+            result = 31 * result + filters.hashCode();
+            result = 31 * result + orderBys.hashCode();
+            result = 31 * result + offset;
+            return 31 * result + length;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return offset == other.offset && length == other.length
+                    && dataSource.equals(other.dataSource)
+                    && filters.equals(other.filters)
+                    && orderBys.equals(other.orderBys);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * A bounded LRU cache of the idle prepared statements of one pooled
+ * connection, keyed by SQL text and generated key columns.
+ *
+ * Statements are handed out as proxies whose {@link PreparedStatement#close()}
+ * clears the parameters and returns the statement to the cache instead of
+ * closing it. Result sets obtained from such a statement are proxied as well,
+ * so that {@link ResultSet#getStatement()} returns the proxy. A statement is
+ * only closed for real when it is evicted or when a statement for the same key
+ * is already idle.
+ *
+ * Caches are kept per connection pool, which is only weakly referenced, so the
+ * caches of a pool and their statements are dropped with the pool. Within a
+ * pool, caches are looked up by connection identity and dropped once their
+ * connection is found closed. This works with pools that hand out the same
+ * physical connection repeatedly, such as
+ * {@link com.vaadin.data.util.sqlcontainer.connection.SimpleJDBCConnectionPool}
+ * ; pools that hand out a new connection object every time get no reuse.
+ */
+final class StatementCache {
+
+    private static final Map<JDBCConnectionPool, Map<Connection, StatementCache>> caches = new WeakHashMap<JDBCConnectionPool, Map<Connection, StatementCache>>();
+
+    private final Connection connection;
+    private final LinkedHashMap<String, PreparedStatement> idle = new LinkedHashMap<String, PreparedStatement>(
+            16, 0.75f, true);
+    private int maxSize;
+
+    private StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Returns the statement cache of a connection reserved from a pool,
+     * creating it if needed. The cache keeps at least the given number of
+     * idle statements; a connection shared by several queries uses the
+     * largest size any of them asked for.
+     */
+    static StatementCache forConnection(JDBCConnectionPool pool,
+            Connection connection, int size) {
+        StatementCache cache;
+        synchronized (caches) {
+            Map<Connection, StatementCache> poolCaches = caches.get(pool);
+            if (poolCaches == null) {
+                poolCaches = new IdentityHashMap<Connection, StatementCache>();
+                caches.put(pool, poolCaches);
+            }
+            cache = poolCaches.get(connection);
+            if (cache == null) {
+                purgeClosedConnections(poolCaches);
+                cache = new StatementCache(connection);
+                poolCaches.put(connection, cache);
+            }
+        }
+        synchronized (cache) {
+            cache.maxSize = Math.max(cache.maxSize, size);
+        }
+        return cache;
+    }
+
+    private static void purgeClosedConnections(
+            Map<Connection, StatementCache> poolCaches) {
+        Iterator<Connection> i = poolCaches.keySet().iterator();
+        while (i.hasNext()) {
+            boolean closed;
+            try {
+                closed = i.next().isClosed();
+            } catch (SQLException e) {
+                closed = true;
+            }
+            if (closed) {
+                i.remove();
+            }
+        }
+    }
+
+    /**
+     * Takes an idle statement for the SQL text and generated key columns out of
+     * the cache.
+     *
+     * @return a statement proxy, or null if no statement was idle
+     */
+    synchronized PreparedStatement take(String sql,
+            String[] generatedKeyColumns) throws SQLException {
+        String key = key(sql, generatedKeyColumns);
+        PreparedStatement statement = idle.remove(key);
+        if (statement == null) {
+            return null;
+        }
+        if (statement.isClosed()) {
+            return null;
+        }
+        return wrap(key, statement);
+    }
+
+    /**
+     * Prepares a new statement whose proxy returns it to this cache when
+     * closed.
+     */
+    PreparedStatement prepare(String sql, String[] generatedKeyColumns)
+            throws SQLException {
+        PreparedStatement statement;
+        if (generatedKeyColumns == null) {
+            statement = connection.prepareStatement(sql);
+        } else {
+            statement = connection.prepareStatement(sql, generatedKeyColumns);
+        }
+        return wrap(key(sql, generatedKeyColumns), statement);
+    }
+
+    private void release(String key, PreparedStatement statement)
+            throws SQLException {
+        try {
+            statement.clearParameters();
+            /* A failed batch may leave statements queued */
+            statement.clearBatch();
+        } catch (SQLException e) {
+            statement.close();
+            return;
+        }
+        PreparedStatement evicted = null;
+        synchronized (this) {
+            if (idle.containsKey(key) || maxSize <= 0) {
+                evicted = statement;
+            } else {
+                idle.put(key, statement);
+                if (idle.size() > maxSize) {
+                    Iterator<PreparedStatement> i = idle.values().iterator();
+                    evicted = i.next();
+                    i.remove();
+                }
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+    }
+
+    private static String key(String sql, String[] generatedKeyColumns) {
+        if (generatedKeyColumns == null) {
+            return sql;
+        }
+        return Arrays.toString(generatedKeyColumns) + "\n" + sql;
+    }
+
+    private PreparedStatement wrap(String key, PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new StatementHandler(key, statement));
+    }
+
+    /**
+     * Forwards calls to a cached statement until the proxy is closed.
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final String key;
+        private final PreparedStatement statement;
+        private final List<ResultSet> resultSets = new ArrayList<ResultSet>();
+        private boolean closed;
+
+        private StatementHandler(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if (name.equals("close") && method.getParameterCount() == 0) {
+                if (!closed) {
+                    closed = true;
+                    closeResultSets();
+                    release(key, statement);
+                }
+                return null;
+            } else if (name.equals("isClosed")) {
+                return closed || statement.isClosed();
+            } else if (closed) {
+                throw new SQLException("The statement is closed.");
+            }
+            Object result;
+            try {
+                result = method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof ResultSet) {
+                addResultSet((ResultSet) result);
+                return wrapResultSet((ResultSet) result, proxy);
+            }
+            return result;
+        }
+
+        /**
+         * Remembers a result set to close with the statement, forgetting the
+         * ones already closed.
+         */
+        private void addResultSet(ResultSet rs) throws SQLException {
+            Iterator<ResultSet> i = resultSets.iterator();
+            while (i.hasNext()) {
+                if (i.next().isClosed()) {
+                    i.remove();
+                }
+            }
+            resultSets.add(rs);
+        }
+
+        private void closeResultSets() {
+            for (ResultSet rs : resultSets) {
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                    getLogger().log(Level.FINE,
+                            "Failed to close a cached statement's result set",
+                            e);
+                }
+            }
+            resultSets.clear();
+        }
+    }
+
+    private static ResultSet wrapResultSet(final ResultSet rs,
+            final Object statement) {
+        return (ResultSet) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) throws Throwable {
+                        if (method.getName().equals("getStatement")) {
+                            return statement;
+                        }
+                        try {
+                            return method.invoke(rs, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                });
+    }
+
+    private static final Logger getLogger() {
+        return Logger.getLogger(StatementCache.class.getName());
+    }
+}
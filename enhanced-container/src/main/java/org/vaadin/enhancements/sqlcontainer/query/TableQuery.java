@@ -22,13 +22,20 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EventObject;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -70,6 +77,21 @@ public class TableQuery extends AbstractTransactionalQuery
         implements QueryDelegate, QueryDelegate.RowIdChangeNotifier {
 
     private static final Logger LOGGER = Logger.getLogger(TableQuery.class.getName());
+
+    /**
+     * Label of the column holding the row count in the results of
+     * {@link #getResultsWithCount(int, int)}.
+     */
+    public static final String ROW_COUNT_COLUMN = "sqlcontainer_row_count";
+
+    /** Maximum number of statements sent to the database in one batch */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * Whether the driver reports the update count of each statement of a
+     * batch, null until a batch that needed the counts has been executed.
+     */
+    private transient Boolean batchCountsReported;
     
     /**
      * Table name (without catalog or schema information).
@@ -97,6 +119,22 @@ public class TableQuery extends AbstractTransactionalQuery
     /** SQLGenerator instance to use for generating queries */
     private SQLGenerator sqlGenerator;
 
+    /**
+     * Keyset (seek) pagination. When enabled, remembered sort-key tuples are
+     * used to seek directly to the start of a page instead of skipping rows
+     * with an offset.
+     */
+    private boolean keysetPagingEnabled = false;
+    private final KeysetBookmarks keysetBookmarks = new KeysetBookmarks();
+    /**
+     * Upper case names of the columns declared NOT NULL, the only columns the
+     * seek predicate can be used on.
+     */
+    private Set<String> notNullColumns = new HashSet<String>();
+
+    /** Whether UPDATE statements only write the modified columns */
+    private boolean updateOnlyModifiedColumns = false;
+
     /** Row ID change listeners */
     private LinkedList<RowIdChangeListener> rowIdChangeListeners;
     /** Row ID change events, stored until commit() is called */
@@ -347,6 +385,129 @@ public class TableQuery extends AbstractTransactionalQuery
         return count;
     }
 
+    /**
+     * Counts the rows matching the current filters, but at most
+     * <code>limit</code> of them. This is cheaper than {@link #getCount()} on
+     * large tables, as the database can stop reading rows at the limit.
+     *
+     * @param limit
+     *            the maximum number of rows to count
+     * @return the number of matching rows, or <code>limit</code> if there are
+     *         at least that many
+     * @throws SQLException
+     */
+    public int getCappedCount(int limit) throws SQLException {
+        getLogger().log(Level.FINE, "Fetching count of at most {0} rows...",
+                limit);
+        return (int) queryNumber(sqlGenerator
+                .generateCappedCountQuery(getFullTableName(), filters, limit));
+    }
+
+    /**
+     * Returns the number of rows in the table as estimated by the statistics
+     * of the database. Statistics cover the whole table, so no estimate is
+     * available while filters are set.
+     *
+     * @return the estimated number of rows, or -1 if no estimate is available
+     * @throws UnsupportedOperationException
+     *             if the SQL generator cannot read estimates
+     * @throws SQLException
+     */
+    public long getEstimatedCount() throws SQLException {
+        if (filters != null && !filters.isEmpty()) {
+            return -1;
+        }
+        getLogger().log(Level.FINE, "Fetching row estimate...");
+        long estimate = queryNumber(sqlGenerator
+                .generateRowEstimateQuery(catalogName, schemaName, tableName));
+        return estimate < 0 ? -1 : estimate;
+    }
+
+    /**
+     * Counts the rows matching the given filters like {@link #getCount()}, but
+     * on a connection of its own, outside of any transaction of this query.
+     * Unlike the other methods of TableQuery, this may be called from another
+     * thread while the query is being used, e.g. to count rows in the
+     * background.
+     *
+     * @param filters
+     *            the filters, which must not be modified while counting
+     * @return the number of matching rows
+     * @throws SQLException
+     */
+    public int getCountDetached(List<Filter> filters) throws SQLException {
+        StatementHelper sh = sqlGenerator.generateSelectQuery(
+                getFullTableName(), filters, null, 0, 0, "COUNT(*)");
+        JDBCConnectionPool pool = getConnectionPool();
+        Connection connection = pool.reserveConnection();
+        PreparedStatement pstmt = null;
+        ResultSet r = null;
+        try {
+            pstmt = prepareStatement(connection, sh.getQueryString());
+            sh.setParameterValuesToStatement(pstmt);
+            getLogger().log(Level.FINE, "DB (detached) -> {0}",
+                    sh.getQueryString());
+            r = pstmt.executeQuery();
+            r.next();
+            int count = r.getInt(1);
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            return count;
+        } finally {
+            try {
+                try {
+                    if (r != null) {
+                        r.close();
+                    }
+                } finally {
+                    if (pstmt != null) {
+                        pstmt.close();
+                    }
+                }
+            } finally {
+                pool.releaseConnection(connection);
+            }
+        }
+    }
+
+    /**
+     * Runs a query returning a single number in its first column, in the
+     * current transaction or in a transaction of its own.
+     *
+     * @return the number, or -1 if the query returned no rows or null
+     */
+    private long queryNumber(StatementHelper sh) throws SQLException {
+        boolean shouldCloseTransaction = false;
+        if (!isInTransaction()) {
+            shouldCloseTransaction = true;
+            beginTransaction();
+        }
+        ResultSet r = null;
+        long number = -1;
+        try {
+            r = executeQuery(sh);
+            if (r.next()) {
+                number = r.getLong(1);
+                if (r.wasNull()) {
+                    number = -1;
+                }
+            }
+        } finally {
+            try {
+                if (r != null) {
+                    // Do not release connection, it is done in commit()
+                    releaseConnection(null, r.getStatement(), r);
+                }
+            } finally {
+                if (shouldCloseTransaction) {
+                    commit();
+                }
+            }
+        }
+        return number;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -358,23 +519,300 @@ public class TableQuery extends AbstractTransactionalQuery
             throws SQLException {
         StatementHelper sh;
         /*
-         * If no ordering is explicitly set, results will be ordered by the
-         * first primary key column.
+         * Results are ordered by the requested columns followed by the primary
+         * key column(s), which makes the order total and therefore the paging
+         * deterministic. If no ordering is explicitly set, results are ordered
+         * by the primary key.
          */
-        if (orderBys == null || orderBys.isEmpty()) {
-            List<OrderBy> ob = new ArrayList<OrderBy>();
-            for (int i = 0; i < primaryKeyColumns.size(); i++) {
-                ob.add(new OrderBy(primaryKeyColumns.get(i), true));
-            }
-            sh = sqlGenerator.generateSelectQuery(getFullTableName(), filters,
-                    ob, offset, pagelength, null);
+        List<OrderBy> ob = getEffectiveOrderBys();
+        Object[] keyset = null;
+        if (isKeysetApplicable() && offset > 0 && pagelength > 0) {
+            keyset = keysetBookmarks.get(offset);
+        }
+        if (keyset != null) {
+            sh = sqlGenerator.generateKeysetSelectQuery(getFullTableName(),
+                    filters, ob, keyset, pagelength, null);
         } else {
             sh = sqlGenerator.generateSelectQuery(getFullTableName(), filters,
-                    orderBys, offset, pagelength, null);
+                    ob, offset, pagelength, null);
         }
         return executeQuery(sh);
     }
 
+    /**
+     * Fetches rows like {@link #getResults(int, int)}, with an additional
+     * column labeled {@link #ROW_COUNT_COLUMN} that holds the number of rows
+     * matching the filters, as returned by {@link #getCount()}. This way the
+     * first page and the row count are fetched with a single query. The count
+     * is not available if the query returns no rows. Keyset pagination is not
+     * used for these queries.
+     *
+     * <p>
+     * Like {@link #getResults(int, int)}, this must be called within a
+     * transaction, and the caller is responsible for closing the result set
+     * and its statement.
+     *
+     * @param offset
+     *            the offset of the first row
+     * @param pagelength
+     *            the number of rows
+     * @return the rows with the row count
+     * @throws UnsupportedOperationException
+     *             if the SQL generator cannot count the rows in the same query
+     * @throws SQLException
+     */
+    public ResultSet getResultsWithCount(int offset, int pagelength)
+            throws SQLException {
+        StatementHelper sh = sqlGenerator.generateSelectWithCountQuery(
+                getFullTableName(), filters, getEffectiveOrderBys(), offset,
+                pagelength, ROW_COUNT_COLUMN);
+        return executeQuery(sh);
+    }
+
+    /**
+     * Fetches the row with the given primary key, provided that it matches the
+     * current filters. Like {@link #getResults(int, int)}, this must be called
+     * within a transaction, and the caller is responsible for closing the
+     * result set and its statement.
+     *
+     * @param keys
+     *            the primary key values of the row
+     * @return a result set containing the row, or no rows
+     * @throws SQLException
+     */
+    public ResultSet getRowByKey(Object... keys) throws SQLException {
+        List<Filter> filtersAndKeys = new ArrayList<Filter>();
+        if (filters != null) {
+            filtersAndKeys.addAll(filters);
+        }
+        int ix = 0;
+        for (String colName : primaryKeyColumns) {
+            filtersAndKeys.add(new Equal(colName, keys[ix]));
+            ix++;
+        }
+        StatementHelper sh = sqlGenerator.generateSelectQuery(
+                getFullTableName(), filtersAndKeys, null, 0, 0, null);
+        return executeQuery(sh);
+    }
+
+    /**
+     * Opens a forward-only, read-only cursor over all rows matching the
+     * current filters, in the same order as {@link #getResults(int, int)}.
+     * The cursor runs on a connection of its own, outside of any transaction
+     * of this query, and the JDBC driver is asked to read the rows
+     * {@code fetchSize} at a time instead of all at once, so that any number
+     * of rows can be iterated in constant memory. The caller must close the
+     * cursor.
+     *
+     * @param primaryKeyOnly
+     *            true to select only the primary key columns, false to select
+     *            all columns
+     * @param fetchSize
+     *            the number of rows the driver should read at a time
+     * @return the cursor
+     * @throws SQLException
+     */
+    public RowCursor openCursor(boolean primaryKeyOnly, int fetchSize)
+            throws SQLException {
+        String toSelect = null;
+        if (primaryKeyOnly) {
+            StringBuilder columns = new StringBuilder();
+            for (String pk : primaryKeyColumns) {
+                if (columns.length() > 0) {
+                    columns.append(", ");
+                }
+                columns.append(sqlGenerator.quote(pk));
+            }
+            toSelect = columns.toString();
+        }
+        StatementHelper sh = sqlGenerator.generateSelectQuery(
+                getFullTableName(), filters, getEffectiveOrderBys(), 0, 0,
+                toSelect);
+        JDBCConnectionPool pool = getConnectionPool();
+        Connection connection = pool.reserveConnection();
+        RowCursor cursor = new RowCursor(pool, connection);
+        try {
+            /* Some drivers, e.g. PostgreSQL, only stream within transactions */
+            if (connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                cursor.restoreAutoCommit = true;
+            }
+            cursor.statement = connection.prepareStatement(
+                    sh.getQueryString(), ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+            cursor.statement
+                    .setFetchSize(sqlGenerator.getCursorFetchSize(fetchSize));
+            sh.setParameterValuesToStatement(cursor.statement);
+            getLogger().log(Level.FINE, "DB (cursor) -> {0}",
+                    sh.getQueryString());
+            cursor.resultSet = cursor.statement.executeQuery();
+            return cursor;
+        } catch (SQLException e) {
+            cursor.close();
+            throw e;
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the ordering actually used when fetching results: the currently
+     * set OrderBys followed by any primary key columns not already included.
+     *
+     * @return list of OrderBys defining a total order of the rows
+     */
+    private List<OrderBy> getEffectiveOrderBys() {
+        List<OrderBy> ob = new ArrayList<OrderBy>();
+        if (orderBys != null) {
+            ob.addAll(orderBys);
+        }
+        for (String pk : primaryKeyColumns) {
+            boolean included = false;
+            for (OrderBy o : ob) {
+                if (pk.equals(o.getColumn())) {
+                    included = true;
+                    break;
+                }
+            }
+            if (!included) {
+                ob.add(new OrderBy(pk, true));
+            }
+        }
+        return ob;
+    }
+
+    /**
+     * Enables or disables keyset (seek) pagination.
+     *
+     * <p>
+     * With keyset pagination enabled, a page whose preceding row is known
+     * (see {@link #addKeysetBookmark(int, Object...)}) is fetched with a
+     * {@code WHERE} condition on the sort columns instead of an offset. This
+     * lets the database start reading from an index at the right row rather
+     * than scanning and discarding all the rows before the page, which makes
+     * pages deep into large tables as cheap as the first one. Pages without a
+     * bookmark are fetched using an offset as usual.
+     *
+     * <p>
+     * SQLContainer records the bookmarks automatically while it fetches pages.
+     * The seek condition cannot match null sort values, and databases differ
+     * in where they sort nulls. Pages are therefore always fetched with an
+     * offset unless the table metadata reports every sort column as NOT
+     * NULL.
+     *
+     * @param enabled
+     *            true to enable keyset pagination
+     */
+    public void setKeysetPagingEnabled(boolean enabled) {
+        keysetPagingEnabled = enabled;
+        keysetBookmarks.clear();
+    }
+
+    /**
+     * Returns whether keyset (seek) pagination is enabled.
+     *
+     * @return true if keyset pagination is enabled
+     * @see #setKeysetPagingEnabled(boolean)
+     */
+    public boolean isKeysetPagingEnabled() {
+        return keysetPagingEnabled;
+    }
+
+    /**
+     * Enables or disables writing only the modified columns of a row when it
+     * is updated. By default all persistent columns are written, which sends
+     * large unchanged values such as LOBs back to the database and may fire
+     * column triggers needlessly. When enabled, the UPDATE statements set only
+     * the columns whose properties have been modified, and all columns if
+     * none is flagged as modified. The row is still identified by its primary
+     * key and version column.
+     *
+     * @param updateOnlyModifiedColumns
+     *            true to write only the modified columns
+     */
+    public void setUpdateOnlyModifiedColumns(
+            boolean updateOnlyModifiedColumns) {
+        this.updateOnlyModifiedColumns = updateOnlyModifiedColumns;
+    }
+
+    /**
+     * @return true if only the modified columns of a row are written when it
+     *         is updated
+     * @see #setUpdateOnlyModifiedColumns(boolean)
+     */
+    public boolean isUpdateOnlyModifiedColumns() {
+        return updateOnlyModifiedColumns;
+    }
+
+    /**
+     * Returns the names of the columns making up the sort key of a row under
+     * the current ordering, i.e. the sort columns followed by the primary key
+     * tie-breaker. Keyset bookmarks must give one value for each of these
+     * columns, in the same order.
+     *
+     * @return list of column names
+     */
+    public List<String> getKeysetColumns() {
+        List<String> columns = new ArrayList<String>();
+        for (OrderBy o : getEffectiveOrderBys()) {
+            columns.add(o.getColumn());
+        }
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Remembers the sort key of the row immediately preceding the given
+     * offset, so that a page starting at that offset can be fetched with a
+     * seek instead of an offset. Bookmarks containing null values are ignored.
+     * All bookmarks are discarded when the filters or the ordering change.
+     *
+     * @param offset
+     *            the offset of the row following the bookmarked row
+     * @param keyValues
+     *            values of the {@link #getKeysetColumns() keyset columns} of
+     *            the row at {@code offset - 1}
+     */
+    public void addKeysetBookmark(int offset, Object... keyValues) {
+        if (!isKeysetApplicable() || offset <= 0 || keyValues == null
+                || keyValues.length != getKeysetColumns().size()) {
+            return;
+        }
+        for (Object value : keyValues) {
+            if (value == null) {
+                return;
+            }
+        }
+        keysetBookmarks.put(offset, keyValues);
+    }
+
+    /**
+     * Checks whether pages can be fetched with a seek under the current
+     * ordering. The seek predicate never matches rows whose sort values are
+     * null, and databases differ in where they sort nulls, so pages are
+     * fetched with an offset if any sort column may contain nulls.
+     */
+    private boolean isKeysetApplicable() {
+        if (!keysetPagingEnabled) {
+            return false;
+        }
+        for (OrderBy o : getEffectiveOrderBys()) {
+            if (!notNullColumns.contains(o.getColumn().toUpperCase())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discards all remembered keyset bookmarks. This should be called whenever
+     * the contents of the table may have changed, since a bookmark then no
+     * longer necessarily precedes the same offset.
+     */
+    public void clearKeysetBookmarks() {
+        keysetBookmarks.clear();
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -408,7 +846,7 @@ public class TableQuery extends AbstractTransactionalQuery
             result = executeUpdateReturnKeys(sh, row);
         } else {
             setVersionColumnFlagInProperty(row);
-            sh = sqlGenerator.generateUpdateQuery(getFullTableName(), row);
+            sh = generateUpdateQuery(row);
             result = executeUpdate(sh);
         }
         if (versionColumn != null && result == 0) {
@@ -419,6 +857,14 @@ public class TableQuery extends AbstractTransactionalQuery
         return result;
     }
 
+    private StatementHelper generateUpdateQuery(RowItem row) {
+        if (updateOnlyModifiedColumns) {
+            return sqlGenerator.generateModifiedColumnsUpdateQuery(
+                    getFullTableName(), row);
+        }
+        return sqlGenerator.generateUpdateQuery(getFullTableName(), row);
+    }
+
     private void setVersionColumnFlagInProperty(RowItem row) {
         ColumnProperty versionProperty = (ColumnProperty) row
                 .getItemProperty(versionColumn);
@@ -451,7 +897,7 @@ public class TableQuery extends AbstractTransactionalQuery
         ResultSet generatedKeys = null;
         connection = getConnection();
         try {
-            pstmt = connection.prepareStatement(sh.getQueryString(),
+            pstmt = prepareStatement(connection, sh.getQueryString(),
                     primaryKeyColumns.toArray(new String[0]));
             sh.setParameterValuesToStatement(pstmt);
             getLogger().log(Level.FINE, "DB -> {0}", sh.getQueryString());
@@ -484,10 +930,17 @@ public class TableQuery extends AbstractTransactionalQuery
     public void setFilters(List<Filter> filters)
             throws UnsupportedOperationException {
         if (filters == null) {
+            if (this.filters != null) {
+                keysetBookmarks.clear();
+            }
             this.filters = null;
             return;
         }
-        this.filters = Collections.unmodifiableList(filters);
+        if (!filters.equals(this.filters)) {
+            keysetBookmarks.clear();
+        }
+        this.filters = Collections
+                .unmodifiableList(new ArrayList<Filter>(filters));
     }
 
     /*
@@ -501,10 +954,17 @@ public class TableQuery extends AbstractTransactionalQuery
     public void setOrderBy(List<OrderBy> orderBys)
             throws UnsupportedOperationException {
         if (orderBys == null) {
+            if (this.orderBys != null) {
+                keysetBookmarks.clear();
+            }
             this.orderBys = null;
             return;
         }
-        this.orderBys = Collections.unmodifiableList(orderBys);
+        if (!orderBys.equals(this.orderBys)) {
+            keysetBookmarks.clear();
+        }
+        this.orderBys = Collections
+                .unmodifiableList(new ArrayList<OrderBy>(orderBys));
     }
 
     /*
@@ -647,7 +1107,7 @@ public class TableQuery extends AbstractTransactionalQuery
         Connection connection = getConnection();
         PreparedStatement pstmt = null;
         try {
-            pstmt = connection.prepareStatement(sh.getQueryString());
+            pstmt = prepareStatement(connection, sh.getQueryString());
             sh.setParameterValuesToStatement(pstmt);
             getLogger().log(Level.FINE, "DB -> {0}", sh.getQueryString());
             return pstmt.executeQuery();
@@ -673,7 +1133,7 @@ public class TableQuery extends AbstractTransactionalQuery
         Connection connection = null;
         try {
             connection = getConnection();
-            pstmt = connection.prepareStatement(sh.getQueryString());
+            pstmt = prepareStatement(connection, sh.getQueryString());
             sh.setParameterValuesToStatement(pstmt);
             getLogger().log(Level.FINE, "DB -> {0}", sh.getQueryString());
             int retval = pstmt.executeUpdate();
@@ -705,7 +1165,7 @@ public class TableQuery extends AbstractTransactionalQuery
         Connection connection = null;
         try {
             connection = getConnection();
-            pstmt = connection.prepareStatement(sh.getQueryString(),
+            pstmt = prepareStatement(connection, sh.getQueryString(),
                     primaryKeyColumns.toArray(new String[0]));
             sh.setParameterValuesToStatement(pstmt);
             getLogger().log(Level.FINE, "DB -> {0}", sh.getQueryString());
@@ -752,6 +1212,15 @@ public class TableQuery extends AbstractTransactionalQuery
                     }
                 }
                 tables.close();
+                rs = dbmd.getColumns(catalogName, schemaName, tableName, null);
+                Set<String> notNull = new HashSet<String>();
+                while (rs.next()) {
+                    if (rs.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls) {
+                        notNull.add(rs.getString("COLUMN_NAME").toUpperCase());
+                    }
+                }
+                rs.close();
+                notNullColumns = notNull;
                 rs = dbmd.getPrimaryKeys(catalogName, schemaName, tableName);
                 List<String> names = new ArrayList<String>();
                 while (rs.next()) {
@@ -862,6 +1331,406 @@ public class TableQuery extends AbstractTransactionalQuery
         return false;
     }
 
+    /**
+     * Removes the given rows like {@link #removeRow(RowItem)}, but with as few
+     * statements as possible. Without a version column, rows with a single
+     * primary key column are removed with DELETE statements listing up to
+     * {@link SQLGenerator#getMaxInListSize()} keys each. Otherwise, or if the
+     * SQL generator does not support this, the DELETE statements of the rows
+     * are sent to the database in batches. With a version column the count of
+     * each statement is checked; if the driver does not report the counts of
+     * a batch, the statements are executed one at a time instead. Must be
+     * called within a transaction.
+     *
+     * @param rows
+     *            the rows to remove
+     * @throws OptimisticLockException
+     *             if a version column is set and a row has been changed by
+     *             someone else
+     * @throws SQLException
+     *             if a row could not be removed
+     */
+    public void removeRows(Collection<RowItem> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        if (canRemoveRowsByIds()) {
+            List<RowId> ids = new ArrayList<RowId>(rows.size());
+            for (RowItem row : rows) {
+                ids.add(row.getId());
+            }
+            try {
+                removeRowsByKeys(ids);
+                return;
+            } catch (UnsupportedOperationException e) {
+                getLogger().log(Level.FINE,
+                        "Removing rows by key lists is not supported", e);
+            }
+        }
+        List<RowItem> list = new ArrayList<RowItem>(rows);
+        List<StatementHelper> statements = new ArrayList<StatementHelper>(
+                list.size());
+        for (RowItem row : list) {
+            statements.add(sqlGenerator.generateDeleteQuery(getFullTableName(),
+                    primaryKeyColumns, versionColumn, row));
+        }
+        int[] counts = executeBatch(statements, versionColumn != null);
+        for (int ix = 0; ix < counts.length; ix++) {
+            if (counts[ix] == 1 || counts[ix] == Statement.SUCCESS_NO_INFO) {
+                continue;
+            }
+            if (versionColumn != null) {
+                throw new OptimisticLockException(
+                        "Someone else changed the row that was being deleted.",
+                        list.get(ix).getId());
+            }
+            throw new SQLException(
+                    "Removal failed for row with ID: " + list.get(ix).getId());
+        }
+    }
+
+    /**
+     * Checks whether rows can be removed knowing only their ids with
+     * {@link #removeRowsByIds(Collection)}, i.e. whether the table has a
+     * single primary key column and no version column to check.
+     *
+     * @return true if rows can be removed by their ids
+     */
+    public boolean canRemoveRowsByIds() {
+        return versionColumn == null && primaryKeyColumns.size() == 1
+                && !primaryKeyColumns.get(0).equalsIgnoreCase("rownum");
+    }
+
+    /**
+     * Removes the rows with the given ids without reading the rows, with
+     * DELETE statements listing up to {@link SQLGenerator#getMaxInListSize()}
+     * keys each. Must be called within a transaction.
+     *
+     * @param ids
+     *            the ids of the rows to remove
+     * @throws UnsupportedOperationException
+     *             if rows {@link #canRemoveRowsByIds() cannot be removed by
+     *             their ids} or the SQL generator does not support removing
+     *             rows by key lists
+     * @throws SQLException
+     *             if a row could not be removed
+     */
+    public void removeRowsByIds(Collection<RowId> ids) throws SQLException {
+        if (!canRemoveRowsByIds()) {
+            throw new UnsupportedOperationException(
+                    "Rows with a version column or a composite primary key"
+                            + " cannot be removed by their ids");
+        }
+        if (!ids.isEmpty()) {
+            removeRowsByKeys(ids);
+        }
+    }
+
+    private void removeRowsByKeys(Collection<RowId> ids) throws SQLException {
+        String keyColumn = primaryKeyColumns.get(0);
+        int maxKeys = sqlGenerator.getMaxInListSize();
+        List<Object> keys = new ArrayList<Object>(
+                Math.min(ids.size(), maxKeys));
+        Iterator<RowId> i = ids.iterator();
+        while (i.hasNext()) {
+            keys.add(i.next().getId()[0]);
+            if (keys.size() == maxKeys || !i.hasNext()) {
+                int removed = executeUpdate(sqlGenerator
+                        .generateDeleteByKeysQuery(getFullTableName(),
+                                keyColumn, keys));
+                if (removed != keys.size()) {
+                    throw new SQLException("Removal failed for "
+                            + (keys.size() - removed) + " of " + keys.size()
+                            + " rows");
+                }
+                keys.clear();
+            }
+        }
+    }
+
+    /**
+     * Updates the given existing rows like {@link #storeRow(RowItem)}, sending
+     * the UPDATE statements to the database in batches of statements with the
+     * same SQL. With a version column the count of each statement is checked;
+     * if the driver does not report the counts of a batch, the statements are
+     * executed one at a time instead. Must be called within a transaction.
+     *
+     * @param rows
+     *            the rows to update
+     * @return the number of rows updated by the statement of each row, in the
+     *         order of the rows. Without a version column, drivers that cannot
+     *         tell the count of each statement of a batch return
+     *         {@link Statement#SUCCESS_NO_INFO}.
+     * @throws OptimisticLockException
+     *             if a version column is set and a row has been changed by
+     *             someone else
+     * @throws SQLException
+     */
+    public int[] updateRows(List<RowItem> rows) throws SQLException {
+        List<StatementHelper> statements = new ArrayList<StatementHelper>(
+                rows.size());
+        for (RowItem row : rows) {
+            setVersionColumnFlagInProperty(row);
+            statements.add(generateUpdateQuery(row));
+        }
+        int[] counts = executeBatch(statements, versionColumn != null);
+        if (versionColumn != null) {
+            for (int ix = 0; ix < counts.length; ix++) {
+                if (counts[ix] == 0) {
+                    throw new OptimisticLockException(
+                            "Someone else changed the row that was being updated.",
+                            rows.get(ix).getId());
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Inserts the given new rows like {@link #storeRow(RowItem)}. Rows that
+     * have a value for every primary key column are sent to the database in
+     * batches. The generated keys of the other rows are needed and cannot be
+     * read portably from a batch, so they are inserted one at a time, but a
+     * statement is prepared only once for consecutive rows with the same SQL.
+     * Must be called within a transaction.
+     *
+     * @param rows
+     *            the rows to insert
+     * @throws SQLException
+     */
+    public void insertRows(List<RowItem> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<RowItem> keyed = new ArrayList<RowItem>();
+        List<RowItem> generated = new ArrayList<RowItem>();
+        for (RowItem row : rows) {
+            (getKeyValues(row) != null ? keyed : generated).add(row);
+        }
+        insertRowsInBatches(keyed);
+        insertRowsReturningKeys(generated);
+    }
+
+    /**
+     * @return the values of the primary key columns of a row, or null if any
+     *         of them is not set
+     */
+    private Object[] getKeyValues(RowItem row) {
+        Object[] values = new Object[primaryKeyColumns.size()];
+        for (int ix = 0; ix < values.length; ix++) {
+            ColumnProperty cp = (ColumnProperty) row
+                    .getItemProperty(primaryKeyColumns.get(ix));
+            if (cp == null || cp.getValue() == null) {
+                return null;
+            }
+            values[ix] = cp.getValue();
+        }
+        return values;
+    }
+
+    private void insertRowsInBatches(List<RowItem> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<StatementHelper> statements = new ArrayList<StatementHelper>(
+                rows.size());
+        for (RowItem row : rows) {
+            setVersionColumnFlagInProperty(row);
+            statements.add(sqlGenerator.generateInsertQuery(getFullTableName(),
+                    row));
+        }
+        int[] counts = executeBatch(statements, versionColumn != null);
+        for (int ix = 0; ix < counts.length; ix++) {
+            RowItem row = rows.get(ix);
+            if (versionColumn != null && counts[ix] == 0) {
+                throw new OptimisticLockException(
+                        "Someone else changed the row that was being updated.",
+                        row.getId());
+            }
+            bufferedEvents.add(new RowIdChangeEvent(row.getId(),
+                    new RowId(getKeyValues(row))));
+        }
+    }
+
+    private void insertRowsReturningKeys(List<RowItem> rows)
+            throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Connection connection = getConnection();
+        PreparedStatement pstmt = null;
+        String sql = null;
+        try {
+            for (RowItem row : rows) {
+                setVersionColumnFlagInProperty(row);
+                StatementHelper sh = sqlGenerator
+                        .generateInsertQuery(getFullTableName(), row);
+                if (!sh.getQueryString().equals(sql)) {
+                    if (pstmt != null) {
+                        pstmt.close();
+                        pstmt = null;
+                    }
+                    sql = sh.getQueryString();
+                    pstmt = prepareStatement(connection, sql,
+                            primaryKeyColumns.toArray(new String[0]));
+                }
+                sh.setParameterValuesToStatement(pstmt);
+                getLogger().log(Level.FINE, "DB -> {0}", sql);
+                int result = pstmt.executeUpdate();
+                ResultSet genKeys = pstmt.getGeneratedKeys();
+                try {
+                    bufferedEvents.add(new RowIdChangeEvent(row.getId(),
+                            getNewRowId(row, genKeys)));
+                } finally {
+                    if (genKeys != null) {
+                        genKeys.close();
+                    }
+                }
+                if (versionColumn != null && result == 0) {
+                    throw new OptimisticLockException(
+                            "Someone else changed the row that was being updated.",
+                            row.getId());
+                }
+            }
+        } finally {
+            releaseConnection(connection, pstmt, null);
+        }
+    }
+
+    /**
+     * Executes the given update statements using the active connection,
+     * preparing each distinct query string once and sending its statements to
+     * the database in batches.
+     *
+     * @param statements
+     *            the statements to execute
+     * @param exactCounts
+     *            true if the count of each statement is needed. If the
+     *            driver reports {@link Statement#SUCCESS_NO_INFO} for the
+     *            statements of a batch, the batch is rolled back to a
+     *            savepoint and its statements are executed one at a time,
+     *            as are those of later batches.
+     * @return the update count of each statement, in the order of the
+     *         statements
+     * @throws SQLException
+     */
+    private int[] executeBatch(List<StatementHelper> statements,
+            boolean exactCounts) throws SQLException {
+        int[] counts = new int[statements.size()];
+        Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+        for (int ix = 0; ix < statements.size(); ix++) {
+            String sql = statements.get(ix).getQueryString();
+            List<Integer> group = groups.get(sql);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(sql, group);
+            }
+            group.add(ix);
+        }
+        Connection connection = getConnection();
+        try {
+            for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+                List<Integer> indexes = group.getValue();
+                PreparedStatement pstmt = prepareStatement(connection,
+                        group.getKey());
+                try {
+                    for (int from = 0; from < indexes.size();
+                            from += MAX_BATCH_SIZE) {
+                        List<Integer> chunk = indexes.subList(from,
+                                Math.min(from + MAX_BATCH_SIZE,
+                                        indexes.size()));
+                        int[] chunkCounts = executeBatch(connection, pstmt,
+                                group.getKey(), statements, chunk,
+                                exactCounts);
+                        for (int ix = 0; ix < chunk.size(); ix++) {
+                            counts[chunk.get(ix)] = chunkCounts[ix];
+                        }
+                    }
+                } finally {
+                    pstmt.close();
+                }
+            }
+        } finally {
+            releaseConnection(connection, null, null);
+        }
+        return counts;
+    }
+
+    /**
+     * Executes one batch of statements with the same SQL.
+     *
+     * @return the update count of each statement of the batch
+     */
+    private int[] executeBatch(Connection connection, PreparedStatement pstmt,
+            String sql, List<StatementHelper> statements,
+            List<Integer> indexes, boolean exactCounts) throws SQLException {
+        Savepoint savepoint = null;
+        if (exactCounts && batchCountsReported == null) {
+            savepoint = setSavepoint(connection);
+        }
+        if (exactCounts && !Boolean.TRUE.equals(batchCountsReported)
+                && savepoint == null) {
+            return executeOneByOne(pstmt, sql, statements, indexes);
+        }
+        getLogger().log(Level.FINE, "DB (batch of {1}) -> {0}",
+                new Object[] { sql, indexes.size() });
+        for (int ix : indexes) {
+            statements.get(ix).setParameterValuesToStatement(pstmt);
+            pstmt.addBatch();
+        }
+        int[] counts = pstmt.executeBatch();
+        if (savepoint != null) {
+            batchCountsReported = true;
+            for (int count : counts) {
+                if (count == Statement.SUCCESS_NO_INFO) {
+                    batchCountsReported = false;
+                }
+            }
+            if (!batchCountsReported) {
+                getLogger().log(Level.FINE,
+                        "The driver does not report batch update counts");
+                connection.rollback(savepoint);
+                return executeOneByOne(pstmt, sql, statements, indexes);
+            }
+            try {
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                getLogger().log(Level.FINE, "Failed to release a savepoint",
+                        e);
+            }
+        }
+        return counts;
+    }
+
+    private int[] executeOneByOne(PreparedStatement pstmt, String sql,
+            List<StatementHelper> statements, List<Integer> indexes)
+            throws SQLException {
+        getLogger().log(Level.FINE, "DB ({1} times) -> {0}",
+                new Object[] { sql, indexes.size() });
+        int[] counts = new int[indexes.size()];
+        for (int ix = 0; ix < counts.length; ix++) {
+            statements.get(indexes.get(ix))
+                    .setParameterValuesToStatement(pstmt);
+            counts[ix] = pstmt.executeUpdate();
+        }
+        return counts;
+    }
+
+    /**
+     * @return a new savepoint, or null if the connection does not support
+     *         savepoints
+     */
+    private static Savepoint setSavepoint(Connection connection) {
+        try {
+            return connection.setSavepoint();
+        } catch (SQLException e) {
+            getLogger().log(Level.FINE, "Savepoints are not supported", e);
+            return null;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -907,6 +1776,117 @@ public class TableQuery extends AbstractTransactionalQuery
         }
     }
 
+    /**
+     * Returns the zero-based position of the row with the given primary key
+     * among the rows matching the current filters, in the current sort order.
+     * The position is computed by the database, without transferring the rows
+     * preceding it.
+     *
+     * <p>
+     * If the SQL generator supports
+     * {@link SQLGenerator#generatePositionQuery(String, List, List, List)
+     * position queries}, a single query is used. Otherwise the sort-key values
+     * of the row are read first and the rows sorting before them are counted.
+     *
+     * @param keys
+     *            the primary key values of the row
+     * @return the position of the row, or -1 if no row with the given key
+     *         matches the filters
+     * @throws SQLException
+     * @throws UnsupportedOperationException
+     *             if the position cannot be computed because a sort column of
+     *             the row contains a null value
+     */
+    public int getRowPosition(Object... keys) throws SQLException {
+        List<Filter> keyFilters = new ArrayList<Filter>();
+        int ix = 0;
+        for (String colName : primaryKeyColumns) {
+            keyFilters.add(new Equal(colName, keys[ix]));
+            ix++;
+        }
+        List<OrderBy> ob = getEffectiveOrderBys();
+
+        boolean shouldCloseTransaction = false;
+        if (!isInTransaction()) {
+            shouldCloseTransaction = true;
+            beginTransaction();
+        }
+        try {
+            StatementHelper sh;
+            try {
+                sh = sqlGenerator.generatePositionQuery(getFullTableName(),
+                        filters, ob, keyFilters);
+            } catch (UnsupportedOperationException e) {
+                Object[] sortKey = getSortKey(keyFilters, ob);
+                if (sortKey == null) {
+                    return -1;
+                }
+                sh = sqlGenerator.generateCountBeforeQuery(getFullTableName(),
+                        filters, ob, sortKey);
+            }
+            ResultSet rs = null;
+            try {
+                rs = executeQuery(sh);
+                return rs.next() ? rs.getInt(1) : -1;
+            } finally {
+                if (rs != null) {
+                    // Do not release connection, it is done in commit()
+                    releaseConnection(null, rs.getStatement(), rs);
+                }
+            }
+        } finally {
+            if (shouldCloseTransaction) {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Reads the values of the sort columns of a single row. Must be called
+     * within a transaction.
+     *
+     * @param keyFilters
+     *            filters identifying the row
+     * @param ob
+     *            the ordering, whose columns are read
+     * @return the values in the order of {@code ob}, or null if the row does
+     *         not match the current filters
+     * @throws SQLException
+     * @throws UnsupportedOperationException
+     *             if any of the values is null
+     */
+    private Object[] getSortKey(List<Filter> keyFilters, List<OrderBy> ob)
+            throws SQLException {
+        List<Filter> filtersAndKeys = new ArrayList<Filter>();
+        if (filters != null) {
+            filtersAndKeys.addAll(filters);
+        }
+        filtersAndKeys.addAll(keyFilters);
+        StatementHelper sh = sqlGenerator.generateSelectQuery(
+                getFullTableName(), filtersAndKeys, null, 0, 0, "*");
+        ResultSet rs = null;
+        try {
+            rs = executeQuery(sh);
+            if (!rs.next()) {
+                return null;
+            }
+            Object[] values = new Object[ob.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = rs.getObject(ob.get(i).getColumn());
+                if (values[i] == null) {
+                    throw new UnsupportedOperationException(
+                            "Cannot position a row with a null sort value in column "
+                                    + ob.get(i).getColumn());
+                }
+            }
+            return values;
+        } finally {
+            if (rs != null) {
+                releaseConnection(null, rs.getStatement(), rs);
+            }
+        }
+    }
+
     /**
      * Custom writeObject to call rollback() if object is serialized.
      */
@@ -988,4 +1968,87 @@ public class TableQuery extends AbstractTransactionalQuery
     private static final Logger getLogger() {
         return Logger.getLogger(TableQuery.class.getName());
     }
+
+    /**
+     * A forward-only, read-only result set together with the statement and
+     * the connection it was read with, as returned by
+     * {@link TableQuery#openCursor(boolean, int)}. Closing the cursor closes
+     * the result set and returns the connection to the pool.
+     */
+    public static final class RowCursor implements AutoCloseable {
+        private final JDBCConnectionPool pool;
+        private final Connection connection;
+        private PreparedStatement statement;
+        private ResultSet resultSet;
+        private boolean restoreAutoCommit;
+        private boolean closed;
+
+        private RowCursor(JDBCConnectionPool pool, Connection connection) {
+            this.pool = pool;
+            this.connection = connection;
+        }
+
+        /**
+         * @return the result set of the cursor, positioned before the first
+         *         row when the cursor is opened
+         */
+        public ResultSet getResultSet() {
+            return resultSet;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                try {
+                    if (resultSet != null) {
+                        resultSet.close();
+                    }
+                } finally {
+                    if (statement != null) {
+                        statement.close();
+                    }
+                }
+            } finally {
+                try {
+                    /* Nothing was changed, so just end the transaction */
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                    }
+                    if (restoreAutoCommit) {
+                        connection.setAutoCommit(true);
+                    }
+                } finally {
+                    pool.releaseConnection(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bounded map of keyset bookmarks, keyed by the offset of the row
+     * following the bookmarked row. The least recently used bookmarks are
+     * dropped first.
+     */
+    private static class KeysetBookmarks
+            extends LinkedHashMap<Integer, Object[]> {
+        private static final int MAX_BOOKMARKS = 1000;
+
+        KeysetBookmarks() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<Integer, Object[]> eldest) {
+            return size() > MAX_BOOKMARKS;
+        }
+    }
 }
@@ -15,7 +15,10 @@
  */
 package org.vaadin.enhancements.sqlcontainer.query.generator;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -25,6 +28,9 @@ import org.vaadin.enhancements.sqlcontainer.RowItem;
 import org.vaadin.enhancements.sqlcontainer.SQLUtil;
 import org.vaadin.enhancements.sqlcontainer.TemporaryRowId;
 import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.InListStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.LikeStrategy;
 import org.vaadin.enhancements.sqlcontainer.query.generator.filter.QueryBuilder;
 import org.vaadin.enhancements.sqlcontainer.query.generator.filter.StringDecorator;
 
@@ -36,8 +42,46 @@ import org.vaadin.enhancements.sqlcontainer.query.generator.filter.StringDecorat
 @SuppressWarnings("serial")
 public class DefaultSQLGenerator implements SQLGenerator {
 
+    /**
+     * The maximum number of query templates remembered by a generator.
+     */
+    private static final int MAX_TEMPLATES = 256;
+
+    /**
+     * Whether a generator class overrides the deprecated
+     * {@link #generateLimits(StringBuffer, int, int)}.
+     */
+    private static final ClassValue<Boolean> overridesGenerateLimits = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overrides(type, "generateLimits", StringBuffer.class,
+                    int.class, int.class);
+        }
+    };
+
+    /**
+     * Whether a generator class overrides the deprecated
+     * {@link #generateColumnToValueMap(RowItem)} or
+     * {@link #generateRowIdentifiers(RowItem)}.
+     */
+    private static final ClassValue<Boolean> overridesValueMaps = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return overrides(type, "generateColumnToValueMap", RowItem.class)
+                    || overrides(type, "generateRowIdentifiers",
+                            RowItem.class);
+        }
+    };
+
     private Class<? extends StatementHelper> statementHelperClass = null;
 
+    private StringDecorator stringDecorator;
+    private LikeStrategy likeStrategy;
+    private FullTextStrategy fullTextStrategy;
+    private InListStrategy inListStrategy;
+
+    private transient Map<List<Object>, Object> templates;
+
     public DefaultSQLGenerator() {
 
     }
@@ -66,8 +110,7 @@ public class DefaultSQLGenerator implements SQLGenerator {
      *            the identifier (character) denoting the end of a quoted string
      */
     public DefaultSQLGenerator(String quoteStart, String quoteEnd) {
-        QueryBuilder
-                .setStringDecorator(new StringDecorator(quoteStart, quoteEnd));
+        stringDecorator = new StringDecorator(quoteStart, quoteEnd);
     }
 
     /**
@@ -99,6 +142,135 @@ public class DefaultSQLGenerator implements SQLGenerator {
             throw new IllegalArgumentException("Table name must be given.");
         }
         toSelect = toSelect == null ? "*" : toSelect;
+        boolean paged = isPagedSelect(offset, pagelength, toSelect);
+        if (paged && overridesGenerateLimits.get(getClass())) {
+            return generateSelectWithLimits(tableName, filters, orderBys,
+                    offset, pagelength, toSelect);
+        }
+        StatementHelper sh = getStatementHelper();
+        List<Object> signature = new ArrayList<Object>();
+        if (QueryBuilder.addFilterSignature(filters, signature, sh)) {
+            sh = getSelectTemplate(tableName, signature, orderBys, paged,
+                    toSelect, filters, sh);
+        } else {
+            sh = generateSelectTemplate(tableName, filters, orderBys, paged,
+                    toSelect);
+        }
+        if (paged) {
+            addLimitParameterValues(sh, offset, pagelength);
+        }
+        return sh;
+    }
+
+    /**
+     * Generates a paged SELECT query with the clause of a subclass that
+     * overrides {@link #generateLimits(StringBuffer, int, int)}. The clause
+     * holds the paging values, so the query is not remembered as a template.
+     */
+    @SuppressWarnings("deprecation")
+    private StatementHelper generateSelectWithLimits(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, int offset,
+            int pagelength, String toSelect) {
+        StatementHelper sh = generateSelectTemplate(tableName, filters,
+                orderBys, false, toSelect);
+        StringBuffer query = new StringBuffer(sh.getQueryString());
+        generateLimits(query, offset, pagelength);
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /**
+     * Returns a SELECT query with the filter parameter values bound to a
+     * statement helper, reusing the query string of a recently generated
+     * query whose filters have the same signature. The query is generated if
+     * there is none, and remembered if its parameter values are the bound
+     * ones.
+     *
+     * @see QueryBuilder#addFilterSignature(List, List, StatementHelper)
+     */
+    private StatementHelper getSelectTemplate(String tableName,
+            List<Object> signature, List<OrderBy> orderBys, boolean paged,
+            String toSelect, List<Filter> filters, StatementHelper sh) {
+        List<Object> key = Arrays.<Object> asList("SELECT",
+                QueryBuilder.getConfigurationVersion(), tableName, toSelect,
+                signature,
+                orderBys == null ? null : new ArrayList<OrderBy>(orderBys),
+                paged);
+        String queryString = (String) getTemplate(key);
+        if (queryString != null) {
+            sh.setQueryString(queryString);
+            return sh;
+        }
+        StatementHelper template = generateSelectTemplate(tableName, filters,
+                orderBys, paged, toSelect);
+        /*
+         * A subclass may bind values of its own, which would not be bound to
+         * the next query with the same signature
+         */
+        if (template.hasSameParameterValues(sh)) {
+            putTemplate(key, template.getQueryString());
+        }
+        return template;
+    }
+
+    private synchronized Object getTemplate(List<Object> key) {
+        return templates == null ? null : templates.get(key);
+    }
+
+    private synchronized void putTemplate(List<Object> key, Object template) {
+        if (templates == null) {
+            templates = new LinkedHashMap<List<Object>, Object>(16, 0.75f,
+                    true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<List<Object>, Object> eldest) {
+                    return size() > MAX_TEMPLATES;
+                }
+            };
+        }
+        templates.put(key, template);
+    }
+
+    /**
+     * Checks whether a SELECT query is restricted to a page of rows.
+     *
+     * @param offset
+     *            the offset of the first row
+     * @param pagelength
+     *            the number of rows, 0 for all rows
+     * @param toSelect
+     *            the selected columns or expression
+     * @return true if the query needs paging parameters
+     */
+    protected boolean isPagedSelect(int offset, int pagelength,
+            String toSelect) {
+        return pagelength != 0;
+    }
+
+    /**
+     * Generates a SELECT query and the values of its filter parameters. When
+     * paged, the paging values are left as parameter placeholders, to be
+     * supplied by {@link #addLimitParameterValues(StatementHelper, int, int)}
+     * . The query string is remembered and reused, with the parameter values
+     * bound by {@link QueryBuilder}, for queries whose filters have the same
+     * signature. It must therefore not depend on the values of the filters,
+     * and only filter parameter values may be added.
+     *
+     * @param tableName
+     *            the name of the table to select from
+     * @param filters
+     *            the filters, may be null
+     * @param orderBys
+     *            the sorting rules, may be null
+     * @param paged
+     *            true to add paging parameter placeholders
+     * @param toSelect
+     *            the selected columns or expression, not null
+     * @return a statement helper with the query and filter parameter values
+     */
+    protected StatementHelper generateSelectTemplate(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, boolean paged,
+            String toSelect) {
         StatementHelper sh = getStatementHelper();
         StringBuffer query = new StringBuffer();
         query.append("SELECT " + toSelect + " FROM ")
@@ -111,13 +283,40 @@ public class DefaultSQLGenerator implements SQLGenerator {
                 generateOrderBy(query, o, orderBys.indexOf(o) == 0);
             }
         }
-        if (pagelength != 0) {
-            generateLimits(query, offset, pagelength);
+        if (paged) {
+            generateLimitPlaceholders(query);
         }
         sh.setQueryString(query.toString());
         return sh;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateSelectWithCountQuery(java.lang.String, java.util.List,
+     * java.util.List, int, int, java.lang.String)
+     */
+    @Override
+    public StatementHelper generateSelectWithCountQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, int offset,
+            int pagelength, String countLabel) {
+        /*
+         * Window functions are not available in all the databases this
+         * generator supports, but an uncorrelated scalar subquery is, and it
+         * is evaluated only once.
+         */
+        StatementHelper count = generateSelectQuery(tableName, filters, null,
+                0, 0, "COUNT(*)");
+        StatementHelper sh = generateSelectQuery(tableName, filters, orderBys,
+                offset, pagelength,
+                SQLUtil.escapeSQL(tableName) + ".*, ("
+                        + count.getQueryString() + ") AS "
+                        + quote(countLabel));
+        sh.prependParameterValues(count);
+        return sh;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -127,41 +326,133 @@ public class DefaultSQLGenerator implements SQLGenerator {
      */
     @Override
     public StatementHelper generateUpdateQuery(String tableName, RowItem item) {
+        return generateUpdateQuery(tableName, item, false);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateModifiedColumnsUpdateQuery(java.lang.String,
+     * org.vaadin.enhancements.sqlcontainer.RowItem)
+     */
+    @Override
+    public StatementHelper generateModifiedColumnsUpdateQuery(String tableName,
+            RowItem item) {
+        return generateUpdateQuery(tableName, item, true);
+    }
+
+    private StatementHelper generateUpdateQuery(String tableName, RowItem item,
+            boolean modifiedColumnsOnly) {
         if (tableName == null || tableName.trim().equals("")) {
             throw new IllegalArgumentException("Table name must be given.");
         }
         if (item == null) {
             throw new IllegalArgumentException("Updated item must be given.");
         }
+        if (overridesValueMaps.get(getClass())) {
+            return generateUpdateQueryFromMaps(tableName, item,
+                    modifiedColumnsOnly);
+        }
+        List<?> ids = DmlTemplate.getPropertyIds(item);
+        ColumnProperty[] properties = DmlTemplate.getProperties(item, ids);
+        BitSet columns = new BitSet(properties.length);
+        BitSet identifiers = new BitSet(properties.length);
+        for (int i = 0; i < properties.length; i++) {
+            if (isExcludedColumn(properties[i])) {
+                continue;
+            }
+            if (properties[i].isPersistent()) {
+                columns.set(i);
+            }
+            if (properties[i].isRowIdentifier()) {
+                identifiers.set(i);
+            }
+        }
+        if (modifiedColumnsOnly) {
+            BitSet modified = new BitSet(properties.length);
+            for (int i = columns.nextSetBit(0); i >= 0; i = columns
+                    .nextSetBit(i + 1)) {
+                if (properties[i].isModified()) {
+                    modified.set(i);
+                }
+            }
+            /* Set all columns if none is flagged as modified */
+            if (!modified.isEmpty()) {
+                columns = modified;
+            }
+        }
+        List<Object> key = Arrays.<Object> asList("UPDATE",
+                QueryBuilder.getConfigurationVersion(), tableName, ids,
+                columns, identifiers);
+        DmlTemplate template = (DmlTemplate) getTemplate(key);
+        if (template == null) {
+            StringBuffer query = new StringBuffer();
+            query.append("UPDATE ").append(tableName).append(" SET");
+            /* Generate columns and values to update */
+            boolean first = true;
+            for (int i = columns.nextSetBit(0); i >= 0; i = columns
+                    .nextSetBit(i + 1)) {
+                query.append(first ? " " : ", ")
+                        .append(quote(ids.get(i))).append(" = ?");
+                first = false;
+            }
+            /* Generate identifiers for the row to be updated */
+            first = true;
+            for (int i = identifiers.nextSetBit(0); i >= 0; i = identifiers
+                    .nextSetBit(i + 1)) {
+                query.append(first ? " WHERE " : " AND ")
+                        .append(quote(ids.get(i))).append(" = ?");
+                first = false;
+            }
+            template = new DmlTemplate(query.toString(), toOrdinals(columns),
+                    toOrdinals(identifiers));
+            putTemplate(key, template);
+        }
+        return template.bind(getStatementHelper(), properties);
+    }
+
+    /**
+     * Generates an UPDATE query from the maps of a subclass that overrides
+     * {@link #generateColumnToValueMap(RowItem)} or
+     * {@link #generateRowIdentifiers(RowItem)}. The query is not remembered
+     * as a template, since the maps may differ from row to row.
+     */
+    @SuppressWarnings("deprecation")
+    private StatementHelper generateUpdateQueryFromMaps(String tableName,
+            RowItem item, boolean modifiedColumnsOnly) {
         StatementHelper sh = getStatementHelper();
         StringBuffer query = new StringBuffer();
         query.append("UPDATE ").append(tableName).append(" SET");
-
-        /* Generate column<->value and rowidentifiers map */
         Map<String, Object> columnToValueMap = generateColumnToValueMap(item);
         Map<String, Object> rowIdentifiers = generateRowIdentifiers(item);
-        /* Generate columns and values to update */
-        boolean first = true;
-        for (String column : columnToValueMap.keySet()) {
-            if (first) {
-                query.append(" " + QueryBuilder.quote(column) + " = ?");
-            } else {
-                query.append(", " + QueryBuilder.quote(column) + " = ?");
+        if (modifiedColumnsOnly) {
+            Map<String, Object> modified = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, Object> e : columnToValueMap.entrySet()) {
+                if (((ColumnProperty) item.getItemProperty(e.getKey()))
+                        .isModified()) {
+                    modified.put(e.getKey(), e.getValue());
+                }
+            }
+            /* Set all columns if none is flagged as modified */
+            if (!modified.isEmpty()) {
+                columnToValueMap = modified;
             }
-            sh.addParameterValue(columnToValueMap.get(column),
-                    item.getItemProperty(column).getType());
+        }
+        boolean first = true;
+        for (Map.Entry<String, Object> e : columnToValueMap.entrySet()) {
+            query.append(first ? " " : ", ").append(quote(e.getKey()))
+                    .append(" = ?");
+            sh.addParameterValue(e.getValue(),
+                    item.getItemProperty(e.getKey()).getType());
             first = false;
         }
-        /* Generate identifiers for the row to be updated */
         first = true;
-        for (String column : rowIdentifiers.keySet()) {
-            if (first) {
-                query.append(" WHERE " + QueryBuilder.quote(column) + " = ?");
-            } else {
-                query.append(" AND " + QueryBuilder.quote(column) + " = ?");
-            }
-            sh.addParameterValue(rowIdentifiers.get(column),
-                    item.getItemProperty(column).getType());
+        for (Map.Entry<String, Object> e : rowIdentifiers.entrySet()) {
+            query.append(first ? " WHERE " : " AND ")
+                    .append(quote(e.getKey())).append(" = ?");
+            sh.addParameterValue(e.getValue(),
+                    item.getItemProperty(e.getKey()).getType());
             first = false;
         }
         sh.setQueryString(query.toString());
@@ -187,35 +478,67 @@ public class DefaultSQLGenerator implements SQLGenerator {
             throw new IllegalArgumentException(
                     "Cannot generate an insert query for item already in database.");
         }
-        StatementHelper sh = getStatementHelper();
-        StringBuffer query = new StringBuffer();
-        query.append("INSERT INTO ").append(tableName).append(" (");
-
-        /* Generate column<->value map */
-        Map<String, Object> columnToValueMap = generateColumnToValueMap(item);
-        /* Generate column names for insert query */
-        boolean first = true;
-        for (String column : columnToValueMap.keySet()) {
-            if (!first) {
-                query.append(", ");
+        if (overridesValueMaps.get(getClass())) {
+            return generateInsertQueryFromMap(tableName, item);
+        }
+        List<?> ids = DmlTemplate.getPropertyIds(item);
+        ColumnProperty[] properties = DmlTemplate.getProperties(item, ids);
+        BitSet columns = new BitSet(properties.length);
+        for (int i = 0; i < properties.length; i++) {
+            if (!isExcludedColumn(properties[i])
+                    && properties[i].isPersistent()) {
+                columns.set(i);
             }
-            query.append(QueryBuilder.quote(column));
-            first = false;
         }
+        List<Object> key = Arrays.<Object> asList("INSERT",
+                QueryBuilder.getConfigurationVersion(), tableName, ids,
+                columns);
+        DmlTemplate template = (DmlTemplate) getTemplate(key);
+        if (template == null) {
+            StringBuffer query = new StringBuffer();
+            query.append("INSERT INTO ").append(tableName).append(" (");
+            StringBuffer values = new StringBuffer();
+            for (int i = columns.nextSetBit(0); i >= 0; i = columns
+                    .nextSetBit(i + 1)) {
+                if (values.length() > 0) {
+                    query.append(", ");
+                    values.append(", ");
+                }
+                query.append(quote(ids.get(i)));
+                values.append("?");
+            }
+            query.append(") VALUES (").append(values).append(")");
+            template = new DmlTemplate(query.toString(), toOrdinals(columns),
+                    new int[0]);
+            putTemplate(key, template);
+        }
+        return template.bind(getStatementHelper(), properties);
+    }
 
-        /* Generate values for insert query */
-        query.append(") VALUES (");
-        first = true;
-        for (String column : columnToValueMap.keySet()) {
-            if (!first) {
+    /**
+     * Generates an INSERT query from the map of a subclass that overrides
+     * {@link #generateColumnToValueMap(RowItem)}, without remembering it as a
+     * template.
+     */
+    @SuppressWarnings("deprecation")
+    private StatementHelper generateInsertQueryFromMap(String tableName,
+            RowItem item) {
+        StatementHelper sh = getStatementHelper();
+        StringBuffer query = new StringBuffer();
+        query.append("INSERT INTO ").append(tableName).append(" (");
+        StringBuffer values = new StringBuffer();
+        for (Map.Entry<String, Object> e : generateColumnToValueMap(item)
+                .entrySet()) {
+            if (values.length() > 0) {
                 query.append(", ");
+                values.append(", ");
             }
-            query.append("?");
-            sh.addParameterValue(columnToValueMap.get(column),
-                    item.getItemProperty(column).getType());
-            first = false;
+            query.append(quote(e.getKey()));
+            values.append("?");
+            sh.addParameterValue(e.getValue(),
+                    item.getItemProperty(e.getKey()).getType());
         }
-        query.append(")");
+        query.append(") VALUES (").append(values).append(")");
         sh.setQueryString(query.toString());
         return sh;
     }
@@ -242,41 +565,100 @@ public class DefaultSQLGenerator implements SQLGenerator {
             throw new IllegalArgumentException(
                     "Valid keyColumnNames must be provided.");
         }
-        StatementHelper sh = getStatementHelper();
-        StringBuffer query = new StringBuffer();
-        query.append("DELETE FROM ").append(tableName).append(" WHERE ");
-        int count = 1;
-        for (String keyColName : primaryKeyColumns) {
-            if ((this instanceof MSSQLGenerator
-                    || this instanceof OracleGenerator)
-                    && keyColName.equalsIgnoreCase("rownum")) {
-                count++;
-                continue;
+        if (versionColumn != null
+                && !item.getItemPropertyIds().contains(versionColumn)) {
+            throw new IllegalArgumentException(String.format(
+                    "Table '%s' does not contain version column '%s'.",
+                    tableName, versionColumn));
+        }
+        List<?> ids = DmlTemplate.getPropertyIds(item);
+        List<Object> key = Arrays.<Object> asList("DELETE",
+                QueryBuilder.getConfigurationVersion(), tableName, ids,
+                new ArrayList<String>(primaryKeyColumns), versionColumn);
+        DmlTemplate template = (DmlTemplate) getTemplate(key);
+        if (template == null) {
+            StringBuffer query = new StringBuffer();
+            query.append("DELETE FROM ").append(tableName).append(" WHERE ");
+            List<String> columns = new ArrayList<String>();
+            for (String keyColName : primaryKeyColumns) {
+                if ((this instanceof MSSQLGenerator
+                        || this instanceof OracleGenerator)
+                        && keyColName.equalsIgnoreCase("rownum")) {
+                    continue;
+                }
+                columns.add(keyColName);
             }
-            if (count > 1) {
-                query.append(" AND ");
+            if (versionColumn != null) {
+                columns.add(versionColumn);
             }
-            if (item.getItemProperty(keyColName).getValue() != null) {
-                query.append(QueryBuilder.quote(keyColName) + " = ?");
-                sh.addParameterValue(
-                        item.getItemProperty(keyColName).getValue(),
-                        item.getItemProperty(keyColName).getType());
+            int[] ordinals = new int[columns.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = ids.indexOf(columns.get(i));
+                if (ordinals[i] == -1) {
+                    throw new IllegalArgumentException(String.format(
+                            "Table '%s' does not contain key column '%s'.",
+                            tableName, columns.get(i)));
+                }
+                if (i > 0) {
+                    query.append(" AND ");
+                }
+                query.append(quote(columns.get(i)))
+                        .append(" = ?");
             }
-            count++;
+            /* Bound as identifiers, with the old values of key columns */
+            template = new DmlTemplate(query.toString(), new int[0],
+                    ordinals);
+            putTemplate(key, template);
         }
-        if (versionColumn != null) {
-            if (!item.getItemPropertyIds().contains(versionColumn)) {
-                throw new IllegalArgumentException(String.format(
-                        "Table '%s' does not contain version column '%s'.",
-                        tableName, versionColumn));
-            }
+        return template.bind(getStatementHelper(),
+                DmlTemplate.getProperties(item, ids));
+    }
+
+    /**
+     * Checks whether a column is never written or used to identify a row,
+     * such as the row number column added by the MSSQL and Oracle generators.
+     */
+    private boolean isExcludedColumn(ColumnProperty cp) {
+        /* Prevent "rownum" usage as a column name if MSSQL or ORACLE */
+        return (this instanceof MSSQLGenerator
+                || this instanceof OracleGenerator)
+                && cp.getPropertyId().equalsIgnoreCase("rownum");
+    }
 
-            query.append(String.format(" AND %s = ?",
-                    QueryBuilder.quote(versionColumn)));
-            sh.addParameterValue(item.getItemProperty(versionColumn).getValue(),
-                    item.getItemProperty(versionColumn).getType());
+    private static int[] toOrdinals(BitSet bits) {
+        int[] ordinals = new int[bits.cardinality()];
+        int n = 0;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            ordinals[n++] = i;
         }
+        return ordinals;
+    }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateDeleteByKeysQuery(java.lang.String, java.lang.String,
+     * java.util.List)
+     */
+    @Override
+    public StatementHelper generateDeleteByKeysQuery(String tableName,
+            String keyColumn, List<?> keys) {
+        if (tableName == null || tableName.trim().equals("")) {
+            throw new IllegalArgumentException("Table name must be given.");
+        }
+        if (keys == null || keys.isEmpty()) {
+            throw new IllegalArgumentException("Keys must be given.");
+        }
+        StatementHelper sh = getStatementHelper();
+        StringBuffer query = new StringBuffer();
+        query.append("DELETE FROM ").append(tableName).append(" WHERE ")
+                .append(quote(keyColumn)).append(" IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+            sh.addParameterValue(keys.get(i));
+        }
+        query.append(")");
         sh.setQueryString(query.toString());
         return sh;
     }
@@ -299,7 +681,7 @@ public class DefaultSQLGenerator implements SQLGenerator {
         } else {
             sb.append(", ");
         }
-        sb.append(QueryBuilder.quote(o.getColumn()));
+        sb.append(quote(o.getColumn()));
         if (o.isAscending()) {
             sb.append(" ASC");
         } else {
@@ -309,52 +691,72 @@ public class DefaultSQLGenerator implements SQLGenerator {
     }
 
     /**
-     * Generates the LIMIT and OFFSET clause.
+     * Generates the LIMIT and OFFSET clause with parameter placeholders.
      *
      * @param sb
      *            StringBuffer to which the clause is appended.
+     * @return StringBuffer with LIMIT and OFFSET clause added.
+     * @see #addLimitParameterValues(StatementHelper, int, int)
+     */
+    protected StringBuffer generateLimitPlaceholders(StringBuffer sb) {
+        sb.append(" LIMIT ? OFFSET ?");
+        return sb;
+    }
+
+    /**
+     * Adds the values of the parameters generated by
+     * {@link #generateLimitPlaceholders(StringBuffer)}.
+     *
+     * @param sh
+     *            the statement helper to add the values to
      * @param offset
      *            Value for offset.
      * @param pagelength
      *            Value for pagelength.
-     * @return StringBuffer with LIMIT and OFFSET clause added.
      */
-    protected StringBuffer generateLimits(StringBuffer sb, int offset,
+    protected void addLimitParameterValues(StatementHelper sh, int offset,
             int pagelength) {
-        sb.append(" LIMIT ").append(pagelength).append(" OFFSET ")
-                .append(offset);
-        return sb;
+        sh.addParameterValue(pagelength);
+        sh.addParameterValue(offset);
     }
 
+    /**
+     * Returns the values of the columns of a row that are written to the
+     * database, in property id order.
+     *
+     * @deprecated the generated statements bind the values of the row
+     *             directly. If a subclass overrides this method or
+     *             {@link #generateRowIdentifiers(RowItem)}, its INSERT and
+     *             UPDATE queries are generated from the returned maps
+     *             instead, and are not reused as templates.
+     */
+    @Deprecated
     protected Map<String, Object> generateColumnToValueMap(RowItem item) {
-        Map<String, Object> columnToValueMap = new HashMap<String, Object>();
+        Map<String, Object> columnToValueMap = new LinkedHashMap<String, Object>();
         for (Object id : item.getItemPropertyIds()) {
             ColumnProperty cp = (ColumnProperty) item.getItemProperty(id);
-            /* Prevent "rownum" usage as a column name if MSSQL or ORACLE */
-            if ((this instanceof MSSQLGenerator
-                    || this instanceof OracleGenerator)
-                    && cp.getPropertyId().equalsIgnoreCase("rownum")) {
-                continue;
-            }
-            if (cp.isPersistent()) {
+            if (!isExcludedColumn(cp) && cp.isPersistent()) {
                 columnToValueMap.put(cp.getPropertyId(), cp.getValue());
             }
         }
         return columnToValueMap;
     }
 
+    /**
+     * Returns the values identifying a row, in property id order.
+     *
+     * @deprecated the generated statements bind the values of the row
+     *             directly. If a subclass overrides this method or
+     *             {@link #generateColumnToValueMap(RowItem)}, its UPDATE
+     *             queries are generated from the returned maps instead, and
+     *             are not reused as templates.
+     */
+    @Deprecated
     protected Map<String, Object> generateRowIdentifiers(RowItem item) {
-        Map<String, Object> rowIdentifiers = new HashMap<String, Object>();
+        Map<String, Object> rowIdentifiers = new LinkedHashMap<String, Object>();
         for (Object id : item.getItemPropertyIds()) {
             ColumnProperty cp = (ColumnProperty) item.getItemProperty(id);
-            /* Prevent "rownum" usage as a column name if MSSQL or ORACLE */
-            if ((this instanceof MSSQLGenerator
-                    || this instanceof OracleGenerator)
-                    && cp.getPropertyId().equalsIgnoreCase("rownum")) {
-                continue;
-            }
-
-            if (cp.isRowIdentifier()) {
+            if (!isExcludedColumn(cp) && cp.isRowIdentifier()) {
                 Object value;
                 if (cp.isPrimaryKey()) {
                     // If the value of a primary key has changed, its old value
@@ -369,6 +771,158 @@ public class DefaultSQLGenerator implements SQLGenerator {
         return rowIdentifiers;
     }
 
+    /**
+     * Generates the LIMIT and OFFSET clause.
+     *
+     * @param sb
+     *            StringBuffer to which the clause is appended.
+     * @param offset
+     *            Value for offset.
+     * @param pagelength
+     *            Value for pagelength.
+     * @return StringBuffer with LIMIT and OFFSET clause added.
+     * @deprecated paging values are bound as parameters, see
+     *             {@link #generateLimitPlaceholders(StringBuffer)} and
+     *             {@link #addLimitParameterValues(StatementHelper, int, int)}
+     *             . If a subclass overrides this method, the clause it
+     *             generates is appended to the unpaged query instead, and the
+     *             paged queries of the subclass are not reused as templates.
+     */
+    @Deprecated
+    protected StringBuffer generateLimits(StringBuffer sb, int offset,
+            int pagelength) {
+        sb.append(" LIMIT ").append(pagelength).append(" OFFSET ")
+                .append(offset);
+        return sb;
+    }
+
+    /**
+     * Checks whether a subclass of this class declares a method, overriding
+     * the method of this class.
+     */
+    private static boolean overrides(Class<?> type, String name,
+            Class<?>... parameterTypes) {
+        for (Class<?> c = type; c != DefaultSQLGenerator.class; c = c
+                .getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                /* Not declared by this class, check the superclass */
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the string decorator used to quote identifiers and group
+     * conditions in the SQL generated by this generator.
+     *
+     * @param stringDecorator
+     *            the string decorator, or null to use the default one of
+     *            {@link QueryBuilder}
+     */
+    public void setStringDecorator(StringDecorator stringDecorator) {
+        this.stringDecorator = stringDecorator;
+        synchronized (this) {
+            templates = null;
+        }
+    }
+
+    /**
+     * @return the string decorator of this generator, or null if the default
+     *         one of {@link QueryBuilder} is used
+     */
+    public StringDecorator getStringDecorator() {
+        return stringDecorator;
+    }
+
+    /**
+     * Sets the strategy used to match LIKE patterns in the SQL generated by
+     * this generator, for example to use case-insensitive matching that can
+     * use an index.
+     *
+     * @param likeStrategy
+     *            the LIKE strategy, or null to use
+     *            {@link LikeStrategy#DEFAULT}
+     */
+    public void setLikeStrategy(LikeStrategy likeStrategy) {
+        this.likeStrategy = likeStrategy;
+        synchronized (this) {
+            templates = null;
+        }
+    }
+
+    /**
+     * @return the LIKE strategy of this generator, or null if
+     *         {@link LikeStrategy#DEFAULT} is used
+     */
+    public LikeStrategy getLikeStrategy() {
+        return likeStrategy;
+    }
+
+    /**
+     * Sets the strategy used to translate full-text search filters in the SQL
+     * generated by this generator. The generators of databases with a
+     * full-text search set the one for their syntax.
+     *
+     * @param fullTextStrategy
+     *            the full-text strategy, or null to use
+     *            {@link FullTextStrategy#DEFAULT}
+     */
+    public void setFullTextStrategy(FullTextStrategy fullTextStrategy) {
+        this.fullTextStrategy = fullTextStrategy;
+        synchronized (this) {
+            templates = null;
+        }
+    }
+
+    /**
+     * @return the full-text strategy of this generator, or null if
+     *         {@link FullTextStrategy#DEFAULT} is used
+     */
+    public FullTextStrategy getFullTextStrategy() {
+        return fullTextStrategy;
+    }
+
+    /**
+     * Sets the strategy used to bind the values of IN filters in the SQL
+     * generated by this generator.
+     *
+     * @param inListStrategy
+     *            the IN list strategy, or null to bind every value as a
+     *            parameter in IN lists of at most {@link #getMaxInListSize()}
+     *            values
+     */
+    public void setInListStrategy(InListStrategy inListStrategy) {
+        this.inListStrategy = inListStrategy;
+        synchronized (this) {
+            templates = null;
+        }
+    }
+
+    /**
+     * @return the IN list strategy of this generator, or null if every value
+     *         is bound as a parameter
+     */
+    public InListStrategy getInListStrategy() {
+        return inListStrategy;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * quote(java.lang.Object)
+     */
+    @Override
+    public String quote(Object identifier) {
+        if (stringDecorator != null) {
+            return stringDecorator.quote(identifier);
+        }
+        return QueryBuilder.quote(identifier);
+    }
+
     /**
      * Returns the statement helper for the generator. Override this to handle
      * platform specific data types.
@@ -377,19 +931,26 @@ public class DefaultSQLGenerator implements SQLGenerator {
      * @return a new instance of the statement helper
      */
     protected StatementHelper getStatementHelper() {
+        StatementHelper sh;
         if (statementHelperClass == null) {
-            return new StatementHelper();
-        }
-
-        try {
-            return statementHelperClass.newInstance();
-        } catch (InstantiationException e) {
-            throw new RuntimeException(
-                    "Unable to instantiate custom StatementHelper", e);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(
-                    "Unable to instantiate custom StatementHelper", e);
+            sh = new StatementHelper();
+        } else {
+            try {
+                sh = statementHelperClass.newInstance();
+            } catch (InstantiationException e) {
+                throw new RuntimeException(
+                        "Unable to instantiate custom StatementHelper", e);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException(
+                        "Unable to instantiate custom StatementHelper", e);
+            }
         }
+        sh.setStringDecorator(stringDecorator);
+        sh.setLikeStrategy(likeStrategy);
+        sh.setFullTextStrategy(fullTextStrategy);
+        sh.setInListStrategy(inListStrategy != null ? inListStrategy
+                : new InListStrategy(getMaxInListSize()));
+        return sh;
     }
 
 }
@@ -39,16 +39,38 @@ public class DerbySQLGenerator extends DefaultSQLGenerator {
     }
 
     /**
-     * Generates the LIMIT and OFFSET clause.
+     * Generates the OFFSET and FETCH clause with parameter placeholders.
      *
      * @param sb StringBuffer to which the clause is appended.
+     * @return StringBuffer with OFFSET and FETCH clause added.
+     */
+    @Override
+    protected StringBuffer generateLimitPlaceholders(StringBuffer sb) {
+        sb.append(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+        return sb;
+    }
+
+    /**
+     * Adds the values of the parameters generated by
+     * {@link #generateLimitPlaceholders(StringBuffer)}.
+     *
+     * @param sh the statement helper to add the values to
      * @param offset Value for offset.
      * @param pagelength Value for pagelength.
-     * @return StringBuffer with LIMIT and OFFSET clause added.
-     */   
+     */
     @Override
-    protected StringBuffer generateLimits(StringBuffer sb, int offset, int pagelength) {
-        sb.append(" OFFSET ").append(offset).append(" ROWS").append(" FETCH NEXT ").append(pagelength).append(" ROWS ONLY");
-        return sb;
+    protected void addLimitParameterValues(StatementHelper sh, int offset,
+            int pagelength) {
+        sh.addParameterValue(offset);
+        sh.addParameterValue(pagelength);
+    }
+
+    /**
+     * Derby evaluates IN lists of more than a few hundred parameters much
+     * slower than shorter ones, so the lists are kept short.
+     */
+    @Override
+    public int getMaxInListSize() {
+        return 250;
     }
 }
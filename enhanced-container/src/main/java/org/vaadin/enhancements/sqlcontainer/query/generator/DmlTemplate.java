@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.vaadin.enhancements.sqlcontainer.ColumnProperty;
+import org.vaadin.enhancements.sqlcontainer.RowItem;
+
+/**
+ * The SQL text of an INSERT, UPDATE or DELETE statement for one table and one
+ * combination of written and identifying columns, with the ordinals of the
+ * properties whose values are bound to its parameters.
+ *
+ * <p>
+ * Templates are compiled once and shared by all rows of the same layout, so
+ * identical rows always produce identical SQL text and only the parameter
+ * values are read from each row.
+ */
+final class DmlTemplate {
+
+    private final String queryString;
+    private final int[] valueOrdinals;
+    private final int[] identifierOrdinals;
+
+    /**
+     * @param queryString
+     *            the SQL text
+     * @param valueOrdinals
+     *            ordinals of the properties bound with their current values
+     * @param identifierOrdinals
+     *            ordinals of the properties bound after the values, with the
+     *            original value for primary key columns
+     */
+    DmlTemplate(String queryString, int[] valueOrdinals,
+            int[] identifierOrdinals) {
+        this.queryString = queryString;
+        this.valueOrdinals = valueOrdinals;
+        this.identifierOrdinals = identifierOrdinals;
+    }
+
+    /**
+     * Returns the properties of a row in the order of its property ids, which
+     * is the order the ordinals of the templates refer to.
+     */
+    static ColumnProperty[] getProperties(RowItem item,
+            List<?> propertyIds) {
+        ColumnProperty[] properties = new ColumnProperty[propertyIds.size()];
+        for (int i = 0; i < properties.length; i++) {
+            properties[i] = (ColumnProperty) item
+                    .getItemProperty(propertyIds.get(i));
+        }
+        return properties;
+    }
+
+    /**
+     * Returns the property ids of a row as a list.
+     */
+    static List<?> getPropertyIds(RowItem item) {
+        Collection<?> ids = item.getItemPropertyIds();
+        if (ids instanceof List) {
+            return (List<?>) ids;
+        }
+        return new ArrayList<Object>(ids);
+    }
+
+    /**
+     * Sets the SQL text and the parameter values of a row to a statement
+     * helper.
+     *
+     * @param sh
+     *            an empty statement helper
+     * @param properties
+     *            the properties of the row, see
+     *            {@link #getProperties(RowItem, List)}
+     * @return the statement helper
+     */
+    StatementHelper bind(StatementHelper sh, ColumnProperty[] properties) {
+        sh.setQueryString(queryString);
+        for (int ordinal : valueOrdinals) {
+            ColumnProperty cp = properties[ordinal];
+            sh.addParameterValue(cp.getValue(), cp.getType());
+        }
+        for (int ordinal : identifierOrdinals) {
+            ColumnProperty cp = properties[ordinal];
+            /*
+             * If the value of a primary key has changed, its old value should
+             * be used to identify the row (#9145)
+             */
+            sh.addParameterValue(
+                    cp.isPrimaryKey() ? cp.getOldValue() : cp.getValue(),
+                    cp.getType());
+        }
+        return sh;
+    }
+}
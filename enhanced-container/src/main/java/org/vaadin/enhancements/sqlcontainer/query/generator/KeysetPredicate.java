@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.Or;
+import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+
+/**
+ * Builds the seek predicate used by keyset (seek) pagination.
+ *
+ * <p>
+ * A row-value comparison such as {@code (a, b) > (?, ?)} is neither supported
+ * by every database (Oracle, MSSQL and Derby lack it) nor correct when the
+ * sort columns have mixed directions. The predicate is therefore expanded into
+ * its equivalent disjunction
+ * {@code a > ? OR (a = ? AND b > ?) OR ...}, with the comparison for each
+ * column following that column's sort direction. Because the result is an
+ * ordinary filter it is translated by the same filter translators as any
+ * other filter, in every dialect.
+ * <p>
+ * The comparisons never match a null, so rows with null sort values are
+ * skipped. The predicate must only be used when all sort columns are declared
+ * NOT NULL.
+ */
+final class KeysetPredicate {
+
+    private KeysetPredicate() {
+    }
+
+    /**
+     * Creates a filter matching the rows that sort strictly after (or before)
+     * the row whose sort key is {@code values}.
+     *
+     * @param orderBys
+     *            the complete ordering, including a unique tie-breaker
+     * @param values
+     *            sort-key values of the reference row, one per OrderBy. None
+     *            of the values may be null.
+     * @param after
+     *            true to match rows after the reference row, false to match
+     *            rows before it
+     * @return the seek filter
+     */
+    static Filter createFilter(List<OrderBy> orderBys, Object[] values,
+            boolean after) {
+        if (orderBys == null || orderBys.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "Keyset pagination requires at least one OrderBy.");
+        }
+        if (values == null || values.length != orderBys.size()) {
+            throw new IllegalArgumentException(
+                    "One keyset value must be given for each OrderBy.");
+        }
+        List<Filter> alternatives = new ArrayList<Filter>(orderBys.size());
+        for (int i = 0; i < orderBys.size(); i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException(
+                        "Keyset values must not be null.");
+            }
+            OrderBy o = orderBys.get(i);
+            Filter seek = o.isAscending() == after
+                    ? new Compare.Greater(o.getColumn(), values[i])
+                    : new Compare.Less(o.getColumn(), values[i]);
+            if (i == 0) {
+                alternatives.add(seek);
+                continue;
+            }
+            Filter[] conjuncts = new Filter[i + 1];
+            for (int j = 0; j < i; j++) {
+                conjuncts[j] = new Compare.Equal(orderBys.get(j).getColumn(),
+                        values[j]);
+            }
+            conjuncts[i] = seek;
+            alternatives.add(new And(conjuncts));
+        }
+        if (alternatives.size() == 1) {
+            return alternatives.get(0);
+        }
+        return new Or(alternatives.toArray(new Filter[alternatives.size()]));
+    }
+}
@@ -19,13 +19,31 @@ import java.util.List;
 
 import com.vaadin.data.Container.Filter;
 import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy.Syntax;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.InListStrategy;
 import org.vaadin.enhancements.sqlcontainer.query.generator.filter.QueryBuilder;
 
+/**
+ * Generates SQL that is supported by Microsoft SQL Server. The values of IN
+ * filters are bound as parameters within the limit of
+ * {@value #MAX_PARAMETERS} parameters per statement. On SQL Server 2016 and
+ * later, long lists can be bound as one JSON array instead with
+ * <code>setInListStrategy(new InListStrategy(Binding.JSON, 100,
+ * getMaxInListSize()).withMaxParameters(MAX_PARAMETERS))</code>.
+ */
 @SuppressWarnings("serial")
 public class MSSQLGenerator extends DefaultSQLGenerator {
 
-    public MSSQLGenerator() {
+    /**
+     * The maximum number of parameters of a statement in SQL Server
+     */
+    public static final int MAX_PARAMETERS = 2100;
 
+    public MSSQLGenerator() {
+        setFullTextStrategy(new FullTextStrategy(Syntax.MSSQL));
+        setInListStrategy(new InListStrategy(getMaxInListSize())
+                .withMaxParameters(MAX_PARAMETERS));
     }
 
     /**
@@ -41,27 +59,53 @@ public class MSSQLGenerator extends DefaultSQLGenerator {
      */
     public MSSQLGenerator(String quoteStart, String quoteEnd) {
         super(quoteStart, quoteEnd);
+        setFullTextStrategy(new FullTextStrategy(Syntax.MSSQL));
+        setInListStrategy(new InListStrategy(getMaxInListSize())
+                .withMaxParameters(MAX_PARAMETERS));
     }
 
     /*
      * (non-Javadoc)
      *
-     * @see com.vaadin.addon.sqlcontainer.query.generator.DefaultSQLGenerator#
-     * generateSelectQuery(java.lang.String, java.util.List,
-     * com.vaadin.addon.sqlcontainer.query.FilteringMode, java.util.List, int,
-     * int, java.lang.String)
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.
+     * DefaultSQLGenerator#isPagedSelect(int, int, java.lang.String)
      */
     @Override
-    public StatementHelper generateSelectQuery(String tableName,
-            List<Filter> filters, List<OrderBy> orderBys, int offset,
-            int pagelength, String toSelect) {
-        if (tableName == null || tableName.trim().equals("")) {
-            throw new IllegalArgumentException("Table name must be given.");
-        }
+    protected boolean isPagedSelect(int offset, int pagelength,
+            String toSelect) {
+        /* Row count requests are never paged */
+        return !"COUNT(*)".equalsIgnoreCase(toSelect)
+                && (offset != 0 || pagelength != 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.
+     * DefaultSQLGenerator#addLimitParameterValues(org.vaadin.enhancements.
+     * sqlcontainer.query.generator.StatementHelper, int, int)
+     */
+    @Override
+    protected void addLimitParameterValues(StatementHelper sh, int offset,
+            int pagelength) {
         /* Adjust offset and page length parameters to match "row numbers" */
         offset = pagelength > 1 ? ++offset : offset;
         pagelength = pagelength > 1 ? --pagelength : pagelength;
-        toSelect = toSelect == null ? "*" : toSelect;
+        sh.addParameterValue(offset);
+        sh.addParameterValue(offset + pagelength);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.
+     * DefaultSQLGenerator#generateSelectTemplate(java.lang.String,
+     * java.util.List, java.util.List, boolean, java.lang.String)
+     */
+    @Override
+    protected StatementHelper generateSelectTemplate(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, boolean paged,
+            String toSelect) {
         StatementHelper sh = getStatementHelper();
         StringBuffer query = new StringBuffer();
 
@@ -69,7 +113,7 @@ public class MSSQLGenerator extends DefaultSQLGenerator {
         if ("COUNT(*)".equalsIgnoreCase(toSelect)) {
             query.append(String.format(
                     "SELECT COUNT(*) AS %s FROM (SELECT * FROM %s",
-                    QueryBuilder.quote("rowcount"), tableName));
+                    quote("rowcount"), tableName));
             if (filters != null && !filters.isEmpty()) {
                 query.append(
                         QueryBuilder.getWhereStringForFilters(filters, sh));
@@ -80,7 +124,7 @@ public class MSSQLGenerator extends DefaultSQLGenerator {
         }
 
         /* SELECT without row number constraints */
-        if (offset == 0 && pagelength == 0) {
+        if (!paged) {
             query.append("SELECT ").append(toSelect).append(" FROM ")
                     .append(tableName);
             if (filters != null) {
@@ -107,9 +151,107 @@ public class MSSQLGenerator extends DefaultSQLGenerator {
         if (filters != null) {
             query.append(QueryBuilder.getWhereStringForFilters(filters, sh));
         }
-        query.append(") AS a WHERE a.rownum BETWEEN ").append(offset)
-                .append(" AND ").append(Integer.toString(offset + pagelength));
+        query.append(") AS a WHERE a.rownum BETWEEN ? AND ?");
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generatePositionQuery(java.lang.String, java.util.List, java.util.List,
+     * java.util.List)
+     */
+    @Override
+    public StatementHelper generatePositionQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys,
+            List<Filter> rowIdentifiers) {
+        if (tableName == null || tableName.trim().equals("")) {
+            throw new IllegalArgumentException("Table name must be given.");
+        }
+        StatementHelper sh = getStatementHelper();
+        StringBuffer query = new StringBuffer();
+        query.append("SELECT a.rownum - 1 FROM (SELECT row_number() OVER (");
+        if (orderBys != null) {
+            for (OrderBy o : orderBys) {
+                generateOrderBy(query, o, orderBys.indexOf(o) == 0);
+            }
+        }
+        query.append(") AS rownum, * FROM ").append(tableName);
+        if (filters != null) {
+            query.append(QueryBuilder.getWhereStringForFilters(filters, sh));
+        }
+        query.append(") AS a");
+        query.append(QueryBuilder.getWhereStringForFilters(rowIdentifiers, sh));
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateCappedCountQuery(java.lang.String, java.util.List, int)
+     */
+    @Override
+    public StatementHelper generateCappedCountQuery(String tableName,
+            List<Filter> filters, int limit) {
+        if (tableName == null || tableName.trim().equals("")) {
+            throw new IllegalArgumentException("Table name must be given.");
+        }
+        StatementHelper sh = getStatementHelper();
+        StringBuffer query = new StringBuffer();
+        query.append("SELECT COUNT(*) FROM (SELECT TOP ").append(limit)
+                .append(" 1 AS x FROM ").append(tableName);
+        if (filters != null) {
+            query.append(QueryBuilder.getWhereStringForFilters(filters, sh));
+        }
+        query.append(") AS capped");
         sh.setQueryString(query.toString());
         return sh;
     }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateRowEstimateQuery(java.lang.String, java.lang.String,
+     * java.lang.String)
+     */
+    @Override
+    public StatementHelper generateRowEstimateQuery(String catalogName,
+            String schemaName, String tableName) {
+        StatementHelper sh = getStatementHelper();
+        StringBuilder name = new StringBuilder();
+        if (catalogName != null) {
+            name.append(catalogName).append(".");
+            name.append(schemaName != null ? schemaName : "").append(".");
+        } else if (schemaName != null) {
+            name.append(schemaName).append(".");
+        }
+        name.append(tableName);
+        /* Row counts of the heap or clustered index of the table */
+        sh.setQueryString("SELECT SUM(p.rows) FROM sys.partitions p"
+                + " WHERE p.object_id = OBJECT_ID(?) AND p.index_id IN (0, 1)");
+        sh.addParameterValue(name.toString());
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateSelectWithCountQuery(java.lang.String, java.util.List,
+     * java.util.List, int, int, java.lang.String)
+     */
+    @Override
+    public StatementHelper generateSelectWithCountQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, int offset,
+            int pagelength, String countLabel) {
+        /* The window is the whole filtered result, before paging */
+        return generateSelectQuery(tableName, filters, orderBys, offset,
+                pagelength, "*, COUNT(*) OVER () AS "
+                        + quote(countLabel));
+    }
 }
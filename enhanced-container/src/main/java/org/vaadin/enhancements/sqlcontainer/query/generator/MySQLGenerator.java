@@ -0,0 +1,83 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator;
+
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy.Syntax;
+
+/**
+ * Generates SQL that is supported by MySQL and MariaDB. The queries are those
+ * of {@link DefaultSQLGenerator}; in addition, row estimates are read from
+ * the table statistics, and cursors are read row by row.
+ */
+@SuppressWarnings("serial")
+public class MySQLGenerator extends DefaultSQLGenerator {
+
+    public MySQLGenerator() {
+        setFullTextStrategy(new FullTextStrategy(Syntax.MYSQL));
+    }
+
+    /**
+     * Construct a MySQLGenerator with the specified identifiers for start and
+     * end of quoted strings. The identifiers may be different depending on the
+     * database engine and it's settings.
+     *
+     * @param quoteStart
+     *            the identifier (character) denoting the start of a quoted
+     *            string
+     * @param quoteEnd
+     *            the identifier (character) denoting the end of a quoted string
+     */
+    public MySQLGenerator(String quoteStart, String quoteEnd) {
+        super(quoteStart, quoteEnd);
+        setFullTextStrategy(new FullTextStrategy(Syntax.MYSQL));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateRowEstimateQuery(java.lang.String, java.lang.String,
+     * java.lang.String)
+     */
+    @Override
+    public StatementHelper generateRowEstimateQuery(String catalogName,
+            String schemaName, String tableName) {
+        StatementHelper sh = getStatementHelper();
+        /* In MySQL the database is the JDBC catalog */
+        if (catalogName != null) {
+            sh.setQueryString(
+                    "SELECT TABLE_ROWS FROM information_schema.TABLES"
+                            + " WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?");
+            sh.addParameterValue(catalogName);
+        } else {
+            sh.setQueryString(
+                    "SELECT TABLE_ROWS FROM information_schema.TABLES"
+                            + " WHERE TABLE_SCHEMA = DATABASE()"
+                            + " AND TABLE_NAME = ?");
+        }
+        sh.addParameterValue(tableName);
+        return sh;
+    }
+
+    /**
+     * MySQL Connector/J and MariaDB Connector/J read the whole result set into
+     * memory unless the fetch size is {@link Integer#MIN_VALUE}, in which case
+     * the rows are streamed one at a time.
+     */
+    @Override
+    public int getCursorFetchSize(int fetchSize) {
+        return Integer.MIN_VALUE;
+    }
+}
@@ -19,18 +19,21 @@ import java.util.List;
 
 import com.vaadin.data.Container.Filter;
 import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy.Syntax;
 import org.vaadin.enhancements.sqlcontainer.query.generator.filter.QueryBuilder;
 
 @SuppressWarnings("serial")
 public class OracleGenerator extends DefaultSQLGenerator {
 
     public OracleGenerator() {
-
+        setFullTextStrategy(new FullTextStrategy(Syntax.ORACLE));
     }
 
     public OracleGenerator(
             Class<? extends StatementHelper> statementHelperClazz) {
         super(statementHelperClazz);
+        setFullTextStrategy(new FullTextStrategy(Syntax.ORACLE));
     }
 
     /**
@@ -46,32 +49,57 @@ public class OracleGenerator extends DefaultSQLGenerator {
      */
     public OracleGenerator(String quoteStart, String quoteEnd) {
         super(quoteStart, quoteEnd);
+        setFullTextStrategy(new FullTextStrategy(Syntax.ORACLE));
     }
 
     public OracleGenerator(String quoteStart, String quoteEnd,
             Class<? extends StatementHelper> statementHelperClazz) {
         super(quoteStart, quoteEnd, statementHelperClazz);
+        setFullTextStrategy(new FullTextStrategy(Syntax.ORACLE));
     }
 
     /*
      * (non-Javadoc)
      *
-     * @see com.vaadin.addon.sqlcontainer.query.generator.DefaultSQLGenerator#
-     * generateSelectQuery(java.lang.String, java.util.List,
-     * com.vaadin.addon.sqlcontainer.query.FilteringMode, java.util.List, int,
-     * int, java.lang.String)
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.
+     * DefaultSQLGenerator#isPagedSelect(int, int, java.lang.String)
      */
     @Override
-    public StatementHelper generateSelectQuery(String tableName,
-            List<Filter> filters, List<OrderBy> orderBys, int offset,
-            int pagelength, String toSelect) {
-        if (tableName == null || tableName.trim().equals("")) {
-            throw new IllegalArgumentException("Table name must be given.");
-        }
+    protected boolean isPagedSelect(int offset, int pagelength,
+            String toSelect) {
+        /* Row count requests are never paged */
+        return !"COUNT(*)".equalsIgnoreCase(toSelect)
+                && (offset != 0 || pagelength != 0);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.
+     * DefaultSQLGenerator#addLimitParameterValues(org.vaadin.enhancements.
+     * sqlcontainer.query.generator.StatementHelper, int, int)
+     */
+    @Override
+    protected void addLimitParameterValues(StatementHelper sh, int offset,
+            int pagelength) {
         /* Adjust offset and page length parameters to match "row numbers" */
         offset = pagelength > 1 ? ++offset : offset;
         pagelength = pagelength > 1 ? --pagelength : pagelength;
-        toSelect = toSelect == null ? "*" : toSelect;
+        sh.addParameterValue(offset);
+        sh.addParameterValue(offset + pagelength);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.
+     * DefaultSQLGenerator#generateSelectTemplate(java.lang.String,
+     * java.util.List, java.util.List, boolean, java.lang.String)
+     */
+    @Override
+    protected StatementHelper generateSelectTemplate(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, boolean paged,
+            String toSelect) {
         StatementHelper sh = getStatementHelper();
         StringBuffer query = new StringBuffer();
 
@@ -79,7 +107,7 @@ public class OracleGenerator extends DefaultSQLGenerator {
         if ("COUNT(*)".equalsIgnoreCase(toSelect)) {
             query.append(String.format(
                     "SELECT COUNT(*) AS %s FROM (SELECT * FROM %s",
-                    QueryBuilder.quote("rowcount"), tableName));
+                    quote("rowcount"), tableName));
             if (filters != null && !filters.isEmpty()) {
                 query.append(
                         QueryBuilder.getWhereStringForFilters(filters, sh));
@@ -90,7 +118,7 @@ public class OracleGenerator extends DefaultSQLGenerator {
         }
 
         /* SELECT without row number constraints */
-        if (offset == 0 && pagelength == 0) {
+        if (!paged) {
             query.append("SELECT ").append(toSelect).append(" FROM ")
                     .append(tableName);
             if (filters != null) {
@@ -109,7 +137,41 @@ public class OracleGenerator extends DefaultSQLGenerator {
         /* Remaining SELECT cases are handled here */
         query.append(String.format(
                 "SELECT * FROM (SELECT x.*, ROWNUM AS %s FROM (SELECT %s FROM %s",
-                QueryBuilder.quote("rownum"), toSelect, tableName));
+                quote("rownum"), toSelect, tableName));
+        if (filters != null) {
+            query.append(QueryBuilder.getWhereStringForFilters(filters, sh));
+        }
+        if (orderBys != null) {
+            for (OrderBy o : orderBys) {
+                generateOrderBy(query, o, orderBys.indexOf(o) == 0);
+            }
+        }
+        query.append(String.format(") x) WHERE %s BETWEEN ? AND ?",
+                quote("rownum")));
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generatePositionQuery(java.lang.String, java.util.List, java.util.List,
+     * java.util.List)
+     */
+    @Override
+    public StatementHelper generatePositionQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys,
+            List<Filter> rowIdentifiers) {
+        if (tableName == null || tableName.trim().equals("")) {
+            throw new IllegalArgumentException("Table name must be given.");
+        }
+        StatementHelper sh = getStatementHelper();
+        StringBuffer query = new StringBuffer();
+        query.append(String.format(
+                "SELECT %s - 1 FROM (SELECT x.*, ROWNUM AS %s FROM (SELECT * FROM %s",
+                quote("rownum"), quote("rownum"),
+                tableName));
         if (filters != null) {
             query.append(QueryBuilder.getWhereStringForFilters(filters, sh));
         }
@@ -118,10 +180,73 @@ public class OracleGenerator extends DefaultSQLGenerator {
                 generateOrderBy(query, o, orderBys.indexOf(o) == 0);
             }
         }
-        query.append(String.format(") x) WHERE %s BETWEEN %d AND %d",
-                QueryBuilder.quote("rownum"), offset, offset + pagelength));
+        query.append(") x)");
+        query.append(QueryBuilder.getWhereStringForFilters(rowIdentifiers, sh));
+        sh.setQueryString(query.toString());
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateCappedCountQuery(java.lang.String, java.util.List, int)
+     */
+    @Override
+    public StatementHelper generateCappedCountQuery(String tableName,
+            List<Filter> filters, int limit) {
+        if (tableName == null || tableName.trim().equals("")) {
+            throw new IllegalArgumentException("Table name must be given.");
+        }
+        StatementHelper sh = getStatementHelper();
+        StringBuffer query = new StringBuffer();
+        query.append("SELECT COUNT(*) FROM (SELECT 1 FROM ").append(tableName);
+        if (filters != null) {
+            query.append(QueryBuilder.getWhereStringForFilters(filters, sh));
+        }
+        query.append(") WHERE ROWNUM <= ").append(limit);
         sh.setQueryString(query.toString());
         return sh;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateRowEstimateQuery(java.lang.String, java.lang.String,
+     * java.lang.String)
+     */
+    @Override
+    public StatementHelper generateRowEstimateQuery(String catalogName,
+            String schemaName, String tableName) {
+        StatementHelper sh = getStatementHelper();
+        /* NUM_ROWS is null for tables that have never been analyzed */
+        if (schemaName != null) {
+            sh.setQueryString("SELECT NUM_ROWS FROM ALL_TABLES"
+                    + " WHERE OWNER = ? AND TABLE_NAME = ?");
+            sh.addParameterValue(schemaName);
+        } else {
+            sh.setQueryString(
+                    "SELECT NUM_ROWS FROM USER_TABLES WHERE TABLE_NAME = ?");
+        }
+        sh.addParameterValue(tableName);
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateSelectWithCountQuery(java.lang.String, java.util.List,
+     * java.util.List, int, int, java.lang.String)
+     */
+    @Override
+    public StatementHelper generateSelectWithCountQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, int offset,
+            int pagelength, String countLabel) {
+        /* The window is the whole filtered result, before paging */
+        return generateSelectQuery(tableName, filters, orderBys, offset,
+                pagelength, tableName + ".*, COUNT(*) OVER () AS "
+                        + quote(countLabel));
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator;
+
+import java.util.List;
+
+import com.vaadin.data.Container.Filter;
+import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy.Syntax;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.InListStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.InListStrategy.Binding;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.LikeStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.LikeStrategy.CaseInsensitiveMatch;
+
+/**
+ * Generates SQL that is supported by PostgreSQL. The queries are those of
+ * {@link DefaultSQLGenerator}; in addition, row estimates are read from the
+ * planner statistics and case-insensitive LIKE patterns are matched with
+ * ILIKE.
+ */
+@SuppressWarnings("serial")
+public class PostgreSQLGenerator extends DefaultSQLGenerator {
+
+    public PostgreSQLGenerator() {
+        setLikeStrategy(new LikeStrategy(CaseInsensitiveMatch.ILIKE));
+        setFullTextStrategy(new FullTextStrategy(Syntax.POSTGRESQL));
+        setInListStrategy(new InListStrategy(Binding.ARRAY, 2,
+                getMaxInListSize()));
+    }
+
+    /**
+     * Construct a PostgreSQLGenerator with the specified identifiers for start
+     * and end of quoted strings. The identifiers may be different depending on
+     * the database engine and it's settings.
+     *
+     * @param quoteStart
+     *            the identifier (character) denoting the start of a quoted
+     *            string
+     * @param quoteEnd
+     *            the identifier (character) denoting the end of a quoted string
+     */
+    public PostgreSQLGenerator(String quoteStart, String quoteEnd) {
+        super(quoteStart, quoteEnd);
+        setLikeStrategy(new LikeStrategy(CaseInsensitiveMatch.ILIKE));
+        setFullTextStrategy(new FullTextStrategy(Syntax.POSTGRESQL));
+        setInListStrategy(new InListStrategy(Binding.ARRAY, 2,
+                getMaxInListSize()));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateRowEstimateQuery(java.lang.String, java.lang.String,
+     * java.lang.String)
+     */
+    @Override
+    public StatementHelper generateRowEstimateQuery(String catalogName,
+            String schemaName, String tableName) {
+        StatementHelper sh = getStatementHelper();
+        /*
+         * The table name is resolved like in the queries on the table.
+         * reltuples is -1 (0 before PostgreSQL 14) for tables that have never
+         * been analyzed.
+         */
+        sh.setQueryString("SELECT CAST(reltuples AS BIGINT)"
+                + " FROM pg_catalog.pg_class WHERE oid = to_regclass(?)");
+        sh.addParameterValue(
+                schemaName != null ? schemaName + "." + tableName : tableName);
+        return sh;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator#
+     * generateSelectWithCountQuery(java.lang.String, java.util.List,
+     * java.util.List, int, int, java.lang.String)
+     */
+    @Override
+    public StatementHelper generateSelectWithCountQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys, int offset,
+            int pagelength, String countLabel) {
+        /* The window is the whole filtered result, before paging */
+        return generateSelectQuery(tableName, filters, orderBys, offset,
+                pagelength, "*, COUNT(*) OVER () AS "
+                        + quote(countLabel));
+    }
+}
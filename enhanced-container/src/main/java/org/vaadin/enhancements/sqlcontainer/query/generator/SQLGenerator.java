@@ -16,11 +16,13 @@
 package org.vaadin.enhancements.sqlcontainer.query.generator;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.vaadin.data.Container.Filter;
 import org.vaadin.enhancements.sqlcontainer.RowItem;
 import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.QueryBuilder;
 
 /**
  * The SQLGenerator interface is meant to be implemented for each different SQL
@@ -53,6 +55,226 @@ public interface SQLGenerator extends Serializable {
             List<Filter> filters, List<OrderBy> orderBys, int offset,
             int pagelength, String toSelect);
 
+    /**
+     * Generates a SELECT query that seeks directly to the rows following a
+     * known sort-key tuple instead of skipping rows with an offset (keyset, or
+     * seek, pagination). The database can then use an index on the sort
+     * columns to start reading at the right row, no matter how far into the
+     * result the page is.
+     *
+     * <p>
+     * {@code orderBys} must define a total order, i.e. end with the primary
+     * key column(s) as a tie-breaker, otherwise rows sharing the same sort
+     * values can be skipped. The default implementation expresses the seek
+     * condition as an additional filter and delegates to
+     * {@link #generateSelectQuery(String, List, List, int, int, String)} with
+     * a zero offset, so it works for every dialect that the generator
+     * supports.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param filters
+     *            The filters, converted into a WHERE clause
+     * @param orderBys
+     *            The ordering conditions, including the tie-breaker. All of
+     *            the columns must be NOT NULL, as rows with null sort values
+     *            never match the seek condition.
+     * @param keysetValues
+     *            Values of the {@code orderBys} columns of the last row
+     *            preceding the page, in the same order. May not contain
+     *            nulls.
+     * @param pagelength
+     *            The number of rows to be returned when the query executes
+     * @param toSelect
+     *            String containing what to select, e.g. "*"
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     */
+    public default StatementHelper generateKeysetSelectQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys,
+            Object[] keysetValues, int pagelength, String toSelect) {
+        List<Filter> seekFilters = new ArrayList<Filter>();
+        if (filters != null) {
+            seekFilters.addAll(filters);
+        }
+        seekFilters.add(
+                KeysetPredicate.createFilter(orderBys, keysetValues, true));
+        return generateSelectQuery(tableName, seekFilters, orderBys, 0,
+                pagelength, toSelect);
+    }
+
+    /**
+     * Generates a query returning the zero-based position of a single row
+     * among the rows matching the filters, sorted by the given ordering. The
+     * result set has one row with the position in its first column, or no
+     * rows if the row does not match the filters.
+     *
+     * <p>
+     * Generators for databases with a suitable row numbering construct
+     * override this. The default implementation throws
+     * {@link UnsupportedOperationException}, in which case the position can
+     * be computed with
+     * {@link #generateCountBeforeQuery(String, List, List, Object[])}.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param filters
+     *            The filters, converted into a WHERE clause
+     * @param orderBys
+     *            The ordering conditions, including a unique tie-breaker
+     * @param rowIdentifiers
+     *            Filters identifying the row, e.g. equality filters on the
+     *            primary key columns
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     * @throws UnsupportedOperationException
+     *             if the generator cannot number rows in a single query
+     */
+    public default StatementHelper generatePositionQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys,
+            List<Filter> rowIdentifiers) {
+        throw new UnsupportedOperationException(
+                "Position queries are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Generates a query counting the rows matching the filters that sort
+     * before a row with the given sort-key values. The count is the zero-based
+     * position of that row. The default implementation adds the inverse of the
+     * keyset seek condition to the filters and delegates to
+     * {@link #generateSelectQuery(String, List, List, int, int, String)} with
+     * "COUNT(*)", so it works for every dialect that the generator supports.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param filters
+     *            The filters, converted into a WHERE clause
+     * @param orderBys
+     *            The ordering conditions, including a unique tie-breaker
+     * @param sortKeyValues
+     *            Values of the {@code orderBys} columns of the row, in the
+     *            same order. May not contain nulls.
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     */
+    public default StatementHelper generateCountBeforeQuery(String tableName,
+            List<Filter> filters, List<OrderBy> orderBys,
+            Object[] sortKeyValues) {
+        List<Filter> countFilters = new ArrayList<Filter>();
+        if (filters != null) {
+            countFilters.addAll(filters);
+        }
+        countFilters.add(
+                KeysetPredicate.createFilter(orderBys, sortKeyValues, false));
+        return generateSelectQuery(tableName, countFilters, null, 0, 0,
+                "COUNT(*)");
+    }
+
+    /**
+     * Generates a SELECT query like
+     * {@link #generateSelectQuery(String, List, List, int, int, String)} with
+     * <code>toSelect</code> "*", with an additional column holding the number
+     * of all rows matching the filters in every row. This allows the first
+     * page and the row count to be fetched in a single query. If the page has
+     * no rows, the count is not available.
+     *
+     * <p>
+     * The default implementation throws
+     * {@link UnsupportedOperationException}.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param filters
+     *            The filters, converted into a WHERE clause
+     * @param orderBys
+     *            The the ordering conditions, converted into an ORDER BY clause
+     * @param offset
+     *            The offset of the first row to be included
+     * @param pagelength
+     *            The number of rows to be returned when the query executes
+     * @param countLabel
+     *            The label of the column holding the row count
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     * @throws UnsupportedOperationException
+     *             if the generator cannot count the rows in the same query
+     */
+    public default StatementHelper generateSelectWithCountQuery(
+            String tableName, List<Filter> filters, List<OrderBy> orderBys,
+            int offset, int pagelength, String countLabel) {
+        throw new UnsupportedOperationException(
+                "Counting rows while selecting them is not supported by "
+                        + getClass().getName());
+    }
+
+    /**
+     * Generates a query counting the rows matching the filters, but at most
+     * {@code limit} of them, so that the database can stop reading rows when
+     * the limit is reached. The result set has one row with the count in its
+     * first column. The default implementation counts the rows of a
+     * {@link #generateSelectQuery(String, List, List, int, int, String)
+     * SELECT query} limited to the first {@code limit} rows.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param filters
+     *            The filters, converted into a WHERE clause
+     * @param limit
+     *            The maximum number of rows counted
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     */
+    public default StatementHelper generateCappedCountQuery(String tableName,
+            List<Filter> filters, int limit) {
+        StatementHelper sh = generateSelectQuery(tableName, filters, null, 0,
+                limit, "1");
+        sh.setQueryString("SELECT COUNT(*) FROM (" + sh.getQueryString()
+                + ") capped");
+        return sh;
+    }
+
+    /**
+     * Generates a query returning the number of rows in a table as estimated
+     * by the statistics of the database. Reading the statistics is cheap
+     * compared to counting the rows, but the estimate may be out of date. The
+     * result set has one row with the estimate in its first column, or no
+     * rows or a null value if no estimate is available.
+     *
+     * <p>
+     * The default implementation throws
+     * {@link UnsupportedOperationException}.
+     *
+     * @param catalogName
+     *            Name of the database catalog, or null
+     * @param schemaName
+     *            Name of the database schema, or null
+     * @param tableName
+     *            Name of the table
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     * @throws UnsupportedOperationException
+     *             if the generator cannot read estimates for its database
+     */
+    public default StatementHelper generateRowEstimateQuery(
+            String catalogName, String schemaName, String tableName) {
+        throw new UnsupportedOperationException(
+                "Row estimates are not supported by " + getClass().getName());
+    }
+
+    /**
+     * Returns the fetch size to set on a forward-only, read-only statement so
+     * that the JDBC driver streams the rows of its result set instead of
+     * reading them all into memory. The default implementation returns the
+     * requested fetch size.
+     *
+     * @param fetchSize
+     *            the number of rows the driver should read at a time
+     * @return the value to pass to {@link java.sql.Statement#setFetchSize(int)}
+     */
+    public default int getCursorFetchSize(int fetchSize) {
+        return fetchSize;
+    }
+
     /**
      * Generates an UPDATE query with the provided parameters.
      *
@@ -65,6 +287,25 @@ public interface SQLGenerator extends Serializable {
      */
     public StatementHelper generateUpdateQuery(String tableName, RowItem item);
 
+    /**
+     * Generates an UPDATE query like
+     * {@link #generateUpdateQuery(String, RowItem)}, but setting only the
+     * columns whose properties have been modified. If no property is flagged
+     * as modified, all columns are set. The default implementation sets all
+     * columns.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param item
+     *            RowItem containing the updated values update.
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     */
+    public default StatementHelper generateModifiedColumnsUpdateQuery(
+            String tableName, RowItem item) {
+        return generateUpdateQuery(tableName, item);
+    }
+
     /**
      * Generates an INSERT query for inserting a new row with the provided
      * values.
@@ -97,4 +338,59 @@ public interface SQLGenerator extends Serializable {
      */
     public StatementHelper generateDeleteQuery(String tableName,
             List<String> primaryKeyColumns, String versionColumn, RowItem item);
+
+    /**
+     * Returns the maximum number of values that should be listed in one IN
+     * predicate. Longer lists are split into several statements. The default
+     * is 1000, which is the limit of Oracle.
+     *
+     * @return the maximum number of values in an IN list
+     */
+    public default int getMaxInListSize() {
+        return 1000;
+    }
+
+    /**
+     * Generates a DELETE query removing all rows whose single primary key
+     * column has one of the given values, e.g.
+     * <code>DELETE FROM t WHERE "id" IN (?, ?, ?)</code>. This is used to
+     * remove many rows with one statement when no version column has to be
+     * checked.
+     *
+     * <p>
+     * The default implementation throws
+     * {@link UnsupportedOperationException}, in which case the rows are
+     * removed one by one using
+     * {@link #generateDeleteQuery(String, List, String, RowItem)}.
+     *
+     * @param tableName
+     *            Name of the table queried
+     * @param keyColumn
+     *            the name of the primary key column
+     * @param keys
+     *            the primary key values of the rows, none of which is null
+     * @return StatementHelper instance containing the query string for a
+     *         PreparedStatement and the values required for the parameters
+     * @throws UnsupportedOperationException
+     *             if the generator cannot remove several rows at once
+     */
+    public default StatementHelper generateDeleteByKeysQuery(String tableName,
+            String keyColumn, List<?> keys) {
+        throw new UnsupportedOperationException(
+                "Removing rows by key lists is not supported by "
+                        + getClass().getName());
+    }
+
+    /**
+     * Quotes a column name the way this generator quotes identifiers in the
+     * SQL it generates. The default uses the string decorator of
+     * {@link QueryBuilder}.
+     *
+     * @param identifier
+     *            the identifier to quote
+     * @return the quoted identifier
+     */
+    public default String quote(Object identifier) {
+        return QueryBuilder.quote(identifier);
+    }
 }
@@ -24,10 +24,16 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.FullTextStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.InListStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.LikeStrategy;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.StringDecorator;
+
 /**
  * StatementHelper is a simple helper class that assists TableQuery and the
  * query generators in filling a PreparedStatement. The actual statement is
@@ -44,9 +50,79 @@ public class StatementHelper implements Serializable {
     private List<Object> parameters = new ArrayList<Object>();
     private Map<Integer, Class<?>> dataTypes = new HashMap<Integer, Class<?>>();
 
+    private StringDecorator stringDecorator;
+    private LikeStrategy likeStrategy;
+    private FullTextStrategy fullTextStrategy;
+    private InListStrategy inListStrategy;
+
     public StatementHelper() {
     }
 
+    /**
+     * Sets the string decorator used by the filter translators to quote and
+     * group the SQL generated into this statement helper.
+     *
+     * @param stringDecorator
+     *            the string decorator of the generator, or null to use the
+     *            default one of
+     *            {@link org.vaadin.enhancements.sqlcontainer.query.generator.filter.QueryBuilder}
+     */
+    public void setStringDecorator(StringDecorator stringDecorator) {
+        this.stringDecorator = stringDecorator;
+    }
+
+    public StringDecorator getStringDecorator() {
+        return stringDecorator;
+    }
+
+    /**
+     * Sets the strategy used by the filter translators to match LIKE patterns
+     * in the SQL generated into this statement helper.
+     *
+     * @param likeStrategy
+     *            the LIKE strategy of the generator, or null to use
+     *            {@link LikeStrategy#DEFAULT}
+     */
+    public void setLikeStrategy(LikeStrategy likeStrategy) {
+        this.likeStrategy = likeStrategy;
+    }
+
+    public LikeStrategy getLikeStrategy() {
+        return likeStrategy;
+    }
+
+    /**
+     * Sets the strategy used by the filter translators to generate full-text
+     * search conditions in the SQL generated into this statement helper.
+     *
+     * @param fullTextStrategy
+     *            the full-text strategy of the generator, or null to use
+     *            {@link FullTextStrategy#DEFAULT}
+     */
+    public void setFullTextStrategy(FullTextStrategy fullTextStrategy) {
+        this.fullTextStrategy = fullTextStrategy;
+    }
+
+    public FullTextStrategy getFullTextStrategy() {
+        return fullTextStrategy;
+    }
+
+    /**
+     * Sets the strategy used by the filter translators to bind the values of
+     * IN conditions in the SQL generated into this statement helper.
+     *
+     * @param inListStrategy
+     *            the IN list strategy of the generator, or null to use
+     *            {@link InListStrategy#DEFAULT}
+     */
+    public void setInListStrategy(InListStrategy inListStrategy) {
+        this.inListStrategy = inListStrategy;
+    }
+
+    public InListStrategy getInListStrategy() {
+        return inListStrategy;
+    }
+
     public void setQueryString(String queryString) {
         this.queryString = queryString;
     }
@@ -55,6 +131,13 @@ public class StatementHelper implements Serializable {
         return queryString;
     }
 
+    /**
+     * @return the number of parameter values added so far
+     */
+    public int getParameterCount() {
+        return parameters.size();
+    }
+
     public void addParameterValue(Object parameter) {
         if (parameter != null) {
             parameters.add(parameter);
@@ -71,11 +154,53 @@ public class StatementHelper implements Serializable {
         dataTypes.put(parameters.size() - 1, type);
     }
 
+    /**
+     * Inserts the parameter values of another statement helper before the
+     * parameter values of this one, for a query string that embeds the query
+     * of the other one before any of its own parameters.
+     */
+    void prependParameterValues(StatementHelper other) {
+        List<Object> values = new ArrayList<Object>(other.parameters);
+        Map<Integer, Class<?>> types = new HashMap<Integer, Class<?>>(
+                other.dataTypes);
+        for (int i = 0; i < parameters.size(); i++) {
+            values.add(parameters.get(i));
+            types.put(other.parameters.size() + i, dataTypes.get(i));
+        }
+        parameters = values;
+        dataTypes = types;
+    }
+
+    /**
+     * Appends the parameter values of another statement helper after the
+     * parameter values of this one.
+     */
+    void appendParameterValues(StatementHelper other) {
+        int start = parameters.size();
+        parameters.addAll(other.parameters);
+        for (int i = 0; i < other.parameters.size(); i++) {
+            dataTypes.put(start + i, other.dataTypes.get(i));
+        }
+    }
+
+    /**
+     * Checks whether another statement helper has the same parameter values
+     * of the same types as this one.
+     */
+    boolean hasSameParameterValues(StatementHelper other) {
+        return parameters.equals(other.parameters)
+                && dataTypes.equals(other.dataTypes);
+    }
+
     public void setParameterValuesToStatement(PreparedStatement pstmt)
             throws SQLException {
         for (int i = 0; i < parameters.size(); i++) {
             if (parameters.get(i) == null) {
                 handleNullValue(i, pstmt);
+            } else if (parameters.get(i) instanceof ArrayParameter) {
+                ArrayParameter array = (ArrayParameter) parameters.get(i);
+                pstmt.setArray(i + 1, pstmt.getConnection().createArrayOf(
+                        array.getTypeName(), array.getElements()));
             } else {
                 pstmt.setObject(i + 1, parameters.get(i));
             }
@@ -176,4 +301,53 @@ public class StatementHelper implements Serializable {
             throws SQLException {
         return false;
     }
+
+    /**
+     * A parameter value that is bound as a SQL array, created from its
+     * elements with the connection of the statement.
+     */
+    public static final class ArrayParameter implements Serializable {
+        private final String typeName;
+        private final Object[] elements;
+
+        /**
+         * @param typeName
+         *            the SQL type of the elements, as accepted by
+         *            {@link java.sql.Connection#createArrayOf(String, Object[])}
+         * @param elements
+         *            the elements of the array
+         */
+        public ArrayParameter(String typeName, Object[] elements) {
+            this.typeName = typeName;
+            this.elements = elements.clone();
+        }
+
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public Object[] getElements() {
+            return elements.clone();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ArrayParameter)) {
+                return false;
+            }
+            ArrayParameter other = (ArrayParameter) obj;
+            return typeName.equals(other.typeName)
+                    && Arrays.equals(elements, other.elements);
+        }
+
+        @Override
+        public int hashCode() {
+            return typeName.hashCode() * 31 + Arrays.hashCode(elements);
+        }
+
+        @Override
+        public String toString() {
+            return typeName + Arrays.toString(elements);
+        }
+    }
 }
@@ -26,10 +26,20 @@ public class AndTranslator implements FilterTranslator {
         return filter instanceof And;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return And.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
+        And and = (And) filter;
+        if (and.getFilters().isEmpty()) {
+            /* An empty And is always true */
+            return "1 = 1";
+        }
         return QueryBuilder.group(QueryBuilder
-                .getJoinedFilterString(((And) filter).getFilters(), "AND", sh));
+                .getJoinedFilterString(and.getFilters(), "AND", sh), sh);
     }
 
 }
@@ -26,12 +26,18 @@ public class BetweenTranslator implements FilterTranslator {
         return filter instanceof Between;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return Between.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
         Between between = (Between) filter;
         sh.addParameterValue(between.getStartValue());
         sh.addParameterValue(between.getEndValue());
-        return QueryBuilder.quote(between.getPropertyId()) + " BETWEEN ? AND ?";
+        return QueryBuilder.quote(between.getPropertyId(), sh)
+                + " BETWEEN ? AND ?";
     }
 
 }
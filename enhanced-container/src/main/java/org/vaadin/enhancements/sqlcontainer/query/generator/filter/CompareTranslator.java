@@ -26,11 +26,16 @@ public class CompareTranslator implements FilterTranslator {
         return filter instanceof Compare;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return Compare.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
         Compare compare = (Compare) filter;
         sh.addParameterValue(compare.getValue());
-        String prop = QueryBuilder.quote(compare.getPropertyId());
+        String prop = QueryBuilder.quote(compare.getPropertyId(), sh);
         switch (compare.getOperation()) {
         case EQUAL:
             return prop + " = ?";
@@ -0,0 +1,648 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.Not;
+import com.vaadin.data.util.filter.Or;
+import com.vaadin.data.util.filter.SimpleStringFilter;
+import org.vaadin.enhancements.sqlcontainer.filter.In;
+
+/**
+ * Simplifies filter trees before they are translated to SQL, so that equal
+ * sets of conditions produce the same, short SQL text.
+ *
+ * <ul>
+ * <li>Nested And and Or filters are flattened and single-child ones replaced
+ * by their child.</li>
+ * <li>Duplicate conditions are removed.</li>
+ * <li>Constants are folded: an empty And is true, an empty Or or In is false,
+ * and double negations cancel out.</li>
+ * <li>Equal comparisons on one column inside an Or are collapsed into an
+ * {@link In}, unless their values are BigDecimals.</li>
+ * <li>Comparisons and Between filters on one numeric or date column inside an
+ * And are merged into the narrowest range, or into false if it is empty.</li>
+ * <li>The conditions of each And and Or are sorted into a canonical order.</li>
+ * </ul>
+ *
+ * Only the exact Vaadin filter classes and {@link In} are rewritten; other
+ * filters are kept as they are and in their original relative order. Ranges
+ * are only merged for numbers and dates, whose order does not depend on the
+ * collation of the database.
+ */
+final class FilterOptimizer {
+
+    private FilterOptimizer() {
+    }
+
+    /**
+     * Optimizes a list of filters that are all required to pass.
+     *
+     * @return the optimized filters, an empty list if they always pass
+     */
+    static List<Filter> optimize(List<Filter> filters) {
+        And all = new And(filters.toArray(new Filter[filters.size()]));
+        Filter f = optimize(all);
+        if (f == all) {
+            return filters;
+        } else if (isTrue(f)) {
+            return Collections.emptyList();
+        } else if (f.getClass() == And.class) {
+            return new ArrayList<Filter>(((And) f).getFilters());
+        }
+        return Collections.singletonList(f);
+    }
+
+    /**
+     * Optimizes a filter.
+     *
+     * @return the optimized filter, the given instance if it cannot be
+     *         simplified
+     */
+    static Filter optimize(Filter filter) {
+        Class<?> type = filter.getClass();
+        if (type == And.class) {
+            return optimizeJunction(filter, ((And) filter).getFilters(), true);
+        } else if (type == Or.class) {
+            return optimizeJunction(filter, ((Or) filter).getFilters(), false);
+        } else if (type == Not.class) {
+            Filter negated = optimize(((Not) filter).getFilter());
+            if (isTrue(negated)) {
+                return new Or();
+            } else if (isFalse(negated)) {
+                return new And();
+            } else if (negated.getClass() == Not.class) {
+                return ((Not) negated).getFilter();
+            }
+            return negated == ((Not) filter).getFilter() ? filter
+                    : new Not(negated);
+        } else if (type == In.class) {
+            In in = (In) filter;
+            if (in.getValues().isEmpty()) {
+                return new Or();
+            } else if (in.getValues().size() == 1) {
+                Object value = in.getValues().iterator().next();
+                if (isEqualityConsistent(value)) {
+                    return new Compare.Equal(in.getPropertyId(), value);
+                }
+            }
+            List<Object> values = new ArrayList<Object>(in.getValues());
+            Collections.sort(values, VALUE_ORDER);
+            return values.equals(new ArrayList<Object>(in.getValues()))
+                    ? filter : new In(in.getPropertyId(), values);
+        } else if (type == Between.class) {
+            Between between = (Between) filter;
+            if (isOrdered(between.getStartValue(), between.getEndValue())
+                    && compare(between.getStartValue(),
+                            between.getEndValue()) > 0) {
+                return new Or();
+            }
+        }
+        return filter;
+    }
+
+    private static Filter optimizeJunction(Filter junction,
+            Collection<Filter> children, boolean and) {
+        List<Filter> flat = new ArrayList<Filter>(children.size());
+        boolean changed = false;
+        for (Filter child : children) {
+            Filter f = optimize(child);
+            changed |= f != child;
+            if (and ? isTrue(f) : isFalse(f)) {
+                changed = true;
+            } else if (and ? isFalse(f) : isTrue(f)) {
+                return f;
+            } else if (f.getClass() == (and ? And.class : Or.class)) {
+                flat.addAll(((And.class == f.getClass()) ? ((And) f)
+                        .getFilters() : ((Or) f).getFilters()));
+                changed = true;
+            } else {
+                flat.add(f);
+            }
+        }
+        if (flat.size() > 1) {
+            List<Filter> distinct = removeDuplicates(flat);
+            if (distinct.size() < flat.size()) {
+                flat = distinct;
+                changed = true;
+            }
+        }
+        List<Filter> simplified = and ? mergeRanges(flat)
+                : collapseEquals(flat);
+        if (simplified == null) {
+            return new Or();
+        }
+        changed |= simplified != flat;
+        flat = simplified;
+        if (flat.isEmpty()) {
+            return and ? new And() : new Or();
+        } else if (flat.size() == 1) {
+            return flat.get(0);
+        }
+        Filter[] array = sortCanonically(flat);
+        for (int i = 0; !changed && i < array.length; i++) {
+            changed = array[i] != flat.get(i);
+        }
+        if (!changed) {
+            return junction;
+        }
+        return and ? new And(array) : new Or(array);
+    }
+
+    /**
+     * Removes equal filters, keeping the first of them. Like filters are only
+     * equal if their case sensitivity is too, which their equals method
+     * ignores.
+     */
+    private static List<Filter> removeDuplicates(List<Filter> filters) {
+        Set<Filter> seen = new HashSet<Filter>();
+        List<Like> likes = new ArrayList<Like>();
+        List<Filter> distinct = new ArrayList<Filter>(filters.size());
+        for (Filter f : filters) {
+            if (f.getClass() == Like.class) {
+                if (!containsLike(likes, (Like) f)) {
+                    likes.add((Like) f);
+                    distinct.add(f);
+                }
+            } else if (seen.add(f)) {
+                distinct.add(f);
+            }
+        }
+        return distinct;
+    }
+
+    private static boolean containsLike(List<Like> likes, Like like) {
+        for (Like l : likes) {
+            if (l.equals(like)
+                    && l.isCaseSensitive() == like.isCaseSensitive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts filters by column and kind, leaving the filters it does not know
+     * last and in their original order. The sort key of each filter is
+     * computed only once.
+     */
+    private static Filter[] sortCanonically(List<Filter> filters) {
+        SortKey[] keys = new SortKey[filters.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SortKey(filters.get(i));
+        }
+        Arrays.sort(keys);
+        Filter[] sorted = new Filter[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[i] = keys[i].filter;
+        }
+        return sorted;
+    }
+
+    /**
+     * Orders filters by the prefix of their sort key that names the column,
+     * building the whole key only for filters on the same column.
+     */
+    private static final class SortKey implements Comparable<SortKey> {
+        private final Filter filter;
+        private final String column;
+        private String key;
+
+        private SortKey(Filter filter) {
+            this.filter = filter;
+            column = sortColumn(filter);
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int c = column.compareTo(other.column);
+            return c != 0 ? c : getKey().compareTo(other.getKey());
+        }
+
+        private String getKey() {
+            if (key == null) {
+                key = sortKey(filter);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Checks whether at least two of the filters are range conditions, or
+     * Equal and In filters, on the same column.
+     */
+    private static boolean hasRepeatedColumn(List<Filter> filters,
+            boolean ranges) {
+        Set<Object> columns = null;
+        for (Filter f : filters) {
+            Object column = ranges ? getRangeColumn(f) : getEqualColumn(f);
+            if (column == null) {
+                continue;
+            } else if (columns == null) {
+                columns = new HashSet<Object>();
+            }
+            if (!columns.add(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the Equal comparisons and In filters on one column among the
+     * alternatives of an Or by a single In filter.
+     */
+    private static List<Filter> collapseEquals(List<Filter> alternatives) {
+        if (!hasRepeatedColumn(alternatives, false)) {
+            return alternatives;
+        }
+        Map<Object, List<Object>> valuesByColumn = new LinkedHashMap<Object, List<Object>>();
+        Map<Object, Integer> counts = new LinkedHashMap<Object, Integer>();
+        for (Filter f : alternatives) {
+            Object column = getEqualColumn(f);
+            if (column != null) {
+                List<Object> values = valuesByColumn.get(column);
+                if (values == null) {
+                    values = new ArrayList<Object>();
+                    valuesByColumn.put(column, values);
+                    counts.put(column, 0);
+                }
+                if (f.getClass() == In.class) {
+                    values.addAll(((In) f).getValues());
+                } else {
+                    values.add(((Compare) f).getValue());
+                }
+                counts.put(column, counts.get(column) + 1);
+            }
+        }
+        List<Filter> result = new ArrayList<Filter>(alternatives.size());
+        for (Filter f : alternatives) {
+            Object column = getEqualColumn(f);
+            if (column == null || counts.get(column) < 2) {
+                result.add(f);
+            } else if (valuesByColumn.containsKey(column)) {
+                result.add(optimize(
+                        new In(column, valuesByColumn.remove(column))));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the column of an Equal comparison with a value or of an In
+     *         filter, null for other filters
+     */
+    private static Object getEqualColumn(Filter f) {
+        if (f.getClass() == In.class) {
+            return ((In) f).getPropertyId();
+        } else if (f.getClass() == Compare.Equal.class
+                && isEqualityConsistent(((Compare) f).getValue())) {
+            return ((Compare) f).getPropertyId();
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an Equal comparison with a value passes the same items
+     * as an In filter with it. Compare uses compareTo where it can, which
+     * unlike equals ignores the scale of a BigDecimal.
+     */
+    private static boolean isEqualityConsistent(Object value) {
+        return value != null && !(value instanceof BigDecimal);
+    }
+
+    /**
+     * Merges the comparisons and Between filters on one column among the
+     * conditions of an And into the narrowest range.
+     *
+     * @return the conditions, or null if they can never be all true
+     */
+    private static List<Filter> mergeRanges(List<Filter> conditions) {
+        if (!hasRepeatedColumn(conditions, true)) {
+            return conditions;
+        }
+        Map<Object, Range> ranges = new LinkedHashMap<Object, Range>();
+        for (Filter f : conditions) {
+            Object column = getRangeColumn(f);
+            if (column != null) {
+                Range range = ranges.get(column);
+                if (range == null) {
+                    range = new Range();
+                    ranges.put(column, range);
+                }
+                range.add(f);
+            }
+        }
+        List<Filter> result = new ArrayList<Filter>(conditions.size());
+        for (Filter f : conditions) {
+            Object column = getRangeColumn(f);
+            Range range = column == null ? null : ranges.get(column);
+            if (range == null || !range.isMergeable()) {
+                result.add(f);
+            } else if (range.members > 0) {
+                List<Filter> merged = range.toFilters(column);
+                if (merged == null) {
+                    return null;
+                }
+                result.addAll(merged);
+                range.members = 0;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the column of a comparison or Between filter with ordered
+     *         values, null for other filters
+     */
+    private static Object getRangeColumn(Filter f) {
+        if (f instanceof Compare && f.getClass() != Compare.class
+                && f.getClass().getEnclosingClass() == Compare.class) {
+            Compare c = (Compare) f;
+            return isOrdered(c.getValue(), c.getValue()) ? c.getPropertyId()
+                    : null;
+        } else if (f.getClass() == Between.class) {
+            Between b = (Between) f;
+            return isOrdered(b.getStartValue(), b.getEndValue())
+                    ? b.getPropertyId() : null;
+        }
+        return null;
+    }
+
+    /**
+     * The bounds of the values of one column allowed by a set of conditions.
+     */
+    private static final class Range {
+        private int members;
+        private Class<?> type;
+        private boolean mixedTypes;
+        private Object equal;
+        private boolean conflict;
+        private Object lower;
+        private boolean lowerInclusive;
+        private Object upper;
+        private boolean upperInclusive;
+
+        private void add(Filter f) {
+            members++;
+            if (f.getClass() == Between.class) {
+                Between b = (Between) f;
+                checkType(b.getStartValue());
+                checkType(b.getEndValue());
+                if (!mixedTypes) {
+                    addLower(b.getStartValue(), true);
+                    addUpper(b.getEndValue(), true);
+                }
+                return;
+            }
+            Compare c = (Compare) f;
+            checkType(c.getValue());
+            if (mixedTypes) {
+                return;
+            }
+            switch (c.getOperation()) {
+            case EQUAL:
+                if (equal != null && compare(equal, c.getValue()) != 0) {
+                    conflict = true;
+                }
+                equal = c.getValue();
+                break;
+            case GREATER:
+                addLower(c.getValue(), false);
+                break;
+            case GREATER_OR_EQUAL:
+                addLower(c.getValue(), true);
+                break;
+            case LESS:
+                addUpper(c.getValue(), false);
+                break;
+            case LESS_OR_EQUAL:
+                addUpper(c.getValue(), true);
+                break;
+            }
+        }
+
+        private void checkType(Object value) {
+            if (type == null) {
+                type = value.getClass();
+            } else if (type != value.getClass()) {
+                mixedTypes = true;
+            }
+        }
+
+        private void addLower(Object value, boolean inclusive) {
+            int c = lower == null ? 1 : compare(value, lower);
+            if (c > 0 || c == 0 && !inclusive) {
+                lower = value;
+                lowerInclusive = inclusive;
+            }
+        }
+
+        private void addUpper(Object value, boolean inclusive) {
+            int c = upper == null ? -1 : compare(value, upper);
+            if (c < 0 || c == 0 && !inclusive) {
+                upper = value;
+                upperInclusive = inclusive;
+            }
+        }
+
+        private boolean isMergeable() {
+            return !mixedTypes;
+        }
+
+        /**
+         * @return the filters for the range, or null if it is empty
+         */
+        private List<Filter> toFilters(Object column) {
+            if (conflict) {
+                return null;
+            }
+            List<Filter> filters = new ArrayList<Filter>(2);
+            if (equal != null) {
+                if (lower != null) {
+                    int c = compare(equal, lower);
+                    if (c < 0 || c == 0 && !lowerInclusive) {
+                        return null;
+                    }
+                }
+                if (upper != null) {
+                    int c = compare(equal, upper);
+                    if (c > 0 || c == 0 && !upperInclusive) {
+                        return null;
+                    }
+                }
+                filters.add(new Compare.Equal(column, equal));
+                return filters;
+            }
+            if (lower != null && upper != null) {
+                int c = compare(lower, upper);
+                if (c > 0 || c == 0 && !(lowerInclusive && upperInclusive)) {
+                    return null;
+                } else if (c == 0) {
+                    filters.add(new Compare.Equal(column, lower));
+                    return filters;
+                } else if (lowerInclusive && upperInclusive) {
+                    filters.add(new Between(column, (Comparable<?>) lower,
+                            (Comparable<?>) upper));
+                    return filters;
+                }
+            }
+            if (lower != null) {
+                filters.add(lowerInclusive
+                        ? new Compare.GreaterOrEqual(column, lower)
+                        : new Compare.Greater(column, lower));
+            }
+            if (upper != null) {
+                filters.add(upperInclusive
+                        ? new Compare.LessOrEqual(column, upper)
+                        : new Compare.Less(column, upper));
+            }
+            return filters;
+        }
+    }
+
+    /**
+     * Checks whether two values are numbers or dates of the same class, which
+     * are ordered the same way in Java and in SQL.
+     */
+    private static boolean isOrdered(Object a, Object b) {
+        return a != null && b != null && a.getClass() == b.getClass()
+                && (a instanceof Number || a instanceof Date)
+                && a instanceof Comparable;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private static boolean isTrue(Filter f) {
+        return f.getClass() == And.class && ((And) f).getFilters().isEmpty();
+    }
+
+    private static boolean isFalse(Filter f) {
+        return f.getClass() == Or.class && ((Or) f).getFilters().isEmpty();
+    }
+
+    /**
+     * Sorts values of one class in their natural order, others by class and
+     * string form.
+     */
+    private static final Comparator<Object> VALUE_ORDER = new Comparator<Object>() {
+        @Override
+        public int compare(Object a, Object b) {
+            if (a.getClass() == b.getClass() && a instanceof Comparable) {
+                return FilterOptimizer.compare(a, b);
+            }
+            int c = a.getClass().getName().compareTo(b.getClass().getName());
+            return c != 0 ? c : a.toString().compareTo(b.toString());
+        }
+    };
+
+    /**
+     * @return the part of {@link #sortKey(Filter)} before the first
+     *         <code>'\u0000'</code>
+     */
+    private static String sortColumn(Filter f) {
+        Class<?> type = f.getClass();
+        if (type == IsNull.class) {
+            return String.valueOf(((IsNull) f).getPropertyId());
+        } else if (f instanceof Compare
+                && type.getEnclosingClass() == Compare.class) {
+            return String.valueOf(((Compare) f).getPropertyId());
+        } else if (type == Between.class) {
+            return String.valueOf(((Between) f).getPropertyId());
+        } else if (type == In.class) {
+            return String.valueOf(((In) f).getPropertyId());
+        } else if (type == Like.class) {
+            return String.valueOf(((Like) f).getPropertyId());
+        } else if (type == SimpleStringFilter.class) {
+            return String.valueOf(((SimpleStringFilter) f).getPropertyId());
+        } else if (type == Not.class) {
+            return sortColumn(((Not) f).getFilter());
+        } else if (type == And.class) {
+            return "\ufffeA";
+        } else if (type == Or.class) {
+            return "\ufffeO";
+        }
+        return "\uffff";
+    }
+
+    private static String sortKey(Filter f) {
+        Class<?> type = f.getClass();
+        if (type == IsNull.class) {
+            return key(((IsNull) f).getPropertyId(), "0");
+        } else if (f instanceof Compare
+                && type.getEnclosingClass() == Compare.class) {
+            Compare c = (Compare) f;
+            return key(c.getPropertyId(),
+                    "1" + c.getOperation().ordinal() + value(c.getValue()));
+        } else if (type == Between.class) {
+            Between b = (Between) f;
+            return key(b.getPropertyId(), "2" + value(b.getStartValue())
+                    + value(b.getEndValue()));
+        } else if (type == In.class) {
+            return key(((In) f).getPropertyId(),
+                    "3" + ((In) f).getValues());
+        } else if (type == Like.class) {
+            Like l = (Like) f;
+            return key(l.getPropertyId(),
+                    "4" + l.isCaseSensitive() + value(l.getValue()));
+        } else if (type == SimpleStringFilter.class) {
+            SimpleStringFilter s = (SimpleStringFilter) f;
+            return key(s.getPropertyId(), "5" + s.isIgnoreCase()
+                    + s.isOnlyMatchPrefix() + value(s.getFilterString()));
+        } else if (type == Not.class) {
+            return sortKey(((Not) f).getFilter()) + "\u0001";
+        } else if (type == And.class || type == Or.class) {
+            StringBuilder key = new StringBuilder(
+                    type == And.class ? "\ufffeA" : "\ufffeO");
+            for (Filter child : ((And.class == type) ? ((And) f).getFilters()
+                    : ((Or) f).getFilters())) {
+                key.append(sortKey(child)).append('\u0002');
+            }
+            return key.toString();
+        }
+        return "\uffff";
+    }
+
+    private static String key(Object propertyId, String rest) {
+        return String.valueOf(propertyId) + '\u0000' + rest;
+    }
+
+    private static String value(Object value) {
+        return value == null ? "\u0003"
+                : value.getClass().getName() + ':' + value + '\u0003';
+    }
+}
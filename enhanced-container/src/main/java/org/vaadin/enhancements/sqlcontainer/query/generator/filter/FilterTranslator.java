@@ -23,6 +23,19 @@ import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
 public interface FilterTranslator extends Serializable {
     public boolean translatesFilter(Filter filter);
 
+    /**
+     * Returns the class of the filters this translator may translate. When
+     * a class is given, {@link #translatesFilter(Filter)} is only asked about
+     * instances of that class and its subclasses, which lets
+     * {@link QueryBuilder} find the translator of a filter without asking
+     * every registered translator.
+     *
+     * @return the filter class, or null if any filter may be translated
+     */
+    public default Class<? extends Filter> getFilterClass() {
+        return null;
+    }
+
     public String getWhereStringForFilter(Filter filter, StatementHelper sh);
 
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vaadin.enhancements.sqlcontainer.filter.FullTextFilter;
+import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
+
+/**
+ * The FullTextStrategy knows the full-text search syntax of the database of a
+ * generator, so that {@link FullTextTranslator} can translate a
+ * {@link FullTextFilter} into a condition that uses the full-text index of the
+ * searched columns instead of scanning the table.
+ *
+ * The native conditions require an index that matches them:
+ * <ul>
+ * <li>PostgreSQL: a GIN index on the same <code>to_tsvector(...)</code>
+ * expression, which needs the text search configuration to be given.</li>
+ * <li>MySQL and MariaDB: a FULLTEXT index on exactly the searched columns.
+ * </li>
+ * <li>Oracle: an Oracle Text CONTEXT index on each searched column.</li>
+ * <li>SQL Server: a full-text index covering the searched columns.</li>
+ * </ul>
+ *
+ * Without a strategy every word is matched literally with a case-insensitive
+ * LIKE on each column, using the {@link LikeStrategy} of the generator.
+ *
+ * Instances are immutable. Extend this class if your database needs other SQL
+ * for full-text conditions.
+ */
+public class FullTextStrategy implements Serializable {
+
+    /**
+     * The full-text search syntax of a database.
+     */
+    public enum Syntax {
+        /** Case-insensitive LIKE conditions, for any database */
+        LIKE,
+        /** <code>to_tsvector(...) @@ plainto_tsquery(?)</code> */
+        POSTGRESQL,
+        /** <code>MATCH (...) AGAINST (? IN BOOLEAN MODE)</code> */
+        MYSQL,
+        /** <code>CONTAINS(col, ?) &gt; 0</code> */
+        ORACLE,
+        /** <code>CONTAINS((...), ?)</code> */
+        MSSQL
+    }
+
+    /** The strategy used when a generator does not set one */
+    public static final FullTextStrategy DEFAULT = new FullTextStrategy(
+            Syntax.LIKE);
+
+    private final Syntax syntax;
+    private final String textSearchConfig;
+
+    /**
+     * @param syntax
+     *            the full-text search syntax of the database
+     */
+    public FullTextStrategy(Syntax syntax) {
+        this(syntax, null);
+    }
+
+    /**
+     * @param syntax
+     *            the full-text search syntax of the database
+     * @param textSearchConfig
+     *            the PostgreSQL text search configuration, such as
+     *            <code>english</code>, or null to use the default one of the
+     *            database
+     */
+    public FullTextStrategy(Syntax syntax, String textSearchConfig) {
+        if (syntax == null) {
+            throw new IllegalArgumentException("The syntax must not be null");
+        }
+        if (textSearchConfig != null
+                && !textSearchConfig.matches("[A-Za-z_][A-Za-z0-9_.]*")) {
+            throw new IllegalArgumentException(
+                    "Invalid text search configuration: " + textSearchConfig);
+        }
+        this.syntax = syntax;
+        this.textSearchConfig = textSearchConfig;
+    }
+
+    /**
+     * Returns the strategy set on a statement helper by its generator.
+     *
+     * @param sh
+     *            the statement helper, may be null
+     * @return the strategy of the statement helper, or {@link #DEFAULT}
+     */
+    public static FullTextStrategy of(StatementHelper sh) {
+        if (sh != null && sh.getFullTextStrategy() != null) {
+            return sh.getFullTextStrategy();
+        }
+        return DEFAULT;
+    }
+
+    public Syntax getSyntax() {
+        return syntax;
+    }
+
+    public String getTextSearchConfig() {
+        return textSearchConfig;
+    }
+
+    /**
+     * Generates the condition for a full-text filter and adds its parameter
+     * values to the statement helper.
+     *
+     * @param filter
+     *            the filter
+     * @param sh
+     *            the statement helper
+     * @return the condition
+     */
+    public String getWhereString(FullTextFilter filter, StatementHelper sh) {
+        List<String> terms = filter.getTerms();
+        switch (syntax) {
+        case POSTGRESQL:
+            if (!terms.isEmpty()) {
+                return getPostgreSQLWhereString(filter, sh);
+            }
+            break;
+        case MYSQL:
+            /* In boolean mode, + makes each word required */
+            String required = join(terms, "+", "", " ", "+-<>()~*\"@");
+            if (!required.isEmpty()) {
+                sh.addParameterValue(required);
+                return "MATCH (" + getColumnList(filter, sh)
+                        + ") AGAINST (? IN BOOLEAN MODE)";
+            }
+            break;
+        case ORACLE:
+            /* Braces escape the reserved words and characters of a word */
+            String query = join(terms, "{", "}", " AND ", "{}");
+            if (!query.isEmpty()) {
+                return getOracleWhereString(filter, query, sh);
+            }
+            break;
+        case MSSQL:
+            String condition = join(terms, "\"", "\"", " AND ", "\"");
+            if (!condition.isEmpty()) {
+                sh.addParameterValue(condition);
+                String columns = getColumnList(filter, sh);
+                return "CONTAINS(" + (filter.getPropertyIds().size() > 1
+                        ? "(" + columns + ")" : columns) + ", ?)";
+            }
+            break;
+        default:
+            if (!terms.isEmpty()) {
+                return getLikeWhereString(filter, sh);
+            }
+        }
+        /* No words, everything matches */
+        return "1 = 1";
+    }
+
+    private String getPostgreSQLWhereString(FullTextFilter filter,
+            StatementHelper sh) {
+        String config = textSearchConfig == null ? ""
+                : "'" + textSearchConfig + "', ";
+        StringBuilder document = new StringBuilder();
+        List<Object> propertyIds = filter.getPropertyIds();
+        if (propertyIds.size() == 1) {
+            document.append(QueryBuilder.quote(propertyIds.get(0), sh));
+        } else {
+            /* A null column would make the whole document null */
+            for (Object propertyId : propertyIds) {
+                if (document.length() > 0) {
+                    document.append(" || ' ' || ");
+                }
+                document.append("coalesce(")
+                        .append(QueryBuilder.quote(propertyId, sh))
+                        .append(", '')");
+            }
+        }
+        sh.addParameterValue(filter.getText());
+        return "to_tsvector(" + config + document + ") @@ plainto_tsquery("
+                + config + "?)";
+    }
+
+    private String getOracleWhereString(FullTextFilter filter, String query,
+            StatementHelper sh) {
+        List<String> conditions = new ArrayList<String>();
+        for (Object propertyId : filter.getPropertyIds()) {
+            sh.addParameterValue(query);
+            conditions.add("CONTAINS(" + QueryBuilder.quote(propertyId, sh)
+                    + ", ?) > 0");
+        }
+        return join(conditions, " OR ", sh);
+    }
+
+    private String getLikeWhereString(FullTextFilter filter,
+            StatementHelper sh) {
+        LikeStrategy like = LikeStrategy.of(sh);
+        List<String> termConditions = new ArrayList<String>();
+        for (String term : filter.getTerms()) {
+            List<String> columnConditions = new ArrayList<String>();
+            for (Object propertyId : filter.getPropertyIds()) {
+                columnConditions.add(like.getWhereString(propertyId,
+                        "%" + LikeStrategy.escape(term) + "%",
+                        LikeStrategy.ESCAPE_CHARACTER, false, sh));
+            }
+            termConditions.add(join(columnConditions, " OR ", sh));
+        }
+        return join(termConditions, " AND ", sh);
+    }
+
+    private static String getColumnList(FullTextFilter filter,
+            StatementHelper sh) {
+        StringBuilder columns = new StringBuilder();
+        for (Object propertyId : filter.getPropertyIds()) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(QueryBuilder.quote(propertyId, sh));
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Joins conditions, grouping them if there are several.
+     */
+    private static String join(List<String> conditions, String operator,
+            StatementHelper sh) {
+        if (conditions.size() == 1) {
+            return conditions.get(0);
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String condition : conditions) {
+            if (joined.length() > 0) {
+                joined.append(operator);
+            }
+            joined.append(condition);
+        }
+        return QueryBuilder.group(joined.toString(), sh);
+    }
+
+    /**
+     * Joins the words of a search text into a full-text query, dropping the
+     * characters that have a special meaning in the query syntax.
+     */
+    private static String join(List<String> terms, String prefix,
+            String suffix, String separator, String special) {
+        StringBuilder query = new StringBuilder();
+        for (String term : terms) {
+            StringBuilder word = new StringBuilder(term.length());
+            for (int i = 0; i < term.length(); i++) {
+                if (special.indexOf(term.charAt(i)) < 0) {
+                    word.append(term.charAt(i));
+                }
+            }
+            if (word.length() > 0) {
+                if (query.length() > 0) {
+                    query.append(separator);
+                }
+                query.append(prefix).append(word).append(suffix);
+            }
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import org.vaadin.enhancements.sqlcontainer.filter.In;
+import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
+import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper.ArrayParameter;
+
+/**
+ * The InListStrategy knows how the database of a generator best receives the
+ * values of an {@link In} filter, so that selections of thousands of values
+ * neither exceed the parameter limits of the database nor produce statements
+ * that have to be parsed again for every number of values.
+ *
+ * <ul>
+ * <li>{@link Binding#PARAMETERS} binds every value as a parameter, in IN lists
+ * of at most {@link #getMaxListSize()} values.</li>
+ * <li>{@link Binding#ARRAY} binds all values as one SQL array, as in
+ * <code>col = ANY(?)</code> on PostgreSQL.</li>
+ * <li>{@link Binding#JSON} binds all values as one JSON array, as in
+ * <code>col IN (SELECT value FROM OPENJSON(?) WITH (value int '$'))</code>
+ * on SQL Server 2016 and later.</li>
+ * </ul>
+ *
+ * Lists shorter than {@link #getMinBindingSize()} and values that cannot be
+ * bound as an array are always bound as parameters.
+ *
+ * If the database limits the number of parameters of a statement, see
+ * {@link #withMaxParameters(int)}, lists of integers that would not fit are
+ * written into the SQL as literals instead.
+ *
+ * Instances are immutable. Extend this class if your database needs other SQL
+ * for IN conditions.
+ */
+public class InListStrategy implements Serializable {
+
+    /**
+     * How the values of an IN condition are bound.
+     */
+    public enum Binding {
+        /** One parameter per value */
+        PARAMETERS,
+        /** One <code>java.sql.Array</code> parameter, with = ANY(?) */
+        ARRAY,
+        /**
+         * One JSON array parameter, read with OPENJSON. This requires SQL
+         * Server 2016 or later and a database compatibility level of at least
+         * 130.
+         */
+        JSON
+    }
+
+    /** The strategy used when a generator does not set one */
+    public static final InListStrategy DEFAULT = new InListStrategy(1000);
+
+    /**
+     * The number of parameters left for the conditions translated after an IN
+     * list and for paging, when the parameters of a statement are limited
+     */
+    private static final int RESERVED_PARAMETERS = 100;
+
+    private static final Map<Class<?>, String> ARRAY_TYPES = new HashMap<Class<?>, String>();
+
+    static {
+        ARRAY_TYPES.put(Short.class, "smallint");
+        ARRAY_TYPES.put(Integer.class, "integer");
+        ARRAY_TYPES.put(Long.class, "bigint");
+        ARRAY_TYPES.put(BigDecimal.class, "numeric");
+        ARRAY_TYPES.put(Float.class, "real");
+        ARRAY_TYPES.put(Double.class, "double precision");
+        ARRAY_TYPES.put(Boolean.class, "boolean");
+        ARRAY_TYPES.put(String.class, "varchar");
+        ARRAY_TYPES.put(UUID.class, "uuid");
+        ARRAY_TYPES.put(java.sql.Date.class, "date");
+        ARRAY_TYPES.put(java.sql.Timestamp.class, "timestamp");
+    }
+
+    private final Binding binding;
+    private final int minBindingSize;
+    private final int maxListSize;
+    private final int maxParameters;
+    private final String jsonStringType;
+
+    /**
+     * Constructs an InListStrategy that binds every value as a parameter.
+     *
+     * @param maxListSize
+     *            the maximum number of values in one IN list
+     */
+    public InListStrategy(int maxListSize) {
+        this(Binding.PARAMETERS, Integer.MAX_VALUE, maxListSize);
+    }
+
+    /**
+     * Constructs an InListStrategy.
+     *
+     * @param binding
+     *            how the values of long lists are bound
+     * @param minBindingSize
+     *            the number of values from which the binding is used, shorter
+     *            lists are bound as parameters
+     * @param maxListSize
+     *            the maximum number of values in one IN list of parameters
+     */
+    public InListStrategy(Binding binding, int minBindingSize,
+            int maxListSize) {
+        this(binding, minBindingSize, maxListSize, Integer.MAX_VALUE,
+                "nvarchar(max)");
+    }
+
+    private InListStrategy(Binding binding, int minBindingSize,
+            int maxListSize, int maxParameters, String jsonStringType) {
+        if (binding == null) {
+            throw new IllegalArgumentException("The binding must not be null");
+        }
+        if (maxListSize < 1) {
+            throw new IllegalArgumentException(
+                    "The maximum list size must be positive");
+        }
+        if (maxParameters <= RESERVED_PARAMETERS) {
+            throw new IllegalArgumentException(
+                    "The maximum number of parameters must be greater than "
+                            + RESERVED_PARAMETERS);
+        }
+        if (!jsonStringType
+                .matches("[A-Za-z]+(\\(\\s*([0-9]+|max|MAX)\\s*\\))?")) {
+            throw new IllegalArgumentException(
+                    "Invalid SQL type: " + jsonStringType);
+        }
+        this.binding = binding;
+        this.minBindingSize = minBindingSize;
+        this.maxListSize = maxListSize;
+        this.maxParameters = maxParameters;
+        this.jsonStringType = jsonStringType;
+    }
+
+    /**
+     * Returns a copy of this strategy for a database that accepts at most the
+     * given number of parameters in a statement. Lists of integers that would
+     * leave fewer than 100 parameters for the rest of the statement are
+     * written as literals; other lists that do not fit are rejected.
+     *
+     * @param maxParameters
+     *            the maximum number of parameters of a statement, more than
+     *            100
+     * @return a new strategy
+     */
+    public InListStrategy withMaxParameters(int maxParameters) {
+        return new InListStrategy(binding, minBindingSize, maxListSize,
+                maxParameters, jsonStringType);
+    }
+
+    /**
+     * Returns a copy of this strategy that reads the strings of
+     * {@link Binding#JSON} lists as the given SQL type. The default,
+     * <code>nvarchar(max)</code>, matches any column but makes SQL Server
+     * convert a <code>varchar</code> column before comparing it, which
+     * prevents index seeks; use e.g. <code>varchar(8000)</code> for such
+     * columns.
+     *
+     * @param sqlType
+     *            the SQL type of the strings, e.g. <code>varchar(100)</code>
+     * @return a new strategy
+     */
+    public InListStrategy withJsonStringType(String sqlType) {
+        return new InListStrategy(binding, minBindingSize, maxListSize,
+                maxParameters, sqlType);
+    }
+
+    /**
+     * Returns the strategy set on a statement helper by its generator.
+     *
+     * @param sh
+     *            the statement helper, may be null
+     * @return the strategy of the statement helper, or {@link #DEFAULT}
+     */
+    public static InListStrategy of(StatementHelper sh) {
+        if (sh != null && sh.getInListStrategy() != null) {
+            return sh.getInListStrategy();
+        }
+        return DEFAULT;
+    }
+
+    public Binding getBinding() {
+        return binding;
+    }
+
+    public int getMinBindingSize() {
+        return minBindingSize;
+    }
+
+    public int getMaxListSize() {
+        return maxListSize;
+    }
+
+    public int getMaxParameters() {
+        return maxParameters;
+    }
+
+    public String getJsonStringType() {
+        return jsonStringType;
+    }
+
+    /**
+     * Generates the condition for an IN filter and adds its parameter values
+     * to the statement helper.
+     *
+     * @param in
+     *            the filter
+     * @param sh
+     *            the statement helper
+     * @return the condition
+     */
+    public String getWhereString(In in, StatementHelper sh) {
+        Collection<Object> values = in.getValues();
+        if (values.isEmpty()) {
+            return "1 = 0";
+        }
+        String column = QueryBuilder.quote(in.getPropertyId(), sh);
+        if (values.size() >= minBindingSize) {
+            if (binding == Binding.ARRAY) {
+                String type = getArrayType(values);
+                if (type != null) {
+                    sh.addParameterValue(
+                            new ArrayParameter(type, values.toArray()));
+                    return column + " = ANY(?)";
+                }
+            } else if (binding == Binding.JSON) {
+                String type = getJsonType(values);
+                if (type != null) {
+                    sh.addParameterValue(toJson(values));
+                    return column + " IN (SELECT value FROM OPENJSON(?) WITH"
+                            + " (value " + type + " '$'))";
+                }
+            }
+        }
+        boolean literals = false;
+        if (sh.getParameterCount() + values.size() > maxParameters
+                - RESERVED_PARAMETERS) {
+            if (!isIntegers(values)) {
+                throw new IllegalArgumentException("An IN list of "
+                        + values.size() + " values does not fit in the "
+                        + maxParameters + " parameters of a statement");
+            }
+            literals = true;
+        }
+        return getListsWhereString(column, values, literals, sh);
+    }
+
+    /**
+     * Generates IN lists of at most {@link #getMaxListSize()} parameters or
+     * integer literals.
+     */
+    private String getListsWhereString(String column,
+            Collection<Object> values, boolean literals, StatementHelper sh) {
+        StringBuilder where = new StringBuilder();
+        int lists = 0;
+        Iterator<Object> it = values.iterator();
+        while (it.hasNext()) {
+            if (lists++ > 0) {
+                where.append(" OR ");
+            }
+            where.append(column).append(" IN (");
+            for (int i = 0; i < maxListSize && it.hasNext(); i++) {
+                if (i > 0) {
+                    where.append(", ");
+                }
+                if (literals) {
+                    where.append(it.next());
+                } else {
+                    where.append('?');
+                    sh.addParameterValue(it.next());
+                }
+            }
+            where.append(")");
+        }
+        return lists > 1 ? QueryBuilder.group(where.toString(), sh)
+                : where.toString();
+    }
+
+    /**
+     * @return the SQL type of the elements of an array holding the values, or
+     *         null if they are not all of one known class
+     */
+    protected String getArrayType(Collection<Object> values) {
+        Class<?> type = values.iterator().next().getClass();
+        for (Object value : values) {
+            if (value.getClass() != type) {
+                return null;
+            }
+        }
+        return ARRAY_TYPES.get(type);
+    }
+
+    /**
+     * @return the SQL type OPENJSON reads the values as, or null if they are
+     *         neither all integers nor all strings
+     */
+    protected String getJsonType(Collection<Object> values) {
+        if (isIntegers(values)) {
+            for (Object value : values) {
+                if (!(value instanceof Integer || value instanceof Short
+                        || value instanceof Byte)) {
+                    return "bigint";
+                }
+            }
+            return "int";
+        }
+        for (Object value : values) {
+            if (!(value instanceof String)) {
+                return null;
+            }
+        }
+        return jsonStringType;
+    }
+
+    /**
+     * @return true if all values are integers within the range of a long,
+     *         which can be written as literals without quoting
+     */
+    private static boolean isIntegers(Collection<Object> values) {
+        for (Object value : values) {
+            if (!(value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte
+                    || value instanceof BigInteger
+                            && ((BigInteger) value).bitLength() < 64)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the values as a JSON array, or null if they are not all
+     *         integers or strings
+     */
+    protected String toJson(Collection<Object> values) {
+        StringBuilder json = new StringBuilder("[");
+        for (Object value : values) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            if (value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte
+                    || value instanceof BigInteger) {
+                json.append(value);
+            } else if (value instanceof String) {
+                appendJsonString(json, (String) value);
+            } else {
+                return null;
+            }
+        }
+        return json.append(']').toString();
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -26,9 +26,14 @@ public class IsNullTranslator implements FilterTranslator {
         return filter instanceof IsNull;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return IsNull.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
         IsNull in = (IsNull) filter;
-        return QueryBuilder.quote(in.getPropertyId()) + " IS NULL";
+        return QueryBuilder.quote(in.getPropertyId(), sh) + " IS NULL";
     }
 }
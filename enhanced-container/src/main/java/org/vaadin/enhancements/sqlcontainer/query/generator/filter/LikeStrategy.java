@@ -0,0 +1,324 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
+
+/**
+ * The LikeStrategy knows how the database of a generator matches LIKE
+ * patterns, so that {@link LikeTranslator} can produce conditions that the
+ * database can answer from an index.
+ *
+ * <ul>
+ * <li>Case-insensitive patterns are matched with <code>UPPER(col)</code>,
+ * with PostgreSQL's <code>ILIKE</code> or with a plain <code>LIKE</code> on a
+ * column whose collation ignores case, see {@link CaseInsensitiveMatch}.</li>
+ * <li>Columns that have an index on <code>UPPER(col)</code> are always
+ * matched case-insensitively with <code>UPPER(col)</code>, so that the index
+ * can be used.</li>
+ * <li>Optionally, prefix patterns such as <code>'abc%'</code> are rewritten
+ * into the range <code>col &gt;= 'abc' AND col &lt; 'abd'</code>, which any
+ * ordinary index on the column can answer. The range matches the same rows as
+ * the pattern only if the column is sorted by character code, so this is
+ * disabled by default.</li>
+ * </ul>
+ *
+ * Instances are immutable. Extend this class if your database needs other SQL
+ * for LIKE conditions.
+ */
+public class LikeStrategy implements Serializable {
+
+    /**
+     * How case-insensitive LIKE patterns are matched.
+     */
+    public enum CaseInsensitiveMatch {
+        /** <code>UPPER(col) LIKE ?</code> with an upper case pattern */
+        UPPER,
+        /** <code>col ILIKE ?</code>, supported by PostgreSQL */
+        ILIKE,
+        /**
+         * <code>col LIKE ?</code>, for columns with a case-insensitive
+         * collation such as the defaults of MySQL and SQL Server
+         */
+        COLLATION
+    }
+
+    /** The strategy used when a generator does not set one */
+    public static final LikeStrategy DEFAULT = new LikeStrategy(
+            CaseInsensitiveMatch.UPPER);
+
+    /** The escape character of the patterns made by {@link #escape(String)} */
+    public static final char ESCAPE_CHARACTER = '!';
+
+    private final CaseInsensitiveMatch caseInsensitiveMatch;
+    private final boolean prefixRangesEnabled;
+    private final Set<Object> upperIndexedColumns;
+
+    /**
+     * Constructs a LikeStrategy that does not rewrite prefix patterns and
+     * knows no indexes on <code>UPPER(col)</code>.
+     *
+     * @param caseInsensitiveMatch
+     *            how case-insensitive patterns are matched
+     */
+    public LikeStrategy(CaseInsensitiveMatch caseInsensitiveMatch) {
+        this(caseInsensitiveMatch, false, Collections.emptySet());
+    }
+
+    /**
+     * Constructs a LikeStrategy.
+     *
+     * @param caseInsensitiveMatch
+     *            how case-insensitive patterns are matched
+     * @param prefixRangesEnabled
+     *            true to rewrite prefix patterns into ranges where an index
+     *            can answer them
+     * @param upperIndexedColumns
+     *            the property ids of the columns that have an index on
+     *            <code>UPPER(col)</code>
+     */
+    public LikeStrategy(CaseInsensitiveMatch caseInsensitiveMatch,
+            boolean prefixRangesEnabled, Collection<?> upperIndexedColumns) {
+        if (caseInsensitiveMatch == null) {
+            throw new IllegalArgumentException(
+                    "The case-insensitive match must not be null");
+        }
+        this.caseInsensitiveMatch = caseInsensitiveMatch;
+        this.prefixRangesEnabled = prefixRangesEnabled;
+        this.upperIndexedColumns = Collections
+                .unmodifiableSet(new HashSet<Object>(upperIndexedColumns));
+    }
+
+    /**
+     * Returns the strategy set on a statement helper by its generator.
+     *
+     * @param sh
+     *            the statement helper, may be null
+     * @return the strategy of the statement helper, or {@link #DEFAULT}
+     */
+    public static LikeStrategy of(StatementHelper sh) {
+        if (sh != null && sh.getLikeStrategy() != null) {
+            return sh.getLikeStrategy();
+        }
+        return DEFAULT;
+    }
+
+    public CaseInsensitiveMatch getCaseInsensitiveMatch() {
+        return caseInsensitiveMatch;
+    }
+
+    public boolean isPrefixRangesEnabled() {
+        return prefixRangesEnabled;
+    }
+
+    public Set<Object> getUpperIndexedColumns() {
+        return upperIndexedColumns;
+    }
+
+    /**
+     * Returns a copy of this strategy that also knows the given columns to
+     * have an index on <code>UPPER(col)</code>.
+     *
+     * @param propertyIds
+     *            the property ids of the columns
+     * @return a new strategy
+     */
+    public LikeStrategy withUpperIndexedColumns(Object... propertyIds) {
+        Set<Object> columns = new HashSet<Object>(upperIndexedColumns);
+        columns.addAll(Arrays.asList(propertyIds));
+        return new LikeStrategy(caseInsensitiveMatch, prefixRangesEnabled,
+                columns);
+    }
+
+    /**
+     * Returns a copy of this strategy that rewrites prefix patterns into
+     * ranges, or not.
+     *
+     * @param enabled
+     *            true to rewrite prefix patterns
+     * @return a new strategy
+     */
+    public LikeStrategy withPrefixRangesEnabled(boolean enabled) {
+        return new LikeStrategy(caseInsensitiveMatch, enabled,
+                upperIndexedColumns);
+    }
+
+    /**
+     * Generates the condition that a column matches a LIKE pattern and adds
+     * its parameter values to the statement helper.
+     *
+     * @param propertyId
+     *            the property id of the column
+     * @param pattern
+     *            the pattern, using <code>%</code> and <code>_</code> as
+     *            wildcards
+     * @param caseSensitive
+     *            whether the match is case-sensitive
+     * @param sh
+     *            the statement helper
+     * @return the condition
+     */
+    public String getWhereString(Object propertyId, String pattern,
+            boolean caseSensitive, StatementHelper sh) {
+        return getWhereString(propertyId, pattern, null, caseSensitive, sh);
+    }
+
+    /**
+     * Generates the condition that a column matches a LIKE pattern that uses
+     * an escape character, and adds its parameter values to the statement
+     * helper.
+     *
+     * @param propertyId
+     *            the property id of the column
+     * @param pattern
+     *            the pattern, using <code>%</code> and <code>_</code> as
+     *            wildcards
+     * @param escape
+     *            the character that makes the next character of the pattern
+     *            literal, or null if the pattern has none
+     * @param caseSensitive
+     *            whether the match is case-sensitive
+     * @param sh
+     *            the statement helper
+     * @return the condition
+     * @see #escape(String)
+     */
+    public String getWhereString(Object propertyId, String pattern,
+            Character escape, boolean caseSensitive, StatementHelper sh) {
+        String escapeClause = escape == null ? ""
+                : " ESCAPE '" + escape + "'";
+        String column = QueryBuilder.quote(propertyId, sh);
+        boolean upper = false;
+        if (!caseSensitive) {
+            if (upperIndexedColumns.contains(propertyId)
+                    || caseInsensitiveMatch == CaseInsensitiveMatch.UPPER) {
+                upper = true;
+                column = "UPPER(" + column + ")";
+                pattern = pattern.toUpperCase();
+            } else if (caseInsensitiveMatch == CaseInsensitiveMatch.ILIKE) {
+                sh.addParameterValue(pattern);
+                return column + " ILIKE ?" + escapeClause;
+            }
+        }
+        /*
+         * A range on UPPER(col) only helps if that expression is indexed
+         */
+        if (prefixRangesEnabled && (!upper
+                || upperIndexedColumns.contains(propertyId))) {
+            String prefix = getPrefix(pattern, escape);
+            if (prefix != null) {
+                return getRangeWhereString(column, prefix, sh);
+            }
+        }
+        sh.addParameterValue(pattern);
+        return column + " LIKE ?" + escapeClause;
+    }
+
+    /**
+     * Escapes the wildcards of a text with {@link #ESCAPE_CHARACTER}, so that
+     * it only matches itself in a pattern.
+     *
+     * @param text
+     *            the literal text
+     * @return the text as part of a pattern with that escape character
+     */
+    public static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == ESCAPE_CHARACTER) {
+                escaped.append(ESCAPE_CHARACTER);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Generates the condition that a column, or an expression on it, starts
+     * with a prefix.
+     *
+     * @param column
+     *            the quoted column or expression
+     * @param prefix
+     *            the prefix, not empty
+     * @param sh
+     *            the statement helper
+     * @return the condition
+     */
+    protected String getRangeWhereString(String column, String prefix,
+            StatementHelper sh) {
+        sh.addParameterValue(prefix);
+        String end = getPrefixEnd(prefix);
+        if (end == null) {
+            return column + " >= ?";
+        }
+        sh.addParameterValue(end);
+        return QueryBuilder.group(column + " >= ? AND " + column + " < ?",
+                sh);
+    }
+
+    /**
+     * @return the literal text before a single trailing <code>%</code>, or
+     *         null if the pattern is not of that form
+     */
+    static String getPrefix(String pattern, Character escape) {
+        int last = pattern.length() - 1;
+        if (last < 1 || pattern.charAt(last) != '%') {
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder(last);
+        for (int i = 0; i < last; i++) {
+            char c = pattern.charAt(i);
+            if (escape != null && c == escape.charValue()) {
+                /* An escaped character is literal, the trailing % is not */
+                if (++i == last) {
+                    return null;
+                }
+                c = pattern.charAt(i);
+            } else if (c == '%' || c == '_') {
+                return null;
+            } else if (escape == null && c == '\\') {
+                /* Backslash is the default escape of some databases */
+                return null;
+            }
+            prefix.append(c);
+        }
+        return prefix.length() > 0 ? prefix.toString() : null;
+    }
+
+    /**
+     * @return the smallest string that is greater than all strings starting
+     *         with the prefix, or null if there is none
+     */
+    static String getPrefixEnd(String prefix) {
+        int i = prefix.length() - 1;
+        while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) {
+            i--;
+        }
+        if (i < 0) {
+            return null;
+        }
+        return prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+    }
+}
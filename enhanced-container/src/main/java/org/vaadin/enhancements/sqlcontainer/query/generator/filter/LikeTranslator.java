@@ -26,17 +26,16 @@ public class LikeTranslator implements FilterTranslator {
         return filter instanceof Like;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return Like.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
         Like like = (Like) filter;
-        if (like.isCaseSensitive()) {
-            sh.addParameterValue(like.getValue());
-            return QueryBuilder.quote(like.getPropertyId()) + " LIKE ?";
-        } else {
-            sh.addParameterValue(like.getValue().toUpperCase());
-            return "UPPER(" + QueryBuilder.quote(like.getPropertyId())
-                    + ") LIKE ?";
-        }
+        return LikeStrategy.of(sh).getWhereString(like.getPropertyId(),
+                like.getValue(), like.isCaseSensitive(), sh);
     }
 
 }
@@ -27,12 +27,17 @@ public class NotTranslator implements FilterTranslator {
         return filter instanceof Not;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return Not.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
         Not not = (Not) filter;
         if (not.getFilter() instanceof IsNull) {
             IsNull in = (IsNull) not.getFilter();
-            return QueryBuilder.quote(in.getPropertyId()) + " IS NOT NULL";
+            return QueryBuilder.quote(in.getPropertyId(), sh) + " IS NOT NULL";
         }
         return "NOT "
                 + QueryBuilder.getWhereStringForFilter(not.getFilter(), sh);
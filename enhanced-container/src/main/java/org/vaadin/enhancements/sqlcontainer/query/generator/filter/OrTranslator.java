@@ -26,10 +26,20 @@ public class OrTranslator implements FilterTranslator {
         return filter instanceof Or;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return Or.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
+        Or or = (Or) filter;
+        if (or.getFilters().isEmpty()) {
+            /* An empty Or is always false */
+            return "1 = 0";
+        }
         return QueryBuilder.group(QueryBuilder
-                .getJoinedFilterString(((Or) filter).getFilters(), "OR", sh));
+                .getJoinedFilterString(or.getFilters(), "OR", sh), sh);
     }
 
 }
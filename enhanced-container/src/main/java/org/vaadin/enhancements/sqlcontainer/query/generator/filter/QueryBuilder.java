@@ -16,8 +16,14 @@
 package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
 
 import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.AbstractJunctionFilter;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Not;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
@@ -25,9 +31,12 @@ import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
 
 public class QueryBuilder implements Serializable {
 
-    private static ArrayList<FilterTranslator> filterTranslators = new ArrayList<FilterTranslator>();
+    private static volatile TranslatorRegistry filterTranslators = new TranslatorRegistry(
+            new FilterTranslator[0]);
     private static StringDecorator stringDecorator = new StringDecorator("\"",
             "\"");
+    private static volatile int configurationVersion;
+    private static volatile boolean filterOptimizationEnabled = true;
 
     static {
         /* Register all default filter translators */
@@ -39,11 +48,57 @@ public class QueryBuilder implements Serializable {
         addFilterTranslator(new NotTranslator());
         addFilterTranslator(new IsNullTranslator());
         addFilterTranslator(new SimpleStringTranslator());
+        addFilterTranslator(new InTranslator());
+        addFilterTranslator(new FullTextTranslator());
+    }
+
+    /**
+     * An immutable list of filter translators in registration order. The
+     * translators that may translate the filters of a class are resolved once
+     * per class; registering a translator replaces the whole registry.
+     */
+    private static final class TranslatorRegistry {
+        private final FilterTranslator[] translators;
+        private final ClassValue<FilterTranslator[]> candidates = new ClassValue<FilterTranslator[]>() {
+            @Override
+            protected FilterTranslator[] computeValue(Class<?> type) {
+                List<FilterTranslator> result = new ArrayList<FilterTranslator>();
+                for (FilterTranslator ft : translators) {
+                    Class<?> filterClass = ft.getFilterClass();
+                    if (filterClass == null
+                            || filterClass.isAssignableFrom(type)) {
+                        result.add(ft);
+                    }
+                }
+                return result.toArray(new FilterTranslator[result.size()]);
+            }
+        };
+
+        private TranslatorRegistry(FilterTranslator[] translators) {
+            this.translators = translators;
+        }
+
+        private TranslatorRegistry add(FilterTranslator translator) {
+            FilterTranslator[] added = Arrays.copyOf(translators,
+                    translators.length + 1);
+            added[translators.length] = translator;
+            return new TranslatorRegistry(added);
+        }
+
+        private FilterTranslator find(Filter filter) {
+            for (FilterTranslator ft : candidates.get(filter.getClass())) {
+                if (ft.translatesFilter(filter)) {
+                    return ft;
+                }
+            }
+            return null;
+        }
     }
 
     public synchronized static void addFilterTranslator(
             FilterTranslator translator) {
-        filterTranslators.add(translator);
+        filterTranslators = filterTranslators.add(translator);
+        configurationVersion++;
     }
 
     /**
@@ -55,6 +110,40 @@ public class QueryBuilder implements Serializable {
      */
     public static void setStringDecorator(StringDecorator decorator) {
         stringDecorator = decorator;
+        configurationVersion++;
+    }
+
+    /**
+     * Sets whether filters are simplified before they are translated: nested
+     * And and Or filters are flattened, duplicates removed, Equal comparisons
+     * on one column collapsed into an IN list and numeric or date ranges
+     * merged. Enabled by default.
+     *
+     * @param enabled
+     *            true to optimize filters, false to translate them as given
+     */
+    public static void setFilterOptimizationEnabled(boolean enabled) {
+        filterOptimizationEnabled = enabled;
+        configurationVersion++;
+    }
+
+    /**
+     * @return true if filters are simplified before they are translated
+     * @see #setFilterOptimizationEnabled(boolean)
+     */
+    public static boolean isFilterOptimizationEnabled() {
+        return filterOptimizationEnabled;
+    }
+
+    /**
+     * Returns a number that changes whenever a filter translator is added,
+     * the string decorator is replaced or filter optimization is switched, so
+     * that generated SQL can be remembered until then.
+     *
+     * @return the version of the translator configuration
+     */
+    public static int getConfigurationVersion() {
+        return configurationVersion;
     }
 
     public static String quote(Object str) {
@@ -65,6 +154,40 @@ public class QueryBuilder implements Serializable {
         return stringDecorator.group(str);
     }
 
+    /**
+     * Returns the string decorator of the generator that created a statement
+     * helper, or the one set with {@link #setStringDecorator(StringDecorator)}
+     * if the generator has none.
+     *
+     * @param sh
+     *            the statement helper, may be null
+     * @return the string decorator to use
+     */
+    public static StringDecorator getStringDecorator(StatementHelper sh) {
+        if (sh != null && sh.getStringDecorator() != null) {
+            return sh.getStringDecorator();
+        }
+        return stringDecorator;
+    }
+
+    /**
+     * Quotes a string with the string decorator of a statement helper.
+     *
+     * @see #getStringDecorator(StatementHelper)
+     */
+    public static String quote(Object str, StatementHelper sh) {
+        return getStringDecorator(sh).quote(str);
+    }
+
+    /**
+     * Groups a string with the string decorator of a statement helper.
+     *
+     * @see #getStringDecorator(StatementHelper)
+     */
+    public static String group(String str, StatementHelper sh) {
+        return getStringDecorator(sh).group(str);
+    }
+
     /**
      * Constructs and returns a string representing the filter that can be used
      * in a WHERE clause.
@@ -75,14 +198,13 @@ public class QueryBuilder implements Serializable {
      *            the statement helper to update with the value(s) of the filter
      * @return a string representing the filter.
      */
-    public synchronized static String getWhereStringForFilter(Filter filter,
+    public static String getWhereStringForFilter(Filter filter,
             StatementHelper sh) {
-        for (FilterTranslator ft : filterTranslators) {
-            if (ft.translatesFilter(filter)) {
-                return ft.getWhereStringForFilter(filter, sh);
-            }
+        if (filter == null) {
+            return "";
         }
-        return "";
+        FilterTranslator ft = filterTranslators.find(filter);
+        return ft == null ? "" : ft.getWhereStringForFilter(filter, sh);
     }
 
     public static String getJoinedFilterString(Collection<Filter> filters,
@@ -103,8 +225,103 @@ public class QueryBuilder implements Serializable {
         if (filters == null || filters.isEmpty()) {
             return "";
         }
+        if (filterOptimizationEnabled) {
+            filters = FilterOptimizer.optimize(filters);
+            if (filters.isEmpty()) {
+                return "";
+            }
+        }
         StringBuilder where = new StringBuilder(" WHERE ");
         where.append(getJoinedFilterString(filters, "AND", sh));
         return where.toString();
     }
+
+    /**
+     * Adds the structure of the WHERE clause that
+     * {@link #getWhereStringForFilters(List, StatementHelper)} generates for
+     * filters to a signature, and the parameter values of the clause to a
+     * statement helper. Filters with equal signatures are translated into the
+     * same WHERE clause, with only the parameter values differing, so the
+     * signature can identify a previously generated clause and the values be
+     * bound to it.
+     * <p>
+     * The signature records the translator, the comparison and the property
+     * id of each filter and the number of filters in each junction, but no
+     * values. Filters translated with the strategies of the statement helper,
+     * whose conditions may depend on their values, are translated and
+     * represented by their condition.
+     *
+     * @param filters
+     *            the filters
+     * @param signature
+     *            the list to add the signature to
+     * @param sh
+     *            the statement helper to add the parameter values to
+     * @return true if the signature was determined, false if some filter is
+     *         translated by a translator that is not one of the defaults, in
+     *         which case the signature and the values are incomplete
+     */
+    public static boolean addFilterSignature(List<Filter> filters,
+            List<Object> signature, StatementHelper sh) {
+        if (filters == null || filters.isEmpty()) {
+            return true;
+        }
+        if (filterOptimizationEnabled) {
+            filters = FilterOptimizer.optimize(filters);
+        }
+        TranslatorRegistry registry = filterTranslators;
+        for (Filter f : filters) {
+            if (!addFilterSignature(registry, f, signature, sh)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean addFilterSignature(TranslatorRegistry registry,
+            Filter filter, List<Object> signature, StatementHelper sh) {
+        FilterTranslator ft = filter == null ? null : registry.find(filter);
+        if (ft == null) {
+            signature.add(null);
+            return true;
+        }
+        Class<?> type = ft.getClass();
+        signature.add(type);
+        if (type == AndTranslator.class || type == OrTranslator.class) {
+            Collection<Filter> children = ((AbstractJunctionFilter) filter)
+                    .getFilters();
+            signature.add(children.size());
+            for (Filter f : children) {
+                if (!addFilterSignature(registry, f, signature, sh)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (type == NotTranslator.class) {
+            return addFilterSignature(registry, ((Not) filter).getFilter(),
+                    signature, sh);
+        } else if (type == CompareTranslator.class) {
+            Compare compare = (Compare) filter;
+            signature.add(compare.getOperation());
+            signature.add(compare.getPropertyId());
+            sh.addParameterValue(compare.getValue());
+            return true;
+        } else if (type == BetweenTranslator.class) {
+            Between between = (Between) filter;
+            signature.add(between.getPropertyId());
+            sh.addParameterValue(between.getStartValue());
+            sh.addParameterValue(between.getEndValue());
+            return true;
+        } else if (type == IsNullTranslator.class) {
+            signature.add(((IsNull) filter).getPropertyId());
+            return true;
+        } else if (type == LikeTranslator.class
+                || type == SimpleStringTranslator.class
+                || type == InTranslator.class
+                || type == FullTextTranslator.class) {
+            signature.add(ft.getWhereStringForFilter(filter, sh));
+            return true;
+        }
+        return false;
+    }
 }
@@ -27,6 +27,11 @@ public class SimpleStringTranslator implements FilterTranslator {
         return filter instanceof SimpleStringFilter;
     }
 
+    @Override
+    public Class<? extends Filter> getFilterClass() {
+        return SimpleStringFilter.class;
+    }
+
     @Override
     public String getWhereStringForFilter(Filter filter, StatementHelper sh) {
         SimpleStringFilter ssf = (SimpleStringFilter) filter;
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CacheWindowTest {
+
+    @Test
+    public void indexesFollowStart() {
+        CacheWindow w = window(7, 5, 3);
+        assertEquals(Integer.valueOf(7), w.getKey());
+        assertEquals(5, w.getStart());
+        assertEquals(8, w.getEnd());
+        assertFalse(w.containsIndex(4));
+        assertTrue(w.containsIndex(5));
+        assertTrue(w.containsIndex(7));
+        assertFalse(w.containsIndex(8));
+        assertEquals(id(6), w.getId(6));
+        assertEquals(6, w.indexOf(id(6)));
+        assertEquals(-1, w.indexOf(id(8)));
+        assertTrue(new CacheWindow(0, 3).isEmpty());
+        assertEquals(3, new CacheWindow(0, 3).getEnd());
+    }
+
+    @Test
+    public void mergeFollowingWindow() {
+        CacheWindow w = window(0, 0, 3);
+        w.merge(window(3, 3, 2));
+        assertEquals(0, w.getStart());
+        assertEquals(5, w.getEnd());
+        assertEquals(ids(0, 5), w.getIds());
+        assertEquals(4, w.indexOf(id(4)));
+        assertEquals(id(3), w.getId(3));
+    }
+
+    @Test
+    public void mergePrecedingWindow() {
+        CacheWindow w = window(10, 10, 3);
+        w.merge(window(7, 7, 3));
+        assertEquals(7, w.getStart());
+        assertEquals(13, w.getEnd());
+        assertEquals(ids(7, 13), w.getIds());
+        assertEquals(8, w.indexOf(id(8)));
+        assertEquals(11, w.indexOf(id(11)));
+        assertEquals(Integer.valueOf(10), w.getKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeWithGap() {
+        window(0, 0, 3).merge(window(4, 4, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeOverlapping() {
+        window(0, 0, 3).merge(window(2, 2, 3));
+    }
+
+    @Test
+    public void trimStart() {
+        CacheWindow w = window(0, 0, 10);
+        assertEquals(ids(0, 3), w.trim(-5, 3));
+        assertEquals(3, w.getStart());
+        assertEquals(10, w.getEnd());
+        assertFalse(w.containsItem(id(2)));
+        assertEquals(3, w.indexOf(id(3)));
+        assertEquals(id(3), w.getId(3));
+    }
+
+    @Test
+    public void trimEnd() {
+        CacheWindow w = window(0, 0, 10);
+        assertEquals(ids(8, 10), w.trim(8, 20));
+        assertEquals(0, w.getStart());
+        assertEquals(8, w.getEnd());
+        assertFalse(w.containsItem(id(9)));
+        assertEquals(7, w.indexOf(id(7)));
+    }
+
+    @Test
+    public void trimOutsideWindow() {
+        CacheWindow w = window(0, 5, 5);
+        assertTrue(w.trim(0, 5).isEmpty());
+        assertTrue(w.trim(10, 15).isEmpty());
+        assertEquals(ids(5, 10), w.getIds());
+    }
+
+    @Test
+    public void trimWholeWindow() {
+        CacheWindow w = window(0, 5, 5);
+        assertEquals(ids(5, 10), w.trim(0, 20));
+        assertTrue(w.isEmpty());
+        assertFalse(w.containsItem(id(5)));
+    }
+
+    @Test
+    public void trimMiddleKeepsLargerPart() {
+        CacheWindow w = window(0, 0, 10);
+        List<RowId> removed = w.trim(6, 8);
+        assertEquals(0, w.getStart());
+        assertEquals(6, w.getEnd());
+        assertEquals(4, removed.size());
+        assertTrue(removed.containsAll(ids(6, 10)));
+        assertFalse(w.containsItem(id(9)));
+
+        w = window(0, 0, 10);
+        removed = w.trim(1, 3);
+        assertEquals(3, w.getStart());
+        assertEquals(10, w.getEnd());
+        assertTrue(removed.containsAll(ids(0, 3)));
+        assertEquals(3, w.indexOf(id(3)));
+        assertEquals(id(9), w.getId(9));
+    }
+
+    @Test
+    public void trimToSize() {
+        CacheWindow w = window(0, 0, 10);
+        assertTrue(w.trimToSize(10, true).isEmpty());
+        assertEquals(ids(0, 4), w.trimToSize(6, true));
+        assertEquals(4, w.getStart());
+        assertEquals(10, w.getEnd());
+        assertEquals(ids(7, 10), w.trimToSize(3, false));
+        assertEquals(4, w.getStart());
+        assertEquals(7, w.getEnd());
+        assertEquals(ids(4, 7), w.getIds());
+    }
+
+    static CacheWindow window(int key, int start, int size) {
+        CacheWindow w = new CacheWindow(key, start);
+        for (int i = start; i < start + size; i++) {
+            w.add(id(i), null);
+        }
+        return w;
+    }
+
+    static RowId id(int i) {
+        return new RowId(new Object[] { i });
+    }
+
+    /**
+     * @return the ids of the indexes from (inclusive) to (exclusive)
+     */
+    static List<RowId> ids(int from, int to) {
+        List<RowId> ids = new ArrayList<RowId>();
+        for (int i = from; i < to; i++) {
+            ids.add(id(i));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.vaadin.enhancements.sqlcontainer.CacheWindowTest.id;
+import static org.vaadin.enhancements.sqlcontainer.CacheWindowTest.window;
+
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.cache.ARCEvictionPolicy;
+import org.vaadin.enhancements.sqlcontainer.cache.LFUEvictionPolicy;
+import org.vaadin.enhancements.sqlcontainer.cache.LRUEvictionPolicy;
+
+public class PageCacheTest {
+
+    @Test
+    public void overlappingWindowTrimsOlderWindow() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow first = window(0, 0, 10);
+        CacheWindow second = window(5, 5, 10);
+        cache.addWindow(first);
+        cache.addWindow(second);
+        assertEquals(0, first.getStart());
+        assertEquals(5, first.getEnd());
+        assertSame(first, cache.getWindowAt(4));
+        assertSame(second, cache.getWindowAt(5));
+        assertSame(second, cache.getWindowAt(14));
+        assertNull(cache.getWindowAt(15));
+        for (int i = 0; i < 15; i++) {
+            assertTrue(cache.containsItem(id(i)));
+            assertEquals(i, cache.indexOf(id(i)));
+            assertEquals(id(i), cache.getId(i));
+        }
+    }
+
+    @Test
+    public void overlappingWindowWithOtherRows() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        cache.addWindow(window(0, 0, 10));
+        /* Rows 5 to 9 have moved, e.g. after an insert */
+        CacheWindow shifted = new CacheWindow(5, 5);
+        for (int i = 5; i < 10; i++) {
+            shifted.add(id(100 + i), null);
+        }
+        cache.addWindow(shifted);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, cache.indexOf(id(i)));
+        }
+        for (int i = 5; i < 10; i++) {
+            assertFalse(cache.containsItem(id(i)));
+            assertEquals(-1, cache.indexOf(id(i)));
+            assertEquals(i, cache.indexOf(id(100 + i)));
+            assertEquals(id(100 + i), cache.getId(i));
+        }
+    }
+
+    @Test
+    public void windowInsideOlderWindowSplitsIt() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow first = window(0, 0, 20);
+        cache.addWindow(first);
+        cache.addWindow(window(8, 8, 4));
+        /* The smaller remaining part of the older window is dropped */
+        assertEquals(0, first.getStart());
+        assertEquals(8, first.getEnd());
+        assertTrue(cache.containsIndex(11));
+        assertFalse(cache.containsIndex(12));
+        for (int i = 12; i < 20; i++) {
+            assertFalse(cache.containsItem(id(i)));
+            assertNull(cache.getId(i));
+        }
+        assertEquals(7, cache.indexOf(id(7)));
+        assertEquals(9, cache.indexOf(id(9)));
+    }
+
+    @Test
+    public void windowCoveringOlderWindowReplacesIt() {
+        PageCache cache = new PageCache(2, new LRUEvictionPolicy<Integer>());
+        cache.addWindow(window(5, 5, 3));
+        CacheWindow covering = window(0, 0, 10);
+        cache.addWindow(covering);
+        assertSame(covering, cache.getWindowAt(6));
+        assertEquals(6, cache.indexOf(id(6)));
+        /* The covered window no longer takes a place in the cache */
+        CacheWindow other = window(20, 20, 5);
+        cache.addWindow(other);
+        assertSame(covering, cache.getWindowAt(0));
+        assertSame(other, cache.getWindowAt(20));
+    }
+
+    @Test
+    public void windowWithSameKeyReplacesOlderWindow() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        cache.addWindow(window(0, 0, 10));
+        CacheWindow replacement = new CacheWindow(0, 0);
+        replacement.add(id(50), null);
+        cache.addWindow(replacement);
+        assertFalse(cache.containsIndex(1));
+        assertFalse(cache.containsItem(id(0)));
+        assertFalse(cache.containsItem(id(5)));
+        assertEquals(0, cache.indexOf(id(50)));
+    }
+
+    @Test
+    public void adjacentWindowsAreKept() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow first = window(0, 0, 10);
+        CacheWindow second = window(10, 10, 10);
+        cache.addWindow(first);
+        cache.addWindow(second);
+        assertEquals(10, first.getEnd());
+        assertSame(first, cache.getWindowAt(9));
+        assertSame(second, cache.getWindowAt(10));
+        assertEquals(9, cache.indexOf(id(9)));
+        assertEquals(10, cache.indexOf(id(10)));
+    }
+
+    @Test
+    public void windowOverlapping() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow first = window(0, 0, 10);
+        CacheWindow second = window(10, 10, 10);
+        cache.addWindow(first);
+        cache.addWindow(second);
+        /* Windows covering the start or the end of the range */
+        assertSame(first, cache.getWindowOverlapping(5, 15));
+        assertSame(first, cache.getWindowOverlapping(-5, 5));
+        assertSame(second, cache.getWindowOverlapping(12, 30));
+        assertSame(second, cache.getWindowOverlapping(10, 30));
+        /* Windows covering the whole range, or covered by it */
+        assertNull(cache.getWindowOverlapping(2, 8));
+        assertNull(cache.getWindowOverlapping(0, 10));
+        assertNull(cache.getWindowOverlapping(-5, 25));
+        /* Adjacent windows */
+        assertNull(cache.getWindowOverlapping(20, 30));
+        assertNull(cache.getWindowOverlapping(-10, 0));
+    }
+
+    @Test
+    public void extendWindowForward() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow window = window(0, 0, 10);
+        CacheWindow next = window(16, 16, 4);
+        cache.addWindow(window);
+        cache.addWindow(next);
+        cache.addItem(id(13), null);
+
+        cache.extendWindow(window, window(10, 10, 8), 8, 10);
+        assertEquals(Integer.valueOf(8), window.getKey());
+        assertEquals(8, window.getStart());
+        assertEquals(18, window.getEnd());
+        for (int i = 0; i < 8; i++) {
+            assertFalse(cache.containsItem(id(i)));
+        }
+        for (int i = 8; i < 18; i++) {
+            assertEquals(i, cache.indexOf(id(i)));
+            assertSame(window, cache.getWindowAt(i));
+        }
+        /* The extension takes precedence over the following window */
+        assertEquals(18, next.getStart());
+        assertSame(next, cache.getWindowAt(19));
+
+        /* Item 13 is no longer kept as a single item */
+        cache.setMaxWindows(0);
+        assertFalse(cache.containsItem(id(13)));
+        assertFalse(cache.containsItem(id(19)));
+    }
+
+    @Test
+    public void extendWindowBackward() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow previous = window(0, 0, 8);
+        CacheWindow window = window(10, 10, 10);
+        cache.addWindow(previous);
+        cache.addWindow(window);
+
+        cache.extendWindow(window, window(5, 5, 5), 5, 10);
+        assertEquals(Integer.valueOf(5), window.getKey());
+        assertEquals(5, window.getStart());
+        assertEquals(15, window.getEnd());
+        for (int i = 15; i < 20; i++) {
+            assertFalse(cache.containsItem(id(i)));
+            assertFalse(cache.containsIndex(i));
+        }
+        for (int i = 5; i < 15; i++) {
+            assertEquals(i, cache.indexOf(id(i)));
+        }
+        assertEquals(5, previous.getEnd());
+        assertSame(previous, cache.getWindowAt(4));
+    }
+
+    @Test
+    public void extendWindowReplacesWindowWithNewKey() {
+        PageCache cache = new PageCache(5, new LRUEvictionPolicy<Integer>());
+        CacheWindow window = window(0, 0, 5);
+        cache.addWindow(window);
+        /* A window far away that happens to use the new key */
+        cache.addWindow(window(3, 100, 5));
+        cache.extendWindow(window, window(5, 5, 3), 3, 5);
+        assertSame(window, cache.getWindowAt(5));
+        assertFalse(cache.containsIndex(100));
+        assertFalse(cache.containsItem(id(100)));
+    }
+
+    @Test
+    public void evictionAtMaxWindows() {
+        PageCache cache = new PageCache(2, new LRUEvictionPolicy<Integer>());
+        cache.addWindow(window(0, 0, 10));
+        cache.addWindow(window(100, 100, 10));
+        cache.getWindowAt(3);
+        cache.addWindow(window(200, 200, 10));
+        assertTrue(cache.containsIndex(3));
+        assertFalse(cache.containsIndex(105));
+        assertFalse(cache.containsItem(id(105)));
+        assertEquals(-1, cache.indexOf(id(105)));
+        assertTrue(cache.containsIndex(205));
+
+        cache.getWindowAt(205);
+        cache.setMaxWindows(1);
+        assertFalse(cache.containsIndex(3));
+        assertFalse(cache.containsItem(id(3)));
+        assertTrue(cache.containsIndex(205));
+    }
+
+    @Test
+    public void evictionFollowsPolicy() {
+        PageCache lru = new PageCache(2, new LRUEvictionPolicy<Integer>());
+        PageCache lfu = new PageCache(2, new LFUEvictionPolicy<Integer>());
+        for (PageCache cache : new PageCache[] { lru, lfu }) {
+            cache.addWindow(window(0, 0, 10));
+            cache.addWindow(window(100, 100, 10));
+            cache.getWindowAt(1);
+            cache.getWindowAt(2);
+            cache.getWindowAt(101);
+            cache.addWindow(window(200, 200, 10));
+        }
+        /* The least recently used window */
+        assertFalse(lru.containsItem(id(1)));
+        assertTrue(lru.containsItem(id(101)));
+        /* The least frequently used window */
+        assertTrue(lfu.containsItem(id(1)));
+        assertFalse(lfu.containsItem(id(101)));
+    }
+
+    @Test
+    public void setEvictionPolicyReportsExistingWindows() {
+        PageCache cache = new PageCache(2, new LFUEvictionPolicy<Integer>());
+        cache.addWindow(window(0, 0, 10));
+        cache.addWindow(window(100, 100, 10));
+        cache.setEvictionPolicy(new LRUEvictionPolicy<Integer>());
+        /*
+         * Without the existing windows the policy would have no victim, and
+         * the oldest window would be evicted.
+         */
+        cache.getWindowAt(5);
+        cache.addWindow(window(200, 200, 10));
+        assertTrue(cache.containsIndex(5));
+        assertFalse(cache.containsIndex(105));
+
+        ARCEvictionPolicy<Integer> arc = new ARCEvictionPolicy<Integer>();
+        cache.setEvictionPolicy(arc);
+        assertEquals(Integer.valueOf(0), arc.selectVictim());
+        assertEquals(Integer.valueOf(200), arc.selectVictim());
+        assertNull(arc.selectVictim());
+    }
+
+    @Test
+    public void singleItems() {
+        PageCache cache = new PageCache(2, new LRUEvictionPolicy<Integer>());
+        cache.addItem(id(50), null);
+        assertTrue(cache.containsItem(id(50)));
+        assertEquals(-1, cache.indexOf(id(50)));
+        assertFalse(cache.containsIndex(0));
+
+        /* A window containing the item takes it over */
+        cache.addWindow(window(50, 50, 1));
+        assertEquals(50, cache.indexOf(id(50)));
+        cache.setMaxWindows(0);
+        assertFalse(cache.containsItem(id(50)));
+
+        /* An item already in a window is not kept separately */
+        cache.setMaxWindows(2);
+        cache.addWindow(window(0, 0, 10));
+        cache.addItem(id(3), null);
+        cache.setMaxWindows(0);
+        assertFalse(cache.containsItem(id(3)));
+    }
+
+    @Test
+    public void singleItemsAreLimited() {
+        PageCache cache = new PageCache(2, new LRUEvictionPolicy<Integer>());
+        for (int i = 0; i <= PageCache.MAX_SINGLE_ITEMS; i++) {
+            cache.addItem(id(i), null);
+        }
+        assertFalse(cache.containsItem(id(0)));
+        assertTrue(cache.containsItem(id(1)));
+        assertTrue(cache.containsItem(id(PageCache.MAX_SINGLE_ITEMS)));
+    }
+
+    @Test
+    public void clear() {
+        LRUEvictionPolicy<Integer> policy = new LRUEvictionPolicy<Integer>();
+        PageCache cache = new PageCache(2, policy);
+        cache.addWindow(window(0, 0, 10));
+        cache.addItem(id(50), null);
+        cache.getWindowAt(3);
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertNull(cache.getWindowAt(3));
+        assertFalse(cache.containsItem(id(3)));
+        assertFalse(cache.containsItem(id(50)));
+        assertNull(policy.selectVictim());
+    }
+}
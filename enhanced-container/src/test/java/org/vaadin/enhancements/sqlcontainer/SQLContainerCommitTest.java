@@ -0,0 +1,441 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.query.QueryDelegate.RowIdChangeEvent;
+import org.vaadin.enhancements.sqlcontainer.query.QueryDelegate.RowIdChangeListener;
+import org.vaadin.enhancements.sqlcontainer.query.TableQuery;
+import org.vaadin.enhancements.sqlcontainer.query.generator.DefaultSQLGenerator;
+import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
+
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+/**
+ * Tests committing the buffered changes of a container with batched
+ * statements.
+ */
+public class SQLContainerCommitTest {
+
+    private JDBCConnectionPool pool;
+
+    @Before
+    public void setUp() throws SQLException {
+        pool = TestDatabase.createPool();
+        TestDatabase.execute(pool,
+                "CREATE TABLE PEOPLE (ID INT PRIMARY KEY, NAME VARCHAR(32),"
+                        + " VERSION INT)",
+                "CREATE TABLE ITEMS (ID INT GENERATED BY DEFAULT AS IDENTITY"
+                        + " PRIMARY KEY, NAME VARCHAR(32), VERSION INT)");
+        TestDatabase.insertPeople(pool, "PEOPLE", 10);
+    }
+
+    @Test
+    public void mixedChangesInOneCommit() throws SQLException {
+        SQLContainer container = new SQLContainer(
+                new TableQuery("PEOPLE", pool));
+        setName(container, 2, "changed2");
+        setName(container, 3, "changed3");
+        assertTrue(container.removeItem(id(4)));
+        assertTrue(container.removeItem(id(5)));
+        /* Modified and then removed */
+        setName(container, 6, "changed6");
+        assertTrue(container.removeItem(id(6)));
+        Object added = container.addItem();
+        container.getContainerProperty(added, "ID").setValue(11);
+        container.getContainerProperty(added, "NAME").setValue("added");
+        container.getContainerProperty(added, "VERSION").setValue(0);
+        container.commit();
+
+        assertEquals(Arrays.asList("1,n1", "2,changed2", "3,changed3",
+                "7,n7", "8,n8", "9,n9", "10,n10", "11,added"),
+                TestDatabase.query(pool,
+                        "SELECT ID, NAME FROM PEOPLE ORDER BY ID"));
+        assertEquals(8, container.size());
+        assertFalse(container.isModified());
+    }
+
+    @Test
+    public void versionConflictRollsBack() throws SQLException {
+        TableQuery query = new TableQuery("PEOPLE", pool);
+        query.setVersionColumn("VERSION");
+        SQLContainer container = new SQLContainer(query);
+        setName(container, 1, "changed1");
+        setName(container, 2, "changed2");
+        assertTrue(container.removeItem(id(3)));
+        TestDatabase.execute(pool,
+                "UPDATE PEOPLE SET VERSION = 1 WHERE ID = 2");
+        try {
+            container.commit();
+            fail("The version conflict was not detected");
+        } catch (OptimisticLockException e) {
+            assertEquals(id(2), e.getRowId());
+        }
+        assertEquals(Arrays.asList("1,n1,0", "2,n2,1", "3,n3,0"),
+                TestDatabase.query(pool, "SELECT ID, NAME, VERSION FROM PEOPLE"
+                        + " WHERE ID <= 3 ORDER BY ID"));
+    }
+
+    @Test
+    public void versionConflictOnRemoveRollsBack() throws SQLException {
+        TableQuery query = new TableQuery("PEOPLE", pool);
+        query.setVersionColumn("VERSION");
+        SQLContainer container = new SQLContainer(query);
+        assertTrue(container.removeItem(id(1)));
+        assertTrue(container.removeItem(id(2)));
+        TestDatabase.execute(pool,
+                "UPDATE PEOPLE SET VERSION = 1 WHERE ID = 2");
+        try {
+            container.commit();
+            fail("The version conflict was not detected");
+        } catch (OptimisticLockException e) {
+            assertEquals(id(2), e.getRowId());
+        }
+        assertEquals(Arrays.asList("10"), TestDatabase.query(pool,
+                "SELECT COUNT(*) FROM PEOPLE"));
+    }
+
+    @Test
+    public void versionedBatchWithoutUpdateCounts() throws SQLException {
+        JDBCConnectionPool noInfoPool = new NoBatchCountsPool(pool);
+        TableQuery query = new TableQuery("PEOPLE", noInfoPool);
+        query.setVersionColumn("VERSION");
+        SQLContainer container = new SQLContainer(query);
+        setName(container, 1, "changed1");
+        setName(container, 2, "changed2");
+        container.commit();
+        assertEquals(Arrays.asList("1,changed1", "2,changed2", "3,n3"),
+                TestDatabase.query(pool, "SELECT ID, NAME FROM PEOPLE"
+                        + " WHERE ID <= 3 ORDER BY ID"));
+
+        /* The counts are still checked one statement at a time */
+        setName(container, 3, "changed3");
+        setName(container, 4, "changed4");
+        TestDatabase.execute(pool,
+                "UPDATE PEOPLE SET VERSION = 1 WHERE ID = 4");
+        try {
+            container.commit();
+            fail("The version conflict was not detected");
+        } catch (OptimisticLockException e) {
+            assertEquals(id(4), e.getRowId());
+        }
+        assertEquals(Arrays.asList("3,n3", "4,n4"),
+                TestDatabase.query(pool, "SELECT ID, NAME FROM PEOPLE"
+                        + " WHERE ID IN (3, 4) ORDER BY ID"));
+    }
+
+    @Test
+    public void updateOfRemovedRowWithoutVersion() throws SQLException {
+        SQLContainer container = new SQLContainer(
+                new TableQuery("PEOPLE", pool));
+        setName(container, 1, "changed1");
+        setName(container, 2, "changed2");
+        TestDatabase.execute(pool, "DELETE FROM PEOPLE WHERE ID = 2");
+        try {
+            container.commit();
+            fail("The concurrent removal was not detected");
+        } catch (ConcurrentModificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("2"));
+        }
+        assertEquals(Arrays.asList("1,n1"), TestDatabase.query(pool,
+                "SELECT ID, NAME FROM PEOPLE WHERE ID = 1"));
+    }
+
+    @Test
+    public void removalsAreChunkedByInListSize() throws SQLException {
+        final List<Integer> deletes = new ArrayList<Integer>();
+        DefaultSQLGenerator generator = new DefaultSQLGenerator() {
+            @Override
+            public int getMaxInListSize() {
+                return 3;
+            }
+
+            @Override
+            public StatementHelper generateDeleteByKeysQuery(
+                    String tableName, String keyColumn, List<?> keys) {
+                deletes.add(keys.size());
+                return super.generateDeleteByKeysQuery(tableName, keyColumn,
+                        keys);
+            }
+        };
+        SQLContainer container = new SQLContainer(
+                new TableQuery("PEOPLE", pool, generator));
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(container.removeItem(id(i)));
+        }
+        container.commit();
+        assertEquals(Arrays.asList(3, 1), deletes);
+        assertEquals(Arrays.asList("5"), TestDatabase.query(pool,
+                "SELECT MIN(ID) FROM PEOPLE"));
+        assertEquals(6, container.size());
+    }
+
+    @Test
+    public void removeAllItemsReadsOnlyIds() throws SQLException {
+        final List<Integer> deletes = new ArrayList<Integer>();
+        DefaultSQLGenerator generator = new DefaultSQLGenerator() {
+            @Override
+            public int getMaxInListSize() {
+                return 3;
+            }
+
+            @Override
+            public StatementHelper generateDeleteByKeysQuery(
+                    String tableName, String keyColumn, List<?> keys) {
+                deletes.add(keys.size());
+                return super.generateDeleteByKeysQuery(tableName, keyColumn,
+                        keys);
+            }
+        };
+        CursorRecordingQuery query = new CursorRecordingQuery(pool,
+                generator);
+        SQLContainer container = new SQLContainer(query);
+        container.setAutoCommit(true);
+        container.addContainerFilter(new Compare.Greater("ID", 3));
+        assertTrue(container.removeAllItems());
+
+        assertEquals(Arrays.asList(true), query.cursors);
+        assertEquals(Arrays.asList(3, 3, 1), deletes);
+        assertEquals(0, container.size());
+        assertEquals(Arrays.asList("1", "2", "3"),
+                TestDatabase.query(pool, "SELECT ID FROM PEOPLE ORDER BY ID"));
+    }
+
+    @Test
+    public void removeAllItemsReadsRowsWithVersionColumn()
+            throws SQLException {
+        CursorRecordingQuery query = new CursorRecordingQuery(pool,
+                new DefaultSQLGenerator());
+        query.setVersionColumn("VERSION");
+        SQLContainer container = new SQLContainer(query);
+        container.setAutoCommit(true);
+        assertTrue(container.removeAllItems());
+
+        assertEquals(Arrays.asList(false), query.cursors);
+        assertEquals(0, container.size());
+        assertEquals(Arrays.asList("0"),
+                TestDatabase.query(pool, "SELECT COUNT(*) FROM PEOPLE"));
+    }
+
+    @Test
+    public void removeAllItemsWithoutKeyListSupport() throws SQLException {
+        DefaultSQLGenerator generator = new DefaultSQLGenerator() {
+            @Override
+            public StatementHelper generateDeleteByKeysQuery(
+                    String tableName, String keyColumn, List<?> keys) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        CursorRecordingQuery query = new CursorRecordingQuery(pool,
+                generator);
+        SQLContainer container = new SQLContainer(query);
+        container.setAutoCommit(true);
+        assertTrue(container.removeAllItems());
+
+        /* The rows are read again to remove them one statement at a time */
+        assertEquals(Arrays.asList(true, false), query.cursors);
+        assertEquals(0, container.size());
+        assertEquals(Arrays.asList("0"),
+                TestDatabase.query(pool, "SELECT COUNT(*) FROM PEOPLE"));
+    }
+
+    @Test
+    public void rowIdChangeEventsForInsertedRowsWithKeys()
+            throws SQLException {
+        TableQuery query = new TableQuery("PEOPLE", pool);
+        List<RowIdChangeEvent> events = listen(query);
+        SQLContainer container = new SQLContainer(query);
+        Object[] added = new Object[3];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = container.addItem();
+            container.getContainerProperty(added[i], "ID").setValue(100 + i);
+            container.getContainerProperty(added[i], "NAME").setValue("k" + i);
+        }
+        container.commit();
+
+        assertEquals(added.length, events.size());
+        for (int i = 0; i < added.length; i++) {
+            assertEquals(added[i], events.get(i).getOldRowId());
+            assertEquals(id(100 + i), events.get(i).getNewRowId());
+        }
+        assertEquals(Arrays.asList("100,k0", "101,k1", "102,k2"),
+                TestDatabase.query(pool, "SELECT ID, NAME FROM PEOPLE"
+                        + " WHERE ID >= 100 ORDER BY ID"));
+    }
+
+    @Test
+    public void rowIdChangeEventsForInsertedRowsWithGeneratedKeys()
+            throws SQLException {
+        TableQuery query = new TableQuery("ITEMS", pool);
+        List<RowIdChangeEvent> events = listen(query);
+        SQLContainer container = new SQLContainer(query);
+        Object[] added = new Object[2];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = container.addItem();
+            container.getContainerProperty(added[i], "NAME").setValue("g" + i);
+        }
+        container.commit();
+
+        List<String> ids = TestDatabase.query(pool,
+                "SELECT ID FROM ITEMS ORDER BY NAME");
+        assertEquals(added.length, events.size());
+        for (int i = 0; i < added.length; i++) {
+            assertEquals(added[i], events.get(i).getOldRowId());
+            assertEquals(ids.get(i),
+                    String.valueOf(events.get(i).getNewRowId().getId()[0]));
+        }
+    }
+
+    private static List<RowIdChangeEvent> listen(TableQuery query) {
+        final List<RowIdChangeEvent> events = new ArrayList<RowIdChangeEvent>();
+        query.addRowIdChangeListener(new RowIdChangeListener() {
+            @Override
+            public void rowIdChange(RowIdChangeEvent event) {
+                events.add(event);
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Records whether each cursor opened selects only the primary key.
+     */
+    private static class CursorRecordingQuery extends TableQuery {
+        private final List<Boolean> cursors = new ArrayList<Boolean>();
+
+        private CursorRecordingQuery(JDBCConnectionPool pool,
+                DefaultSQLGenerator generator) {
+            super("PEOPLE", pool, generator);
+        }
+
+        @Override
+        public RowCursor openCursor(boolean primaryKeyOnly, int fetchSize)
+                throws SQLException {
+            cursors.add(primaryKeyOnly);
+            return super.openCursor(primaryKeyOnly, fetchSize);
+        }
+    }
+
+    private static RowId id(int id) {
+        return new RowId(new Object[] { id });
+    }
+
+    private static void setName(SQLContainer container, int id, String name) {
+        container.getContainerProperty(id(id), "NAME").setValue(name);
+    }
+
+    /**
+     * A pool whose prepared statements report
+     * {@link Statement#SUCCESS_NO_INFO} for every statement of a batch, like
+     * some drivers do.
+     */
+    private static class NoBatchCountsPool implements JDBCConnectionPool {
+        private final JDBCConnectionPool pool;
+
+        private NoBatchCountsPool(JDBCConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public Connection reserveConnection() throws SQLException {
+            final Connection connection = pool.reserveConnection();
+            return (Connection) Proxy.newProxyInstance(
+                    getClass().getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new Forwarder(connection) {
+                        @Override
+                        Object wrap(Object result) {
+                            if (result instanceof PreparedStatement) {
+                                return noBatchCounts(
+                                        (PreparedStatement) result);
+                            }
+                            return result;
+                        }
+                    });
+        }
+
+        private static PreparedStatement noBatchCounts(
+                PreparedStatement statement) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    NoBatchCountsPool.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new Forwarder(statement) {
+                        @Override
+                        Object wrap(Object result) {
+                            if (result instanceof int[]) {
+                                int[] counts = (int[]) result;
+                                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                            }
+                            return result;
+                        }
+                    });
+        }
+
+        @Override
+        public void releaseConnection(Connection conn) {
+            if (conn != null) {
+                pool.releaseConnection(
+                        (Connection) ((Forwarder) Proxy
+                                .getInvocationHandler(conn)).target);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            pool.destroy();
+        }
+    }
+
+    private abstract static class Forwarder implements InvocationHandler {
+        private final Object target;
+
+        private Forwarder(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            try {
+                return wrap(method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        abstract Object wrap(Object result);
+    }
+}
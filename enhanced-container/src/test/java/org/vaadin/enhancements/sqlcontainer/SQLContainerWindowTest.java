@@ -0,0 +1,160 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.query.TableQuery;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+public class SQLContainerWindowTest {
+
+    private static final int ROWS = 100;
+
+    private final List<String> fetches = new ArrayList<String>();
+    private JDBCConnectionPool pool;
+    private SQLContainer container;
+
+    /**
+     * Records the ranges of rows fetched from the database.
+     */
+    private class RecordingQuery extends TableQuery {
+        private RecordingQuery(JDBCConnectionPool pool) {
+            super("PEOPLE", pool);
+        }
+
+        @Override
+        public ResultSet getResults(int offset, int pagelength)
+                throws SQLException {
+            fetches.add(offset + "+" + pagelength);
+            return super.getResults(offset, pagelength);
+        }
+
+        @Override
+        public ResultSet getResultsWithCount(int offset, int pagelength)
+                throws SQLException {
+            fetches.add(offset + "+" + pagelength);
+            return super.getResultsWithCount(offset, pagelength);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        pool = TestDatabase.createPool();
+        TestDatabase.execute(pool, "CREATE TABLE PEOPLE (ID INT PRIMARY KEY,"
+                + " NAME VARCHAR(32), VERSION INT)");
+        TestDatabase.insertPeople(pool, "PEOPLE", ROWS);
+        container = new SQLContainer(new RecordingQuery(pool));
+        container.setPageLength(10);
+        assertEquals(ROWS, container.size());
+        /* A window holds 30 rows: two pages plus one page of overlap */
+        assertFetches("0+1", "0+30");
+    }
+
+    @Test
+    public void scrollForwardFetchesOnlyNewRows() {
+        assertIndexes(0, 30);
+        assertFetches();
+
+        assertIndexes(30, 40);
+        assertFetches("30+20");
+        /* The window was shifted to 20-49 */
+        assertIndexes(20, 50);
+        assertFetches();
+
+        assertIndexes(50, 60);
+        assertFetches("50+20");
+        assertIndexes(40, 70);
+        assertFetches();
+    }
+
+    @Test
+    public void scrollBackwardFetchesOnlyNewRows() {
+        assertIndexes(80, 90);
+        assertFetches("70+30");
+
+        assertIndexes(65, 70);
+        assertFetches("50+20");
+        /* The window was shifted to 50-79 */
+        assertIndexes(50, 80);
+        assertFetches();
+
+        assertIndexes(49, 50);
+        assertFetches("30+20");
+        /* The first window is still cached next to the shifted one */
+        assertIndexes(0, 60);
+        assertFetches();
+    }
+
+    @Test
+    public void scrollForwardAndBack() {
+        assertIndexes(0, 30);
+        assertIndexes(30, 40);
+        assertIndexes(50, 60);
+        fetches.clear();
+
+        /* The rows dropped from the start are fetched again */
+        assertIndexes(39, 40);
+        assertFetches("20+20");
+        assertIndexes(20, 50);
+        assertFetches();
+    }
+
+    @Test
+    public void changedRowsReloadWholeWindow() throws SQLException {
+        /* A row inserted before the window shifts all rows by one */
+        TestDatabase.execute(pool, "INSERT INTO PEOPLE VALUES (0, 'n0', 0)");
+        container.getIdByIndex(30);
+        /* Row 30 is already in the window, so the rows cannot be appended */
+        assertFetches("30+20", "20+30");
+        for (int i = 20; i < 50; i++) {
+            RowId id = new RowId(new Object[] { i });
+            assertEquals("index " + i, id, container.getIdByIndex(i));
+            assertEquals("id " + id, i, container.indexOfId(id));
+        }
+        assertFetches();
+    }
+
+    /**
+     * Checks that the ids and indexes of a range of items match in both
+     * directions and follow the order of the primary key.
+     */
+    private void assertIndexes(int from, int to) {
+        for (int i = from; i < to; i++) {
+            RowId id = new RowId(new Object[] { i + 1 });
+            assertEquals("index " + i, id, container.getIdByIndex(i));
+            assertEquals("id " + id, i, container.indexOfId(id));
+            assertEquals(i + 1, container.getItem(id).getItemProperty("ID")
+                    .getValue());
+            assertEquals("n" + (i + 1), container.getItem(id)
+                    .getItemProperty("NAME").getValue());
+        }
+    }
+
+    private void assertFetches(String... expected) {
+        assertEquals(Arrays.asList(expected), fetches);
+        fetches.clear();
+    }
+}
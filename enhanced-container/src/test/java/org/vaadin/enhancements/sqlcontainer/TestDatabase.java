@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.connection.SimpleJDBCConnectionPool;
+
+/**
+ * In-memory HSQLDB databases for the tests, a new one for every pool.
+ */
+public final class TestDatabase {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Creates a connection pool to a new, empty in-memory database.
+     */
+    public static JDBCConnectionPool createPool() throws SQLException {
+        return new SimpleJDBCConnectionPool("org.hsqldb.jdbc.JDBCDriver",
+                "jdbc:hsqldb:mem:test" + databases.incrementAndGet(), "SA",
+                "", 2, 4);
+    }
+
+    /**
+     * Executes and commits statements outside of any query or container.
+     */
+    public static void execute(JDBCConnectionPool pool, String... sql)
+            throws SQLException {
+        Connection c = pool.reserveConnection();
+        try {
+            Statement statement = c.createStatement();
+            for (String s : sql) {
+                statement.execute(s);
+            }
+            statement.close();
+            c.commit();
+        } finally {
+            pool.releaseConnection(c);
+        }
+    }
+
+    /**
+     * Returns the rows of a query as strings of their comma separated
+     * columns.
+     */
+    public static List<String> query(JDBCConnectionPool pool, String sql)
+            throws SQLException {
+        List<String> rows = new ArrayList<String>();
+        Connection c = pool.reserveConnection();
+        try {
+            Statement statement = c.createStatement();
+            ResultSet rs = statement.executeQuery(sql);
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 1; i <= columns; i++) {
+                    if (i > 1) {
+                        row.append(',');
+                    }
+                    row.append(rs.getObject(i));
+                }
+                rows.add(row.toString());
+            }
+            rs.close();
+            statement.close();
+            c.commit();
+        } finally {
+            pool.releaseConnection(c);
+        }
+        return rows;
+    }
+
+    /**
+     * Inserts rows with the ids 1 to count and the names n1 to n<i>count</i>
+     * into a table with the columns ID, NAME and VERSION.
+     */
+    public static void insertPeople(JDBCConnectionPool pool, String table,
+            int count) throws SQLException {
+        String[] sql = new String[count];
+        for (int i = 1; i <= count; i++) {
+            sql[i - 1] = "INSERT INTO " + table + " VALUES (" + i + ", 'n" + i
+                    + "', 0)";
+        }
+        execute(pool, sql);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CacheEvictionPolicyTest {
+
+    @Test
+    public void emptyPolicies() {
+        for (CacheEvictionPolicy<Integer> policy : policies()) {
+            assertNull(policy.selectVictim());
+            policy.keyAdded(1);
+            policy.keyRemoved(1);
+            policy.keyAccessed(1);
+            assertNull(policy.getClass().getSimpleName(),
+                    policy.selectVictim());
+            policy.keyAdded(1);
+            policy.keyAdded(2);
+            policy.clear();
+            assertNull(policy.getClass().getSimpleName(),
+                    policy.selectVictim());
+        }
+    }
+
+    @Test
+    public void victimsAreRemoved() {
+        for (CacheEvictionPolicy<Integer> policy : policies()) {
+            policy.setCapacity(3);
+            policy.keyAdded(1);
+            policy.keyAdded(2);
+            policy.keyAdded(3);
+            policy.keyRemoved(2);
+            assertEquals(policy.getClass().getSimpleName(),
+                    Arrays.asList(1, 3), victims(policy));
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsed() {
+        LRUEvictionPolicy<Integer> policy = new LRUEvictionPolicy<Integer>();
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.keyAdded(3);
+        policy.keyAccessed(1);
+        policy.keyAccessed(1);
+        policy.keyAccessed(2);
+        /* Accessing an unknown key does not add it */
+        policy.keyAccessed(4);
+        assertEquals(Arrays.asList(3, 1, 2), victims(policy));
+
+        /* Adding a key again makes it the most recently used one */
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.keyAdded(1);
+        assertEquals(Arrays.asList(2, 1), victims(policy));
+    }
+
+    @Test
+    public void leastFrequentlyUsed() {
+        LFUEvictionPolicy<Integer> policy = new LFUEvictionPolicy<Integer>();
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.keyAdded(3);
+        policy.keyAccessed(1);
+        policy.keyAccessed(1);
+        policy.keyAccessed(3);
+        policy.keyAccessed(4);
+        assertEquals(Arrays.asList(2, 3, 1), victims(policy));
+
+        /* Ties go to the key added first; adding again resets the count */
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.keyAccessed(1);
+        policy.keyAccessed(1);
+        policy.keyAdded(1);
+        assertEquals(Arrays.asList(2, 1), victims(policy));
+    }
+
+    @Test
+    public void adaptiveReplacementPrefersRepeatedlyUsedKeys() {
+        ARCEvictionPolicy<Integer> policy = new ARCEvictionPolicy<Integer>();
+        policy.setCapacity(3);
+        policy.keyAdded(1);
+        policy.keyAccessed(1);
+        /* A scan of keys used once does not evict key 1 */
+        for (int i = 2; i < 10; i++) {
+            policy.keyAdded(i);
+            if (i > 3) {
+                assertEquals(Integer.valueOf(i - 2), policy.selectVictim());
+            }
+        }
+        assertEquals(Arrays.asList(8, 9, 1), victims(policy));
+    }
+
+    @Test
+    public void adaptiveReplacementLearnsFromGhosts() {
+        ARCEvictionPolicy<Integer> policy = new ARCEvictionPolicy<Integer>();
+        policy.setCapacity(2);
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.keyAccessed(1);
+        assertEquals(Integer.valueOf(2), policy.selectVictim());
+        /*
+         * Key 2 was evicted too early: it comes back into the frequency list,
+         * and the recency list is given more room, so that the new key 3
+         * outlives the keys in the frequency list.
+         */
+        policy.keyAdded(2);
+        policy.keyAdded(3);
+        assertEquals(Arrays.asList(1, 2, 3), victims(policy));
+
+        /* Without the ghost hit the new key would be evicted first */
+        policy = new ARCEvictionPolicy<Integer>();
+        policy.setCapacity(2);
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.keyAccessed(1);
+        policy.keyAccessed(2);
+        policy.keyAdded(3);
+        assertEquals(Arrays.asList(3, 1, 2), victims(policy));
+    }
+
+    @Test
+    public void adaptiveReplacementForgetsGhostsOnClear() {
+        ARCEvictionPolicy<Integer> policy = new ARCEvictionPolicy<Integer>();
+        policy.setCapacity(2);
+        policy.keyAdded(1);
+        policy.keyAdded(2);
+        policy.selectVictim();
+        policy.clear();
+        policy.keyAdded(3);
+        /* Key 1 is new again and not favoured over key 3 */
+        policy.keyAdded(1);
+        assertEquals(Arrays.asList(3, 1), victims(policy));
+    }
+
+    private static List<CacheEvictionPolicy<Integer>> policies() {
+        List<CacheEvictionPolicy<Integer>> policies = new ArrayList<CacheEvictionPolicy<Integer>>();
+        policies.add(new LRUEvictionPolicy<Integer>());
+        policies.add(new LFUEvictionPolicy<Integer>());
+        policies.add(new ARCEvictionPolicy<Integer>());
+        return policies;
+    }
+
+    /**
+     * Selects victims until the policy has none left.
+     */
+    private static List<Integer> victims(CacheEvictionPolicy<Integer> policy) {
+        List<Integer> victims = new ArrayList<Integer>();
+        Integer victim;
+        while ((victim = policy.selectVictim()) != null) {
+            victims.add(victim);
+        }
+        return victims;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.SQLContainer;
+import org.vaadin.enhancements.sqlcontainer.TestDatabase;
+import org.vaadin.enhancements.sqlcontainer.query.generator.DefaultSQLGenerator;
+import org.vaadin.enhancements.sqlcontainer.query.generator.StatementHelper;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+public class KeysetPagingTest {
+
+    private static final int ROWS = 50;
+    private static final int PAGE = 7;
+
+    private JDBCConnectionPool pool;
+    private CountingGenerator generator;
+    private TableQuery offsetQuery;
+    private TableQuery keysetQuery;
+
+    /**
+     * Counts the pages fetched with a seek.
+     */
+    private static class CountingGenerator extends DefaultSQLGenerator {
+        private int seeks;
+
+        @Override
+        public StatementHelper generateKeysetSelectQuery(String tableName,
+                List<Filter> filters, List<OrderBy> orderBys,
+                Object[] keysetValues, int pagelength, String toSelect) {
+            seeks++;
+            return super.generateKeysetSelectQuery(tableName, filters,
+                    orderBys, keysetValues, pagelength, toSelect);
+        }
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        pool = TestDatabase.createPool();
+        TestDatabase.execute(pool, "CREATE TABLE ROWS_T (ID INT PRIMARY KEY,"
+                + " A INT NOT NULL, B VARCHAR(8) NOT NULL, C INT)");
+        String[] inserts = new String[ROWS];
+        for (int i = 1; i <= ROWS; i++) {
+            /* Few distinct values, so that rows tie on the sort columns */
+            inserts[i - 1] = "INSERT INTO ROWS_T VALUES (" + i + ", "
+                    + (i % 5) + ", 'b" + (i * 7 % 4) + "', "
+                    + (i % 3 == 0 ? "NULL" : String.valueOf(i % 4)) + ")";
+        }
+        TestDatabase.execute(pool, inserts);
+        offsetQuery = new TableQuery("ROWS_T", pool);
+        generator = new CountingGenerator();
+        keysetQuery = new TableQuery("ROWS_T", pool, generator);
+        keysetQuery.setKeysetPagingEnabled(true);
+    }
+
+    @Test
+    public void primaryKeyOrder() throws SQLException {
+        assertEquals(Arrays.asList("ID"), keysetQuery.getKeysetColumns());
+        assertPagesMatch(null, ROWS / PAGE);
+    }
+
+    @Test
+    public void singleColumnWithTieBreaker() throws SQLException {
+        List<OrderBy> order = Arrays.asList(new OrderBy("A", true));
+        keysetQuery.setOrderBy(order);
+        assertEquals(Arrays.asList("A", "ID"),
+                keysetQuery.getKeysetColumns());
+        assertPagesMatch(order, ROWS / PAGE);
+    }
+
+    @Test
+    public void multipleColumnsWithMixedDirections() throws SQLException {
+        List<OrderBy> order = Arrays.asList(new OrderBy("A", true),
+                new OrderBy("B", false));
+        keysetQuery.setOrderBy(order);
+        assertEquals(Arrays.asList("A", "B", "ID"),
+                keysetQuery.getKeysetColumns());
+        assertPagesMatch(order, ROWS / PAGE);
+
+        order = Arrays.asList(new OrderBy("B", false), new OrderBy("A", false),
+                new OrderBy("ID", false));
+        keysetQuery.setOrderBy(order);
+        assertEquals(Arrays.asList("B", "A", "ID"),
+                keysetQuery.getKeysetColumns());
+        generator.seeks = 0;
+        assertPagesMatch(order, ROWS / PAGE);
+    }
+
+    @Test
+    public void nullableSortColumnFallsBackToOffset() throws SQLException {
+        List<OrderBy> order = Arrays.asList(new OrderBy("A", true),
+                new OrderBy("C", true));
+        keysetQuery.setOrderBy(order);
+        assertPagesMatch(order, 0);
+
+        order = Arrays.asList(new OrderBy("C", false));
+        keysetQuery.setOrderBy(order);
+        assertPagesMatch(order, 0);
+    }
+
+    @Test
+    public void bookmarksWithNullsAreIgnored() throws SQLException {
+        keysetQuery.setOrderBy(Arrays.asList(new OrderBy("A", true)));
+        keysetQuery.addKeysetBookmark(PAGE, null, 1);
+        keysetQuery.addKeysetBookmark(PAGE, 1);
+        ids(keysetQuery, PAGE, PAGE);
+        assertEquals(0, generator.seeks);
+    }
+
+    @Test
+    public void filterChangeDiscardsBookmarks() throws SQLException {
+        List<OrderBy> order = Arrays.asList(new OrderBy("A", true));
+        keysetQuery.setOrderBy(order);
+        offsetQuery.setOrderBy(order);
+        List<Object[]> keys = keys(offsetQuery, keysetQuery);
+        keysetQuery.addKeysetBookmark(PAGE, keys.get(PAGE - 1));
+
+        List<Filter> filters = Arrays
+                .<Filter> asList(new Compare.Greater("ID", 10));
+        keysetQuery.setFilters(filters);
+        offsetQuery.setFilters(filters);
+        assertEquals(ids(offsetQuery, PAGE, PAGE),
+                ids(keysetQuery, PAGE, PAGE));
+        assertEquals(0, generator.seeks);
+
+        /* Setting equal filters keeps the bookmarks */
+        keys = keys(offsetQuery, keysetQuery);
+        keysetQuery.addKeysetBookmark(PAGE, keys.get(PAGE - 1));
+        keysetQuery.setFilters(new ArrayList<Filter>(filters));
+        assertEquals(ids(offsetQuery, PAGE, PAGE),
+                ids(keysetQuery, PAGE, PAGE));
+        assertEquals(1, generator.seeks);
+
+        keysetQuery.setFilters(null);
+        offsetQuery.setFilters(null);
+        assertEquals(ids(offsetQuery, PAGE, PAGE),
+                ids(keysetQuery, PAGE, PAGE));
+        assertEquals(1, generator.seeks);
+    }
+
+    @Test
+    public void orderChangeDiscardsBookmarks() throws SQLException {
+        List<OrderBy> order = Arrays.asList(new OrderBy("A", true));
+        keysetQuery.setOrderBy(order);
+        offsetQuery.setOrderBy(order);
+        keysetQuery.addKeysetBookmark(PAGE,
+                keys(offsetQuery, keysetQuery).get(PAGE - 1));
+
+        order = Arrays.asList(new OrderBy("A", false));
+        keysetQuery.setOrderBy(order);
+        offsetQuery.setOrderBy(order);
+        assertEquals(ids(offsetQuery, PAGE, PAGE),
+                ids(keysetQuery, PAGE, PAGE));
+        assertEquals(0, generator.seeks);
+
+        keysetQuery.addKeysetBookmark(PAGE,
+                keys(offsetQuery, keysetQuery).get(PAGE - 1));
+        keysetQuery.setKeysetPagingEnabled(true);
+        assertEquals(ids(offsetQuery, PAGE, PAGE),
+                ids(keysetQuery, PAGE, PAGE));
+        assertEquals(0, generator.seeks);
+    }
+
+    @Test
+    public void containerRecordsBookmarks() throws SQLException {
+        SQLContainer offsetContainer = new SQLContainer(offsetQuery);
+        SQLContainer keysetContainer = new SQLContainer(keysetQuery);
+        for (SQLContainer container : Arrays.asList(offsetContainer,
+                keysetContainer)) {
+            container.setPageLength(5);
+            container.sort(new Object[] { "B", "A" },
+                    new boolean[] { false, true });
+        }
+        List<Object> expected = new ArrayList<Object>();
+        List<Object> actual = new ArrayList<Object>();
+        for (int i = 0; i < ROWS; i++) {
+            expected.add(offsetContainer.getIdByIndex(i));
+            actual.add(keysetContainer.getIdByIndex(i));
+        }
+        assertEquals(expected, actual);
+        assertTrue(String.valueOf(generator.seeks), generator.seeks > 0);
+    }
+
+    /**
+     * Fetches all pages with the keyset query, with a bookmark for every page
+     * but the first, and compares them to the pages fetched with an offset.
+     */
+    private void assertPagesMatch(List<OrderBy> order, int expectedSeeks)
+            throws SQLException {
+        offsetQuery.setOrderBy(order);
+        List<Object[]> keys = keys(offsetQuery, keysetQuery);
+        List<Integer> all = new ArrayList<Integer>();
+        for (int offset = 0; offset < ROWS; offset += PAGE) {
+            if (offset > 0) {
+                keysetQuery.addKeysetBookmark(offset, keys.get(offset - 1));
+            }
+            List<Integer> page = ids(keysetQuery, offset, PAGE);
+            assertEquals("offset " + offset, ids(offsetQuery, offset, PAGE),
+                    page);
+            all.addAll(page);
+        }
+        assertEquals(ids(offsetQuery, 0, 0), all);
+        assertEquals(expectedSeeks, generator.seeks);
+    }
+
+    /**
+     * @return the values of the keyset columns of a query for all rows, in
+     *         the order of the offset query
+     */
+    private static List<Object[]> keys(TableQuery offsetQuery,
+            TableQuery keysetQuery) throws SQLException {
+        List<String> columns = keysetQuery.getKeysetColumns();
+        List<Object[]> keys = new ArrayList<Object[]>();
+        offsetQuery.beginTransaction();
+        try {
+            ResultSet rs = offsetQuery.getResults(0, 0);
+            while (rs.next()) {
+                Object[] key = new Object[columns.size()];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = rs.getObject(columns.get(i));
+                }
+                keys.add(key);
+            }
+            rs.getStatement().close();
+        } finally {
+            offsetQuery.commit();
+        }
+        return keys;
+    }
+
+    private static List<Integer> ids(TableQuery query, int offset,
+            int pagelength) throws SQLException {
+        List<Integer> ids = new ArrayList<Integer>();
+        query.beginTransaction();
+        try {
+            ResultSet rs = query.getResults(offset, pagelength);
+            while (rs.next()) {
+                ids.add(rs.getInt("ID"));
+            }
+            rs.getStatement().close();
+        } finally {
+            query.commit();
+        }
+        return Collections.unmodifiableList(ids);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.TestDatabase;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+public class StatementCacheTest {
+
+    private JDBCConnectionPool pool;
+    private Connection connection;
+    private AbstractTransactionalQuery query;
+
+    @Before
+    public void setUp() throws SQLException {
+        pool = TestDatabase.createPool();
+        TestDatabase.execute(pool,
+                "CREATE TABLE PEOPLE (ID INT GENERATED BY DEFAULT AS IDENTITY"
+                        + " PRIMARY KEY, NAME VARCHAR(32), VERSION INT)");
+        TestDatabase.insertPeople(pool, "PEOPLE", 3);
+        query = new AbstractTransactionalQuery(pool) {
+        };
+        connection = pool.reserveConnection();
+    }
+
+    @After
+    public void tearDown() {
+        pool.releaseConnection(connection);
+    }
+
+    @Test
+    public void disabledByDefault() throws SQLException {
+        assertEquals(0, query.getStatementCacheSize());
+        assertEquals(0, new TableQuery("PEOPLE", pool).getStatementCacheSize());
+        PreparedStatement first = prepare("SELECT NAME FROM PEOPLE");
+        first.close();
+        assertTrue(first.isClosed());
+        PreparedStatement second = prepare("SELECT NAME FROM PEOPLE");
+        assertNotSame(first, second);
+        second.close();
+        assertEquals(0, query.getStatementCacheHits());
+        assertEquals(0, query.getStatementCacheMisses());
+    }
+
+    @Test
+    public void reuseAfterClose() throws SQLException {
+        query.setStatementCacheSize(2);
+        PreparedStatement first = prepare("SELECT NAME FROM PEOPLE");
+        PreparedStatement real = first.unwrap(PreparedStatement.class);
+        first.close();
+        assertTrue(first.isClosed());
+        assertFalse(real.isClosed());
+        assertEquals(0, query.getStatementCacheHits());
+        assertEquals(1, query.getStatementCacheMisses());
+
+        PreparedStatement second = prepare("SELECT NAME FROM PEOPLE");
+        assertSame(real, second.unwrap(PreparedStatement.class));
+        assertEquals(1, query.getStatementCacheHits());
+        /* A statement in use is not handed out twice */
+        PreparedStatement third = prepare("SELECT NAME FROM PEOPLE");
+        PreparedStatement thirdReal = third.unwrap(PreparedStatement.class);
+        assertNotSame(real, thirdReal);
+        assertEquals(2, query.getStatementCacheMisses());
+        second.close();
+        /* Only one idle statement is kept per SQL text */
+        third.close();
+        assertTrue(thirdReal.isClosed());
+        assertFalse(real.isClosed());
+
+        prepare("SELECT ID FROM PEOPLE").close();
+        assertFalse(real.isClosed());
+        prepare("SELECT VERSION FROM PEOPLE").close();
+        assertEquals(4, query.getStatementCacheMisses());
+        /* The cache keeps two statements, the least recently used one goes */
+        assertTrue(real.isClosed());
+    }
+
+    @Test
+    public void generatedKeyColumnsArePartOfTheKey() throws SQLException {
+        query.setStatementCacheSize(2);
+        String sql = "INSERT INTO PEOPLE (NAME, VERSION) VALUES ('x', 0)";
+        prepare(sql).close();
+        query.prepareStatement(connection, sql, new String[] { "ID" })
+                .close();
+        assertEquals(2, query.getStatementCacheMisses());
+        query.prepareStatement(connection, sql, new String[] { "ID" })
+                .close();
+        prepare(sql).close();
+        assertEquals(2, query.getStatementCacheHits());
+    }
+
+    @Test
+    public void allResultSetsAreClosed() throws SQLException {
+        query.setStatementCacheSize(2);
+        PreparedStatement insert = query.prepareStatement(connection,
+                "INSERT INTO PEOPLE (NAME, VERSION) VALUES (?, 0)",
+                new String[] { "ID" });
+        insert.setString(1, "a");
+        insert.executeUpdate();
+        ResultSet firstKeys = insert.getGeneratedKeys();
+        assertSame(insert, firstKeys.getStatement());
+        insert.setString(1, "b");
+        insert.executeUpdate();
+        ResultSet secondKeys = insert.getGeneratedKeys();
+        insert.close();
+        assertTrue(firstKeys.isClosed());
+        assertTrue(secondKeys.isClosed());
+
+        PreparedStatement select = prepare("SELECT NAME FROM PEOPLE");
+        ResultSet rs = select.executeQuery();
+        assertTrue(rs.next());
+        select.close();
+        assertTrue(rs.isClosed());
+        connection.rollback();
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        return query.prepareStatement(connection, sql);
+    }
+}
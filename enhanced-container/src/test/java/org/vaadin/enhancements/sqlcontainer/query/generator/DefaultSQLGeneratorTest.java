@@ -0,0 +1,381 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.RowId;
+import org.vaadin.enhancements.sqlcontainer.RowItem;
+import org.vaadin.enhancements.sqlcontainer.SQLContainer;
+import org.vaadin.enhancements.sqlcontainer.TestDatabase;
+import org.vaadin.enhancements.sqlcontainer.filter.In;
+import org.vaadin.enhancements.sqlcontainer.query.OrderBy;
+import org.vaadin.enhancements.sqlcontainer.query.TableQuery;
+import org.vaadin.enhancements.sqlcontainer.query.generator.filter.QueryBuilder;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.Not;
+import com.vaadin.data.util.filter.Or;
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+
+public class DefaultSQLGeneratorTest {
+
+    private static final List<OrderBy> ORDER = Arrays
+            .asList(new OrderBy("ID", true));
+
+    /**
+     * Counts the SELECT queries generated instead of taken from the templates.
+     */
+    private static class CountingGenerator extends DefaultSQLGenerator {
+        private int generated;
+
+        @Override
+        protected StatementHelper generateSelectTemplate(String tableName,
+                List<Filter> filters, List<OrderBy> orderBys, boolean paged,
+                String toSelect) {
+            generated++;
+            return super.generateSelectTemplate(tableName, filters, orderBys,
+                    paged, toSelect);
+        }
+    }
+
+    @Test
+    public void sameStructureReusesTemplate() throws SQLException {
+        CountingGenerator generator = new CountingGenerator();
+        StatementHelper first = generator.generateSelectQuery("PEOPLE",
+                filters(new Compare.Equal("NAME", "a"),
+                        new Between("AGE", 1, 5),
+                        new Or(new Compare.Greater("ID", 10), new IsNull(
+                                "ID"))), ORDER, 0, 0, null);
+        StatementHelper second = generator.generateSelectQuery("PEOPLE",
+                filters(new Compare.Equal("NAME", "b"),
+                        new Between("AGE", 7, 9),
+                        new Or(new Compare.Greater("ID", 20), new IsNull(
+                                "ID"))), ORDER, 0, 0, null);
+        assertEquals(1, generator.generated);
+        assertEquals(first.getQueryString(), second.getQueryString());
+        /* The values are bound in the order of the optimized filters */
+        assertEquals(Arrays.<Object> asList(1, 5, "a", 10), parameters(first));
+        assertEquals(Arrays.<Object> asList(7, 9, "b", 20),
+                parameters(second));
+
+        /* The pattern of a Like is a parameter value */
+        first = generator.generateSelectQuery("PEOPLE",
+                filters(new Like("NAME", "ab%")), ORDER, 0, 0, null);
+        second = generator.generateSelectQuery("PEOPLE",
+                filters(new Like("NAME", "%a_")), ORDER, 0, 0, null);
+        assertEquals(2, generator.generated);
+        assertEquals(first.getQueryString(), second.getQueryString());
+        assertEquals(Arrays.<Object> asList("%a_"), parameters(second));
+    }
+
+    @Test
+    public void templateMatchesGeneratedQuery() throws SQLException {
+        List<Filter> filters = filters(
+                new Not(new Compare.LessOrEqual("AGE", 3)),
+                new Like("NAME", "ab%"), new In("ID", 1, 2, 3));
+        CountingGenerator generator = new CountingGenerator();
+        generator.generateSelectQuery("PEOPLE", filters, ORDER, 0, 0, null);
+        StatementHelper cached = generator.generateSelectQuery("PEOPLE",
+                filters, ORDER, 0, 0, null);
+        assertEquals(1, generator.generated);
+        StatementHelper fresh = new DefaultSQLGenerator()
+                .generateSelectTemplate("PEOPLE", filters, ORDER, false, "*");
+        assertEquals(fresh.getQueryString(), cached.getQueryString());
+        assertEquals(parameters(fresh), parameters(cached));
+    }
+
+    @Test
+    public void differentShapesUseDifferentTemplates() {
+        assertDifferentTemplates(new In("ID", 1, 2), new In("ID", 1, 2, 3));
+        assertDifferentTemplates(new In("ID", 1, 2), new In("AGE", 1, 2));
+        assertDifferentTemplates(new Like("NAME", "ab%", true),
+                new Like("NAME", "ab%", false));
+        assertDifferentTemplates(new Compare.Less("ID", 1),
+                new Compare.Greater("ID", 1));
+        assertDifferentTemplates(
+                new Not(new And(new IsNull("ID"), new IsNull("AGE"))),
+                new Not(new Or(new IsNull("ID"), new IsNull("AGE"))));
+        assertDifferentTemplates(new Or(new IsNull("ID"), new IsNull("AGE")),
+                new Or(new IsNull("ID"), new IsNull("NAME")));
+    }
+
+    @Test
+    public void configurationChangeInvalidatesTemplates() {
+        CountingGenerator generator = new CountingGenerator();
+        List<Filter> filters = filters(new Compare.Equal("ID", 1));
+        generator.generateSelectQuery("PEOPLE", filters, ORDER, 0, 0, null);
+        int version = QueryBuilder.getConfigurationVersion();
+        boolean optimize = QueryBuilder.isFilterOptimizationEnabled();
+        QueryBuilder.setFilterOptimizationEnabled(optimize);
+        assertNotEquals(version, QueryBuilder.getConfigurationVersion());
+        generator.generateSelectQuery("PEOPLE", filters, ORDER, 0, 0, null);
+        assertEquals(2, generator.generated);
+        generator.generateSelectQuery("PEOPLE", filters, ORDER, 0, 0, null);
+        assertEquals(2, generator.generated);
+    }
+
+    @Test
+    public void limitsFollowFilterParameters() throws SQLException {
+        assertLimits(new DefaultSQLGenerator(), " LIMIT ? OFFSET ?", 10, 20);
+        assertLimits(new DerbySQLGenerator(),
+                " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", 20, 10);
+        assertLimits(new OracleGenerator(), " BETWEEN ? AND ?", 21, 30);
+        assertLimits(new MSSQLGenerator(), " BETWEEN ? AND ?", 21, 30);
+    }
+
+    @Test
+    public void overriddenGenerateLimitsIsUsed() throws SQLException {
+        CountingGenerator generator = new CountingGenerator() {
+            @Override
+            @SuppressWarnings("deprecation")
+            protected StringBuffer generateLimits(StringBuffer sb, int offset,
+                    int pagelength) {
+                return sb.append(" FETCH FIRST ").append(offset + pagelength)
+                        .append(" ROWS ONLY");
+            }
+        };
+        StatementHelper page = generator.generateSelectQuery("PEOPLE",
+                filters(new Between("AGE", 1, 5)), ORDER, 20, 10, null);
+        assertEquals("SELECT * FROM PEOPLE WHERE \"AGE\" BETWEEN ? AND ?"
+                + " ORDER BY \"ID\" ASC FETCH FIRST 30 ROWS ONLY",
+                page.getQueryString());
+        assertEquals(Arrays.<Object> asList(1, 5), parameters(page));
+        page = generator.generateSelectQuery("PEOPLE",
+                filters(new Between("AGE", 1, 5)), ORDER, 40, 10, null);
+        assertTrue(page.getQueryString()
+                .endsWith(" FETCH FIRST 50 ROWS ONLY"));
+        assertEquals(2, generator.generated);
+
+        /* Unpaged queries still use the templates */
+        generator.generateSelectQuery("PEOPLE", null, ORDER, 0, 0, null);
+        generator.generateSelectQuery("PEOPLE", null, ORDER, 0, 0, null);
+        assertEquals(3, generator.generated);
+    }
+
+    @Test
+    public void updateTemplateBindsOldPrimaryKey() throws SQLException {
+        SQLContainer container = people();
+        DefaultSQLGenerator generator = new DefaultSQLGenerator();
+        RowItem first = item(container, 1);
+        first.getItemProperty("ID").setValue(10);
+        first.getItemProperty("NAME").setValue("x");
+        RowItem second = item(container, 2);
+        second.getItemProperty("NAME").setValue("y");
+
+        String update = "UPDATE PEOPLE SET \"ID\" = ?, \"NAME\" = ?,"
+                + " \"VERSION\" = ? WHERE \"ID\" = ?";
+        StatementHelper sh = generator.generateUpdateQuery("PEOPLE", first);
+        assertEquals(update, sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(10, "x", 0, 1), parameters(sh));
+        sh = generator.generateUpdateQuery("PEOPLE", second);
+        assertEquals(update, sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(2, "y", 0, 2), parameters(sh));
+
+        sh = generator.generateModifiedColumnsUpdateQuery("PEOPLE", first);
+        assertEquals("UPDATE PEOPLE SET \"ID\" = ?, \"NAME\" = ?"
+                + " WHERE \"ID\" = ?", sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(10, "x", 1), parameters(sh));
+        sh = generator.generateModifiedColumnsUpdateQuery("PEOPLE", second);
+        assertEquals("UPDATE PEOPLE SET \"NAME\" = ? WHERE \"ID\" = ?",
+                sh.getQueryString());
+        assertEquals(Arrays.<Object> asList("y", 2), parameters(sh));
+    }
+
+    @Test
+    public void insertTemplate() throws SQLException {
+        SQLContainer container = people();
+        DefaultSQLGenerator generator = new DefaultSQLGenerator();
+        String insert = "INSERT INTO PEOPLE (\"ID\", \"NAME\", \"VERSION\")"
+                + " VALUES (?, ?, ?)";
+        RowItem item = (RowItem) container.getItem(container.addItem());
+        item.getItemProperty("ID").setValue(4);
+        item.getItemProperty("NAME").setValue("d");
+        StatementHelper sh = generator.generateInsertQuery("PEOPLE", item);
+        assertEquals(insert, sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(4, "d", null), parameters(sh));
+
+        item = (RowItem) container.getItem(container.addItem());
+        item.getItemProperty("ID").setValue(5);
+        item.getItemProperty("VERSION").setValue(3);
+        sh = generator.generateInsertQuery("PEOPLE", item);
+        assertEquals(insert, sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(5, null, 3), parameters(sh));
+    }
+
+    @Test
+    public void deleteTemplateBindsOldPrimaryKey() throws SQLException {
+        SQLContainer container = people();
+        DefaultSQLGenerator generator = new DefaultSQLGenerator();
+        RowItem first = item(container, 1);
+        first.getItemProperty("ID").setValue(10);
+        String delete = "DELETE FROM PEOPLE WHERE \"ID\" = ?"
+                + " AND \"VERSION\" = ?";
+        StatementHelper sh = generator.generateDeleteQuery("PEOPLE",
+                Arrays.asList("ID"), "VERSION", first);
+        assertEquals(delete, sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(1, 0), parameters(sh));
+        sh = generator.generateDeleteQuery("PEOPLE", Arrays.asList("ID"),
+                "VERSION", item(container, 2));
+        assertEquals(delete, sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(2, 0), parameters(sh));
+    }
+
+    @Test
+    public void overriddenValueMapsAreUsed() throws SQLException {
+        SQLContainer container = people();
+        DefaultSQLGenerator generator = new DefaultSQLGenerator() {
+            @Override
+            @SuppressWarnings("deprecation")
+            protected Map<String, Object> generateColumnToValueMap(
+                    RowItem item) {
+                Map<String, Object> values = super.generateColumnToValueMap(
+                        item);
+                values.remove("VERSION");
+                return values;
+            }
+        };
+        RowItem first = item(container, 1);
+        first.getItemProperty("ID").setValue(10);
+        StatementHelper sh = generator.generateUpdateQuery("PEOPLE", first);
+        assertEquals("UPDATE PEOPLE SET \"ID\" = ?, \"NAME\" = ?"
+                + " WHERE \"ID\" = ?", sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(10, "n1", 1), parameters(sh));
+        sh = generator.generateModifiedColumnsUpdateQuery("PEOPLE", first);
+        assertEquals("UPDATE PEOPLE SET \"ID\" = ? WHERE \"ID\" = ?",
+                sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(10, 1), parameters(sh));
+
+        RowItem added = (RowItem) container.getItem(container.addItem());
+        added.getItemProperty("ID").setValue(4);
+        sh = generator.generateInsertQuery("PEOPLE", added);
+        assertEquals("INSERT INTO PEOPLE (\"ID\", \"NAME\") VALUES (?, ?)",
+                sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(4, null), parameters(sh));
+
+        generator = new DefaultSQLGenerator() {
+            @Override
+            @SuppressWarnings("deprecation")
+            protected Map<String, Object> generateRowIdentifiers(
+                    RowItem item) {
+                Map<String, Object> identifiers = super
+                        .generateRowIdentifiers(item);
+                identifiers.put("NAME", "n1");
+                return identifiers;
+            }
+        };
+        sh = generator.generateModifiedColumnsUpdateQuery("PEOPLE", first);
+        assertEquals("UPDATE PEOPLE SET \"ID\" = ?"
+                + " WHERE \"ID\" = ? AND \"NAME\" = ?",
+                sh.getQueryString());
+        assertEquals(Arrays.<Object> asList(10, 1, "n1"), parameters(sh));
+    }
+
+    /**
+     * Generates a page of a filtered query twice, the second time from the
+     * template, and checks the parameter values of both.
+     */
+    private static void assertLimits(DefaultSQLGenerator generator,
+            String limitClause, int first, int second) throws SQLException {
+        String name = generator.getClass().getSimpleName();
+        StatementHelper page = generator.generateSelectQuery("PEOPLE",
+                filters(new Between("AGE", 1, 5)), ORDER, 20, 10, null);
+        assertEquals(name, Arrays.<Object> asList(1, 5, first, second),
+                parameters(page));
+        page = generator.generateSelectQuery("PEOPLE",
+                filters(new Between("AGE", 2, 6)), ORDER, 20, 10, null);
+        assertTrue(name + ": " + page.getQueryString(),
+                page.getQueryString().endsWith(limitClause));
+        assertEquals(name, Arrays.<Object> asList(2, 6, first, second),
+                parameters(page));
+    }
+
+    private static void assertDifferentTemplates(Filter a, Filter b) {
+        CountingGenerator generator = new CountingGenerator();
+        String first = generator
+                .generateSelectQuery("PEOPLE", filters(a), ORDER, 0, 0, null)
+                .getQueryString();
+        String second = generator
+                .generateSelectQuery("PEOPLE", filters(b), ORDER, 0, 0, null)
+                .getQueryString();
+        assertEquals(2, generator.generated);
+        assertFalse(first, first.equals(second));
+    }
+
+    /**
+     * @return a container of a table PEOPLE with the rows 1 to 3
+     */
+    private static SQLContainer people() throws SQLException {
+        JDBCConnectionPool pool = TestDatabase.createPool();
+        TestDatabase.execute(pool, "CREATE TABLE PEOPLE (ID INT PRIMARY KEY,"
+                + " NAME VARCHAR(32), VERSION INT)");
+        TestDatabase.insertPeople(pool, "PEOPLE", 3);
+        return new SQLContainer(new TableQuery("PEOPLE", pool));
+    }
+
+    private static RowItem item(SQLContainer container, int id) {
+        return (RowItem) container.getItem(new RowId(new Object[] { id }));
+    }
+
+    private static List<Filter> filters(Filter... filters) {
+        return new ArrayList<Filter>(Arrays.asList(filters));
+    }
+
+    /**
+     * @return the parameter values a statement helper sets to a statement
+     */
+    static List<Object> parameters(StatementHelper sh) throws SQLException {
+        final List<Object> values = new ArrayList<Object>();
+        InvocationHandler recorder = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (!method.getName().startsWith("set") || args.length < 2) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                int index = (Integer) args[0];
+                while (values.size() < index) {
+                    values.add(null);
+                }
+                values.set(index - 1,
+                        "setNull".equals(method.getName()) ? null : args[1]);
+                return null;
+            }
+        };
+        sh.setParameterValuesToStatement((PreparedStatement) Proxy
+                .newProxyInstance(PreparedStatement.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class }, recorder));
+        return values;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.filter.In;
+
+import com.vaadin.data.Container.Filter;
+import com.vaadin.data.Item;
+import com.vaadin.data.util.ObjectProperty;
+import com.vaadin.data.util.PropertysetItem;
+import com.vaadin.data.util.filter.And;
+import com.vaadin.data.util.filter.Between;
+import com.vaadin.data.util.filter.Compare;
+import com.vaadin.data.util.filter.IsNull;
+import com.vaadin.data.util.filter.Like;
+import com.vaadin.data.util.filter.Not;
+import com.vaadin.data.util.filter.Or;
+
+public class FilterOptimizerTest {
+
+    private static final List<Item> INTEGERS = items(null, -1, 0, 1, 2, 3, 5,
+            9, 10, 11);
+    private static final List<Item> LONGS = items(null, 0L, 1L, 2L, 5L, 10L);
+    private static final List<Item> DECIMALS = items(null,
+            new BigDecimal("1"), new BigDecimal("1.0"), new BigDecimal("2.00"),
+            new BigDecimal("3"));
+    private static final List<Item> STRINGS = items(null, "", "abc", "ABC",
+            "Abc", "abcd", "xabc", "a%c");
+
+    @Test
+    public void emptyJunctions() {
+        assertEquivalent(new And(), INTEGERS);
+        assertEquivalent(new Or(), INTEGERS);
+        assertEquivalent(new And(new Or()), INTEGERS);
+        assertEquivalent(new Or(new And()), INTEGERS);
+        assertEquivalent(new And(new And(), new Compare.Equal("A", 1)),
+                INTEGERS);
+        assertEquivalent(new Or(new Or(), new Compare.Equal("A", 1)),
+                INTEGERS);
+        assertEquivalent(new And(new Or(), new Compare.Equal("A", 1)),
+                INTEGERS);
+        assertEquivalent(new Or(new And(), new Compare.Equal("A", 1)),
+                INTEGERS);
+        assertEquals(Collections.emptyList(), FilterOptimizer
+                .optimize(Arrays.<Filter> asList(new And(), new And())));
+    }
+
+    @Test
+    public void nestedJunctions() {
+        Filter one = new Compare.Equal("A", 1);
+        Filter big = new Compare.Greater("A", 4);
+        Filter small = new Compare.Less("A", 2);
+        assertEquivalent(new And(new And(big, new And(new Compare.Less("A",
+                10))), new Or(one, new Or(big))), INTEGERS);
+        assertEquivalent(new Or(new Or(one, new Or(small, new Or())),
+                new And(big, new And(new Compare.LessOrEqual("A", 9)))),
+                INTEGERS);
+        assertEquivalent(new And(new Or(one, big), new Or(big, one)),
+                INTEGERS);
+        assertEquivalent(new Or(new And(new Or(new And(one)))), INTEGERS);
+        assertEquivalent(new And(new IsNull("A"), new Or(one, big)),
+                INTEGERS);
+    }
+
+    @Test
+    public void not() {
+        Filter one = new Compare.Equal("A", 1);
+        assertEquivalent(new Not(one), INTEGERS);
+        assertEquivalent(new Not(new Not(one)), INTEGERS);
+        assertEquivalent(new Not(new Not(new Not(one))), INTEGERS);
+        assertEquivalent(new Not(new And()), INTEGERS);
+        assertEquivalent(new Not(new Or()), INTEGERS);
+        assertEquivalent(new Not(new And(new Not(new Or()), one)), INTEGERS);
+        assertEquivalent(new Not(new Or(one, new Compare.Equal("A", 2))),
+                INTEGERS);
+        assertEquivalent(new Not(new IsNull("A")), INTEGERS);
+        assertEquivalent(new And(new Not(one), new Compare.Greater("A", 0),
+                new Compare.Less("A", 5)), INTEGERS);
+        assertEquivalent(new Not(new Between("A", 5, 2)), INTEGERS);
+        assertEquivalent(new Not(new In("A")), INTEGERS);
+    }
+
+    @Test
+    public void likesWithDifferentCaseSensitivity() {
+        Like sensitive = new Like("S", "abc%", true);
+        Like insensitive = new Like("S", "abc%", false);
+        assertEquivalent(new Or(sensitive, insensitive), STRINGS);
+        assertEquivalent(new Or(insensitive, sensitive), STRINGS);
+        assertEquivalent(new And(sensitive, insensitive), STRINGS);
+        assertEquivalent(new And(insensitive, sensitive), STRINGS);
+        assertEquivalent(new And(sensitive, new Like("S", "abc%", true)),
+                STRINGS);
+        assertEquivalent(new Or(new Not(sensitive), insensitive), STRINGS);
+
+        Filter f = FilterOptimizer.optimize(new And(sensitive, insensitive));
+        assertEquals(And.class, f.getClass());
+        assertEquals(2, ((And) f).getFilters().size());
+    }
+
+    @Test
+    public void mixedNumericTypesInRanges() {
+        Filter[] mixed = { new Compare.Greater("A", 1),
+                new Compare.Less("A", 10L), new Between("A", 0L, 5),
+                new Compare.Equal("A", 2L), new Compare.GreaterOrEqual("A",
+                        1.5d) };
+        for (Filter a : mixed) {
+            for (Filter b : mixed) {
+                assertEquivalent(new And(a, b), INTEGERS);
+                assertEquivalent(new And(a, b), LONGS);
+            }
+        }
+        assertEquivalent(new And(new Compare.Greater("A", 1L),
+                new Compare.Less("A", 10L), new Compare.Less("A", 5L)),
+                LONGS);
+        assertEquivalent(new And(new Compare.Greater("A", 1),
+                new Compare.Less("A", 10), new Compare.Less("A", 5L)),
+                INTEGERS);
+        Filter f = FilterOptimizer.optimize(new And(
+                new Compare.Greater("A", 1), new Compare.Less("A", 10L)));
+        assertEquals(And.class, f.getClass());
+        assertEquals(2, ((And) f).getFilters().size());
+        assertEquivalent(new And(new Compare.GreaterOrEqual("A",
+                new BigDecimal("1.0")), new Compare.LessOrEqual("A",
+                new BigDecimal("1.00"))), DECIMALS);
+        assertEquivalent(new And(new Compare.Equal("A", new BigDecimal("1")),
+                new Compare.LessOrEqual("A", new BigDecimal("1.0"))),
+                DECIMALS);
+    }
+
+    @Test
+    public void rangeMerges() {
+        Filter[] ranges = { new Compare.Greater("A", 1),
+                new Compare.GreaterOrEqual("A", 2),
+                new Compare.Less("A", 10), new Compare.LessOrEqual("A", 2),
+                new Compare.Equal("A", 2), new Compare.Equal("A", 5),
+                new Between("A", 2, 9), new Between("A", 9, 2) };
+        for (Filter a : ranges) {
+            for (Filter b : ranges) {
+                assertEquivalent(new And(a, b), INTEGERS);
+                for (Filter c : ranges) {
+                    assertEquivalent(new And(a, b, c), INTEGERS);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void orOfEqualsWithNull() {
+        assertEquivalent(new Or(new Compare.Equal("A", null),
+                new Compare.Equal("A", 1), new Compare.Equal("A", 2)),
+                INTEGERS);
+        assertEquivalent(new Or(new Compare.Equal("A", null),
+                new Compare.Equal("A", null)), INTEGERS);
+        assertEquivalent(new Or(new Compare.Equal("A", null),
+                new In("A", 1, 2), new Compare.Equal("A", 3)), INTEGERS);
+        assertEquivalent(new Or(new Compare.Equal("A", 1),
+                new Compare.Equal("A", 1L)), INTEGERS);
+        assertEquivalent(new Or(new Compare.Equal("A", 1),
+                new Compare.Equal("A", 1L)), LONGS);
+        assertEquivalent(new Or(new Compare.Equal("A", new BigDecimal("1")),
+                new Compare.Equal("A", new BigDecimal("2"))), DECIMALS);
+        assertEquivalent(new In("A", new BigDecimal("2")), DECIMALS);
+        assertEquivalent(new Not(new Or(new Compare.Equal("A", null),
+                new Compare.Equal("A", 1), new Compare.Equal("A", 2))),
+                INTEGERS);
+
+        Filter f = FilterOptimizer.optimize(new Or(new Compare.Equal("A",
+                null), new Compare.Equal("A", 1), new Compare.Equal("A", 2)));
+        assertTrue(f.toString(), f instanceof Or);
+    }
+
+    @Test
+    public void unchangedFilterIsReturned() {
+        Filter f = new And(new Compare.Equal("A", 1), new IsNull("B"));
+        assertSame(f, FilterOptimizer.optimize(f));
+        assertNotSame(f, FilterOptimizer.optimize(new And(f)));
+    }
+
+    /**
+     * Checks that a filter and its optimized form pass the same items. Items
+     * that either form cannot compare in memory, such as an Integer property
+     * with a Long value, are skipped: whether an And fails on them or not
+     * depends on the order of its conditions.
+     */
+    private static void assertEquivalent(Filter filter, List<Item> items) {
+        Filter optimized = FilterOptimizer.optimize(filter);
+        List<Filter> optimizedList = FilterOptimizer
+                .optimize(Collections.singletonList(filter));
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            Boolean expected = evaluate(filter, i, item);
+            Boolean actual = evaluate(optimized, i, item);
+            Boolean all = Boolean.TRUE;
+            for (Filter f : optimizedList) {
+                Boolean passes = evaluate(f, i, item);
+                if (passes == null || !passes) {
+                    all = passes;
+                    break;
+                }
+            }
+            if (expected == null || actual == null || all == null) {
+                continue;
+            }
+            String message = filter + " -> " + optimized + " on A="
+                    + item.getItemProperty("A") + ", S="
+                    + item.getItemProperty("S");
+            assertEquals(message, expected, actual);
+            assertEquals(message, expected, all);
+        }
+    }
+
+    /**
+     * @return whether the filter passes the item, null if it cannot compare
+     *         the values
+     */
+    private static Boolean evaluate(Filter filter, Object itemId, Item item) {
+        try {
+            return filter.passesFilter(itemId, item);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (ClassCastException e) {
+            return null;
+        }
+    }
+
+    private static List<Item> items(Object... values) {
+        List<Item> items = new ArrayList<Item>(values.length);
+        for (Object value : values) {
+            PropertysetItem item = new PropertysetItem();
+            if (value instanceof String) {
+                item.addItemProperty("S",
+                        new ObjectProperty<Object>(value, Object.class));
+                item.addItemProperty("A",
+                        new ObjectProperty<Object>(null, Object.class));
+            } else {
+                item.addItemProperty("A",
+                        new ObjectProperty<Object>(value, Object.class));
+                item.addItemProperty("S",
+                        new ObjectProperty<Object>(null, Object.class));
+            }
+            items.add(item);
+        }
+        return items;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2000-2014 Vaadin Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.vaadin.enhancements.sqlcontainer.query.generator.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vaadin.enhancements.sqlcontainer.SQLContainer;
+import org.vaadin.enhancements.sqlcontainer.filter.FullTextFilter;
+import org.vaadin.enhancements.sqlcontainer.query.TableQuery;
+import org.vaadin.enhancements.sqlcontainer.query.generator.DefaultSQLGenerator;
+import org.vaadin.enhancements.sqlcontainer.query.generator.DerbySQLGenerator;
+import org.vaadin.enhancements.sqlcontainer.query.generator.SQLGenerator;
+
+import com.vaadin.data.util.sqlcontainer.connection.JDBCConnectionPool;
+import com.vaadin.data.util.sqlcontainer.connection.SimpleJDBCConnectionPool;
+
+public class FullTextStrategyTest {
+
+    private static final String[][] ROWS = { { "The Quick fox", "lazy dog" },
+            { "quick", "brown FOX" }, { "50% off", null },
+            { "5000 items", "a_b" }, { "axb", "wow!" }, { "wow", "c:\\dir" },
+            { null, "100%" }, { "!%", "_" }, { "Brown dog", "x" } };
+
+    private static final String[] SEARCHES = { "quick fox", "brown",
+            "dog BROWN", "", "nothing", "50%", "%", "a_b", "_", "wow!", "!",
+            "!%", "c:\\dir", "\\", "100% wow" };
+
+    @BeforeClass
+    public static void setUpDerby() {
+        /* Keep derby.log out of the working directory */
+        System.setProperty("derby.stream.error.file", "target/derby.log");
+    }
+
+    @Test
+    public void likeFallbackMatchesPassesFilterOnHSQLDB() throws SQLException {
+        JDBCConnectionPool pool = new SimpleJDBCConnectionPool(
+                "org.hsqldb.jdbc.JDBCDriver", "jdbc:hsqldb:mem:fulltext",
+                "SA", "", 2, 2);
+        assertLikeFallbackMatchesPassesFilter(pool, new DefaultSQLGenerator());
+    }
+
+    @Test
+    public void likeFallbackMatchesPassesFilterOnDerby() throws SQLException {
+        JDBCConnectionPool pool = new SimpleJDBCConnectionPool(
+                "org.apache.derby.jdbc.EmbeddedDriver",
+                "jdbc:derby:memory:fulltext;create=true", "", "", 2, 2);
+        assertLikeFallbackMatchesPassesFilter(pool, new DerbySQLGenerator());
+    }
+
+    @Test
+    public void escapedPrefix() {
+        assertEquals("50%", LikeStrategy.getPrefix("50!%%", '!'));
+        assertEquals("a!b", LikeStrategy.getPrefix("a!!b%", '!'));
+        assertEquals("c:\\", LikeStrategy.getPrefix("c:\\%", '!'));
+        assertNull(LikeStrategy.getPrefix("c:\\%", null));
+        assertNull(LikeStrategy.getPrefix("50!%", '!'));
+        assertNull(LikeStrategy.getPrefix("a_b%", '!'));
+        assertNull(LikeStrategy.getPrefix("!%%", null));
+    }
+
+    private static void assertLikeFallbackMatchesPassesFilter(
+            JDBCConnectionPool pool, SQLGenerator generator)
+            throws SQLException {
+        createTable(pool);
+        SQLContainer container = new SQLContainer(
+                new TableQuery("DOCS", pool, generator));
+        assertEquals(ROWS.length, container.size());
+        for (String search : SEARCHES) {
+            FullTextFilter filter = new FullTextFilter(
+                    Arrays.asList((Object) "TITLE", "BODY"), search);
+            List<Object> expected = new ArrayList<Object>();
+            for (Object itemId : container.getItemIds()) {
+                if (filter.passesFilter(itemId,
+                        container.getItem(itemId))) {
+                    expected.add(getId(container, itemId));
+                }
+            }
+            container.addContainerFilter(filter);
+            List<Object> actual = new ArrayList<Object>();
+            for (Object itemId : container.getItemIds()) {
+                actual.add(getId(container, itemId));
+            }
+            container.removeAllContainerFilters();
+            assertEquals("'" + search + "'", expected, actual);
+        }
+    }
+
+    private static Object getId(SQLContainer container, Object itemId) {
+        return container.getItem(itemId).getItemProperty("ID").getValue();
+    }
+
+    private static void createTable(JDBCConnectionPool pool)
+            throws SQLException {
+        Connection c = pool.reserveConnection();
+        try {
+            c.createStatement().execute("CREATE TABLE DOCS (ID INT PRIMARY KEY,"
+                    + " TITLE VARCHAR(50), BODY VARCHAR(50))");
+            PreparedStatement ps = c
+                    .prepareStatement("INSERT INTO DOCS VALUES (?, ?, ?)");
+            for (int i = 0; i < ROWS.length; i++) {
+                ps.setInt(1, i);
+                ps.setString(2, ROWS[i][0]);
+                ps.setString(3, ROWS[i][1]);
+                ps.executeUpdate();
+            }
+            ps.close();
+            c.commit();
+        } finally {
+            pool.releaseConnection(c);
+        }
+    }
+}